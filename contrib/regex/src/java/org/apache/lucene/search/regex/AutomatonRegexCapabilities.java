@@ -0,0 +1,388 @@
+package org.apache.lucene.search.regex;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.RunAutomaton;
+
+/**
+ * An implementation compiling regular expressions to a {@link RunAutomaton}.
+ * Unlike the others, it lets {@link RegexTermEnum} seek past the terms that
+ * cannot match rather than try each of them, so that leading wildcards
+ * such as <code>.*ing</code> or alternatives such as <code>(foo|bar)s?</code>
+ * stay cheap on large term dictionaries.
+ * <p>
+ * Patterns must match whole terms. The syntax is a subset of that of
+ * java.util.regex: literal chars, <code>.</code>, character classes such as
+ * <code>[a-z_]</code> and <code>[^0-9]</code>, the escapes <code>\d</code>,
+ * <code>\w</code> and <code>\s</code>, groups, alternatives with
+ * <code>|</code>, and the greedy quantifiers <code>* + ?</code> and
+ * <code>{n}</code>, <code>{n,}</code>, <code>{n,m}</code>. A leading
+ * <code>^</code> and a trailing <code>$</code> are allowed and ignored.
+ * Patterns that do not parse, or whose automaton would be too large,
+ * throw an IllegalArgumentException from {@link #compile(String)}.
+ */
+public class AutomatonRegexCapabilities implements RegexCapabilities {
+
+  /** compiled patterns may have at most this many states */
+  public static final int MAX_STATES = 10000;
+
+  // repeat counts above this are refused
+  private static final int MAX_REPEAT = 100;
+
+  private String pattern;
+  private RunAutomaton automaton;
+
+  // parser state
+  private RunAutomaton.Builder builder;
+  private int pos;
+  private int end;
+
+  public void compile(String pattern) {
+    this.pattern = pattern;
+    builder = new RunAutomaton.Builder();
+    pos = 0;
+    end = pattern.length();
+    if (end > 0 && pattern.charAt(0) == '^') {
+      pos++;
+    }
+    if (end > pos && pattern.charAt(end - 1) == '$' && !isEscaped(end - 1)) {
+      end--;
+    }
+    int[] fragment = parseUnion();
+    if (pos < end) {
+      throw syntaxError("unexpected '" + pattern.charAt(pos) + "'");
+    }
+    builder.setAccept(fragment[1]);
+    RunAutomaton result = builder.build(fragment[0], MAX_STATES);
+    builder = null;
+    if (result == null) {
+      throw new IllegalArgumentException("Pattern too complex: " + pattern);
+    }
+    automaton = result;
+  }
+
+  public boolean match(String string) {
+    return automaton.run(string);
+  }
+
+  public String prefix() {
+    return automaton.getCommonPrefix();
+  }
+
+  /** Returns the automaton of the pattern last passed to {@link #compile}. */
+  public RunAutomaton getAutomaton() {
+    return automaton;
+  }
+
+  private boolean isEscaped(int index) {
+    int backslashes = 0;
+    while (index - backslashes > 0 && pattern.charAt(index - backslashes - 1) == '\\') {
+      backslashes++;
+    }
+    return (backslashes & 1) == 1;
+  }
+
+  private IllegalArgumentException syntaxError(String message) {
+    return new IllegalArgumentException(message + " at index " + pos + " of pattern: " + pattern);
+  }
+
+  // Fragments are {start, end} states of the builder: the strings they
+  // match lead from start to end.
+
+  private int[] parseUnion() {
+    int[] fragment = parseConcatenation();
+    if (pos < end && pattern.charAt(pos) == '|') {
+      int start = builder.newState();
+      int accept = builder.newState();
+      builder.addEpsilon(start, fragment[0]);
+      builder.addEpsilon(fragment[1], accept);
+      while (pos < end && pattern.charAt(pos) == '|') {
+        pos++;
+        int[] alternative = parseConcatenation();
+        builder.addEpsilon(start, alternative[0]);
+        builder.addEpsilon(alternative[1], accept);
+      }
+      fragment = new int[] { start, accept };
+    }
+    return fragment;
+  }
+
+  private int[] parseConcatenation() {
+    int state = builder.newState();
+    int[] fragment = new int[] { state, state };
+    while (pos < end && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+      int[] next = parseRepeat(end);
+      builder.addEpsilon(fragment[1], next[0]);
+      fragment[1] = next[1];
+    }
+    return fragment;
+  }
+
+  private boolean isRepeat(int index) {
+    char c = pattern.charAt(index);
+    return c == '*' || c == '+' || c == '?' || c == '{';
+  }
+
+  // an atom and its quantifiers, up to limit
+  private int[] parseRepeat(int limit) {
+    final int start = pos;
+    int[] fragment = parseAtom();
+    while (pos < limit && isRepeat(pos)) {
+      final int quantifier = pos;
+      int min;
+      int max;
+      char c = pattern.charAt(pos++);
+      if (c == '*') {
+        min = 0;
+        max = -1;
+      } else if (c == '+') {
+        min = 1;
+        max = -1;
+      } else if (c == '?') {
+        min = 0;
+        max = 1;
+      } else {
+        min = parseNumber();
+        max = min;
+        if (pos < end && pattern.charAt(pos) == ',') {
+          pos++;
+          max = pos < end && pattern.charAt(pos) == '}' ? -1 : parseNumber();
+        }
+        if (pos == end || pattern.charAt(pos) != '}') {
+          throw syntaxError("expected '}'");
+        }
+        pos++;
+        if (max != -1 && max < min) {
+          throw syntaxError("bad repeat range");
+        }
+      }
+      fragment = repeat(fragment, min, max, start, quantifier);
+    }
+    return fragment;
+  }
+
+  private int parseNumber() {
+    int start = pos;
+    int n = 0;
+    while (pos < end && Character.isDigit(pattern.charAt(pos))) {
+      n = n * 10 + pattern.charAt(pos++) - '0';
+      if (n > MAX_REPEAT) {
+        throw syntaxError("repeat count above " + MAX_REPEAT);
+      }
+    }
+    if (pos == start) {
+      throw syntaxError("expected a number");
+    }
+    return n;
+  }
+
+  // one more fragment like the pattern from start to limit, parsed again
+  private int[] copy(int start, int limit) {
+    int saved = pos;
+    pos = start;
+    int[] fragment = parseRepeat(limit);
+    pos = saved;
+    return fragment;
+  }
+
+  private int[] repeat(int[] fragment, int min, int max, int start, int limit) {
+    int state = builder.newState();
+    int[] result = new int[] { state, state };
+    for (int i = 0; i < min; i++) {
+      int[] next = i == 0 ? fragment : copy(start, limit);
+      builder.addEpsilon(result[1], next[0]);
+      result[1] = next[1];
+    }
+    if (max == -1) {
+      int[] next = min == 0 ? fragment : copy(start, limit);
+      int loop = builder.newState();
+      builder.addEpsilon(result[1], loop);
+      builder.addEpsilon(loop, next[0]);
+      builder.addEpsilon(next[1], loop);
+      result[1] = loop;
+    } else {
+      for (int i = min; i < max; i++) {
+        int[] next = i == 0 ? fragment : copy(start, limit);
+        int skip = builder.newState();
+        builder.addEpsilon(result[1], next[0]);
+        builder.addEpsilon(result[1], skip);
+        builder.addEpsilon(next[1], skip);
+        result[1] = skip;
+      }
+    }
+    return result;
+  }
+
+  private int[] parseAtom() {
+    if (pos == end) {
+      throw syntaxError("unexpected end");
+    }
+    char c = pattern.charAt(pos++);
+    if (c == '(') {
+      int[] fragment = parseUnion();
+      if (pos == end || pattern.charAt(pos) != ')') {
+        throw syntaxError("expected ')'");
+      }
+      pos++;
+      return fragment;
+    }
+    char[] ranges;
+    if (c == '[') {
+      ranges = parseClass();
+    } else if (c == '.') {
+      ranges = new char[] { Character.MIN_VALUE, Character.MAX_VALUE };
+    } else if (c == '\\') {
+      ranges = parseEscape();
+    } else if (c == '*' || c == '+' || c == '?' || c == '{' || c == ')' || c == '|') {
+      pos--;
+      throw syntaxError("unexpected '" + c + "'");
+    } else {
+      ranges = new char[] { c, c };
+    }
+    int start = builder.newState();
+    int accept = builder.newState();
+    for (int i = 0; i < ranges.length; i += 2) {
+      builder.addTransition(start, ranges[i], ranges[i + 1], accept);
+    }
+    return new int[] { start, accept };
+  }
+
+  private static final char[] DIGITS = { '0', '9' };
+  private static final char[] WORD_CHARS = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+  private static final char[] SPACES = { '\t', '\r', ' ', ' ' };
+
+  // ranges of the escape just after a backslash
+  private char[] parseEscape() {
+    if (pos == end) {
+      throw syntaxError("unexpected end");
+    }
+    char c = pattern.charAt(pos++);
+    switch (c) {
+      case 'd': return DIGITS;
+      case 'w': return WORD_CHARS;
+      case 's': return SPACES;
+      case 'D': return complement(DIGITS);
+      case 'W': return complement(WORD_CHARS);
+      case 'S': return complement(SPACES);
+      case 't': return new char[] { '\t', '\t' };
+      case 'n': return new char[] { '\n', '\n' };
+      case 'r': return new char[] { '\r', '\r' };
+      default:
+        if (Character.isLetterOrDigit(c)) {
+          pos--;
+          throw syntaxError("unsupported escape");
+        }
+        return new char[] { c, c };
+    }
+  }
+
+  // ranges of a class, just after its '['
+  private char[] parseClass() {
+    boolean negated = pos < end && pattern.charAt(pos) == '^';
+    if (negated) {
+      pos++;
+    }
+    char[] ranges = new char[8];
+    int size = 0;
+    boolean first = true;
+    while (pos < end && (first || pattern.charAt(pos) != ']')) {
+      first = false;
+      char[] next;
+      char c = pattern.charAt(pos++);
+      if (c == '\\') {
+        next = parseEscape();
+      } else if (pos + 1 < end && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+        pos++;
+        char to = pattern.charAt(pos++);
+        if (to == '\\') {
+          char[] escaped = parseEscape();
+          if (escaped[0] != escaped[1] || escaped.length != 2) {
+            throw syntaxError("bad range");
+          }
+          to = escaped[0];
+        }
+        if (to < c) {
+          throw syntaxError("bad range");
+        }
+        next = new char[] { c, to };
+      } else {
+        next = new char[] { c, c };
+      }
+      if (size + next.length > ranges.length) {
+        char[] grown = new char[2 * (size + next.length)];
+        System.arraycopy(ranges, 0, grown, 0, size);
+        ranges = grown;
+      }
+      System.arraycopy(next, 0, ranges, size, next.length);
+      size += next.length;
+    }
+    if (pos == end) {
+      throw syntaxError("expected ']'");
+    }
+    pos++;
+    char[] result = new char[size];
+    System.arraycopy(ranges, 0, result, 0, size);
+    return negated ? complement(result) : result;
+  }
+
+  // the chars not in any of the ranges
+  private static char[] complement(char[] ranges) {
+    int n = ranges.length / 2;
+    long[] sorted = new long[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = ((long) ranges[2 * i] << 16) | ranges[2 * i + 1];
+    }
+    Arrays.sort(sorted);
+    char[] result = new char[2 * (n + 1)];
+    int size = 0;
+    int next = Character.MIN_VALUE;  // the smallest char not yet covered
+    for (int i = 0; i < n; i++) {
+      int min = (int) (sorted[i] >>> 16);
+      int max = (int) (sorted[i] & 0xFFFF);
+      if (min > next) {
+        result[size++] = (char) next;
+        result[size++] = (char) (min - 1);
+      }
+      next = Math.max(next, max + 1);
+    }
+    if (next <= Character.MAX_VALUE) {
+      result[size++] = (char) next;
+      result[size++] = Character.MAX_VALUE;
+    }
+    char[] trimmed = new char[size];
+    System.arraycopy(result, 0, trimmed, 0, size);
+    return trimmed;
+  }
+
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final AutomatonRegexCapabilities that = (AutomatonRegexCapabilities) o;
+
+    if (pattern != null ? !pattern.equals(that.pattern) : that.pattern != null) return false;
+
+    return true;
+  }
+
+  public int hashCode() {
+    return (pattern != null ? pattern.hashCode() : 0);
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.lucene.search.regex;
 import org.apache.lucene.search.FilteredTermEnum;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.util.RunAutomaton;
 
 import java.io.IOException;
 
@@ -30,6 +31,9 @@ import java.io.IOException;
  * <p>
  * Term enumerations are always ordered by Term.compareTo().  Each term in
  * the enumeration is greater than all that precede it.
+ * <p>
+ * With an {@link AutomatonRegexCapabilities}, the enumeration seeks past
+ * the terms its automaton rejects outright rather than matching each.
  */
 
 public class RegexTermEnum extends FilteredTermEnum {
@@ -37,6 +41,7 @@ public class RegexTermEnum extends FilteredTermEnum {
   private String pre = "";
   private boolean endEnum = false;
   private RegexCapabilities regexImpl;
+  private RunAutomaton automaton;
 
   public RegexTermEnum(IndexReader reader, Term term, RegexCapabilities regexImpl) throws IOException {
     super();
@@ -49,7 +54,12 @@ public class RegexTermEnum extends FilteredTermEnum {
     pre = regexImpl.prefix();
     if (pre == null) pre = "";
 
-    setEnum(reader.terms(new Term(term.field(), pre)));
+    if (regexImpl instanceof AutomatonRegexCapabilities) {
+      automaton = ((AutomatonRegexCapabilities) regexImpl).getAutomaton();
+      setEnum(reader, new Term(term.field(), pre));
+    } else {
+      setEnum(reader.terms(new Term(term.field(), pre)));
+    }
   }
 
   protected final boolean termCompare(Term term) {
@@ -63,6 +73,18 @@ public class RegexTermEnum extends FilteredTermEnum {
     return false;
   }
 
+  protected Term nextSeekTerm(Term rejected) {
+    if (endEnum) {
+      return null;
+    }
+    String target = automaton.nextPrefix(rejected.text());
+    if (target == null) {
+      endEnum = true;
+      return null;
+    }
+    return rejected.createTerm(target);
+  }
+
   public final float difference() {
 // TODO: adjust difference based on distance of searchTerm.text() and term().text()
     return 1.0f;
@@ -25,6 +25,7 @@ import org.apache.lucene.analysis.SimpleAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.index.TermEnum;
 
 import org.apache.lucene.search.spans.SpanNearQuery;
@@ -129,5 +130,50 @@ public class TestRegexQuery extends TestCase {
     assertEquals(1, regexQueryNrHits("^.*DOG.*$", new JavaUtilRegexCapabilities(JavaUtilRegexCapabilities.FLAG_CASE_INSENSITIVE)));
   }
 
-}
+  private int automatonQueryNrHits(String regex) throws Exception {
+    RegexQuery query = new RegexQuery(newTerm(regex));
+    query.setRegexImplementation(new AutomatonRegexCapabilities());
+    query.setRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
+    return searcher.search(query, 10).totalHits;
+  }
+
+  public void testAutomaton() throws Exception {
+    assertEquals(1, automatonQueryNrHits("^q.[aeiou]c.*$"));
+    assertEquals(0, automatonQueryNrHits("^.[aeiou]c.*$"));
+    assertEquals(1, automatonQueryNrHits(".*(ump|og)s?"));
+    assertEquals(0, automatonQueryNrHits("[^a-z]+"));
+    assertEquals(1, automatonQueryNrHits("\\w{3}"));
+  }
+
+  public void testAutomatonSameTermsAsJavaUtil() throws Exception {
+    String[] patterns = {
+        ".*o.*", "(the|fox|dog)", "[b-l]\\w*", "o?.{3,4}", "j(u|o)m?ps+", "(la|do)+[gz]y?", ".*[^aeiou]"
+    };
+    for (int i = 0; i < patterns.length; i++) {
+      TermEnum expected = new RegexTermEnum(searcher.getIndexReader(), newTerm(patterns[i]), new JavaUtilRegexCapabilities());
+      TermEnum actual = new RegexTermEnum(searcher.getIndexReader(), newTerm(patterns[i]), new AutomatonRegexCapabilities());
+      do {
+        assertEquals(patterns[i], expected.term(), actual.term());
+        actual.next();
+      } while (expected.next());
+      assertNull(actual.term());
+      expected.close();
+      actual.close();
+    }
+  }
+
+  public void testAutomatonPrefix() {
+    AutomatonRegexCapabilities capabilities = new AutomatonRegexCapabilities();
+    capabilities.compile("qu(ick|ack)");
+    assertEquals("qu", capabilities.prefix());
+    capabilities.compile("(ab|ac)d");
+    assertEquals("a", capabilities.prefix());
+    try {
+      capabilities.compile("a(b");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
 
+}
@@ -0,0 +1,39 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Optional capability of a {@link TermDocs} that reads entries in bulk
+ * with their embedded sort values stored column by column. Callers check
+ * for it with <code>instanceof</code>; {@link
+ * org.apache.lucene.util.ReaderUtil#readSortColumns} does so, and reads
+ * other implementations entry by entry.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public interface ColumnSortTermDocs {
+
+  /** Like {@link TermDocs#read(int[], int[], byte[], int[][])}, but stores
+   * the embedded sort values column by column: the value of slot <i>s</i>
+   * of the <i>i</i>-th entry goes to <code>sorts[s * docs.length + i]</code>,
+   * for the first <i>numSlots</i> slots. <i>norms</i> may be null. */
+  int read(int[] docs, int[] freqs, byte[] norms, int[] sorts, int numSlots) throws IOException;
+}
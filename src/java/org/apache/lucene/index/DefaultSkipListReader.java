@@ -36,6 +36,14 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
   private long lastFreqPointer;
   private long lastProxPointer;
   private int lastPayloadLength;
+
+  // embedded sort slot summaries of the pending entry per level
+  private boolean currentFieldStoresSortSummaries;
+  private boolean[] haveSortSummary;
+  private int[] sortMask;
+  private int[] sortUnsetMask;
+  private int[][] sortMin;
+  private int[][] sortMax;
                            
 
   DefaultSkipListReader(IndexInput skipStream, int maxSkipLevels, int skipInterval) {
@@ -43,11 +51,22 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
     freqPointer = new long[maxSkipLevels];
     proxPointer = new long[maxSkipLevels];
     payloadLength = new int[maxSkipLevels];
+    haveSortSummary = new boolean[maxSkipLevels];
+    sortMask = new int[maxSkipLevels];
+    sortUnsetMask = new int[maxSkipLevels];
+    sortMin = new int[maxSkipLevels][EmbeddedSortsBuffer.MAX_SLOTS];
+    sortMax = new int[maxSkipLevels][EmbeddedSortsBuffer.MAX_SLOTS];
   }
   
   void init(long skipPointer, long freqBasePointer, long proxBasePointer, int df, boolean storesPayloads) {
+    init(skipPointer, freqBasePointer, proxBasePointer, df, storesPayloads, false);
+  }
+
+  void init(long skipPointer, long freqBasePointer, long proxBasePointer, int df, boolean storesPayloads, boolean storesSortSummaries) {
     super.init(skipPointer, df);
     this.currentFieldStoresPayloads = storesPayloads;
+    this.currentFieldStoresSortSummaries = storesSortSummaries;
+    Arrays.fill(haveSortSummary, false);
     lastFreqPointer = freqBasePointer;
     lastProxPointer = proxBasePointer;
 
@@ -75,11 +94,35 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
     return lastPayloadLength;
   }
   
+  /** Returns true if the summary of the pending skip entry on
+   *  <code>level</code> proves that none of the docs since the
+   *  previous entry on that level has a value within
+   *  [<code>mins[i]</code>, <code>maxs[i]</code>] for the sort
+   *  slot <code>slots[i]</code>, for some <code>i</code> below
+   *  <code>numRanges</code>. */
+  boolean excludes(int level, int numRanges, int[] slots, int[] mins, int[] maxs) {
+    if (!haveSortSummary[level])
+      return false;
+    for (int i = 0; i < numRanges; i++) {
+      final int slot = slots[i];
+      final int bit = slot < EmbeddedSortsBuffer.MAX_SLOTS ? 1 << slot : 0;
+      final boolean set = (sortMask[level] & bit) != 0;
+      final boolean unset = !set || (sortUnsetMask[level] & bit) != 0;
+      if (unset && mins[i] <= -1 && -1 <= maxs[i])
+        continue;
+      if (set && sortMax[level][slot] >= mins[i] && sortMin[level][slot] <= maxs[i])
+        continue;
+      return true;
+    }
+    return false;
+  }
+
   protected void seekChild(int level) throws IOException {
     super.seekChild(level);
     freqPointer[level] = lastFreqPointer;
     proxPointer[level] = lastProxPointer;
     payloadLength[level] = lastPayloadLength;
+    haveSortSummary[level] = false;
   }
   
   protected void setLastSkipData(int level) {
@@ -87,6 +130,7 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
     lastFreqPointer = freqPointer[level];
     lastProxPointer = proxPointer[level];
     lastPayloadLength = payloadLength[level];
+    haveSortSummary[level] = false;
   }
 
 
@@ -108,6 +152,19 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
     }
     freqPointer[level] += skipStream.readVInt();
     proxPointer[level] += skipStream.readVInt();
+
+    if (currentFieldStoresSortSummaries) {
+      int mask = skipStream.readVInt();
+      sortMask[level] = mask;
+      sortUnsetMask[level] = skipStream.readVInt();
+      for (int slot = 0; mask != 0; slot++, mask >>>= 1) {
+        if ((mask & 1) != 0) {
+          sortMin[level][slot] = skipStream.readVInt();
+          sortMax[level][slot] = sortMin[level][slot] + skipStream.readVInt();
+        }
+      }
+      haveSortSummary[level] = true;
+    }
     
     return delta;
   }
@@ -42,6 +42,20 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
   private int curPayloadLength;
   private long curFreqPointer;
   private long curProxPointer;
+
+  // embedded sort slot summaries: min/max of the set values of
+  // each slot, a mask of the slots set in some doc and a mask
+  // of the slots unset in some doc, for the docs since the last
+  // skip point (interval) and since the last entry per level
+  private boolean curStoreEmbeddedSorts;
+  private int intervalSetMask;
+  private int intervalUnsetMask;
+  private final int[] intervalMin = new int[EmbeddedSortsBuffer.MAX_SLOTS];
+  private final int[] intervalMax = new int[EmbeddedSortsBuffer.MAX_SLOTS];
+  private int[] levelSetMask;
+  private int[] levelUnsetMask;
+  private int[][] levelMin;
+  private int[][] levelMax;
   
   DefaultSkipListWriter(int skipInterval, int numberOfSkipLevels, int docCount, IndexOutput freqOutput, IndexOutput proxOutput) {
     super(skipInterval, numberOfSkipLevels, docCount);
@@ -52,6 +66,11 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
     lastSkipPayloadLength = new int[numberOfSkipLevels];
     lastSkipFreqPointer = new long[numberOfSkipLevels];
     lastSkipProxPointer = new long[numberOfSkipLevels];
+
+    levelSetMask = new int[numberOfSkipLevels];
+    levelUnsetMask = new int[numberOfSkipLevels];
+    levelMin = new int[numberOfSkipLevels][EmbeddedSortsBuffer.MAX_SLOTS];
+    levelMax = new int[numberOfSkipLevels][EmbeddedSortsBuffer.MAX_SLOTS];
   }
 
   void setFreqOutput(IndexOutput freqOutput) {
@@ -65,13 +84,60 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
   /**
    * Sets the values for the current skip data. 
    */
-  void setSkipData(int doc, boolean storePayloads, int payloadLength) {
+  void setSkipData(int doc, boolean storePayloads, int payloadLength, boolean storeEmbeddedSorts) {
     this.curDoc = doc;
     this.curStorePayloads = storePayloads;
     this.curPayloadLength = payloadLength;
+    this.curStoreEmbeddedSorts = storeEmbeddedSorts;
     this.curFreqPointer = freqOutput.getFilePointer();
     if (proxOutput != null)
       this.curProxPointer = proxOutput.getFilePointer();
+
+    if (storeEmbeddedSorts) {
+      // fold the interval that ends here into every level
+      for (int level = 0; level < levelSetMask.length; level++) {
+        final int[] min = levelMin[level];
+        final int[] max = levelMax[level];
+        for (int mask = intervalSetMask, slot = 0; mask != 0; mask >>>= 1, slot++) {
+          if ((mask & 1) != 0) {
+            if ((levelSetMask[level] & (1 << slot)) == 0) {
+              min[slot] = intervalMin[slot];
+              max[slot] = intervalMax[slot];
+            } else {
+              if (intervalMin[slot] < min[slot]) min[slot] = intervalMin[slot];
+              if (intervalMax[slot] > max[slot]) max[slot] = intervalMax[slot];
+            }
+          }
+        }
+        levelSetMask[level] |= intervalSetMask;
+        levelUnsetMask[level] |= intervalUnsetMask;
+      }
+      intervalSetMask = 0;
+      intervalUnsetMask = 0;
+    }
+  }
+
+  /**
+   * Adds the embedded sort values of the doc just written to
+   * the summary of the current skip interval.
+   * <code>mask</code> has a bit set for every slot of
+   * <code>sorts</code> that holds a value.
+   */
+  void addSorts(int[] sorts, int mask) {
+    intervalUnsetMask |= ~mask;
+    for (int slot = 0, bits = mask; bits != 0; slot++, bits >>>= 1) {
+      if ((bits & 1) != 0) {
+        final int value = sorts[slot];
+        if ((intervalSetMask & (1 << slot)) == 0) {
+          intervalMin[slot] = intervalMax[slot] = value;
+        } else if (value < intervalMin[slot]) {
+          intervalMin[slot] = value;
+        } else if (value > intervalMax[slot]) {
+          intervalMax[slot] = value;
+        }
+      }
+    }
+    intervalSetMask |= mask;
   }
   
   protected void resetSkip() {
@@ -81,6 +147,10 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
     Arrays.fill(lastSkipFreqPointer, freqOutput.getFilePointer());
     if (proxOutput != null)
       Arrays.fill(lastSkipProxPointer, proxOutput.getFilePointer());
+    intervalSetMask = 0;
+    intervalUnsetMask = 0;
+    Arrays.fill(levelSetMask, 0);
+    Arrays.fill(levelUnsetMask, 0);
   }
   
   protected void writeSkipData(int level, IndexOutput skipBuffer) throws IOException {
@@ -124,6 +194,26 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
     skipBuffer.writeVInt((int) (curFreqPointer - lastSkipFreqPointer[level]));
     skipBuffer.writeVInt((int) (curProxPointer - lastSkipProxPointer[level]));
 
+    if (curStoreEmbeddedSorts) {
+      // For fields storing embedded sorts, SetMask, UnsetMask, <SlotMin, SlotDelta>
+      // follow for the docs since the previous entry on this level: the slots
+      // set in some doc, those of them unset in some other doc, and the min and
+      // max value of every set slot.
+      final int[] min = levelMin[level];
+      final int[] max = levelMax[level];
+      int mask = levelSetMask[level];
+      skipBuffer.writeVInt(mask);
+      skipBuffer.writeVInt(levelUnsetMask[level] & mask);
+      for (int slot = 0; mask != 0; slot++, mask >>>= 1) {
+        if ((mask & 1) != 0) {
+          skipBuffer.writeVInt(min[slot]);
+          skipBuffer.writeVInt(max[slot] - min[slot]);
+        }
+      }
+      levelSetMask[level] = 0;
+      levelUnsetMask[level] = 0;
+    }
+
     lastSkipDoc[level] = curDoc;
     //System.out.println("write doc at level " + level + ": " + curDoc);
     
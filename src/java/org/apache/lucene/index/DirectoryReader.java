@@ -35,6 +35,8 @@ import org.apache.lucene.search.DefaultSimilarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.Lock;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ReaderUtil;
 import org.apache.lucene.search.FieldCache; // not great (circular); used only to purge FieldCache entry on close
 
 /** 
@@ -1050,7 +1052,7 @@ class DirectoryReader extends IndexReader implements Cloneable {
     }
   }
 
-  static class MultiTermDocs implements TermDocs {
+  static class MultiTermDocs implements TermDocs, ColumnSortTermDocs, SortRangeTermDocs {
     IndexReader topReader;  // used for matching TermEnum to TermDocs
     protected IndexReader[] readers;
     protected int[] starts;
@@ -1066,6 +1068,10 @@ class DirectoryReader extends IndexReader implements Cloneable {
     int matchingSegmentPos;  // position into the matching segments from tenum
     SegmentMergeInfo smi;     // current segment mere info... can be null
 
+    // sort ranges handed to each segment's TermDocs after its seek
+    private int numSortRanges;
+    private int[] sortRanges = new int[6];
+
     public MultiTermDocs(IndexReader topReader, IndexReader[] r, int[] s) {
       this.topReader = topReader;
       readers = r;
@@ -1089,6 +1095,7 @@ class DirectoryReader extends IndexReader implements Cloneable {
       this.tenum = null;
       this.smi = null;
       this.matchingSegmentPos = 0;
+      this.numSortRanges = 0;
     }
   
     public void seek(TermEnum termEnum) throws IOException {
@@ -1185,8 +1192,21 @@ class DirectoryReader extends IndexReader implements Cloneable {
       } else {
         result.seek(term);
       }
+      for (int r = 0; r < numSortRanges; r++)
+        ReaderUtil.restrictSortRange(result, sortRanges[3*r], sortRanges[3*r+1], sortRanges[3*r+2]);
       return result;
     }
+
+    public void restrictSortRange(int slot, int min, int max) {
+      if (3*numSortRanges == sortRanges.length)
+        sortRanges = ArrayUtil.grow(sortRanges);
+      sortRanges[3*numSortRanges] = slot;
+      sortRanges[3*numSortRanges+1] = min;
+      sortRanges[3*numSortRanges+2] = max;
+      numSortRanges++;
+      if (current != null)
+        ReaderUtil.restrictSortRange(current, slot, min, max);
+    }
   
     protected TermDocs termDocs(IndexReader reader)
       throws IOException {
@@ -1201,20 +1221,78 @@ class DirectoryReader extends IndexReader implements Cloneable {
     }
 
 	public int[] getSorts() {
-		throw new UnsupportedOperationException();
+		return current.getSorts();
 	}
 
 	public int getSort(int fieldNumber) {
-		throw new UnsupportedOperationException();
+		return current.getSort(fieldNumber);
 	}
 
+	/** Optimized implementation. */
 	public int read(int[] docs, int[] freqs, byte[] norms, int[][] sorts)
 			throws IOException {
-		throw new UnsupportedOperationException();
+      while (true) {
+        while (current == null) {
+          if (pointer < readers.length) {      // try next segment
+            if (tenum != null) {
+              smi = tenum.matchingSegments[matchingSegmentPos++];
+              if (smi==null) {
+                pointer = readers.length;
+                return 0;
+              }
+              pointer = smi.ord;
+            }
+            base = starts[pointer];
+            current = termDocs(pointer++);
+          } else {
+            return 0;
+          }
+        }
+        int end = current.read(docs, freqs, norms, sorts);
+        if (end == 0) {          // none left in segment
+          current = null;
+        } else {            // got some
+          final int b = base;        // adjust doc numbers
+          for (int i = 0; i < end; i++)
+           docs[i] += b;
+          return end;
+        }
+      }
+	}
+
+	public int read(int[] docs, int[] freqs, byte[] norms, int[] sorts, int numSlots)
+			throws IOException {
+      while (true) {
+        while (current == null) {
+          if (pointer < readers.length) {      // try next segment
+            if (tenum != null) {
+              smi = tenum.matchingSegments[matchingSegmentPos++];
+              if (smi==null) {
+                pointer = readers.length;
+                return 0;
+              }
+              pointer = smi.ord;
+            }
+            base = starts[pointer];
+            current = termDocs(pointer++);
+          } else {
+            return 0;
+          }
+        }
+        int end = ReaderUtil.readSortColumns(current, docs, freqs, norms, sorts, numSlots);
+        if (end == 0) {          // none left in segment
+          current = null;
+        } else {            // got some
+          final int b = base;        // adjust doc numbers
+          for (int i = 0; i < end; i++)
+           docs[i] += b;
+          return end;
+        }
+      }
 	}
 
 	public Byte norm() {
-		throw new UnsupportedOperationException();
+		return current.norm();
 	}
   }
 
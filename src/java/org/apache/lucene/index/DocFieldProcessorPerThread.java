@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.io.IOException;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
 import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.util.ArrayUtil;
 
@@ -230,6 +231,9 @@ final class DocFieldProcessorPerThread extends DocConsumerPerThread {
       if (field.isStored()) {
         fieldsWriter.addField(field, fp.fieldInfo);
       }
+      if (field instanceof EmbeddedSortField) {
+        docFieldProcessor.docWriter.embeddedSorts.add(docState.docID, (EmbeddedSortField) field);
+      }
     }
 
     // If we are writing vectors then we must visit
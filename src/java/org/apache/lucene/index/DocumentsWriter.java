@@ -137,6 +137,10 @@ final class DocumentsWriter {
 
   private DocFieldProcessor docFieldProcessor;
 
+  // EmbeddedSortField values of the buffered docs, written
+  // inline with their postings on flush
+  final EmbeddedSortsBuffer embeddedSorts = new EmbeddedSortsBuffer();
+
   PrintStream infoStream;
   int maxFieldLength = IndexWriter.DEFAULT_MAX_FIELD_LENGTH;
   Similarity similarity;
@@ -553,6 +557,7 @@ final class DocumentsWriter {
     flushPending = false;
     for(int i=0;i<threadStates.length;i++)
       threadStates[i].doAfterFlush();
+    embeddedSorts.reset();
     numBytesUsed = 0;
   }
 
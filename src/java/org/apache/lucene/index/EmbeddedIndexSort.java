@@ -0,0 +1,108 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serializable;
+
+import org.apache.lucene.document.EmbeddedSortField;
+
+/** The order, by the value of one {@link EmbeddedSortField}
+ *  slot, that {@link IndexWriter} writes the documents of
+ *  merged segments in.  Documents with equal values keep
+ *  their relative order; documents without a value for the
+ *  slot sort as -1.
+ *
+ *  @see IndexWriter#setEmbeddedIndexSort(EmbeddedIndexSort)
+ *  @see SegmentReader#getEmbeddedIndexSort() */
+
+public final class EmbeddedIndexSort implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Key of the segment diagnostics entry recording the
+   *  sort a segment was written in. */
+  static final String DIAGNOSTICS_KEY = "embeddedIndexSort";
+
+  private final int slot;
+  private final boolean reverse;
+
+  /** Sorts by the slot numbered <code>slot</code> (from 1,
+   *  as {@link EmbeddedSortField#getSortSlot()}), in
+   *  descending order if <code>reverse</code> is true. */
+  public EmbeddedIndexSort(int slot, boolean reverse) {
+    if (slot < 1 || slot > EmbeddedSortsBuffer.MAX_SLOTS) {
+      throw new IllegalArgumentException("slot must be between 1 and " + EmbeddedSortsBuffer.MAX_SLOTS + ": " + slot);
+    }
+    this.slot = slot;
+    this.reverse = reverse;
+  }
+
+  /** Returns the slot number, counting from 1. */
+  public int getSlot() {
+    return slot;
+  }
+
+  public boolean getReverse() {
+    return reverse;
+  }
+
+  /** Returns a key that orders docs with this sort when the
+   *  keys are compared as signed longs: the slot value in the
+   *  upper half, <code>doc</code> in the lower half to keep
+   *  equal values in doc order. */
+  long key(int value, int doc) {
+    return ((long) (reverse ? ~value : value) << 32) | doc;
+  }
+
+  /** Parses the value {@link #toString()} returns, or returns
+   *  null if <code>s</code> is null or malformed. */
+  static EmbeddedIndexSort parse(String s) {
+    if (s == null) {
+      return null;
+    }
+    int colon = s.indexOf(':');
+    if (colon == -1) {
+      return null;
+    }
+    try {
+      String order = s.substring(colon+1);
+      if (!order.equals("asc") && !order.equals("desc")) {
+        return null;
+      }
+      return new EmbeddedIndexSort(Integer.parseInt(s.substring(0, colon)), order.equals("desc"));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  public boolean equals(Object o) {
+    if (!(o instanceof EmbeddedIndexSort)) {
+      return false;
+    }
+    EmbeddedIndexSort other = (EmbeddedIndexSort) o;
+    return slot == other.slot && reverse == other.reverse;
+  }
+
+  public int hashCode() {
+    return reverse ? -slot : slot;
+  }
+
+  public String toString() {
+    return slot + (reverse ? ":desc" : ":asc");
+  }
+}
@@ -0,0 +1,96 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.util.ArrayUtil;
+
+/** Holds the {@link EmbeddedSortField} slot values of the
+ *  documents buffered in RAM by {@link DocumentsWriter}, so
+ *  that {@link FreqProxTermsWriter} can write them inline
+ *  with every posting when the segment is flushed.  A slot
+ *  that was never set for a document reads back as -1. */
+
+final class EmbeddedSortsBuffer {
+
+  /** Slots present in a posting are encoded as a single int
+   *  bit mask, so at most this many slots can be embedded. */
+  static final int MAX_SLOTS = 32;
+
+  private int[][] docSorts = new int[0][];
+  private boolean hasValues;
+
+  /** Records the value of <code>field</code> for
+   *  <code>docID</code>.  Fields without a sort slot are
+   *  ignored. */
+  synchronized void add(int docID, EmbeddedSortField field) {
+    final int slot = field.getSortSlot();
+    if (slot <= 0)
+      return;
+    if (slot > MAX_SLOTS)
+      throw new IllegalArgumentException("EmbeddedSortField \"" + field.name() + "\" uses sort slot " + slot + "; at most " + MAX_SLOTS + " slots are supported");
+
+    final int value;
+    try {
+      value = Integer.parseInt(field.stringValue());
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("EmbeddedSortField \"" + field.name() + "\" value is not an int: " + field.stringValue());
+    }
+
+    if (docID >= docSorts.length) {
+      int[][] newArray = new int[ArrayUtil.getNextSize(docID+1)][];
+      System.arraycopy(docSorts, 0, newArray, 0, docSorts.length);
+      docSorts = newArray;
+    }
+
+    int[] sorts = docSorts[docID];
+    if (sorts == null || sorts.length < slot) {
+      int[] newSorts = new int[slot];
+      Arrays.fill(newSorts, -1);
+      if (sorts != null)
+        System.arraycopy(sorts, 0, newSorts, 0, sorts.length);
+      docSorts[docID] = sorts = newSorts;
+    }
+
+    // slots are numbered from 1, like EmbeddedFieldFilter's fieldNumber
+    sorts[slot-1] = value;
+    hasValues = true;
+  }
+
+  /** Returns true if any buffered document has an embedded
+   *  sort value. */
+  synchronized boolean hasValues() {
+    return hasValues;
+  }
+
+  /** Returns the slot values of <code>docID</code>, or null
+   *  if it has none.  Only called during flush, when all
+   *  indexing threads are idle. */
+  int[] get(int docID) {
+    return docID < docSorts.length ? docSorts[docID] : null;
+  }
+
+  /** Discards all buffered values; called after flush or
+   *  abort. */
+  synchronized void reset() {
+    docSorts = new int[0][];
+    hasValues = false;
+  }
+}
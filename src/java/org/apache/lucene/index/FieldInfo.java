@@ -32,6 +32,8 @@ final class FieldInfo {
   
   boolean storePayloads; // whether this field stores payloads together with term positions
 
+  boolean storeEmbeddedSorts; // whether postings carry the document's EmbeddedSortField slot values
+
   FieldInfo(String na, boolean tk, int nu, boolean storeTermVector, 
             boolean storePositionWithTermVector,  boolean storeOffsetWithTermVector, 
             boolean omitNorms, boolean storePayloads, boolean omitTermFreqAndPositions) {
@@ -56,8 +58,10 @@ final class FieldInfo {
   }
 
   public Object clone() {
-    return new FieldInfo(name, isIndexed, number, storeTermVector, storePositionWithTermVector,
-                         storeOffsetWithTermVector, omitNorms, storePayloads, omitTermFreqAndPositions);
+    FieldInfo clone = new FieldInfo(name, isIndexed, number, storeTermVector, storePositionWithTermVector,
+                                    storeOffsetWithTermVector, omitNorms, storePayloads, omitTermFreqAndPositions);
+    clone.storeEmbeddedSorts = storeEmbeddedSorts;
+    return clone;
   }
 
   void update(boolean isIndexed, boolean storeTermVector, boolean storePositionWithTermVector, 
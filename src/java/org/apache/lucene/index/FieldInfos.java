@@ -41,7 +41,15 @@ final class FieldInfos {
   // First used in 2.9; prior to 2.9 there was no format header
   public static final int FORMAT_START = -2;
 
-  static final int CURRENT_FORMAT = FORMAT_START;
+  // Adds the STORE_EMBEDDED_SORTS bit for postings that
+  // carry EmbeddedSortField slot values inline
+  public static final int FORMAT_EMBEDDED_SORTS = -3;
+
+  // Skip list entries of fields with the STORE_EMBEDDED_SORTS
+  // bit carry per interval min/max summaries of each slot
+  public static final int FORMAT_SORT_SKIP_SUMMARIES = -4;
+
+  static final int CURRENT_FORMAT = FORMAT_SORT_SKIP_SUMMARIES;
   
   static final byte IS_INDEXED = 0x1;
   static final byte STORE_TERMVECTOR = 0x2;
@@ -50,10 +58,11 @@ final class FieldInfos {
   static final byte OMIT_NORMS = 0x10;
   static final byte STORE_PAYLOADS = 0x20;
   static final byte OMIT_TERM_FREQ_AND_POSITIONS = 0x40;
+  static final byte STORE_EMBEDDED_SORTS = (byte) 0x80;
   
   private final ArrayList byNumber = new ArrayList();
   private final HashMap byName = new HashMap();
-  private int format;
+  private int format = CURRENT_FORMAT;
 
   FieldInfos() { }
 
@@ -303,6 +312,12 @@ final class FieldInfos {
     return hasVectors;
   }
 
+  /** Returns true if the skip lists of fields that store
+   *  embedded sorts carry per interval slot summaries. */
+  boolean hasSortSkipSummaries() {
+    return format <= FORMAT_SORT_SKIP_SUMMARIES;
+  }
+
   public void write(Directory d, String name) throws IOException {
     IndexOutput output = d.createOutput(name);
     try {
@@ -325,6 +340,7 @@ final class FieldInfos {
       if (fi.omitNorms) bits |= OMIT_NORMS;
       if (fi.storePayloads) bits |= STORE_PAYLOADS;
       if (fi.omitTermFreqAndPositions) bits |= OMIT_TERM_FREQ_AND_POSITIONS;
+      if (fi.storeEmbeddedSorts) bits |= STORE_EMBEDDED_SORTS;
       
       output.writeString(fi.name);
       output.writeByte(bits);
@@ -341,7 +357,7 @@ final class FieldInfos {
       format = FORMAT_PRE;
     }
 
-    if (format != FORMAT_PRE & format != FORMAT_START) {
+    if (format != FORMAT_PRE & format != FORMAT_START & format != FORMAT_EMBEDDED_SORTS & format != FORMAT_SORT_SKIP_SUMMARIES) {
       throw new CorruptIndexException("unrecognized format " + format + " in file \"" + fileName + "\"");
     }
 
@@ -362,8 +378,10 @@ final class FieldInfos {
       boolean omitNorms = (bits & OMIT_NORMS) != 0;
       boolean storePayloads = (bits & STORE_PAYLOADS) != 0;
       boolean omitTermFreqAndPositions = (bits & OMIT_TERM_FREQ_AND_POSITIONS) != 0;
+      boolean storeEmbeddedSorts = (bits & STORE_EMBEDDED_SORTS) != 0;
       
-      addInternal(name, isIndexed, storeTermVector, storePositionsWithTermVector, storeOffsetWithTermVector, omitNorms, storePayloads, omitTermFreqAndPositions);
+      FieldInfo fi = addInternal(name, isIndexed, storeTermVector, storePositionsWithTermVector, storeOffsetWithTermVector, omitNorms, storePayloads, omitTermFreqAndPositions);
+      fi.storeEmbeddedSorts = storeEmbeddedSorts;
     }
 
     if (input.getFilePointer() != input.length()) {
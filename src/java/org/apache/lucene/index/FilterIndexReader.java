@@ -20,6 +20,7 @@ package org.apache.lucene.index;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ReaderUtil;
 import org.apache.lucene.search.FieldCache; // not great (circular); used only to purge FieldCache entry on close
 
 import java.io.IOException;
@@ -38,7 +39,7 @@ import java.util.Map;
 public class FilterIndexReader extends IndexReader {
 
   /** Base class for filtering {@link TermDocs} implementations. */
-  public static class FilterTermDocs implements TermDocs {
+  public static class FilterTermDocs implements TermDocs, ColumnSortTermDocs, SortRangeTermDocs {
     protected TermDocs in;
 
     public FilterTermDocs(TermDocs in) { this.in = in; }
@@ -55,20 +56,29 @@ public class FilterIndexReader extends IndexReader {
     public void close() throws IOException { in.close(); }
 
 	public int[] getSorts() {
-		throw new UnsupportedOperationException();
+		return in.getSorts();
 	}
 
 	public int getSort(int fieldNumber) {
-		throw new UnsupportedOperationException();
+		return in.getSort(fieldNumber);
 	}
 
 	public int read(int[] docs, int[] freqs, byte[] norms, int[][] sorts)
 			throws IOException {
-		throw new UnsupportedOperationException();
+		return in.read(docs, freqs, norms, sorts);
+	}
+
+	public int read(int[] docs, int[] freqs, byte[] norms, int[] sorts, int numSlots)
+			throws IOException {
+		return ReaderUtil.readSortColumns(in, docs, freqs, norms, sorts, numSlots);
+	}
+
+	public void restrictSortRange(int slot, int min, int max) {
+		ReaderUtil.restrictSortRange(in, slot, min, max);
 	}
 
 	public Byte norm() {
-		throw new UnsupportedOperationException();
+		return in.norm();
 	}
   }
 
@@ -193,6 +203,11 @@ public class FilterIndexReader extends IndexReader {
     in.norms(f, bytes, offset);
   }
 
+  public byte maxNorm(String f) throws IOException {
+    ensureOpen();
+    return in.maxNorm(f);
+  }
+
   protected void doSetNorm(int d, String f, byte b) throws CorruptIndexException, IOException {
     in.setNorm(d, f, b);
   }
@@ -212,6 +227,11 @@ public class FilterIndexReader extends IndexReader {
     return in.docFreq(t);
   }
 
+  public int maxFreq(Term t) throws IOException {
+    ensureOpen();
+    return in.maxFreq(t);
+  }
+
   public TermDocs termDocs() throws IOException {
     ensureOpen();
     return in.termDocs();
@@ -27,7 +27,16 @@ abstract class FormatPostingsDocsConsumer {
 
   /** Adds a new doc in this term.  If this returns null
    *  then we just skip consuming positions/payloads. */
-  abstract FormatPostingsPositionsConsumer addDoc(int docID, int termDocFreq) throws IOException;
+  FormatPostingsPositionsConsumer addDoc(int docID, int termDocFreq) throws IOException {
+    return addDoc(docID, termDocFreq, null);
+  }
+
+  /** Adds a new doc in this term, together with its
+   *  embedded sort slot values (-1 for an unset slot).
+   *  <code>sorts</code> may be null if the doc has none.
+   *  If this returns null then we just skip consuming
+   *  positions/payloads. */
+  abstract FormatPostingsPositionsConsumer addDoc(int docID, int termDocFreq, int[] sorts) throws IOException;
 
   /** Called when we are done adding docs to this term */
   abstract void finish() throws IOException;
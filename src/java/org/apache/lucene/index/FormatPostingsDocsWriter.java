@@ -36,6 +36,7 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
 
   boolean omitTermFreqAndPositions;
   boolean storePayloads;
+  boolean storeEmbeddedSorts;
   long freqStart;
   FieldInfo fieldInfo;
 
@@ -59,15 +60,17 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
     this.fieldInfo = fieldInfo;
     omitTermFreqAndPositions = fieldInfo.omitTermFreqAndPositions;
     storePayloads = fieldInfo.storePayloads;
+    storeEmbeddedSorts = fieldInfo.storeEmbeddedSorts;
     posWriter.setField(fieldInfo);
   }
 
   int lastDocID;
   int df;
+  int maxFreq;
 
   /** Adds a new doc in this term.  If this returns null
    *  then we just skip consuming positions/payloads. */
-  FormatPostingsPositionsConsumer addDoc(int docID, int termDocFreq) throws IOException {
+  FormatPostingsPositionsConsumer addDoc(int docID, int termDocFreq, int[] sorts) throws IOException {
 
     final int delta = docID - lastDocID;
 
@@ -76,13 +79,15 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
 
     if ((++df % skipInterval) == 0) {
       // TODO: abstraction violation
-      skipListWriter.setSkipData(lastDocID, storePayloads, posWriter.lastPayloadLength);
+      skipListWriter.setSkipData(lastDocID, storePayloads, posWriter.lastPayloadLength, storeEmbeddedSorts);
       skipListWriter.bufferSkip(df);
     }
 
     assert docID < totalNumDocs: "docID=" + docID + " totalNumDocs=" + totalNumDocs;
 
     lastDocID = docID;
+    if (termDocFreq > maxFreq)
+      maxFreq = termDocFreq;
     if (omitTermFreqAndPositions)
       out.writeVInt(delta);
     else if (1 == termDocFreq)
@@ -92,9 +97,32 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
       out.writeVInt(termDocFreq);
     }
 
+    if (storeEmbeddedSorts)
+      skipListWriter.addSorts(sorts, writeSorts(sorts));
+
     return posWriter;
   }
 
+  /** Writes the doc's embedded sort values right after its
+   *  doc/freq entry: a VInt bit mask of the slots that are
+   *  set (value != -1), followed by one VInt per set slot in
+   *  slot order.  A doc without values costs a single byte.
+   *  Returns the mask. */
+  private int writeSorts(int[] sorts) throws IOException {
+    int mask = 0;
+    if (sorts != null) {
+      final int limit = Math.min(sorts.length, EmbeddedSortsBuffer.MAX_SLOTS);
+      for(int slot=0;slot<limit;slot++)
+        if (sorts[slot] != -1)
+          mask |= 1 << slot;
+    }
+    out.writeVInt(mask);
+    for(int slot=0, bits=mask;bits != 0;slot++, bits >>>= 1)
+      if ((bits & 1) != 0)
+        out.writeVInt(sorts[slot]);
+    return mask;
+  }
+
   private final TermInfo termInfo = new TermInfo();  // minimize consing
   final UnicodeUtil.UTF8Result utf8 = new UnicodeUtil.UTF8Result();
 
@@ -105,6 +133,7 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
     // TODO: this is abstraction violation -- we should not
     // peek up into parents terms encoding format
     termInfo.set(df, parent.freqStart, parent.proxStart, (int) (skipPointer - parent.freqStart));
+    termInfo.maxFreq = omitTermFreqAndPositions ? 1 : maxFreq;
 
     // TODO: we could do this incrementally
     UnicodeUtil.UTF16toUTF8(parent.currentTerm, parent.currentTermStart, utf8);
@@ -118,6 +147,7 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer {
 
     lastDocID = 0;
     df = 0;
+    maxFreq = 0;
   }
 
   void close() throws IOException {
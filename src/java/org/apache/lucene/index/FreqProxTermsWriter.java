@@ -94,6 +94,7 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
 
     // TODO: allow Lucene user to customize this consumer:
     final FormatPostingsFieldsConsumer consumer = new FormatPostingsFieldsWriter(state, fieldInfos);
+    final EmbeddedSortsBuffer embeddedSorts = state.docWriter.embeddedSorts;
     /*
     Current writer chain:
       FormatPostingsFieldsConsumer
@@ -124,9 +125,13 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
         fieldInfo.storePayloads |= fields[i-start].hasPayloads;
       }
 
+      // Once any buffered doc has embedded sort values,
+      // every field's postings carry them
+      fieldInfo.storeEmbeddedSorts |= embeddedSorts.hasValues();
+
       // If this field has postings then add them to the
       // segment
-      appendPostings(fields, consumer);
+      appendPostings(fields, consumer, embeddedSorts);
 
       for(int i=0;i<fields.length;i++) {
         TermsHashPerField perField = fields[i].termsHashPerField;
@@ -155,7 +160,8 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
    * instances) found in this field and serialize them
    * into a single RAM segment. */
   void appendPostings(FreqProxTermsWriterPerField[] fields,
-                      FormatPostingsFieldsConsumer consumer)
+                      FormatPostingsFieldsConsumer consumer,
+                      EmbeddedSortsBuffer embeddedSorts)
     throws CorruptIndexException, IOException {
 
     int numFields = fields.length;
@@ -177,6 +183,7 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
     FreqProxFieldMergeState[] termStates = new FreqProxFieldMergeState[numFields];
 
     final boolean currentFieldOmitTermFreqAndPositions = fields[0].fieldInfo.omitTermFreqAndPositions;
+    final boolean currentFieldStoresEmbeddedSorts = fields[0].fieldInfo.storeEmbeddedSorts;
 
     while(numFields > 0) {
 
@@ -210,7 +217,8 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
 
         final int termDocFreq = minState.termFreq;
 
-        final FormatPostingsPositionsConsumer posConsumer = docConsumer.addDoc(minState.docID, termDocFreq);
+        final int[] sorts = currentFieldStoresEmbeddedSorts ? embeddedSorts.get(minState.docID) : null;
+        final FormatPostingsPositionsConsumer posConsumer = docConsumer.addDoc(minState.docID, termDocFreq, sorts);
 
         final ByteSliceReader prox = minState.prox;
 
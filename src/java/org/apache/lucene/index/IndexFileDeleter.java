@@ -29,6 +29,8 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /*
  * This class keeps track of each SegmentInfos instance that
@@ -100,6 +102,11 @@ final class IndexFileDeleter {
   /* Commits that the IndexDeletionPolicy have decided to delete: */ 
   private List commitsToDelete = new ArrayList();
 
+  /* Segments whose last file was deleted, so their field
+   * cache files are deleted once the directory is next
+   * listed: */
+  private Set deletedSegments = new HashSet();
+
   private PrintStream infoStream;
   private Directory directory;
   private IndexDeletionPolicy policy;
@@ -150,6 +157,9 @@ final class IndexFileDeleter {
 
     CommitPoint currentCommitPoint = null;
 
+    // Field cache files of segments, which no commit refers to
+    List fieldCacheFiles = new ArrayList();
+
     for(int i=0;i<files.length;i++) {
 
       String fileName = files[i];
@@ -194,6 +204,8 @@ final class IndexFileDeleter {
             }
           }
         }
+      } else if (isFieldCacheFile(fileName)) {
+        fieldCacheFiles.add(fileName);
       }
     }
 
@@ -236,6 +248,18 @@ final class IndexFileDeleter {
       }
     }
 
+    // Field cache files may outlive their segment if a
+    // reader wrote them while the segment was deleted:
+    for(int i=0;i<fieldCacheFiles.size();i++) {
+      String fileName = (String) fieldCacheFiles.get(i);
+      if (!segmentExists(segmentOf(fileName)) && directory.fileExists(fileName)) {
+        if (infoStream != null) {
+          message("init: removing field cache file \"" + fileName + "\" of deleted segment");
+        }
+        deleteFile(fileName);
+      }
+    }
+
     // Finally, give policy a chance to remove things on
     // startup:
     policy.onInit(commits);
@@ -247,6 +271,7 @@ final class IndexFileDeleter {
     startingCommitDeleted = currentCommitPoint.isDeleted();
 
     deleteCommits();
+    deleteFieldCacheFiles();
   }
 
   /**
@@ -329,6 +354,8 @@ final class IndexFileDeleter {
         deleteFile(fileName);
       }
     }
+
+    deleteFieldCacheFiles();
   }
 
   public void refresh() throws IOException {
@@ -345,6 +372,7 @@ final class IndexFileDeleter {
     }
 
     deletePendingFiles();
+    deleteFieldCacheFiles();
   }
 
   private void deletePendingFiles() throws IOException {
@@ -429,6 +457,8 @@ final class IndexFileDeleter {
       if (docWriterFiles != null)
         lastFiles.add(docWriterFiles);
     }
+
+    deleteFieldCacheFiles();
   }
 
   void incRef(SegmentInfos segmentInfos, boolean isCommit) throws IOException {
@@ -517,6 +547,7 @@ final class IndexFileDeleter {
         message("delete \"" + fileName + "\"");
       }
       directory.deleteFile(fileName);
+      segmentDeleted(fileName);
     } catch (IOException e) {			  // if delete fails
       if (directory.fileExists(fileName)) {
 
@@ -538,6 +569,63 @@ final class IndexFileDeleter {
     }
   }
 
+  /** Returns true if fileName is a field cache file, written
+   *  by a reader next to its segment: segment_id.fcc */
+  static boolean isFieldCacheFile(String fileName) {
+    return fileName.endsWith("." + IndexFileNames.FIELD_CACHE_EXTENSION) && fileName.indexOf('_', 1) != -1;
+  }
+
+  /** Returns the name of the segment a field cache file
+   *  belongs to. */
+  private static String segmentOf(String fieldCacheFileName) {
+    return fieldCacheFileName.substring(0, fieldCacheFileName.indexOf('_', 1));
+  }
+
+  /** A segment exists while its compound file or, if it
+   *  has none, its field infos file does. */
+  private boolean segmentExists(String segmentName) throws IOException {
+    return directory.fileExists(IndexFileNames.segmentFileName(segmentName, IndexFileNames.COMPOUND_FILE_EXTENSION))
+      || directory.fileExists(IndexFileNames.segmentFileName(segmentName, IndexFileNames.FIELD_INFOS_EXTENSION));
+  }
+
+  /** Once the last file that makes a segment exist is
+   *  deleted, records the segment so that {@link
+   *  #deleteFieldCacheFiles()} deletes its field cache
+   *  files too.  Their names can't be derived from the
+   *  segment name, so they are found by listing the
+   *  directory, once for all segments deleted since the
+   *  last listing. */
+  private void segmentDeleted(String deletedFileName) throws IOException {
+    final int dot = deletedFileName.lastIndexOf('.');
+    if (dot == -1) {
+      return;
+    }
+    final String ext = deletedFileName.substring(dot+1);
+    if (!ext.equals(IndexFileNames.COMPOUND_FILE_EXTENSION) && !ext.equals(IndexFileNames.FIELD_INFOS_EXTENSION)) {
+      return;
+    }
+    final String segmentName = deletedFileName.substring(0, dot);
+    if (!segmentExists(segmentName)) {
+      deletedSegments.add(segmentName);
+    }
+  }
+
+  /** Deletes the field cache files of the segments deleted
+   *  since the last call. */
+  private void deleteFieldCacheFiles() throws IOException {
+    if (deletedSegments.isEmpty()) {
+      return;
+    }
+    final Set segments = deletedSegments;
+    deletedSegments = new HashSet();
+    String[] files = directory.listAll();
+    for(int i=0;i<files.length;i++) {
+      if (isFieldCacheFile(files[i]) && segments.contains(segmentOf(files[i]))) {
+        deleteFile(files[i]);
+      }
+    }
+  }
+
   /**
    * Tracks the reference count for a single index file:
    */
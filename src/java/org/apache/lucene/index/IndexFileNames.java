@@ -85,6 +85,13 @@ final class IndexFileNames {
   /** Extension of gen file */
   static final String GEN_EXTENSION = "gen";
 
+  /** Extension of the field cache files that {@link
+   * org.apache.lucene.search.PersistentFieldCache} writes
+   * next to a segment.  They are not part of any commit, so
+   * this is not in INDEX_EXTENSIONS; {@link
+   * IndexFileDeleter} removes them with their segment. */
+  static final String FIELD_CACHE_EXTENSION = "fcc";
+
   /**
    * This array contains all filename extensions used by
    * Lucene's index files, with two exceptions, namely the
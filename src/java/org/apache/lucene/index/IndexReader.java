@@ -1009,6 +1009,25 @@ public abstract class IndexReader implements Cloneable {
   public abstract void norms(String field, byte[] bytes, int offset)
     throws IOException;
 
+  /** Expert: Returns the largest byte-encoded normalization factor of the
+   * named field, comparing bytes as unsigned, or 0 if the field has no
+   * norms.  Used to bound the score of a term.  This implementation scans
+   * {@link #norms(String)}; SegmentReader caches the result.
+   */
+  public byte maxNorm(String field) throws IOException {
+    ensureOpen();
+    byte[] bytes = norms(field);
+    int max = 0;
+    if (bytes != null) {
+      for (int i = 0; i < bytes.length; i++) {
+        if ((bytes[i] & 0xFF) > max) {
+          max = bytes[i] & 0xFF;
+        }
+      }
+    }
+    return (byte) max;
+  }
+
   /** Expert: Resets the normalization factor for the named field of the named
    * document.  The norm represents the product of the field's {@link
    * org.apache.lucene.document.Fieldable#setBoost(float) boost} and its {@link Similarity#lengthNorm(String,
@@ -1084,6 +1103,16 @@ public abstract class IndexReader implements Cloneable {
    */
   public abstract int docFreq(Term t) throws IOException;
 
+  /** Expert: Returns the highest frequency of term <code>t</code> in any
+   * document, or -1 if it is not known, as for indexes written before it
+   * was recorded or for readers over several segments.  Deleted documents
+   * are not excluded.  Used to bound the score of a term.
+   * @throws IOException if there is a low-level IO error
+   */
+  public int maxFreq(Term t) throws IOException {
+    return -1;
+  }
+
   /** Returns an enumeration of all the documents which contain
    * <code>term</code>. For each document, the document number, the frequency of
    * the term in that document is also provided, for use in
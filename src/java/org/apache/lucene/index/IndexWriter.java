@@ -346,6 +346,8 @@ public class IndexWriter {
 
   private int termIndexInterval = DEFAULT_TERM_INDEX_INTERVAL;
 
+  private volatile EmbeddedIndexSort embeddedIndexSort;
+
   private boolean closeDir;
   private boolean closed;
   private boolean closing;
@@ -937,6 +939,33 @@ public class IndexWriter {
     return termIndexInterval;
   }
 
+  /** Expert: sets the order, by an embedded sort slot, that
+   * merges write their documents in; null (the default)
+   * keeps documents in the order they were added.
+   *
+   * <p>Only merges that start after this call are sorted,
+   * and they always merge the doc stores (stored fields and
+   * term vectors) to reorder them.  Newly flushed segments
+   * stay in the order documents were added until they are
+   * merged, as does a segment that is already optimized;
+   * {@link #addIndexes(IndexReader[])} also sorts, so it can
+   * be used to rebuild an index sorted.  Searches can tell
+   * sorted segments apart with {@link
+   * SegmentReader#getEmbeddedIndexSort()}.
+   */
+  public void setEmbeddedIndexSort(EmbeddedIndexSort indexSort) {
+    ensureOpen();
+    this.embeddedIndexSort = indexSort;
+  }
+
+  /** Expert: returns the order merges write documents in.
+   *
+   * @see #setEmbeddedIndexSort(EmbeddedIndexSort)
+   */
+  public EmbeddedIndexSort getEmbeddedIndexSort() {
+    return embeddedIndexSort;
+  }
+
   /**
    * Constructs an IndexWriter for the index in <code>path</code>.
    * Text will be analyzed with <code>a</code>.  If <code>create</code>
@@ -3929,6 +3958,8 @@ public class IndexWriter {
       try {
         mergedName = newSegmentName();
         merger = new SegmentMerger(this, mergedName, null);
+        final EmbeddedIndexSort indexSort = embeddedIndexSort;
+        merger.setIndexSort(indexSort);
 
         SegmentReader sReader = null;
         synchronized(this) {
@@ -3952,7 +3983,12 @@ public class IndexWriter {
             segmentInfos.clear();                      // pop old infos & add new
             info = new SegmentInfo(mergedName, docCount, directory, false, true,
                                    -1, null, false, merger.hasProx());
-            setDiagnostics(info, "addIndexes(IndexReader[])");
+            Map details = null;
+            if (indexSort != null) {
+              details = new HashMap();
+              details.put(EmbeddedIndexSort.DIAGNOSTICS_KEY, indexSort.toString());
+            }
+            setDiagnostics(info, "addIndexes(IndexReader[])", details);
             segmentInfos.add(info);
           }
 
@@ -4497,7 +4533,7 @@ public class IndexWriter {
    *  saves the resulting deletes file (incrementing the
    *  delete generation for merge.info).  If no deletes were
    *  flushed, no new deletes file is saved. */
-  synchronized private void commitMergedDeletes(MergePolicy.OneMerge merge, SegmentReader mergeReader) throws IOException {
+  synchronized private void commitMergedDeletes(MergePolicy.OneMerge merge, SegmentMerger merger, SegmentReader mergeReader) throws IOException {
 
     assert testPoint("startCommitMergeDeletes");
 
@@ -4510,6 +4546,8 @@ public class IndexWriter {
     // started merging:
     int docUpto = 0;
     int delCount = 0;
+    // Non-null if the merge wrote docs in sorted order
+    final int[] sortMap = merger.getSortMap();
 
     for(int i=0; i < sourceSegments.size(); i++) {
       SegmentInfo info = sourceSegments.info(i);
@@ -4534,7 +4572,7 @@ public class IndexWriter {
               assert currentReader.isDeleted(j);
             else {
               if (currentReader.isDeleted(j)) {
-                mergeReader.doDelete(docUpto);
+                mergeReader.doDelete(sortMap == null ? docUpto : sortMap[docUpto]);
                 delCount++;
               }
               docUpto++;
@@ -4548,7 +4586,7 @@ public class IndexWriter {
         // does:
         for(int j=0; j<docCount; j++) {
           if (currentReader.isDeleted(j)) {
-            mergeReader.doDelete(docUpto);
+            mergeReader.doDelete(sortMap == null ? docUpto : sortMap[docUpto]);
             delCount++;
           }
           docUpto++;
@@ -4593,7 +4631,7 @@ public class IndexWriter {
 
     final int start = ensureContiguousMerge(merge);
 
-    commitMergedDeletes(merge, mergedReader);
+    commitMergedDeletes(merge, merger, mergedReader);
     docWriter.remapDeletes(segmentInfos, merger.getDocMaps(), merger.getDelCounts(), merge, mergedDocCount);
       
     setMergeDocStoreIsCompoundFile(merge);
@@ -4806,7 +4844,9 @@ public class IndexWriter {
     String lastDocStoreSegment = null;
     int next = -1;
 
-    boolean mergeDocStores = false;
+    // Sorting reorders the stored fields and vectors too
+    merge.indexSort = embeddedIndexSort;
+    boolean mergeDocStores = merge.indexSort != null;
     boolean doFlushDocStore = false;
     final String currentDocStoreSegment = docWriter.getDocStoreSegment();
 
@@ -4905,6 +4945,9 @@ public class IndexWriter {
     details.put("optimize", merge.optimize+"");
     details.put("mergeFactor", end+"");
     details.put("mergeDocStores", mergeDocStores+"");
+    if (merge.indexSort != null) {
+      details.put(EmbeddedIndexSort.DIAGNOSTICS_KEY, merge.indexSort.toString());
+    }
     setDiagnostics(merge.info, "merge", details);
 
     // Also enroll the merged segment into mergingSegments;
@@ -5039,6 +5082,7 @@ public class IndexWriter {
       message("merging " + merge.segString(directory));
 
     merger = new SegmentMerger(this, mergedName, merge);
+    merger.setIndexSort(merge.indexSort);
 
     merge.readers = new SegmentReader[numSegments];
     merge.readersClone = new SegmentReader[numSegments];
@@ -5131,7 +5175,9 @@ public class IndexWriter {
         deleter.incRef(merge.mergeFiles);
       }
 
-      if (poolReaders && mergedSegmentWarmer != null) {
+      final boolean warm = mergedSegmentWarmer != null && (poolReaders || mergedSegmentWarmer.isPersistent());
+
+      if (warm) {
         // Load terms index & doc stores so the segment
         // warmer can run searches, load documents/term
         // vectors
@@ -5144,7 +5190,7 @@ public class IndexWriter {
 
       final SegmentReader mergedReader = readerPool.get(merge.info, loadDocStores, BufferedIndexInput.BUFFER_SIZE, termsIndexDivisor);
       try {
-        if (poolReaders && mergedSegmentWarmer != null) {
+        if (warm) {
           mergedSegmentWarmer.warm(mergedReader);
         }
         if (!commitMerge(merge, merger, mergedDocCount, mergedReader))
@@ -5757,6 +5803,8 @@ public class IndexWriter {
    *  commits.  This is not required for near real-time
    *  search, but will reduce search latency on opening a
    *  new near real-time reader after a merge completes.
+   *  A warmer that is {@link #isPersistent persistent} is
+   *  invoked after every merge.
    *
    * <p><b>NOTE:</b> This API is experimental and might
    * change in incompatible ways in the next release.</p>
@@ -5765,6 +5813,17 @@ public class IndexWriter {
    * been carried over to the merged segment. */
   public static abstract class IndexReaderWarmer {
     public abstract void warm(IndexReader reader) throws IOException;
+
+    /** Returns true if warming leaves something behind
+     *  that outlives the reader, like the files of a {@link
+     *  org.apache.lucene.search.PersistentFieldCache}, so
+     *  that the warmer must also run when this writer is
+     *  not in near real-time mode.  Such merges then open
+     *  the merged segment with its terms index and doc
+     *  stores.  Defaults to false. */
+    public boolean isPersistent() {
+      return false;
+    }
   }
 
   private IndexReaderWarmer mergedSegmentWarmer;
@@ -86,6 +86,19 @@ abstract class MultiLevelSkipListReader {
   int getDoc() {
     return lastDoc;
   }
+
+  /** Returns the number of levels of the skip list; only
+   *  valid after the first call of {@link #skipTo(int)}. */
+  int getNumberOfSkipLevels() {
+    return numberOfSkipLevels;
+  }
+
+  /** Returns the id of the doc of the pending skip entry on
+   *  <code>level</code>, that is the first entry the last call
+   *  of {@link #skipTo(int)} did not skip past. */
+  int getSkipDoc(int level) {
+    return skipDoc[level];
+  }
   
   
   /** Skips entries to the first beyond the current whose document number is
@@ -603,7 +603,7 @@ public class ParallelReader extends IndexReader {
 			throws IOException {
 		throw new UnsupportedOperationException();
 	}
-	
+
 	public Byte norm() {
 		throw new UnsupportedOperationException();
 	}
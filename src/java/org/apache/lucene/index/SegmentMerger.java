@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -31,6 +32,8 @@ import org.apache.lucene.index.MergePolicy.MergeAbortedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ReaderUtil;
 
 /**
  * The SegmentMerger class combines two or more Segments, represented by an IndexReader ({@link #add},
@@ -69,6 +72,21 @@ final class SegmentMerger {
       when merging stored fields */
   private final static int MAX_RAW_MERGE_DOCS = 4192;
 
+  // When set, documents are written in the order of this
+  // sort instead of reader by reader
+  private EmbeddedIndexSort indexSort;
+
+  // Merged docIDs, in reader by reader order without
+  // deletions, listed in the sorted order
+  private int[] sortedDocs;
+  // The inverse: sorted docID of each merged docID
+  private int[] sortMap;
+  // Start of each reader in the merged docIDs
+  private int[] readerStarts;
+  // Per reader with deletions, the reader's docID for each
+  // of its merged docIDs
+  private int[][] liveDocs;
+
   /** This ctor used only by test code.
    * 
    * @param dir The Directory to merge the other segments into
@@ -103,6 +121,20 @@ final class SegmentMerger {
     return fieldInfos.hasProx();
   }
 
+  /** Writes the merged segment in the order of
+   *  <code>indexSort</code>; requires merging the doc
+   *  stores. */
+  void setIndexSort(EmbeddedIndexSort indexSort) {
+    this.indexSort = indexSort;
+  }
+
+  /** Returns the sorted docID of each docID the merged
+   *  segment would have had without sorting, or null if
+   *  the segment is not sorted. */
+  int[] getSortMap() {
+    return sortMap;
+  }
+
   /**
    * Add an IndexReader to the collection of readers that are to be merged
    * @param reader
@@ -142,6 +174,9 @@ final class SegmentMerger {
   final int merge(boolean mergeDocStores) throws CorruptIndexException, IOException {
 
     this.mergeDocStores = mergeDocStores;
+    if (indexSort != null && !mergeDocStores) {
+      throw new IllegalStateException("sorting a merge requires merging the doc stores");
+    }
     
     // NOTE: it's important to add calls to
     // checkAbort.work(...) if you make any changes to this
@@ -298,10 +333,11 @@ final class SegmentMerger {
         int numReaderFieldInfos = readerFieldInfos.size();
         for (int j = 0; j < numReaderFieldInfos; j++) {
           FieldInfo fi = readerFieldInfos.fieldInfo(j);
-          fieldInfos.add(fi.name, fi.isIndexed, fi.storeTermVector,
+          FieldInfo mergedFi = fieldInfos.add(fi.name, fi.isIndexed, fi.storeTermVector,
               fi.storePositionWithTermVector, fi.storeOffsetWithTermVector,
               !reader.hasNorms(fi.name), fi.storePayloads,
               fi.omitTermFreqAndPositions);
+          mergedFi.storeEmbeddedSorts |= fi.storeEmbeddedSorts;
         }
       } else {
         addIndexed(reader, fieldInfos, reader.getFieldNames(FieldOption.TERMVECTOR_WITH_POSITION_OFFSET), true, true, true, false, false);
@@ -320,6 +356,10 @@ final class SegmentMerger {
 
     setMatchingSegmentReaders();
 
+    if (indexSort != null) {
+      computeSortMap();
+    }
+
     if (mergeDocStores) {
 
       // for merging we don't want to compress/uncompress the data, so to tell the FieldsReader that we're
@@ -334,23 +374,20 @@ final class SegmentMerger {
       final FieldsWriter fieldsWriter = new FieldsWriter(directory, segment, fieldInfos);
 
       try {
-        int idx = 0;
-        for (Iterator iter = readers.iterator(); iter.hasNext();) {
-          final IndexReader reader = (IndexReader) iter.next();
-          final SegmentReader matchingSegmentReader = matchingSegmentReaders[idx++];
-          FieldsReader matchingFieldsReader = null;
-          if (matchingSegmentReader != null) {
-            final FieldsReader fieldsReader = matchingSegmentReader.getFieldsReader();
-            if (fieldsReader != null && fieldsReader.canReadRawDocs()) {            
-              matchingFieldsReader = fieldsReader;
-            }
-          }
-          if (reader.hasDeletions()) {
-            docCount += copyFieldsWithDeletions(fieldSelectorMerge, fieldsWriter,
+        if (sortMap != null) {
+          docCount = copyFieldsSorted(fieldSelectorMerge, fieldsWriter);
+        } else {
+          int idx = 0;
+          for (Iterator iter = readers.iterator(); iter.hasNext();) {
+            final IndexReader reader = (IndexReader) iter.next();
+            final FieldsReader matchingFieldsReader = matchingFieldsReader(idx++);
+            if (reader.hasDeletions()) {
+              docCount += copyFieldsWithDeletions(fieldSelectorMerge, fieldsWriter,
+                                                  reader, matchingFieldsReader);
+            } else {
+              docCount += copyFieldsNoDeletions(fieldSelectorMerge, fieldsWriter,
                                                 reader, matchingFieldsReader);
-          } else {
-            docCount += copyFieldsNoDeletions(fieldSelectorMerge, fieldsWriter,
-                                              reader, matchingFieldsReader);
+            }
           }
         }
       } finally {
@@ -379,6 +416,145 @@ final class SegmentMerger {
     return docCount;
   }
 
+  private FieldsReader matchingFieldsReader(int idx) {
+    final SegmentReader matchingSegmentReader = matchingSegmentReaders[idx];
+    if (matchingSegmentReader != null) {
+      final FieldsReader fieldsReader = matchingSegmentReader.getFieldsReader();
+      if (fieldsReader != null && fieldsReader.canReadRawDocs()) {
+        return fieldsReader;
+      }
+    }
+    return null;
+  }
+
+  /** Reads the sort slot of every live document and orders
+   *  the merged docIDs by it.  The values are only stored
+   *  inline with the postings, so this walks the postings of
+   *  the fields storing embedded sorts until every document
+   *  has been seen (or all postings were read). */
+  private void computeSortMap() throws IOException {
+    final int numReaders = readers.size();
+    readerStarts = new int[numReaders];
+    liveDocs = new int[numReaders][];
+    int numDocs = 0;
+    for (int i = 0; i < numReaders; i++) {
+      IndexReader reader = (IndexReader) readers.get(i);
+      readerStarts[i] = numDocs;
+      if (reader.hasDeletions()) {
+        final int maxDoc = reader.maxDoc();
+        final int[] live = new int[reader.numDocs()];
+        int upto = 0;
+        for (int j = 0; j < maxDoc; j++) {
+          if (!reader.isDeleted(j)) {
+            live[upto++] = j;
+          }
+        }
+        liveDocs[i] = live;
+      }
+      numDocs += reader.numDocs();
+    }
+
+    final int slot = indexSort.getSlot();
+    final int[] values = new int[numDocs];
+    Arrays.fill(values, -1);
+    final boolean[] seen = new boolean[numDocs];
+
+    final int blockSize = 64;
+    final int[] docs = new int[blockSize];
+    final int[] freqs = new int[blockSize];
+    final int[] sorts = new int[slot * blockSize];
+    final int valueStart = (slot-1) * blockSize;
+
+    for (int i = 0; i < numReaders; i++) {
+      IndexReader reader = (IndexReader) readers.get(i);
+      final int start = readerStarts[i];
+      final int[] live = liveDocs[i];
+      int remaining = reader.numDocs();
+      // merge readers have no terms index to seek with, so
+      // walk the terms in order
+      TermEnum termEnum = reader.terms();
+      TermDocs termDocs = reader.termDocs();
+      try {
+        while (remaining > 0 && termEnum.next()) {
+          Term term = termEnum.term();
+          FieldInfo fi = fieldInfos.fieldInfo(term.field());
+          if (fi == null || !fi.storeEmbeddedSorts) {
+            continue;
+          }
+          termDocs.seek(termEnum);
+          int n;
+          while (remaining > 0 && (n = ReaderUtil.readSortColumns(termDocs, docs, freqs, null, sorts, slot)) > 0) {
+            for (int k = 0; k < n; k++) {
+              int doc = docs[k];
+              if (live != null) {
+                doc = Arrays.binarySearch(live, doc);
+              }
+              doc += start;
+              if (!seen[doc]) {
+                seen[doc] = true;
+                values[doc] = sorts[valueStart + k];
+                remaining--;
+              }
+            }
+            checkAbort.work(n/3.0);
+          }
+        }
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+    }
+
+    final long[] keys = new long[numDocs];
+    for (int doc = 0; doc < numDocs; doc++) {
+      keys[doc] = indexSort.key(values[doc], doc);
+    }
+    Arrays.sort(keys);
+    sortedDocs = new int[numDocs];
+    sortMap = new int[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      final int doc = (int) keys[i];
+      sortedDocs[i] = doc;
+      sortMap[doc] = i;
+    }
+  }
+
+  /** Returns the index of the reader holding merged docID
+   *  <code>doc</code>. */
+  private int readerIndex(int doc) {
+    return ReaderUtil.subIndex(doc, readerStarts);
+  }
+
+  /** Returns the reader's own docID for merged docID
+   *  <code>doc</code> of reader <code>idx</code>. */
+  private int readerDoc(int idx, int doc) {
+    doc -= readerStarts[idx];
+    return liveDocs[idx] == null ? doc : liveDocs[idx][doc];
+  }
+
+  private int copyFieldsSorted(final FieldSelector fieldSelectorMerge, final FieldsWriter fieldsWriter)
+    throws IOException, MergeAbortedException, CorruptIndexException {
+    final FieldsReader[] matchingFieldsReaders = new FieldsReader[readers.size()];
+    for (int i = 0; i < matchingFieldsReaders.length; i++) {
+      matchingFieldsReaders[i] = matchingFieldsReader(i);
+    }
+    for (int i = 0; i < sortedDocs.length; i++) {
+      final int idx = readerIndex(sortedDocs[i]);
+      final int doc = readerDoc(idx, sortedDocs[i]);
+      if (matchingFieldsReaders[idx] != null) {
+        IndexInput stream = matchingFieldsReaders[idx].rawDocs(rawDocLengths, doc, 1);
+        fieldsWriter.addRawDocuments(stream, rawDocLengths, 1);
+      } else {
+        // NOTE: it's very important to first assign to doc then pass it to
+        // termVectorsWriter.addAllDocVectors; see LUCENE-1282
+        Document document = ((IndexReader) readers.get(idx)).document(doc, fieldSelectorMerge);
+        fieldsWriter.addDocument(document);
+      }
+      checkAbort.work(300);
+    }
+    return sortedDocs.length;
+  }
+
   private int copyFieldsWithDeletions(final FieldSelector fieldSelectorMerge,
                                       final FieldsWriter fieldsWriter, final IndexReader reader,
                                       final FieldsReader matchingFieldsReader)
@@ -464,24 +640,19 @@ final class SegmentMerger {
       new TermVectorsWriter(directory, segment, fieldInfos);
 
     try {
-      int idx = 0;
-      for (Iterator iter = readers.iterator(); iter.hasNext();) {
-        final SegmentReader matchingSegmentReader = matchingSegmentReaders[idx++];
-        TermVectorsReader matchingVectorsReader = null;
-        if (matchingSegmentReader != null) {
-          TermVectorsReader vectorsReader = matchingSegmentReader.getTermVectorsReaderOrig();
-
-          // If the TV* files are an older format then they cannot read raw docs:
-          if (vectorsReader != null && vectorsReader.canReadRawDocs()) {
-            matchingVectorsReader = vectorsReader;
-          }
-        }
-        final IndexReader reader = (IndexReader) iter.next();
-        if (reader.hasDeletions()) {
-          copyVectorsWithDeletions(termVectorsWriter, matchingVectorsReader, reader);
-        } else {
-          copyVectorsNoDeletions(termVectorsWriter, matchingVectorsReader, reader);
+      if (sortMap != null) {
+        copyVectorsSorted(termVectorsWriter);
+      } else {
+        int idx = 0;
+        for (Iterator iter = readers.iterator(); iter.hasNext();) {
+          final TermVectorsReader matchingVectorsReader = matchingVectorsReader(idx++);
+          final IndexReader reader = (IndexReader) iter.next();
+          if (reader.hasDeletions()) {
+            copyVectorsWithDeletions(termVectorsWriter, matchingVectorsReader, reader);
+          } else {
+            copyVectorsNoDeletions(termVectorsWriter, matchingVectorsReader, reader);
           
+          }
         }
       }
     } finally {
@@ -500,6 +671,41 @@ final class SegmentMerger {
       throw new RuntimeException("mergeVectors produced an invalid result: mergedDocs is " + mergedDocs + " but tvx size is " + tvxSize + " file=" + fileName + " file exists?=" + directory.fileExists(fileName) + "; now aborting this merge to prevent index corruption");
   }
 
+  private TermVectorsReader matchingVectorsReader(int idx) {
+    final SegmentReader matchingSegmentReader = matchingSegmentReaders[idx];
+    if (matchingSegmentReader != null) {
+      TermVectorsReader vectorsReader = matchingSegmentReader.getTermVectorsReaderOrig();
+
+      // If the TV* files are an older format then they cannot read raw docs:
+      if (vectorsReader != null && vectorsReader.canReadRawDocs()) {
+        return vectorsReader;
+      }
+    }
+    return null;
+  }
+
+  private void copyVectorsSorted(final TermVectorsWriter termVectorsWriter)
+    throws IOException, MergeAbortedException {
+    final TermVectorsReader[] matchingVectorsReaders = new TermVectorsReader[readers.size()];
+    for (int i = 0; i < matchingVectorsReaders.length; i++) {
+      matchingVectorsReaders[i] = matchingVectorsReader(i);
+    }
+    for (int i = 0; i < sortedDocs.length; i++) {
+      final int idx = readerIndex(sortedDocs[i]);
+      final int doc = readerDoc(idx, sortedDocs[i]);
+      if (matchingVectorsReaders[idx] != null) {
+        matchingVectorsReaders[idx].rawDocs(rawDocLengths, rawDocLengths2, doc, 1);
+        termVectorsWriter.addRawDocuments(matchingVectorsReaders[idx], rawDocLengths, rawDocLengths2, 1);
+      } else {
+        // NOTE: it's very important to first assign to vectors then pass it to
+        // termVectorsWriter.addAllDocVectors; see LUCENE-1282
+        TermFreqVector[] vectors = ((IndexReader) readers.get(idx)).getTermFreqVectors(doc);
+        termVectorsWriter.addAllDocVectors(vectors);
+      }
+      checkAbort.work(300);
+    }
+  }
+
   private void copyVectorsWithDeletions(final TermVectorsWriter termVectorsWriter,
                                         final TermVectorsReader matchingVectorsReader,
                                         final IndexReader reader)
@@ -592,6 +798,7 @@ final class SegmentMerger {
   }
 
   boolean omitTermFreqAndPositions;
+  boolean storeEmbeddedSorts;
 
   private final void mergeTermInfos(final FormatPostingsFieldsConsumer consumer) throws CorruptIndexException, IOException {
     int base = 0;
@@ -643,9 +850,11 @@ final class SegmentMerger {
         final FieldInfo fieldInfo = fieldInfos.fieldInfo(currentField);
         termsConsumer = consumer.addField(fieldInfo);
         omitTermFreqAndPositions = fieldInfo.omitTermFreqAndPositions;
+        storeEmbeddedSorts = fieldInfo.storeEmbeddedSorts;
       }
 
-      int df = appendPostings(termsConsumer, match, matchSize);		  // add new TermInfo
+      int df = sortMap == null ? appendPostings(termsConsumer, match, matchSize)		  // add new TermInfo
+                               : appendSortedPostings(termsConsumer, match, matchSize);
 
       checkAbort.work(df/3.0);
 
@@ -657,6 +866,25 @@ final class SegmentMerger {
           smi.close();				  // done with a segment
       }
     }
+
+    if (sortMap != null) {
+      // Buffered deletes are remapped through the docMaps, so
+      // they must lead straight to the sorted docIDs
+      if (docMaps == null) {
+        docMaps = new int[readerCount][];
+        delCounts = new int[readerCount];
+      }
+      for (int i = 0; i < readerCount; i++) {
+        final IndexReader reader = (IndexReader) readers.get(i);
+        final int start = readerStarts[i];
+        final int[] docMap = new int[reader.maxDoc()];
+        for (int j = 0; j < docMap.length; j++) {
+          final int doc = docMaps[i] == null ? j : docMaps[i][j];
+          docMap[j] = doc == -1 ? -1 : sortMap[start + doc] - start;
+        }
+        docMaps[i] = docMap;
+      }
+    }
   }
 
   private byte[] payloadBuffer;
@@ -700,7 +928,9 @@ final class SegmentMerger {
         doc += base;                              // convert to merged space
 
         final int freq = postings.freq();
-        final FormatPostingsPositionsConsumer posConsumer = docConsumer.addDoc(doc, freq);
+        // segments without embedded sorts report -1 for every slot
+        final int[] sorts = storeEmbeddedSorts ? postings.getSorts() : null;
+        final FormatPostingsPositionsConsumer posConsumer = docConsumer.addDoc(doc, freq, sorts);
 
         if (!omitTermFreqAndPositions) {
           for (int j = 0; j < freq; j++) {
@@ -722,6 +952,118 @@ final class SegmentMerger {
     return df;
   }
 
+  // Postings of the current term, buffered so they can be
+  // written in sorted docID order
+  private int[] bufferedDocs = new int[16];
+  private int[] bufferedFreqs = new int[16];
+  private int[][] bufferedSorts = new int[16][];
+  private int[] bufferedPositionStarts = new int[16];
+  private int[] bufferedPositions = new int[16];
+  private int[] bufferedPayloadStarts = new int[16];
+  private byte[] bufferedPayloads = new byte[16];
+  private long[] bufferedOrder = new long[16];
+
+  /** Like {@link #appendPostings}, for a merge sorted by
+   *  {@link #indexSort}: all postings of the term are
+   *  buffered, ordered by their sorted docID and then
+   *  written.  The buffer grows to the largest
+   *  docFreq/totalTermFreq seen. */
+  private final int appendSortedPostings(final FormatPostingsTermsConsumer termsConsumer, SegmentMergeInfo[] smis, int n)
+        throws CorruptIndexException, IOException {
+
+    int df = 0;
+    int numPositions = 0;
+    int numPayloadBytes = 0;
+    for (int i = 0; i < n; i++) {
+      SegmentMergeInfo smi = smis[i];
+      TermPositions postings = smi.getPositions();
+      assert postings != null;
+      int base = smi.base;
+      int[] docMap = smi.getDocMap();
+      postings.seek(smi.termEnum);
+
+      while (postings.next()) {
+        int doc = postings.doc();
+        if (docMap != null)
+          doc = docMap[doc];                      // map around deletions
+        doc = sortMap[doc + base];                // convert to sorted space
+
+        if (df == bufferedDocs.length) {
+          bufferedDocs = ArrayUtil.grow(bufferedDocs, df+1);
+          bufferedFreqs = ArrayUtil.grow(bufferedFreqs, df+1);
+          bufferedOrder = ArrayUtil.grow(bufferedOrder, df+1);
+          bufferedPositionStarts = ArrayUtil.grow(bufferedPositionStarts, df+1);
+          bufferedPayloadStarts = ArrayUtil.grow(bufferedPayloadStarts, df+1);
+          int[][] newSorts = new int[bufferedDocs.length][];
+          System.arraycopy(bufferedSorts, 0, newSorts, 0, df);
+          bufferedSorts = newSorts;
+        }
+        final int freq = postings.freq();
+        bufferedDocs[df] = doc;
+        bufferedFreqs[df] = freq;
+        bufferedOrder[df] = ((long) doc << 32) | df;
+        if (storeEmbeddedSorts) {
+          final int[] sorts = postings.getSorts();
+          if (bufferedSorts[df] == null || bufferedSorts[df].length != sorts.length) {
+            bufferedSorts[df] = new int[sorts.length];
+          }
+          System.arraycopy(sorts, 0, bufferedSorts[df], 0, sorts.length);
+        }
+        bufferedPositionStarts[df] = numPositions;
+        bufferedPayloadStarts[df] = numPayloadBytes;
+
+        if (!omitTermFreqAndPositions) {
+          if (numPositions + freq > bufferedPositions.length) {
+            bufferedPositions = ArrayUtil.grow(bufferedPositions, numPositions + freq);
+          }
+          for (int j = 0; j < freq; j++) {
+            bufferedPositions[numPositions++] = postings.nextPosition();
+            final int payloadLength = postings.getPayloadLength();
+            if (numPayloadBytes + payloadLength + 4 > bufferedPayloads.length) {
+              bufferedPayloads = ArrayUtil.grow(bufferedPayloads, numPayloadBytes + payloadLength + 4);
+            }
+            // length prefixed, a zero length means no payload
+            bufferedPayloads[numPayloadBytes++] = (byte) (payloadLength >>> 24);
+            bufferedPayloads[numPayloadBytes++] = (byte) (payloadLength >>> 16);
+            bufferedPayloads[numPayloadBytes++] = (byte) (payloadLength >>> 8);
+            bufferedPayloads[numPayloadBytes++] = (byte) payloadLength;
+            if (payloadLength > 0) {
+              postings.getPayload(bufferedPayloads, numPayloadBytes);
+              numPayloadBytes += payloadLength;
+            }
+          }
+        }
+        df++;
+      }
+    }
+
+    Arrays.sort(bufferedOrder, 0, df);
+
+    final FormatPostingsDocsConsumer docConsumer = termsConsumer.addTerm(smis[0].term.text);
+    for (int i = 0; i < df; i++) {
+      final int p = (int) bufferedOrder[i];
+      final int freq = bufferedFreqs[p];
+      final FormatPostingsPositionsConsumer posConsumer = docConsumer.addDoc(bufferedDocs[p], freq,
+          storeEmbeddedSorts ? bufferedSorts[p] : null);
+      if (!omitTermFreqAndPositions) {
+        int payloadUpto = bufferedPayloadStarts[p];
+        for (int j = bufferedPositionStarts[p], end = j + freq; j < end; j++) {
+          final int payloadLength = ((bufferedPayloads[payloadUpto] & 0xff) << 24)
+            | ((bufferedPayloads[payloadUpto+1] & 0xff) << 16)
+            | ((bufferedPayloads[payloadUpto+2] & 0xff) << 8)
+            | (bufferedPayloads[payloadUpto+3] & 0xff);
+          payloadUpto += 4;
+          posConsumer.addPosition(bufferedPositions[j], bufferedPayloads, payloadUpto, payloadLength);
+          payloadUpto += payloadLength;
+        }
+        posConsumer.finish();
+      }
+    }
+    docConsumer.finish();
+
+    return df;
+  }
+
   private void mergeNorms() throws IOException {
     byte[] normBuffer = null;
     IndexOutput output = null;
@@ -734,6 +1076,10 @@ final class SegmentMerger {
             output = directory.createOutput(segment + "." + IndexFileNames.NORMS_EXTENSION);
             output.writeBytes(NORMS_HEADER,NORMS_HEADER.length);
           }
+          if (sortMap != null) {
+            writeSortedNorms(fi.name, output);
+            continue;
+          }
           for (Iterator iter = readers.iterator(); iter.hasNext();) {
             IndexReader reader = (IndexReader) iter.next();
             int maxDoc = reader.maxDoc();
@@ -765,6 +1111,26 @@ final class SegmentMerger {
     }
   }
 
+  private void writeSortedNorms(String field, IndexOutput output) throws IOException {
+    final byte[] merged = new byte[sortedDocs.length];
+    byte[] normBuffer = null;
+    for (int i = 0; i < readers.size(); i++) {
+      IndexReader reader = (IndexReader) readers.get(i);
+      int maxDoc = reader.maxDoc();
+      if (normBuffer == null || normBuffer.length < maxDoc) {
+        normBuffer = new byte[maxDoc];
+      }
+      reader.norms(field, normBuffer, 0);
+      final int start = readerStarts[i];
+      final int end = i+1 < readerStarts.length ? readerStarts[i+1] : merged.length;
+      for (int doc = start; doc < end; doc++) {
+        merged[sortMap[doc]] = normBuffer[readerDoc(i, doc)];
+      }
+      checkAbort.work(maxDoc);
+    }
+    output.writeBytes(merged, merged.length);
+  }
+
   static class CheckAbort {
     private double workCount;
     private MergePolicy.OneMerge merge;
@@ -361,6 +361,8 @@ public class SegmentReader extends IndexReader implements Cloneable {
     private boolean dirty;
     private int number;
     private boolean rollbackDirty;
+    // largest byte of bytes, unsigned; -1 until computed
+    private int max = -1;
     
     public Norm(IndexInput in, int number, long normSeek) {
       this.in = in;
@@ -477,6 +479,21 @@ public class SegmentReader extends IndexReader implements Cloneable {
       return bytes;
     }
 
+    // Largest norm byte, unsigned; cached until the bytes change
+    public synchronized int max() throws IOException {
+      if (max == -1) {
+        final byte[] bytes = bytes();
+        int m = 0;
+        for (int i = 0; i < bytes.length; i++) {
+          if ((bytes[i] & 0xFF) > m) {
+            m = bytes[i] & 0xFF;
+          }
+        }
+        max = m;
+      }
+      return max;
+    }
+
     // Only for testing
     Ref bytesRef() {
       return bytesRef;
@@ -500,6 +517,7 @@ public class SegmentReader extends IndexReader implements Cloneable {
         oldRef.decRef();
       }
       dirty = true;
+      max = -1;
       return bytes;
     }
     
@@ -987,6 +1005,19 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return new SegmentTermDocs(this);
   }
 
+  /**
+   * Expert: returns a TermDocs that, unlike {@link
+   * #termDocs()}, also enumerates deleted documents, for
+   * data kept per segment that must not depend on the
+   * deletions it had when it was computed.
+   */
+  public TermDocs rawTermDocs() throws IOException {
+    ensureOpen();
+    SegmentTermDocs termDocs = new SegmentTermDocs(this);
+    termDocs.deletedDocs = null;
+    return termDocs;
+  }
+
   public TermPositions termPositions() throws IOException {
     ensureOpen();
     return new SegmentTermPositions(this);
@@ -1001,6 +1032,15 @@ public class SegmentReader extends IndexReader implements Cloneable {
       return 0;
   }
 
+  public int maxFreq(Term t) throws IOException {
+    ensureOpen();
+    TermInfo ti = core.getTermsReader().get(t);
+    if (ti != null)
+      return ti.maxFreq;
+    else
+      return 0;
+  }
+
   public int numDocs() {
     // Don't call ensureOpen() here (it could affect performance)
     int n = maxDoc();
@@ -1098,6 +1138,14 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return bytes;
   }
 
+  public synchronized byte maxNorm(String field) throws IOException {
+    ensureOpen();
+    Norm norm = (Norm) norms.get(field);
+    if (norm == null)                             // fake norms, or none
+      return getDisableFakeNorms() ? 0 : DefaultSimilarity.encodeNorm(1.0f);
+    return (byte) norm.max();
+  }
+
   protected void doSetNorm(int doc, String field, byte value)
           throws IOException {
     Norm norm = (Norm) norms.get(field);
@@ -1299,6 +1347,17 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return core.segment;
   }
   
+  /**
+   * Return the order this segment's documents were written
+   * in by a merge with {@link
+   * IndexWriter#setEmbeddedIndexSort}, or null if the
+   * segment is not sorted.
+   */
+  public EmbeddedIndexSort getEmbeddedIndexSort() {
+    Map diagnostics = si.getDiagnostics();
+    return diagnostics == null ? null : EmbeddedIndexSort.parse((String) diagnostics.get(EmbeddedIndexSort.DIAGNOSTICS_KEY));
+  }
+
   /**
    * Return the SegmentInfo of the segment this reader is reading.
    */
@@ -18,10 +18,13 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BitVector;
 import org.apache.lucene.store.IndexInput;
 
-class SegmentTermDocs implements TermDocs {
+class SegmentTermDocs implements TermDocs, ColumnSortTermDocs, SortRangeTermDocs {
   protected SegmentReader parent;
   protected IndexInput freqStream;
   protected int count;
@@ -42,6 +45,27 @@ class SegmentTermDocs implements TermDocs {
   
   protected boolean currentFieldStoresPayloads;
   protected boolean currentFieldOmitTermFreqAndPositions;
+  protected boolean currentFieldStoresEmbeddedSorts;
+
+  private String currentField;
+  private byte[] currentNorms;
+  private boolean currentNormsLoaded;
+
+  // embedded sort values of the current doc, -1 for unset slots;
+  // wide enough for any slot so that searchers may pick their
+  // own schema width
+  private final int[] sorts = new int[EmbeddedSortsBuffer.MAX_SLOTS];
+  
+  // embedded sort ranges the caller discards docs outside of;
+  // skip intervals whose summaries exclude one of them are
+  // passed over by the columnar read
+  private int numSortRanges;
+  private int[] sortRangeSlots = new int[2];
+  private int[] sortRangeMins = new int[2];
+  private int[] sortRangeMaxs = new int[2];
+  private int nextSortRangeCheck;
+  
+  private static final Byte NO_NORM = Byte.valueOf((byte) 0);
   
   protected SegmentTermDocs(SegmentReader parent) {
     this.parent = parent;
@@ -51,6 +75,7 @@ class SegmentTermDocs implements TermDocs {
     }
     this.skipInterval = parent.core.getTermsReader().getSkipInterval();
     this.maxSkipLevels = parent.core.getTermsReader().getMaxSkipLevels();
+    Arrays.fill(sorts, -1);
   }
 
   public void seek(Term term) throws IOException {
@@ -80,6 +105,14 @@ class SegmentTermDocs implements TermDocs {
     FieldInfo fi = parent.core.fieldInfos.fieldInfo(term.field);
     currentFieldOmitTermFreqAndPositions = (fi != null) ? fi.omitTermFreqAndPositions : false;
     currentFieldStoresPayloads = (fi != null) ? fi.storePayloads : false;
+    currentFieldStoresEmbeddedSorts = (fi != null) ? fi.storeEmbeddedSorts : false;
+    if (currentField != term.field) {
+      currentField = term.field;
+      currentNorms = null;
+      currentNormsLoaded = false;
+    }
+    Arrays.fill(sorts, -1);
+    numSortRanges = 0;
     if (ti == null) {
       df = 0;
     } else {
@@ -121,6 +154,8 @@ class SegmentTermDocs implements TermDocs {
         else
           freq = freqStream.readVInt();     // else read freq
       }
+      if (currentFieldStoresEmbeddedSorts)
+        readSorts(sorts);
       
       count++;
 
@@ -147,6 +182,8 @@ class SegmentTermDocs implements TermDocs {
           freq = 1;         // freq is one
         else
           freq = freqStream.readVInt();     // else read freq
+        if (currentFieldStoresEmbeddedSorts)
+          readSorts(sorts);
         count++;
 
         if (deletedDocs == null || !deletedDocs.get(doc)) {
@@ -164,6 +201,8 @@ class SegmentTermDocs implements TermDocs {
     while (i < length && count < df) {
       // manually inlined call to next() for speed
       doc += freqStream.readVInt();       
+      if (currentFieldStoresEmbeddedSorts)
+        readSorts(sorts);
       count++;
 
       if (deletedDocs == null || !deletedDocs.get(doc)) {
@@ -181,18 +220,22 @@ class SegmentTermDocs implements TermDocs {
   /** Overridden by SegmentTermPositions to skip in prox stream. */
   protected void skipProx(long proxPointer, int payloadLength) throws IOException {}
 
+  private DefaultSkipListReader skipListReader() {
+    if (skipListReader == null)
+      skipListReader = new DefaultSkipListReader((IndexInput) freqStream.clone(), maxSkipLevels, skipInterval); // lazily clone
+
+    if (!haveSkipped) {                          // lazily initialize skip stream
+      skipListReader.init(skipPointer, freqBasePointer, proxBasePointer, df, currentFieldStoresPayloads,
+                          currentFieldStoresEmbeddedSorts && parent.core.fieldInfos.hasSortSkipSummaries());
+      haveSkipped = true;
+    }
+    return skipListReader;
+  }
+
   /** Optimized implementation. */
   public boolean skipTo(int target) throws IOException {
     if (df >= skipInterval) {                      // optimized case
-      if (skipListReader == null)
-        skipListReader = new DefaultSkipListReader((IndexInput) freqStream.clone(), maxSkipLevels, skipInterval); // lazily clone
-
-      if (!haveSkipped) {                          // lazily initialize skip stream
-        skipListReader.init(skipPointer, freqBasePointer, proxBasePointer, df, currentFieldStoresPayloads);
-        haveSkipped = true;
-      }
-
-      int newCount = skipListReader.skipTo(target); 
+      int newCount = skipListReader().skipTo(target); 
       if (newCount > count) {
         freqStream.seek(skipListReader.getFreqPointer());
         skipProx(skipListReader.getProxPointer(), skipListReader.getPayloadLength());
@@ -211,20 +254,195 @@ class SegmentTermDocs implements TermDocs {
   }
 
 
-public int[] getSorts() {
-	throw new UnsupportedOperationException();
-}
+  /** Optimized implementation that also returns the norm and
+   *  the embedded sort values of each doc.  Either
+   *  <code>norms</code> or <code>sorts</code> may be null. */
+  public int read(final int[] docs, final int[] freqs, final byte[] norms, final int[][] sorts)
+          throws IOException {
+    final byte[] fieldNorms = norms != null ? currentNorms() : null;
+    final int length = docs.length;
+    int i = 0;
+    while (i < length && count < df) {
+      // manually inlined call to next() for speed
+      final int docCode = freqStream.readVInt();
+      if (currentFieldOmitTermFreqAndPositions) {
+        doc += docCode;
+        freq = 1;
+      } else {
+        doc += docCode >>> 1;       // shift off low bit
+        if ((docCode & 1) != 0)       // if low bit is set
+          freq = 1;         // freq is one
+        else
+          freq = freqStream.readVInt();     // else read freq
+      }
 
-public int getSort(int fieldNumber) {
-	throw new UnsupportedOperationException();
-}
+      // decode straight into the caller's row; a deleted
+      // doc's row is simply overwritten by the next doc
+      final int[] docSorts = sorts != null ? sorts[i] : this.sorts;
+      if (currentFieldStoresEmbeddedSorts)
+        readSorts(docSorts);
+      else if (sorts != null)
+        Arrays.fill(docSorts, -1);
+      count++;
 
-public int read(int[] docs, int[] freqs, byte[] norms, int[][] sorts)
-		throws IOException {
-	throw new UnsupportedOperationException();
-}
+      if (deletedDocs == null || !deletedDocs.get(doc)) {
+        docs[i] = doc;
+        freqs[i] = freq;
+        if (norms != null)
+          norms[i] = fieldNorms == null ? 0 : fieldNorms[doc];
+        ++i;
+      }
+    }
+    return i;
+  }
 
-public Byte norm() {
-	throw new UnsupportedOperationException();
-}
+  public void restrictSortRange(int slot, int min, int max) {
+    if (!currentFieldStoresEmbeddedSorts || !parent.core.fieldInfos.hasSortSkipSummaries() || df < skipInterval)
+      return;
+    if (numSortRanges == sortRangeSlots.length) {
+      sortRangeSlots = ArrayUtil.grow(sortRangeSlots);
+      sortRangeMins = ArrayUtil.grow(sortRangeMins);
+      sortRangeMaxs = ArrayUtil.grow(sortRangeMaxs);
+    }
+    sortRangeSlots[numSortRanges] = slot;
+    sortRangeMins[numSortRanges] = min;
+    sortRangeMaxs[numSortRanges] = max;
+    numSortRanges++;
+    nextSortRangeCheck = count;
+  }
+
+  /** Skips the following skip intervals, on the highest level
+   *  possible, as long as their summaries exclude one of the
+   *  sort ranges.  Called on skip interval boundaries. */
+  private void skipExcludedIntervals() throws IOException {
+    final DefaultSkipListReader skipListReader = skipListReader();
+    // make the entries ending past the current doc pending
+    int newCount = skipListReader.skipTo(doc + 1);
+    // before the first doc, the first interval may have been
+    // passed already; its docs still have to be read
+    while (newCount <= count) {
+      int level = skipListReader.getNumberOfSkipLevels() - 1;
+      while (level >= 0 && !skipListReader.excludes(level, numSortRanges, sortRangeSlots, sortRangeMins, sortRangeMaxs))
+        level--;
+      if (level < 0)
+        break;
+      newCount = skipListReader.skipTo(skipListReader.getSkipDoc(level) + 1);
+      freqStream.seek(skipListReader.getFreqPointer());
+      skipProx(skipListReader.getProxPointer(), skipListReader.getPayloadLength());
+      doc = skipListReader.getDoc();
+      count = newCount;
+    }
+    if (newCount > count) {
+      nextSortRangeCheck = newCount;
+    } else {
+      // skip entries sit after every skipInterval-th doc but the last
+      nextSortRangeCheck = ((count + 1) / skipInterval + 1) * skipInterval - 1;
+    }
+  }
+
+  /** Optimized implementation that stores the embedded sort
+   *  values in columns of <code>docs.length</code> values.
+   *  Honors the ranges given to {@link #restrictSortRange}. */
+  public int read(final int[] docs, final int[] freqs, final byte[] norms, final int[] sorts, final int numSlots)
+          throws IOException {
+    final byte[] fieldNorms = norms != null ? currentNorms() : null;
+    final int length = docs.length;
+    int i = 0;
+    while (i < length && count < df) {
+      if (numSortRanges != 0 && count >= nextSortRangeCheck) {
+        skipExcludedIntervals();
+        if (count == df)
+          break;
+      }
+      // manually inlined call to next() for speed
+      final int docCode = freqStream.readVInt();
+      if (currentFieldOmitTermFreqAndPositions) {
+        doc += docCode;
+        freq = 1;
+      } else {
+        doc += docCode >>> 1;       // shift off low bit
+        if ((docCode & 1) != 0)       // if low bit is set
+          freq = 1;         // freq is one
+        else
+          freq = freqStream.readVInt();     // else read freq
+      }
+
+      // as above, a deleted doc's values are overwritten by the next doc
+      if (currentFieldStoresEmbeddedSorts) {
+        readSortColumns(sorts, numSlots, i, length);
+      } else {
+        for (int slot = 0, pos = i; slot < numSlots; slot++, pos += length)
+          sorts[pos] = -1;
+      }
+      count++;
+
+      if (deletedDocs == null || !deletedDocs.get(doc)) {
+        docs[i] = doc;
+        freqs[i] = freq;
+        if (norms != null)
+          norms[i] = fieldNorms == null ? 0 : fieldNorms[doc];
+        ++i;
+      }
+    }
+    return i;
+  }
+
+  /** Columnar variant of {@link #readSorts(int[])}: slot
+   *  <code>s</code> goes to <code>sorts[s * stride + column]</code>. */
+  private final void readSortColumns(final int[] sorts, final int numSlots, final int column, final int stride)
+          throws IOException {
+    int mask = freqStream.readVInt();
+    int pos = column;
+    for (int slot = 0; slot < numSlots; slot++, pos += stride, mask >>>= 1) {
+      sorts[pos] = (mask & 1) != 0 ? freqStream.readVInt() : -1;
+    }
+    // skip the values of slots the caller did not ask for
+    for (; mask != 0; mask >>>= 1) {
+      if ((mask & 1) != 0)
+        freqStream.readVInt();
+    }
+  }
+
+  /** Decodes the embedded sort values written by {@link
+   *  FormatPostingsDocsWriter} after each doc/freq entry.
+   *  Slots beyond the length of <code>row</code> are read
+   *  and dropped. */
+  private final void readSorts(final int[] row) throws IOException {
+    Arrays.fill(row, -1);
+    int mask = freqStream.readVInt();
+    for (int slot = 0; mask != 0; slot++, mask >>>= 1) {
+      if ((mask & 1) != 0) {
+        final int value = freqStream.readVInt();
+        if (slot < row.length)
+          row[slot] = value;
+      }
+    }
+  }
+
+  private final byte[] currentNorms() throws IOException {
+    if (!currentNormsLoaded) {
+      currentNorms = currentField == null ? null : parent.norms(currentField);
+      currentNormsLoaded = true;
+    }
+    return currentNorms;
+  }
+
+  /** Returns the embedded sort values of the current doc.
+   *  The returned array is reused for the next doc. */
+  public int[] getSorts() {
+    return sorts;
+  }
+
+  public int getSort(int fieldNumber) {
+    return sorts[fieldNumber];
+  }
+
+  public Byte norm() {
+    try {
+      final byte[] fieldNorms = currentNorms();
+      return fieldNorms == null ? NO_NORM : Byte.valueOf(fieldNorms[doc]);
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
 }
@@ -145,6 +145,11 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
       if (termInfo.docFreq >= skipInterval) 
         termInfo.skipOffset = input.readVInt();
     }
+
+    if (format <= TermInfosWriter.FORMAT_MAX_FREQ)
+      termInfo.maxFreq = input.readVInt();
+    else
+      termInfo.maxFreq = -1;
     
     if (isIndex)
       indexPointer += input.readVLong();	  // read index pointer
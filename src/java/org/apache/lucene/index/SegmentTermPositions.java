@@ -107,6 +107,14 @@ extends SegmentTermDocs implements TermPositions {
     throw new UnsupportedOperationException("TermPositions does not support processing multiple documents in one call. Use TermDocs instead.");
   }
 
+  public final int read(final int[] docs, final int[] freqs, final byte[] norms, final int[][] sorts) {
+    throw new UnsupportedOperationException("TermPositions does not support processing multiple documents in one call. Use TermDocs instead.");
+  }
+
+  public final int read(final int[] docs, final int[] freqs, final byte[] norms, final int[] sorts, final int numSlots) {
+    throw new UnsupportedOperationException("TermPositions does not support processing multiple documents in one call. Use TermDocs instead.");
+  }
+
 
   /** Called by super.skipTo(). */
   protected void skipProx(long proxPointer, int payloadLength) throws IOException {
@@ -0,0 +1,38 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Optional capability of a {@link TermDocs} that can leave out entries
+ * whose embedded sort values fall outside given ranges. Callers check for
+ * it with <code>instanceof</code>, as {@link
+ * org.apache.lucene.util.ReaderUtil#restrictSortRange} does, and must
+ * still test every entry they read themselves.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public interface SortRangeTermDocs {
+
+  /** Hints that the caller discards every entry whose embedded sort value
+   * for slot <i>slot</i> (0-based, -1 if unset) lies outside
+   * [<i>min</i>, <i>max</i>]. Implementations may then leave out such
+   * entries, e.g. by skipping whole blocks of postings, but need not.
+   * Several ranges may be given; {@link TermDocs#seek(Term)} clears them. */
+  void restrictSortRange(int slot, int min, int max);
+}
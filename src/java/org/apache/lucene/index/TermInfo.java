@@ -26,6 +26,9 @@ final class TermInfo {
   long freqPointer = 0;
   long proxPointer = 0;
   int skipOffset;
+  /** The highest within-document frequency of the term, or -1 if the
+   *  segment predates it. */
+  int maxFreq = -1;
 
   TermInfo() {}
 
@@ -40,6 +43,7 @@ final class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxFreq = ti.maxFreq;
   }
 
   final void set(int docFreq,
@@ -55,5 +59,6 @@ final class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxFreq = ti.maxFreq;
   }
 }
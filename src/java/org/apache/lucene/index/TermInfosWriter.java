@@ -34,8 +34,12 @@ final class TermInfosWriter {
   // length-in-chars
   public static final int FORMAT_VERSION_UTF8_LENGTH_IN_BYTES = -4;
 
+  // Each term records the highest within-document frequency
+  // of its postings, which bounds its score
+  public static final int FORMAT_MAX_FREQ = -5;
+
   // NOTE: always change this if you switch to a new format!
-  public static final int FORMAT_CURRENT = FORMAT_VERSION_UTF8_LENGTH_IN_BYTES;
+  public static final int FORMAT_CURRENT = FORMAT_MAX_FREQ;
 
   private FieldInfos fieldInfos;
   private IndexOutput output;
@@ -177,6 +181,7 @@ final class TermInfosWriter {
     if (ti.docFreq >= skipInterval) {
       output.writeVInt(ti.skipOffset);
     }
+    output.writeVInt(ti.maxFreq);                       // write max freq
 
     if (isIndex) {
       output.writeVLong(other.output.getFilePointer() - lastIndexPointer);
@@ -0,0 +1,189 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Expert: a {@link FieldCache} that also returns its values behind
+ * per-document accessors, such as {@link FieldCache.Ints}, rather than as
+ * arrays, so that they may be held anywhere. {@link FieldCache#DEFAULT}
+ * implements it; callers check for it with <code>instanceof</code>, and
+ * wrap the arrays of other caches. It may also bound the size of the
+ * values it holds, and tell how it has been used.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ *
+ * @see PackedFieldCache
+ */
+public interface AccessorFieldCache extends FieldCache {
+
+  /** Returns the values of {@link FieldCache#getBytes(IndexReader,String,ByteParser)}
+   * behind an accessor. The parser may be null, to use the default one.
+   * @throws IOException  If any error occurs.
+   */
+  public Bytes getByteValues (IndexReader reader, String field, ByteParser parser)
+  throws IOException;
+
+  /** Returns the values of {@link FieldCache#getShorts(IndexReader,String,ShortParser)}
+   * behind an accessor. The parser may be null, to use the default one.
+   * @throws IOException  If any error occurs.
+   */
+  public Shorts getShortValues (IndexReader reader, String field, ShortParser parser)
+  throws IOException;
+
+  /** Returns the values of {@link FieldCache#getInts(IndexReader,String,IntParser)}
+   * behind an accessor. The parser may be null, to use the default one.
+   * @throws IOException  If any error occurs.
+   */
+  public Ints getIntValues (IndexReader reader, String field, IntParser parser)
+  throws IOException;
+
+  /** Returns the values of {@link FieldCache#getLongs(IndexReader,String,LongParser)}
+   * behind an accessor. The parser may be null, to use the default one.
+   * @throws IOException  If any error occurs.
+   */
+  public Longs getLongValues (IndexReader reader, String field, LongParser parser)
+  throws IOException;
+
+  /** Returns the values of {@link FieldCache#getFloats(IndexReader,String,FloatParser)}
+   * behind an accessor. The parser may be null, to use the default one.
+   * @throws IOException  If any error occurs.
+   */
+  public Floats getFloatValues (IndexReader reader, String field, FloatParser parser)
+  throws IOException;
+
+  /** Returns the values of {@link FieldCache#getDoubles(IndexReader,String,DoubleParser)}
+   * behind an accessor. The parser may be null, to use the default one.
+   * @throws IOException  If any error occurs.
+   */
+  public Doubles getDoubleValues (IndexReader reader, String field, DoubleParser parser)
+  throws IOException;
+
+  /** Returns the terms and ordinals of {@link FieldCache#getStringIndex} behind an
+   * accessor.
+   * @throws IOException  If any error occurs.
+   */
+  public DocTermsIndex getTermsIndex (IndexReader reader, String field)
+  throws IOException;
+
+  /** Checks the internal cache for an appropriate entry, and if none
+   * is found, reads all terms of <code>field</code> and returns, for each
+   * document, the ordinals of all its terms, unlike {@link #getTermsIndex}
+   * which keeps one. Ordinals are bit-packed, and terms are held as UTF-8
+   * bytes in a {@link org.apache.lucene.util.TermPool}.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the terms.
+   * @return The terms and the ordinals of each document.
+   * @throws IOException  If any error occurs.
+   */
+  public DocTermOrds getDocTermOrds (IndexReader reader, String field)
+  throws IOException;
+
+  /**
+   * Expert: bounds the estimated size of the values held, by default
+   * unbounded. Once a value is loaded that goes past the bound, the values
+   * that were returned least recently are dropped until the others fit,
+   * and are loaded again when next asked for. The value just loaded is
+   * always kept. Sizes are estimated once per value, as it loads, from the
+   * lengths of its arrays; values kept elsewhere count what they take
+   * there.
+   * <p>
+   * Values still in use, for example by a running search, are only freed
+   * once that is done with them, so the bound is not a hard limit.
+   */
+  public void setMaxRamBytes(long maxRamBytes);
+
+  /** counterpart of {@link #setMaxRamBytes(long)} */
+  public long getMaxRamBytes();
+
+  /** Expert: returns how this cache has been used, up to now. */
+  public Stats getStats();
+
+  /**
+   * Expert: how an {@link AccessorFieldCache} has been used: each value asked for
+   * is either a hit, if it was held already, or a miss that loads it.
+   * Values loaded to make up another, like those of the default parser
+   * for a null one, count too.
+   *
+   * <b>NOTE:</b> This API is experimental and might change in
+   * incompatible ways in the next release.
+   */
+  public static final class Stats {
+    private final long hitCount;
+    private final long missCount;
+    private final long loadNanos;
+    private final long evictionCount;
+    private final int entryCount;
+    private final long ramBytesUsed;
+
+    Stats(long hitCount, long missCount, long loadNanos, long evictionCount, int entryCount, long ramBytesUsed) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.loadNanos = loadNanos;
+      this.evictionCount = evictionCount;
+      this.entryCount = entryCount;
+      this.ramBytesUsed = ramBytesUsed;
+    }
+
+    public long getHitCount() {
+      return hitCount;
+    }
+
+    public long getMissCount() {
+      return missCount;
+    }
+
+    /** Returns the fraction of values asked for that were held already. */
+    public double getHitRate() {
+      final long count = hitCount + missCount;
+      return count == 0 ? 0 : (double) hitCount / count;
+    }
+
+    /** Returns the nanoseconds spent loading values, summed over threads. */
+    public long getLoadNanos() {
+      return loadNanos;
+    }
+
+    /** Returns the number of values dropped to stay within {@link #getMaxRamBytes()}. */
+    public long getEvictionCount() {
+      return evictionCount;
+    }
+
+    /** Returns the number of values held. */
+    public int getEntryCount() {
+      return entryCount;
+    }
+
+    /** Returns the estimated size of the values held, counting each value once. */
+    public long getRamBytesUsed() {
+      return ramBytesUsed;
+    }
+
+    public String toString() {
+      return "hits=" + hitCount + " misses=" + missCount + " loadMillis=" + loadNanos / 1000000
+        + " evictions=" + evictionCount + " entries=" + entryCount
+        + " ram=" + RamUsageEstimator.humanReadableUnits(ramBytesUsed, new DecimalFormat("0.#"));
+    }
+  }
+}
@@ -323,11 +323,28 @@ public class BooleanQuery extends Query {
         // no documents will be matched by the query
         return null;
       }
+
+      // A top-level pure disjunction whose clauses bound their scores can
+      // skip hits that cannot compete
+      if (topScorer && required.size() == 0 && prohibited.size() == 0
+          && minNrShouldMatch <= 1 && optional.size() > 1 && allBounded(optional)) {
+        return new MaxScoreScorer(similarity, optional);
+      }
       
       // Return a BooleanScorer2
       return new BooleanScorer2(similarity, minNrShouldMatch, required, prohibited, optional);
     }
     
+    private boolean allBounded(List scorers) {
+      for (Iterator it = scorers.iterator(); it.hasNext();) {
+        float maxScore = ((Scorer) it.next()).getMaxScore();
+        if (Float.isInfinite(maxScore) || Float.isNaN(maxScore)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     public boolean scoresDocsOutOfOrder() {
       int numProhibited = 0;
       for (Iterator cIter = clauses.iterator(); cIter.hasNext();) {
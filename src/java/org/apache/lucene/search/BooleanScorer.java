@@ -57,9 +57,7 @@ import org.apache.lucene.index.IndexReader;
  * updates for the optional terms. */
 
 final class BooleanScorer extends Scorer {
-	
-	private int[] sorts = new int[Scorer.numSort];
-	
+  
   private static final class BooleanScorerCollector extends Collector {
     private BucketTable bucketTable;
     private int mask;
@@ -81,7 +79,9 @@ final class BooleanScorer extends Scorer {
         bucket.score = scorer.score();            // initialize score
         bucket.bits = mask;                       // initialize mask
         bucket.coord = 1;                         // initialize coord
-        copySorts(scorer.getSorts(), bucket.sorts);
+        // the sub scorer moves on before the bucket is collected; the
+        // row is kept with the bucket and reused by later windows
+        bucket.sorts = copyOfSorts(sort, bucket.sorts);
         
         bucket.next = table.first;                // push onto valid list
         table.first = bucket;
@@ -114,7 +114,7 @@ final class BooleanScorer extends Scorer {
 
     float score;
     int doc = NO_MORE_DOCS;
-    int[] sorts = new int[Scorer.numSort];
+    int[] sorts = NO_SORTS;
     
     public BucketScorer() { super(null); }
     
@@ -153,7 +153,7 @@ final class BooleanScorer extends Scorer {
     int bits;                // used for bool constraints
     int coord;               // count of terms in score
     Bucket next;             // next valid bucket
-    int[] sorts = new int[Scorer.numSort];
+    int[] sorts = NO_SORTS;
   }
   
   /** A simple hash table of document scores within a range. */
@@ -264,7 +264,7 @@ final class BooleanScorer extends Scorer {
           if (current.coord >= minNrShouldMatch) {
             bs.score = current.score * coordFactors[current.coord];
             bs.doc = current.doc;
-            copySorts(current.sorts, bs.sorts);
+            bs.sorts = current.sorts;
             collector.collect(current.doc, current.sorts);
           }
         }
@@ -330,9 +330,7 @@ final class BooleanScorer extends Scorer {
         if ((current.bits & prohibitedMask) == 0 &&
             (current.bits & requiredMask) == requiredMask &&
             current.coord >= minNrShouldMatch) {
-          doc = current.doc;
-          copySorts(current.sorts, this.sorts);
-          return doc;
+          return doc = current.doc;
         }
       }
 
@@ -384,11 +382,11 @@ final class BooleanScorer extends Scorer {
   }
 
 	public int getSort(int fieldNumber) {
-		return this.sorts[fieldNumber];
+		return current.sorts[fieldNumber];
 	}
 
 	public int[] getSorts() {
-		return this.sorts;
+		return current.sorts;
 	}
 
 }
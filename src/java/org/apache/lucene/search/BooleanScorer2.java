@@ -61,10 +61,7 @@ class BooleanScorer2 extends Scorer {
   private final int minNrShouldMatch;
   
   private int doc = -1;
-  
-  /** added for solbase project */
-  private int[] sorts = new int[Scorer.numSort];
-	
+
   /**
    * Creates a {@link Scorer} with the given similarity and lists of required,
    * prohibited and optional scorers. In no required scorers are added, at least
@@ -151,6 +148,12 @@ class BooleanScorer2 extends Scorer {
     public Explanation explain(int docNr) throws IOException {
       return scorer.explain(docNr);
     }
+    public int cost() {
+      return scorer.cost();
+    }
+    void restrict(EmbeddedFilterProgram program) {
+      scorer.restrict(program);
+    }
 
 	public int getSort(int fieldNumber) {
 		return this.scorer.getSort(fieldNumber);
@@ -300,11 +303,9 @@ class BooleanScorer2 extends Scorer {
 	public void score(Collector collector) throws IOException {
 		collector.setScorer(this);
 		doc = countingSumScorer.nextDoc();
-		copySorts();
 		while (doc != NO_MORE_DOCS) {
 			collector.collect(doc, countingSumScorer.getSorts());
 			doc = countingSumScorer.nextDoc();
-			copySorts();
 		}
 	}
 
@@ -327,7 +328,6 @@ class BooleanScorer2 extends Scorer {
 		while (doc < max) {
 			collector.collect(doc, countingSumScorer.getSorts());
 			doc = countingSumScorer.nextDoc();
-			copySorts();
 		}
 		return doc != NO_MORE_DOCS;
 	}
@@ -346,7 +346,6 @@ class BooleanScorer2 extends Scorer {
 
 	public int nextDoc() throws IOException {
 		doc = countingSumScorer.nextDoc();
-		copySorts();
 		return doc;
 	}
   
@@ -363,10 +362,17 @@ class BooleanScorer2 extends Scorer {
 
 	public int advance(int target) throws IOException {
 		doc = countingSumScorer.advance(target);
-		copySorts();
 		return doc;
 	}
   
+  public int cost() {
+    return countingSumScorer.cost();
+  }
+
+  void restrict(EmbeddedFilterProgram program) {
+    countingSumScorer.restrict(program);
+  }
+
   /** Throws an UnsupportedOperationException.
    * TODO: Implement an explanation of the coordination factor.
    * @param doc The document number for the explanation.
@@ -380,17 +386,13 @@ class BooleanScorer2 extends Scorer {
   */
   }
 
-	private void copySorts() {
-		int[] sorts = countingSumScorer.getSorts();
-		DocIdSetIterator.copySorts(sorts, this.sorts);
-	}
-	
+	// countingSumScorer is always on the current doc, so its sorts need no copy
 	public int getSort(int fieldNumber) {
-		return sorts[fieldNumber];
+		return countingSumScorer.getSort(fieldNumber);
 	}
 
 	public int[] getSorts() {
-		return sorts;
+		return countingSumScorer.getSorts();
 	}
 }
 
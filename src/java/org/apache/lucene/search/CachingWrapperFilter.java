@@ -30,6 +30,10 @@ import java.util.Map;
 /**
  * Wraps another filter's result and caches it.  The purpose is to allow
  * filters to simply filter, and then wrap with this class to add caching.
+ * <p>
+ * The sets of each segment are kept for as long as the segment is, without
+ * bound. To cache the sets of many filters within one bound on their
+ * bytes, use a {@link SegmentFilterCache}.
  */
 public class CachingWrapperFilter extends Filter {
   protected Filter filter;
@@ -17,24 +17,15 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
-import org.apache.lucene.util.PriorityQueue;
+/**
+ * Thrown by {@link Collector#collect(int, int[])} to stop collecting the
+ * current segment. {@link IndexSearcher} catches it and moves on to the
+ * next segment.
+ */
+public final class CollectionTerminatedException extends RuntimeException {
 
-final class PhraseQueue extends PriorityQueue {
-  PhraseQueue(int size) {
-    initialize(size);
+  public CollectionTerminatedException() {
+    super();
   }
 
-  protected final boolean lessThan(Object o1, Object o2) {
-    PhrasePositions pp1 = (PhrasePositions)o1;
-    PhrasePositions pp2 = (PhrasePositions)o2;
-    if (pp1.doc == pp2.doc) 
-      if (pp1.position == pp2.position)
-        // same doc and pp.position, so decide by actual term positions. 
-        // rely on: pp.position == tp.position - offset. 
-        return pp1.offset < pp2.offset;
-      else
-        return pp1.position < pp2.position;
-    else
-      return pp1.doc < pp2.doc;
-  }
 }
@@ -22,94 +22,85 @@ import java.util.Collection;
 import java.util.Arrays;
 import java.util.Comparator;
 
-/** Scorer for conjunctions, sets of queries, all of which are required. */
+/** Scorer for conjunctions, sets of queries, all of which are required.
+ * <p>
+ * The clauses are ordered by their {@link Scorer#cost()}. The cheapest one
+ * leads: it proposes each candidate, and the others are advanced to it in
+ * order of cost, the first to overshoot sending the lead after it. Filter
+ * iterators may be folded in as clauses that do not score; they are
+ * checked after the scoring clauses.
+ */
 class ConjunctionScorer extends Scorer {
   
-  private final Scorer[] scorers;
+  private final Scorer[] scorers;               // in the order given, for scoring
+  private final Scorer lead;                    // the cheapest scorer
+  private final DocIdSetIterator[] others;      // cheapest first, filters last
   private final float coord;
   private int lastDoc = -1;
-  private int[] lastSorts = new int[Scorer.numSort];
   
   public ConjunctionScorer(Similarity similarity, Collection scorers) throws IOException {
     this(similarity, (Scorer[]) scorers.toArray(new Scorer[scorers.size()]));
   }
 
   public ConjunctionScorer(Similarity similarity, Scorer[] scorers) throws IOException {
+    this(similarity, scorers, new DocIdSetIterator[0]);
+  }
+
+  /** Creates a conjunction of <code>scorers</code> that only matches
+   * documents <code>filters</code> also contain. With a single scorer the
+   * score is that scorer's, without a coordination factor. */
+  ConjunctionScorer(Similarity similarity, Scorer[] scorers, DocIdSetIterator[] filters) {
     super(similarity);
     this.scorers = scorers;
-    coord = similarity.coord(scorers.length, scorers.length);
-    
-    for (int i = 0; i < scorers.length; i++) {
-      if (scorers[i].nextDoc() == NO_MORE_DOCS) {
-        // If even one of the sub-scorers does not have any documents, this
-        // scorer should not attempt to do any more work.
-        lastDoc = NO_MORE_DOCS;
-        return;
-      }
-    }
+    coord = scorers.length == 1 ? 1.0f : similarity.coord(scorers.length, scorers.length);
 
-    // Sort the array the first time...
-    // We don't need to sort the array in any future calls because we know
-    // it will already start off sorted (all scorers on same doc).
-    
+    Scorer[] byCost = (Scorer[]) scorers.clone();
     // note that this comparator is not consistent with equals!
-    Arrays.sort(scorers, new Comparator() {         // sort the array
+    Arrays.sort(byCost, new Comparator() {
       public int compare(Object o1, Object o2) {
-        return ((Scorer) o1).docID() - ((Scorer) o2).docID();
+        int c1 = ((Scorer) o1).cost();
+        int c2 = ((Scorer) o2).cost();
+        return c1 < c2 ? -1 : (c1 == c2 ? 0 : 1);
       }
     });
-
-    // NOTE: doNext() must be called before the re-sorting of the array later on.
-    // The reason is this: assume there are 5 scorers, whose first docs are 1,
-    // 2, 3, 5, 5 respectively. Sorting (above) leaves the array as is. Calling
-    // doNext() here advances all the first scorers to 5 (or a larger doc ID
-    // they all agree on). 
-    // However, if we re-sort before doNext() is called, the order will be 5, 3,
-    // 2, 1, 5 and then doNext() will stop immediately, since the first scorer's
-    // docs equals the last one. So the invariant that after calling doNext() 
-    // all scorers are on the same doc ID is broken.
-    if (doNext() == NO_MORE_DOCS) {
-      // The scorers did not agree on any document.
-      lastDoc = NO_MORE_DOCS;
-      return;
-    }
-
-    // If first-time skip distance is any predictor of
-    // scorer sparseness, then we should always try to skip first on
-    // those scorers.
-    // Keep last scorer in it's last place (it will be the first
-    // to be skipped on), but reverse all of the others so that
-    // they will be skipped on in order of original high skip.
-    int end = scorers.length - 1;
-    int max = end >> 1;
-    for (int i = 0; i < max; i++) {
-      Scorer tmp = scorers[i];
-      int idx = end - i - 1;
-      scorers[i] = scorers[idx];
-      scorers[idx] = tmp;
-    }
+    lead = byCost[0];
+    others = new DocIdSetIterator[byCost.length - 1 + filters.length];
+    System.arraycopy(byCost, 1, others, 0, byCost.length - 1);
+    System.arraycopy(filters, 0, others, byCost.length - 1, filters.length);
   }
 
-  private int doNext() throws IOException {
-    int first = 0;
-    int doc = scorers[scorers.length - 1].docID();
-    copySorts(scorers[scorers.length - 1].getSorts(), this.lastSorts);
-    Scorer firstScorer;
-    while ((firstScorer = scorers[first]).docID() < doc) {
-      doc = firstScorer.advance(doc);
-      copySorts(firstScorer.getSorts(), this.lastSorts);
-      first = first == scorers.length - 1 ? 0 : first + 1;
+  // Leapfrogs from the lead's doc until all clauses agree
+  private int doNext(int doc) throws IOException {
+    advanceHead:
+    while (doc != NO_MORE_DOCS) {
+      for (int i = 0; i < others.length; i++) {
+        final DocIdSetIterator other = others[i];
+        int next = other.docID();
+        if (next < doc) {
+          next = other.advance(doc);
+        }
+        if (next > doc) {
+          if (next == NO_MORE_DOCS) {
+            return NO_MORE_DOCS;
+          }
+          doc = lead.advance(next);
+          continue advanceHead;
+        }
+      }
+      return doc;
     }
-    return doc;
+    return NO_MORE_DOCS;
   }
   
   public int advance(int target) throws IOException {
     if (lastDoc == NO_MORE_DOCS) {
       return lastDoc;
-    } else if (scorers[(scorers.length - 1)].docID() < target) {
-      scorers[(scorers.length - 1)].advance(target);
     }
-    return lastDoc = doNext();
+    int doc = lead.docID();
+    if (doc < target) {
+      doc = lead.advance(target);
+    }
+    return lastDoc = doNext(doc);
   }
 
   /** @deprecated use {@link #docID()} instead. */
@@ -131,11 +122,8 @@ class ConjunctionScorer extends Scorer {
   public int nextDoc() throws IOException {
     if (lastDoc == NO_MORE_DOCS) {
       return lastDoc;
-    } else if (lastDoc == -1) {
-      return lastDoc = scorers[scorers.length - 1].docID();
     }
-    scorers[(scorers.length - 1)].nextDoc();
-    return lastDoc = doNext();
+    return lastDoc = doNext(lead.nextDoc());
   }
   
   public float score() throws IOException {
@@ -148,16 +136,45 @@ class ConjunctionScorer extends Scorer {
     return sum * coord;
   }
 
+  /** The sum of the clauses' bounds, times the coordination factor. */
+  public float getMaxScore() {
+    float sum = 0.0f;
+    for (int i = 0; i < scorers.length; i++) {
+      sum += scorers[i].getMaxScore();
+    }
+    return sum * coord;
+  }
+
+  /** Passed on to a single scorer, as when a filter is folded into it;
+   * a threshold on a sum cannot be split among several. */
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+    if (scorers.length == 1) {
+      scorers[0].setMinCompetitiveScore(minScore);
+    }
+  }
+
+  /** The cost of the cheapest clause. */
+  public int cost() {
+    return lead.cost();
+  }
+
+  void restrict(EmbeddedFilterProgram program) {
+    // every match has to pass, so any clause may drop what fails
+    for (int i = 0; i < scorers.length; i++) {
+      scorers[i].restrict(program);
+    }
+  }
+
   /** @deprecated use {@link #advance(int)} instead. */
   public boolean skipTo(int target) throws IOException {
     return advance(target) != NO_MORE_DOCS;
   }
 
 	public int getSort(int fieldNumber) {
-		return lastSorts[fieldNumber];
+		return lead.getSort(fieldNumber);
 	}
 
 	public int[] getSorts() {
-		return lastSorts;
+		return lead.getSorts();
 	}
 }
@@ -54,9 +54,11 @@ public class ConstantScoreQuery extends Query {
     private Similarity similarity;
     private float queryNorm;
     private float queryWeight;
+    private EmbeddedSortSchema schema;
     
     public ConstantWeight(Searcher searcher) {
       this.similarity = getSimilarity(searcher);
+      this.schema = getEmbeddedSortSchema(searcher);
     }
 
     public Query getQuery() {
@@ -108,12 +110,14 @@ public class ConstantScoreQuery extends Query {
   protected class ConstantScorer extends Scorer {
     final DocIdSetIterator docIdSetIterator;
     final float theScore;
+    final int[] sorts;
     int doc = -1;
-    int[] sorts = new int[Scorer.numSort];
 
     public ConstantScorer(Similarity similarity, IndexReader reader, Weight w) throws IOException {
       super(similarity);
       theScore = w.getValue();
+      // filters hold no embedded sort values
+      sorts = w instanceof ConstantWeight ? ((ConstantWeight) w).schema.getUnsetSorts() : NO_SORTS;
       DocIdSet docIdSet = filter.getDocIdSet(reader);
       if (docIdSet == null) {
         docIdSetIterator = DocIdSet.EMPTY_DOCIDSET.iterator();
@@ -163,11 +167,11 @@ public class ConstantScoreQuery extends Query {
     }
 
 	public int getSort(int fieldNumber) {
-		return docIdSetIterator.getSort(fieldNumber);
+		return -1;
 	}
 
 	public int[] getSorts() {
-		return docIdSetIterator.getSorts();
+		return sorts;
 	}
   }
 
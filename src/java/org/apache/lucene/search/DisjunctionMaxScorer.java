@@ -33,8 +33,6 @@ class DisjunctionMaxScorer extends Scorer {
   private final float tieBreakerMultiplier;
   private int doc = -1;
 
-  	private int[] sorts = new int[Scorer.numSort];
-  	
   /**
    * Creates a new instance of DisjunctionMaxScorer
    * 
@@ -88,7 +86,6 @@ class DisjunctionMaxScorer extends Scorer {
     }
     
     doc = subScorers[0].docID();
-    copySorts(subScorers[0].getSorts(), this.sorts);
     return doc;
   }
 
@@ -151,7 +148,6 @@ class DisjunctionMaxScorer extends Scorer {
       }
     }
     doc = subScorers[0].docID();
-    copySorts(subScorers[0].getSorts(), this.sorts);
     return doc;
   }
 
@@ -222,11 +218,11 @@ class DisjunctionMaxScorer extends Scorer {
 
 
 	public int getSort(int fieldNumber) {
-		return this.sorts[fieldNumber];
+		return subScorers[0].getSort(fieldNumber);
 	}
 
 	public int[] getSorts() {
-		return this.sorts;
+		return subScorers[0].getSorts();
 	}
 
 }
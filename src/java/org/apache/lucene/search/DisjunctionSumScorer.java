@@ -54,7 +54,7 @@ class DisjunctionSumScorer extends Scorer {
   /** The document number of the current match. */
   private int currentDoc = -1;
   
-  private int[] currentSorts = new int[Scorer.numSort];
+  private int[] currentSorts = NO_SORTS;
 
   /** The number of subscorers that provide the current match. */
   protected int nrMatchers = -1;
@@ -196,7 +196,8 @@ class DisjunctionSumScorer extends Scorer {
   protected boolean advanceAfterCurrent() throws IOException {
     do { // repeat until minimum nr of matchers
       currentDoc = scorerDocQueue.topDoc();
-      copySorts(scorerDocQueue.getSorts(), this.currentSorts);
+      // the top scorer moves on below, so keep its row
+      this.currentSorts = copyOfSorts(scorerDocQueue.getSorts(), this.currentSorts);
       currentScore = scorerDocQueue.topScore();
       nrMatchers = 1;
       do { // Until all subscorers are after currentDoc
@@ -312,6 +313,15 @@ class DisjunctionSumScorer extends Scorer {
     return res;
   }
 
+  /** The sum of the costs of the subscorers. */
+  public int cost() {
+    long cost = 0;
+    for (Iterator si = subScorers.iterator(); si.hasNext();) {
+      cost += ((Scorer) si.next()).cost();
+    }
+    return (int) Math.min(cost, Integer.MAX_VALUE);
+  }
+
 	public int getSort(int fieldNumber) {
 		return currentSorts[fieldNumber];
 	}
@@ -38,14 +38,46 @@ public abstract class DocIdSetIterator {
    */
   public abstract int getSort(int fieldNumber);
   
+	/** Shared sort row of a schema without embedded sort slots. */
+	public static final int[] NO_SORTS = new int[0];
+
+	/**
+	 * Copies the sort values of <code>from</code> into <code>to</code>. Extra
+	 * values of <code>from</code> are dropped and slots it does not hold are
+	 * set to -1 (unset), so rows of different widths may be mixed.
+	 */
 	public static void copySorts(int[] from, int[] to) {
-		for (int i = 0; i < from.length; i++) {
-			to[i] = from[i];
+		final int n = Math.min(from.length, to.length);
+		System.arraycopy(from, 0, to, 0, n);
+		for (int i = n; i < to.length; i++) {
+			to[i] = -1;
+		}
+	}
+
+	/**
+	 * Returns a copy of <code>from</code>, reusing <code>reuse</code> when it
+	 * has the same width. Use it for rows that take whatever width the
+	 * {@link EmbeddedSortSchema} of the search has, starting from
+	 * {@link #NO_SORTS} so that searches without sort slots never allocate.
+	 */
+	public static int[] copyOfSorts(int[] from, int[] reuse) {
+		if (reuse.length != from.length) {
+			if (from.length == 0) {
+				return NO_SORTS;
+			}
+			reuse = new int[from.length];
 		}
+		System.arraycopy(from, 0, reuse, 0, from.length);
+		return reuse;
 	}
 	
   /*
    * added for solbase project to remove FieldCache for all sortable fields
+   *
+   * The returned row is owned by the iterator (usually a row of a leaf
+   * scorer's buffer, passed up the scorer tree by reference) and is only
+   * valid until the iterator moves. Collectors must copy the values they
+   * keep, and should do so only once a hit is accepted.
    */	
   public abstract int[] getSorts();
   
@@ -0,0 +1,252 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldValueHitQueue.Entry;
+import org.apache.lucene.util.IntIntHashMap;
+
+/**
+ * Collapses hits on an embedded sort slot, keeping the best hit (the group
+ * head) of each of the top <code>numGroups</code> groups under a
+ * {@link Sort}, in a single pass. Hits are ranked with the comparators of a
+ * {@link FieldValueHitQueue}, exactly as a {@link TopFieldCollector} with
+ * the same sort would rank them, and {@link #topDocs()} returns the heads
+ * as {@link FieldDoc}s in that order.
+ * <p>
+ * The group of a hit is the value of slot <code>fieldNumber</code> in the
+ * sort row it is collected with, so neither stored fields nor a
+ * {@link FieldCache} are read; hits whose slot is unset form one group,
+ * -1. The number of hits of every group seen is counted, including groups
+ * that do not make the top.
+ */
+public class EmbeddedCollapseCollector extends Collector {
+
+	private final int groupSlot;
+	private final int numGroups;
+	private final boolean trackDocScores;
+	private final FieldValueHitQueue queue;
+	private final FieldComparator[] comparators;
+
+	// group value -> comparator slot of its head, for the groups in the top
+	private final IntIntHashMap headSlots;
+	// group value -> hits, for every group
+	private final IntIntHashMap groupCounts = new IntIntHashMap();
+
+	// heads by comparator slot; a min-heap of slots, least competitive first
+	private final Entry[] heads;
+	private final int[] groups;
+	private final int[] heap;
+	private final int[] heapIndex;
+	private int size;
+
+	// the comparator slot a candidate is copied into before it is compared
+	private int spare;
+	private Entry spareEntry;
+
+	private Scorer scorer;
+	private int docBase;
+	private int totalHits;
+
+	/**
+	 * @param fieldNumber the slot to collapse on, numbered from 1 as in
+	 *          {@link EmbeddedFieldFilter}
+	 * @param sort how to rank hits within and across groups
+	 * @param numGroups the number of groups to return
+	 * @param trackDocScores whether to compute the score of group heads; if
+	 *          false their score is Float.NaN
+	 */
+	public EmbeddedCollapseCollector(int fieldNumber, Sort sort, int numGroups, boolean trackDocScores) throws IOException {
+		if (fieldNumber < 1) {
+			throw new IllegalArgumentException("fieldNumber must be > 0: " + fieldNumber);
+		}
+		if (numGroups <= 0) {
+			throw new IllegalArgumentException("numGroups must be > 0: " + numGroups);
+		}
+		this.groupSlot = fieldNumber - 1;
+		this.numGroups = numGroups;
+		this.trackDocScores = trackDocScores;
+		// one comparator slot more than there are heads, for the candidate
+		this.queue = FieldValueHitQueue.create(sort.getSort(), numGroups + 1);
+		this.comparators = queue.getComparators();
+		this.headSlots = new IntIntHashMap(numGroups);
+		this.heads = new Entry[numGroups + 1];
+		this.groups = new int[numGroups + 1];
+		this.heap = new int[numGroups + 1];
+		this.heapIndex = new int[numGroups + 1];
+		this.spare = numGroups;
+		this.spareEntry = new Entry(spare, -1, Float.NaN, DocIdSetIterator.NO_SORTS);
+	}
+
+	public void setScorer(Scorer scorer) throws IOException {
+		this.scorer = scorer;
+		for (int i = 0; i < comparators.length; i++) {
+			comparators[i].setScorer(scorer);
+		}
+	}
+
+	public void setNextReader(IndexReader reader, int docBase) throws IOException {
+		this.docBase = docBase;
+		for (int i = 0; i < comparators.length; i++) {
+			comparators[i].setNextReader(reader, docBase);
+		}
+	}
+
+	/** Ties are broken by docID, so hits may come in any order. */
+	public boolean acceptsDocsOutOfOrder() {
+		return true;
+	}
+
+	public void collect(int doc, int[] sorts) throws IOException {
+		totalHits++;
+		final int group = groupSlot < sorts.length ? sorts[groupSlot] : -1;
+		groupCounts.adjust(group, 1);
+
+		final int headSlot = headSlots.get(group, -1);
+		if (headSlot == -1 && size < numGroups) {
+			// a new group while there is room
+			final int slot = size;
+			copy(slot, doc);
+			heads[slot] = new Entry(slot, docBase + doc, trackDocScores ? scorer.score() : Float.NaN, sorts);
+			groups[slot] = group;
+			headSlots.put(group, slot);
+			heap[++size] = slot;
+			heapIndex[slot] = size;
+			upHeap(size);
+			return;
+		}
+
+		// compare against the group's head, or against the least competitive
+		// head when the group is not among the top
+		final int rival = headSlot != -1 ? headSlot : heap[1];
+		copy(spare, doc);
+		spareEntry.slot = spare;
+		spareEntry.docID = docBase + doc;
+		if (!queue.lessThan(heads[rival], spareEntry)) {
+			return;
+		}
+
+		// the candidate takes the rival's place in the heap, and the rival's
+		// comparator slot becomes the spare
+		final Entry entry = spareEntry;
+		entry.sorts = DocIdSetIterator.copyOfSorts(sorts, entry.sorts);
+		entry.score = trackDocScores ? scorer.score() : Float.NaN;
+		final int slot = spare;
+		final int pos = heapIndex[rival];
+		if (headSlot == -1) {
+			headSlots.remove(groups[rival], -1);
+		}
+		headSlots.put(group, slot);
+		heads[slot] = entry;
+		groups[slot] = group;
+		heap[pos] = slot;
+		heapIndex[slot] = pos;
+
+		spare = rival;
+		spareEntry = heads[rival];
+		heads[rival] = null;
+		// the new head is more competitive than the one it replaced
+		downHeap(pos);
+	}
+
+	private void copy(int slot, int doc) throws IOException {
+		for (int i = 0; i < comparators.length; i++) {
+			comparators[i].copy(slot, doc);
+		}
+	}
+
+	private void upHeap(int i) {
+		final int slot = heap[i];
+		int j = i >>> 1;
+		while (j > 0 && queue.lessThan(heads[slot], heads[heap[j]])) {
+			heap[i] = heap[j];
+			heapIndex[heap[i]] = i;
+			i = j;
+			j = j >>> 1;
+		}
+		heap[i] = slot;
+		heapIndex[slot] = i;
+	}
+
+	private void downHeap(int i) {
+		final int slot = heap[i];
+		int j = i << 1;
+		int k = j + 1;
+		if (k <= size && queue.lessThan(heads[heap[k]], heads[heap[j]])) {
+			j = k;
+		}
+		while (j <= size && queue.lessThan(heads[heap[j]], heads[slot])) {
+			heap[i] = heap[j];
+			heapIndex[heap[i]] = i;
+			i = j;
+			j = i << 1;
+			k = j + 1;
+			if (k <= size && queue.lessThan(heads[heap[k]], heads[heap[j]])) {
+				j = k;
+			}
+		}
+		heap[i] = slot;
+		heapIndex[slot] = i;
+	}
+
+	/** Returns the number of hits collected. */
+	public int getTotalHits() {
+		return totalHits;
+	}
+
+	/** Returns the number of distinct groups among the hits. */
+	public int getTotalGroupCount() {
+		return groupCounts.size();
+	}
+
+	/** Returns the number of hits in group <code>group</code>. */
+	public int getGroupHitCount(int group) {
+		return groupCounts.get(group, 0);
+	}
+
+	/** Returns the group of a hit returned by {@link #topDocs()}. */
+	public int getGroup(ScoreDoc hit) {
+		return groupSlot < hit.sorts.length ? hit.sorts[groupSlot] : -1;
+	}
+
+	/**
+	 * Returns the heads of the top groups, best first. The total hit count
+	 * of the result counts hits, not groups.
+	 * <p>
+	 * <b>NOTE:</b> call this once, after the search.
+	 */
+	public TopFieldDocs topDocs() {
+		for (int i = 1; i <= size; i++) {
+			queue.add(heads[heap[i]]);
+		}
+		final ScoreDoc[] results = new ScoreDoc[size];
+		for (int i = size - 1; i >= 0; i--) {
+			results[i] = queue.fillFields((Entry) queue.pop());
+		}
+		float maxScore = Float.NaN;
+		if (trackDocScores) {
+			maxScore = Float.NEGATIVE_INFINITY;
+			for (int i = 0; i < results.length; i++) {
+				maxScore = Math.max(maxScore, results[i].score);
+			}
+		}
+		return new TopFieldDocs(totalHits, results, queue.getFields(), results.length == 0 ? Float.NaN : maxScore);
+	}
+}
@@ -0,0 +1,94 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.EmbeddedIndexSort;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+
+/**
+ * Wraps a {@link Collector} that keeps the top hits by an embedded sort
+ * slot and stops collecting a segment once it has passed
+ * <code>numHits</code> docs on, if the segment was written in the same
+ * order (see {@link org.apache.lucene.index.IndexWriter#setEmbeddedIndexSort}).
+ * The docs that follow in such a segment cannot rank above the ones
+ * already collected. Unsorted segments are collected in full.
+ * <p>
+ * The wrapped collector must sort by the same slot and direction as the
+ * segments, breaking ties by docID; it no longer sees every hit, so its
+ * hit count is only a lower bound once {@link #isEarlyTerminated()}
+ * returns true.
+ *
+ * @see IndexSearcher#search(Query, Filter, int, Sort, EmbeddedIndexSort)
+ */
+public class EmbeddedEarlyTerminatingCollector extends Collector {
+
+	private final Collector in;
+	private final EmbeddedIndexSort indexSort;
+	private final int numHits;
+
+	private int segmentHits;
+	private boolean segmentSorted;
+	private boolean earlyTerminated;
+
+	public EmbeddedEarlyTerminatingCollector(Collector in, EmbeddedIndexSort indexSort, int numHits) {
+		if (numHits <= 0) {
+			throw new IllegalArgumentException("numHits must be > 0: " + numHits);
+		}
+		this.in = in;
+		this.indexSort = indexSort;
+		this.numHits = numHits;
+	}
+
+	public void setScorer(Scorer scorer) throws IOException {
+		in.setScorer(scorer);
+	}
+
+	public void collect(int doc, int[] sorts) throws IOException {
+		if (segmentSorted && segmentHits == numHits) {
+			// a hit past the first numHits: only now is one actually skipped
+			earlyTerminated = true;
+			throw new CollectionTerminatedException();
+		}
+		in.collect(doc, sorts);
+		segmentHits++;
+	}
+
+	public void setNextReader(IndexReader reader, int docBase) throws IOException {
+		in.setNextReader(reader, docBase);
+		segmentSorted = reader instanceof SegmentReader
+				&& indexSort.equals(((SegmentReader) reader).getEmbeddedIndexSort());
+		segmentHits = 0;
+	}
+
+	/** Docs must arrive in docID order to stop early. */
+	public boolean acceptsDocsOutOfOrder() {
+		return false;
+	}
+
+	/**
+	 * Returns true if collection of at least one segment stopped before all
+	 * its hits were seen; a segment with exactly <code>numHits</code> hits
+	 * is collected in full.
+	 */
+	public boolean isEarlyTerminated() {
+		return earlyTerminated;
+	}
+}
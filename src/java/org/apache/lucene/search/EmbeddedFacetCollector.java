@@ -0,0 +1,115 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * Counts hits per value of embedded sort slots, reading the sort row each
+ * hit is collected with instead of a {@link FieldCache}. Meant for low
+ * cardinality slots (category, type, region); numeric slots with many
+ * values are better counted by ranges.
+ * <p>
+ * The slots must be part of the searcher's {@link EmbeddedSortSchema};
+ * slots beyond it read as unset. Hits are optionally passed on to another
+ * collector, so facets and top hits come from one search:
+ *
+ * <pre>
+ * TopScoreDocCollector top = TopScoreDocCollector.create(10, true);
+ * EmbeddedFacetCollector facets = new EmbeddedFacetCollector(top);
+ * facets.addValueFacet(1);
+ * facets.addRangeFacet(2, new int[] { 0, 100, 1000, Integer.MAX_VALUE });
+ * searcher.search(query, facets);
+ * EmbeddedFacetCounts.Entry[] categories = facets.getCounts().getTopValues(1, 10);
+ * </pre>
+ *
+ * One collector may be used across all segments and all searchables of a
+ * {@link MultiSearcher}; counts from searches that cannot share a collector
+ * are combined with {@link EmbeddedFacetCounts#merge(EmbeddedFacetCounts)}.
+ */
+public class EmbeddedFacetCollector extends Collector {
+
+	private final Collector in;
+	private final EmbeddedFacetCounts counts = new EmbeddedFacetCounts();
+	private EmbeddedFacetCounts.Facet[] facets = counts.facets;
+
+	/** Creates a collector that only counts. */
+	public EmbeddedFacetCollector() {
+		this(null);
+	}
+
+	/** Creates a collector that counts and passes every hit on to <code>in</code>. */
+	public EmbeddedFacetCollector(Collector in) {
+		this.in = in;
+	}
+
+	/** Counts hits per distinct value of slot <code>fieldNumber</code> (from 1). */
+	public void addValueFacet(int fieldNumber) {
+		counts.addFacet(fieldNumber, null);
+		facets = counts.facets;
+	}
+
+	/**
+	 * Counts hits per range of slot <code>fieldNumber</code> (from 1). Range
+	 * <code>i</code> holds values from <code>bounds[i]</code> inclusive to
+	 * <code>bounds[i + 1]</code> exclusive; values outside all ranges are not
+	 * counted.
+	 */
+	public void addRangeFacet(int fieldNumber, int[] bounds) {
+		if (bounds == null) {
+			throw new IllegalArgumentException("bounds must not be null");
+		}
+		counts.addFacet(fieldNumber, bounds);
+		facets = counts.facets;
+	}
+
+	/** Returns the counts so far. */
+	public EmbeddedFacetCounts getCounts() {
+		return counts;
+	}
+
+	public void setScorer(Scorer scorer) throws IOException {
+		if (in != null) {
+			in.setScorer(scorer);
+		}
+	}
+
+	public void collect(int doc, int[] sorts) throws IOException {
+		counts.totalHits++;
+		final EmbeddedFacetCounts.Facet[] facets = this.facets;
+		for (int i = 0; i < facets.length; i++) {
+			int slot = facets[i].slot;
+			facets[i].count(slot < sorts.length ? sorts[slot] : -1);
+		}
+		if (in != null) {
+			in.collect(doc, sorts);
+		}
+	}
+
+	public void setNextReader(IndexReader reader, int docBase) throws IOException {
+		if (in != null) {
+			in.setNextReader(reader, docBase);
+		}
+	}
+
+	public boolean acceptsDocsOutOfOrder() {
+		return in == null || in.acceptsDocsOutOfOrder();
+	}
+}
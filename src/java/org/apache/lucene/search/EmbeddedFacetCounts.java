@@ -0,0 +1,271 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.apache.lucene.util.IntIntHashMap;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * Hit counts per embedded sort slot value, gathered by an
+ * {@link EmbeddedFacetCollector}. Slot values are the same in every
+ * segment and every index, so counts from separate searches (for example
+ * one per {@link Searchable} of a {@link MultiSearcher}, possibly remote)
+ * are combined with {@link #merge(EmbeddedFacetCounts)}.
+ * <p>
+ * A slot is counted either per distinct value or per range of values.
+ * Unset values are counted apart, see {@link #getMissingCount(int)}.
+ */
+public class EmbeddedFacetCounts implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** A slot value and the number of hits that have it. */
+	public static class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public int value;
+		public int count;
+
+		public Entry(int value, int count) {
+			this.value = value;
+			this.count = count;
+		}
+
+		public String toString() {
+			return value + "=" + count;
+		}
+	}
+
+	static final class Facet implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final int slot;
+		// null when counting distinct values
+		final int[] bounds;
+		final IntIntHashMap values;
+		final int[] rangeCounts;
+		int missing;
+
+		Facet(int slot, int[] bounds) {
+			this.slot = slot;
+			this.bounds = bounds;
+			this.values = bounds == null ? new IntIntHashMap() : null;
+			this.rangeCounts = bounds == null ? null : new int[bounds.length - 1];
+		}
+
+		void count(int value) {
+			if (value == -1) {
+				missing++;
+			} else if (bounds == null) {
+				values.adjust(value, 1);
+			} else {
+				// the last bound that is <= value starts its range
+				int i = Arrays.binarySearch(bounds, value);
+				if (i < 0) {
+					i = -i - 2;
+				}
+				if (i >= 0 && i < rangeCounts.length) {
+					rangeCounts[i]++;
+				}
+			}
+		}
+	}
+
+	Facet[] facets = new Facet[0];
+	int totalHits;
+
+	EmbeddedFacetCounts() {
+	}
+
+	void addFacet(int fieldNumber, int[] bounds) {
+		if (fieldNumber < 1) {
+			throw new IllegalArgumentException("fieldNumber must be > 0: " + fieldNumber);
+		}
+		if (find(fieldNumber) != null) {
+			throw new IllegalArgumentException("slot " + fieldNumber + " is already counted");
+		}
+		if (bounds != null) {
+			if (bounds.length < 2) {
+				throw new IllegalArgumentException("need at least two bounds for one range");
+			}
+			for (int i = 1; i < bounds.length; i++) {
+				if (bounds[i] <= bounds[i - 1]) {
+					throw new IllegalArgumentException("bounds must be strictly ascending");
+				}
+			}
+			bounds = (int[]) bounds.clone();
+		}
+		Facet[] newFacets = new Facet[facets.length + 1];
+		System.arraycopy(facets, 0, newFacets, 0, facets.length);
+		newFacets[facets.length] = new Facet(fieldNumber - 1, bounds);
+		facets = newFacets;
+	}
+
+	private Facet find(int fieldNumber) {
+		for (int i = 0; i < facets.length; i++) {
+			if (facets[i].slot == fieldNumber - 1) {
+				return facets[i];
+			}
+		}
+		return null;
+	}
+
+	private Facet getFacet(int fieldNumber, boolean ranges) {
+		Facet facet = find(fieldNumber);
+		if (facet == null) {
+			throw new IllegalArgumentException("slot " + fieldNumber + " is not counted");
+		}
+		if ((facet.bounds != null) != ranges) {
+			throw new IllegalArgumentException("slot " + fieldNumber + " is counted by "
+					+ (ranges ? "value" : "range"));
+		}
+		return facet;
+	}
+
+	/** Returns the number of hits counted. */
+	public int getTotalHits() {
+		return totalHits;
+	}
+
+	/** Returns the slots counted, numbered from 1. */
+	public int[] getFieldNumbers() {
+		int[] fieldNumbers = new int[facets.length];
+		for (int i = 0; i < facets.length; i++) {
+			fieldNumbers[i] = facets[i].slot + 1;
+		}
+		return fieldNumbers;
+	}
+
+	/** Returns the number of hits whose slot <code>fieldNumber</code> is unset. */
+	public int getMissingCount(int fieldNumber) {
+		Facet facet = find(fieldNumber);
+		if (facet == null) {
+			throw new IllegalArgumentException("slot " + fieldNumber + " is not counted");
+		}
+		return facet.missing;
+	}
+
+	/** Returns the number of hits whose slot <code>fieldNumber</code> holds <code>value</code>. */
+	public int getCount(int fieldNumber, int value) {
+		return getFacet(fieldNumber, false).values.get(value, 0);
+	}
+
+	/** Returns the number of distinct values seen in slot <code>fieldNumber</code>. */
+	public int getNumValues(int fieldNumber) {
+		return getFacet(fieldNumber, false).values.size();
+	}
+
+	/**
+	 * Returns the <code>n</code> most frequent values of slot
+	 * <code>fieldNumber</code>, most frequent first; ties go to the smaller
+	 * value.
+	 */
+	public Entry[] getTopValues(int fieldNumber, int n) {
+		IntIntHashMap values = getFacet(fieldNumber, false).values;
+		int[] keys = values.keys();
+		int[] counts = values.values();
+		EntryQueue queue = new EntryQueue(Math.min(n, keys.length));
+		Entry spare = null;
+		for (int i = 0; i < keys.length; i++) {
+			if (spare == null) {
+				spare = new Entry(keys[i], counts[i]);
+			} else {
+				spare.value = keys[i];
+				spare.count = counts[i];
+			}
+			spare = (Entry) queue.insertWithOverflow(spare);
+		}
+		Entry[] top = new Entry[queue.size()];
+		for (int i = top.length - 1; i >= 0; i--) {
+			top[i] = (Entry) queue.pop();
+		}
+		return top;
+	}
+
+	/** Returns the bounds slot <code>fieldNumber</code> is counted by. */
+	public int[] getRangeBounds(int fieldNumber) {
+		return (int[]) getFacet(fieldNumber, true).bounds.clone();
+	}
+
+	/**
+	 * Returns the number of hits in each range of slot
+	 * <code>fieldNumber</code>; entry <code>i</code> counts values from
+	 * <code>bounds[i]</code> inclusive to <code>bounds[i + 1]</code>
+	 * exclusive.
+	 */
+	public int[] getRangeCounts(int fieldNumber) {
+		return (int[]) getFacet(fieldNumber, true).rangeCounts.clone();
+	}
+
+	/**
+	 * Adds the counts of <code>other</code> to this one. Both must count the
+	 * same slots the same way.
+	 */
+	public void merge(EmbeddedFacetCounts other) {
+		if (other.facets.length != facets.length) {
+			throw new IllegalArgumentException("counts of different slots cannot be merged");
+		}
+		for (int i = 0; i < facets.length; i++) {
+			Facet facet = facets[i];
+			Facet otherFacet = other.facets[i];
+			if (facet.slot != otherFacet.slot || !Arrays.equals(facet.bounds, otherFacet.bounds)) {
+				throw new IllegalArgumentException("counts of different slots cannot be merged");
+			}
+			facet.missing += otherFacet.missing;
+			if (facet.bounds == null) {
+				facet.values.adjustAll(otherFacet.values);
+			} else {
+				for (int j = 0; j < facet.rangeCounts.length; j++) {
+					facet.rangeCounts[j] += otherFacet.rangeCounts[j];
+				}
+			}
+		}
+		totalHits += other.totalHits;
+	}
+
+	/** Returns a new object holding the sum of <code>counts</code>. */
+	public static EmbeddedFacetCounts merge(EmbeddedFacetCounts[] counts) {
+		EmbeddedFacetCounts merged = new EmbeddedFacetCounts();
+		for (int i = 0; i < counts[0].facets.length; i++) {
+			Facet facet = counts[0].facets[i];
+			merged.addFacet(facet.slot + 1, facet.bounds);
+		}
+		for (int i = 0; i < counts.length; i++) {
+			merged.merge(counts[i]);
+		}
+		return merged;
+	}
+
+	private static final class EntryQueue extends PriorityQueue {
+		EntryQueue(int size) {
+			initialize(size);
+		}
+
+		protected boolean lessThan(Object a, Object b) {
+			Entry ea = (Entry) a;
+			Entry eb = (Entry) b;
+			if (ea.count != eb.count) {
+				return ea.count < eb.count;
+			}
+			return ea.value > eb.value;
+		}
+	}
+}
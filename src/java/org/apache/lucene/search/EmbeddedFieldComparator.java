@@ -284,6 +284,11 @@ public abstract class EmbeddedFieldComparator extends FieldComparator {
 		public Comparable value(int slot) {
 			return new Integer(values[slot]);
 		}
+
+		/** Returns the embedded slot sorted by, counting from 1. */
+		public int getFieldNumber() {
+			return fieldNumber;
+		}
 	}
 
 	/**
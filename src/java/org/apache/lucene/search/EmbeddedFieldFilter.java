@@ -12,4 +12,30 @@ public abstract class EmbeddedFieldFilter extends Filter{
 	}
 	
 	abstract boolean filter(int[] sort);
+
+	/**
+	 * Compiles this filter into a flat program that can be evaluated over a
+	 * whole block of sort values at once.
+	 */
+	public EmbeddedFilterProgram compile() {
+		EmbeddedFilterProgram.Compiler compiler = new EmbeddedFilterProgram.Compiler();
+		compile(compiler);
+		requireRanges(compiler);
+		return compiler.build();
+	}
+
+	/**
+	 * Records the ranges every doc this filter accepts must be in, so that
+	 * postings outside of them can be skipped.
+	 */
+	void requireRanges(EmbeddedFilterProgram.Compiler compiler) {
+	}
+
+	/**
+	 * Appends this filter to <code>compiler</code>. Subclasses without their
+	 * own instructions are called back per row through {@link #filter(int[])}.
+	 */
+	void compile(EmbeddedFilterProgram.Compiler compiler) {
+		compiler.call(this);
+	}
 }
@@ -0,0 +1,400 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * A tree of {@link EmbeddedFieldFilter}s compiled into a flat postfix
+ * program. The program can test a single sort row, or a whole block of
+ * sort values stored column by column (as filled by
+ * {@link org.apache.lucene.index.ColumnSortTermDocs#read(int[], int[], byte[], int[], int)}),
+ * producing a match bitmask with one tight loop per predicate.
+ * <p>
+ * A program is immutable and may be shared between threads; the scratch
+ * space needed for block evaluation lives in an {@link Evaluator}.
+ *
+ * @see EmbeddedFieldFilter#compile()
+ */
+public final class EmbeddedFilterProgram {
+
+	// opcodes; leaves push one value, NOT replaces the top value, AND and
+	// OR combine the top two values
+	static final int TRUE = 0;
+	static final int FALSE = 1;
+	static final int TERM = 2;   // slot, value
+	static final int RANGE = 3;  // slot, start, end
+	static final int IN = 4;     // slot, set index
+	static final int CALL = 5;   // filter index
+	static final int NOT = 6;
+	static final int AND = 7;
+	static final int OR = 8;
+
+	// the single row evaluation keeps its stack in the bits of a long
+	static final int MAX_DEPTH = 64;
+
+	private final int[] code;
+	private final int[][] sets;
+	private final EmbeddedFieldFilter[] calls;
+	private final int maxDepth;
+	// slot, start, end of every range a doc must be in to match
+	private final int[] requiredRanges;
+
+	private EmbeddedFilterProgram(int[] code, int[][] sets, EmbeddedFieldFilter[] calls, int maxDepth, int[] requiredRanges) {
+		this.code = code;
+		this.sets = sets;
+		this.calls = calls;
+		this.maxDepth = maxDepth;
+		this.requiredRanges = requiredRanges;
+	}
+
+	/**
+	 * Passes the ranges every matching doc must fall in down to
+	 * <code>termDocs</code>, so that it may skip postings that cannot match,
+	 * if it is a {@link org.apache.lucene.index.SortRangeTermDocs}. Either
+	 * way, the docs read must still be tested against the program.
+	 * Only slots below <code>numSlots</code> are passed; the program reads
+	 * the others as unset.
+	 */
+	public void restrict(TermDocs termDocs, int numSlots) {
+		for (int i = 0; i < requiredRanges.length; i += 3) {
+			if (requiredRanges[i] < numSlots) {
+				ReaderUtil.restrictSortRange(termDocs, requiredRanges[i], requiredRanges[i + 1], requiredRanges[i + 2]);
+			}
+		}
+	}
+
+	/** Returns true if the filter accepts the given sort row. */
+	public boolean matches(int[] sort) {
+		long stack = 0;
+		final int[] code = this.code;
+		for (int pc = 0; pc < code.length;) {
+			boolean value;
+			switch (code[pc]) {
+			case TRUE:
+				value = true;
+				pc++;
+				break;
+			case FALSE:
+				value = false;
+				pc++;
+				break;
+			case TERM: {
+				final int v = valueOf(sort, code[pc + 1]);
+				final int val = code[pc + 2];
+				value = v == -1 || val == -1 || v == val;
+				pc += 3;
+				break;
+			}
+			case RANGE: {
+				final int v = valueOf(sort, code[pc + 1]);
+				value = v >= code[pc + 2] && v <= code[pc + 3];
+				pc += 4;
+				break;
+			}
+			case IN: {
+				final int v = valueOf(sort, code[pc + 1]);
+				value = v == -1 || Arrays.binarySearch(sets[code[pc + 2]], v) >= 0;
+				pc += 3;
+				break;
+			}
+			case CALL:
+				value = calls[code[pc + 1]].filter(sort);
+				pc += 2;
+				break;
+			case NOT:
+				stack ^= 1;
+				pc++;
+				continue;
+			case AND:
+				stack = (stack >>> 1) & (stack | ~1L);
+				pc++;
+				continue;
+			case OR:
+				stack = (stack >>> 1) | (stack & 1);
+				pc++;
+				continue;
+			default:
+				throw new IllegalStateException("bad opcode " + code[pc]);
+			}
+			stack = (stack << 1) | (value ? 1 : 0);
+		}
+		return (stack & 1) != 0;
+	}
+
+	private static int valueOf(int[] sort, int slot) {
+		return slot < sort.length ? sort[slot] : -1;
+	}
+
+	/**
+	 * Creates an evaluator for blocks of up to <code>blockSize</code> docs
+	 * with <code>numSlots</code> sort columns each.
+	 */
+	public Evaluator newEvaluator(int numSlots, int blockSize) {
+		return new Evaluator(numSlots, blockSize);
+	}
+
+	/** Block evaluation state of a program; not thread safe. */
+	public final class Evaluator {
+		private final int numSlots;
+		private final int blockSize;
+		private final long[][] stack;
+		private final int[] row;
+
+		Evaluator(int numSlots, int blockSize) {
+			this.numSlots = numSlots;
+			this.blockSize = blockSize;
+			final int words = (blockSize + 63) >>> 6;
+			this.stack = new long[maxDepth][words];
+			this.row = new int[numSlots];
+		}
+
+		/**
+		 * Evaluates the program over the first <code>count</code> docs of a
+		 * block. The value of slot <i>s</i> of doc <i>i</i> is
+		 * <code>columns[s * blockSize + i]</code>. Bit <i>i</i> of the returned
+		 * mask is set if doc <i>i</i> matches; the mask is reused by the next
+		 * call.
+		 */
+		public long[] evaluate(int[] columns, int count) {
+			final int words = (count + 63) >>> 6;
+			final long lastMask = (count & 63) == 0 ? -1L : (1L << count) - 1;
+			int sp = -1;
+			final int[] code = EmbeddedFilterProgram.this.code;
+			for (int pc = 0; pc < code.length;) {
+				switch (code[pc]) {
+				case TRUE:
+				case FALSE: {
+					final long[] bits = stack[++sp];
+					Arrays.fill(bits, 0, words, code[pc] == TRUE ? -1L : 0L);
+					pc++;
+					break;
+				}
+				case TERM: {
+					final long[] bits = stack[++sp];
+					Arrays.fill(bits, 0, words, 0L);
+					final int slot = code[pc + 1];
+					final int val = code[pc + 2];
+					if (slot >= numSlots || val == -1) {
+						Arrays.fill(bits, 0, words, -1L);
+					} else {
+						for (int i = 0, pos = slot * blockSize; i < count; i++, pos++) {
+							final int v = columns[pos];
+							if (v == -1 || v == val) {
+								bits[i >>> 6] |= 1L << i;
+							}
+						}
+					}
+					pc += 3;
+					break;
+				}
+				case RANGE: {
+					final long[] bits = stack[++sp];
+					Arrays.fill(bits, 0, words, 0L);
+					final int slot = code[pc + 1];
+					final int start = code[pc + 2];
+					final int end = code[pc + 3];
+					if (slot >= numSlots) {
+						if (-1 >= start && -1 <= end) {
+							Arrays.fill(bits, 0, words, -1L);
+						}
+					} else {
+						for (int i = 0, pos = slot * blockSize; i < count; i++, pos++) {
+							final int v = columns[pos];
+							if (v >= start && v <= end) {
+								bits[i >>> 6] |= 1L << i;
+							}
+						}
+					}
+					pc += 4;
+					break;
+				}
+				case IN: {
+					final long[] bits = stack[++sp];
+					Arrays.fill(bits, 0, words, 0L);
+					final int slot = code[pc + 1];
+					final int[] set = sets[code[pc + 2]];
+					if (slot >= numSlots) {
+						Arrays.fill(bits, 0, words, -1L);
+					} else {
+						for (int i = 0, pos = slot * blockSize; i < count; i++, pos++) {
+							final int v = columns[pos];
+							if (v == -1 || Arrays.binarySearch(set, v) >= 0) {
+								bits[i >>> 6] |= 1L << i;
+							}
+						}
+					}
+					pc += 3;
+					break;
+				}
+				case CALL: {
+					final long[] bits = stack[++sp];
+					Arrays.fill(bits, 0, words, 0L);
+					final EmbeddedFieldFilter filter = calls[code[pc + 1]];
+					for (int i = 0; i < count; i++) {
+						for (int slot = 0, pos = i; slot < numSlots; slot++, pos += blockSize) {
+							row[slot] = columns[pos];
+						}
+						if (filter.filter(row)) {
+							bits[i >>> 6] |= 1L << i;
+						}
+					}
+					pc += 2;
+					break;
+				}
+				case NOT: {
+					final long[] bits = stack[sp];
+					for (int w = 0; w < words; w++) {
+						bits[w] = ~bits[w];
+					}
+					pc++;
+					break;
+				}
+				case AND: {
+					final long[] right = stack[sp--];
+					final long[] left = stack[sp];
+					for (int w = 0; w < words; w++) {
+						left[w] &= right[w];
+					}
+					pc++;
+					break;
+				}
+				case OR: {
+					final long[] right = stack[sp--];
+					final long[] left = stack[sp];
+					for (int w = 0; w < words; w++) {
+						left[w] |= right[w];
+					}
+					pc++;
+					break;
+				}
+				default:
+					throw new IllegalStateException("bad opcode " + code[pc]);
+				}
+			}
+			final long[] result = stack[0];
+			if (words > 0) {
+				result[words - 1] &= lastMask;
+			}
+			return result;
+		}
+	}
+
+	/** Builds a program while {@link EmbeddedFieldFilter}s compile themselves. */
+	static final class Compiler {
+		private int[] code = new int[16];
+		private int length;
+		private final List<int[]> sets = new ArrayList<int[]>();
+		private final List<EmbeddedFieldFilter> calls = new ArrayList<EmbeddedFieldFilter>();
+		private int depth;
+		private int maxDepth;
+		private int[] requiredRanges = new int[0];
+
+		private void emit(int op) {
+			if (length == code.length) {
+				code = copyOf(code, length * 2);
+			}
+			code[length++] = op;
+		}
+
+		private void push() {
+			if (++depth > maxDepth) {
+				if (depth > MAX_DEPTH) {
+					throw new IllegalArgumentException("filter is nested more than " + MAX_DEPTH + " levels deep");
+				}
+				maxDepth = depth;
+			}
+		}
+
+		void constant(boolean value) {
+			emit(value ? TRUE : FALSE);
+			push();
+		}
+
+		/** Slots are numbered from 1, as in {@link EmbeddedFieldFilter}. */
+		void term(int fieldNumber, int value) {
+			emit(TERM);
+			emit(fieldNumber - 1);
+			emit(value);
+			push();
+		}
+
+		void range(int fieldNumber, int start, int end) {
+			emit(RANGE);
+			emit(fieldNumber - 1);
+			emit(start);
+			emit(end);
+			push();
+		}
+
+		void in(int fieldNumber, int[] sortedValues) {
+			emit(IN);
+			emit(fieldNumber - 1);
+			emit(sets.size());
+			sets.add(sortedValues);
+			push();
+		}
+
+		void call(EmbeddedFieldFilter filter) {
+			emit(CALL);
+			emit(calls.size());
+			calls.add(filter);
+			push();
+		}
+
+		void not() {
+			emit(NOT);
+		}
+
+		void and() {
+			emit(AND);
+			depth--;
+		}
+
+		void or() {
+			emit(OR);
+			depth--;
+		}
+
+		/** Records a range every matching doc must be in. */
+		void requireRange(int fieldNumber, int start, int end) {
+			int n = requiredRanges.length;
+			requiredRanges = copyOf(requiredRanges, n + 3);
+			requiredRanges[n] = fieldNumber - 1;
+			requiredRanges[n + 1] = start;
+			requiredRanges[n + 2] = end;
+		}
+
+		EmbeddedFilterProgram build() {
+			assert depth == 1;
+			return new EmbeddedFilterProgram(copyOf(code, length), (int[][]) sets.toArray(new int[sets.size()][]),
+					(EmbeddedFieldFilter[]) calls.toArray(new EmbeddedFieldFilter[calls.size()]), maxDepth, requiredRanges);
+		}
+
+		private static int[] copyOf(int[] array, int length) {
+			int[] copy = new int[length];
+			System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+			return copy;
+		}
+	}
+}
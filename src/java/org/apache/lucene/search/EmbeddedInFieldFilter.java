@@ -0,0 +1,31 @@
+package org.apache.lucene.search;
+
+import java.util.Arrays;
+
+/**
+ * Accepts docs whose slot holds one of a set of values. Like
+ * {@link EmbeddedTermFieldFilter}, docs without a value for the slot are
+ * accepted too, so the filter behaves like an OR of term filters.
+ */
+public class EmbeddedInFieldFilter extends EmbeddedFieldFilter{
+
+	private static final long serialVersionUID = 1L;
+
+	private final int[] values;
+
+	public EmbeddedInFieldFilter(int[] values, int fieldNumber) {
+		super(fieldNumber);
+		this.values = (int[]) values.clone();
+		Arrays.sort(this.values);
+	}
+
+	public boolean filter(int[] sort){
+		int sortVal = sort[fieldNumber-1];
+		return sortVal == -1 || Arrays.binarySearch(values, sortVal) >= 0;
+	}
+
+	@Override
+	void compile(EmbeddedFilterProgram.Compiler compiler) {
+		compiler.in(fieldNumber, values);
+	}
+}
@@ -9,24 +9,70 @@ public class EmbeddedMultiFieldsFilter extends EmbeddedFieldFilter{
 	 * 
 	 */
 	private static final long serialVersionUID = 8428395833255037975L;
+
+	/** A doc must pass every filter; matches everything if there is none. */
+	public static final int AND = 0;
+	/** A doc must pass at least one filter; matches nothing if there is none. */
+	public static final int OR = 1;
+
 	List<EmbeddedFieldFilter> filters = new ArrayList<EmbeddedFieldFilter>();
+	private final int operator;
 	
 	public EmbeddedMultiFieldsFilter() {
+		this(AND);
+	}
+
+	public EmbeddedMultiFieldsFilter(int operator) {
 		// it doesn't care about fieldNumber in this obj. 
 		super(-1);
+		if(operator != AND && operator != OR){
+			throw new IllegalArgumentException("unknown operator " + operator);
+		}
+		this.operator = operator;
 	}
 	
 	public void addFilter(EmbeddedFieldFilter filter){
 		this.filters.add(filter);
 	}
 
+	public int getOperator(){
+		return operator;
+	}
+
 	public boolean filter(int sort[]){
+		boolean all = operator == AND;
 		for(EmbeddedFieldFilter filter: this.filters){
-			if(!filter.filter(sort)){
-				return false;
+			if(filter.filter(sort) != all){
+				return !all;
+			}
+		}
+		return all;
+	}
+
+	@Override
+	void compile(EmbeddedFilterProgram.Compiler compiler) {
+		if(filters.isEmpty()){
+			compiler.constant(operator == AND);
+			return;
+		}
+		filters.get(0).compile(compiler);
+		for(int i = 1; i < filters.size(); i++){
+			filters.get(i).compile(compiler);
+			if(operator == AND){
+				compiler.and();
+			} else {
+				compiler.or();
+			}
+		}
+	}
+	
+	@Override
+	void requireRanges(EmbeddedFilterProgram.Compiler compiler) {
+		if(operator == AND){
+			for(EmbeddedFieldFilter filter: this.filters){
+				filter.requireRanges(compiler);
 			}
 		}
-		return true;
 	}
 	
 	public boolean isEmptyFilter(){
@@ -0,0 +1,27 @@
+package org.apache.lucene.search;
+
+/**
+ * Accepts the docs the wrapped filter rejects.
+ */
+public class EmbeddedNotFieldFilter extends EmbeddedFieldFilter{
+
+	private static final long serialVersionUID = 1L;
+
+	private final EmbeddedFieldFilter filter;
+
+	public EmbeddedNotFieldFilter(EmbeddedFieldFilter filter) {
+		// it doesn't care about fieldNumber in this obj. 
+		super(-1);
+		this.filter = filter;
+	}
+
+	public boolean filter(int[] sort){
+		return !filter.filter(sort);
+	}
+
+	@Override
+	void compile(EmbeddedFilterProgram.Compiler compiler) {
+		filter.compile(compiler);
+		compiler.not();
+	}
+}
@@ -21,4 +21,14 @@ public class EmbeddedRangeFieldFilter extends EmbeddedFieldFilter {
 		return sortVal >= start && sortVal <= end;
 	}
 
+	@Override
+	void compile(EmbeddedFilterProgram.Compiler compiler) {
+		compiler.range(fieldNumber, start, end);
+	}
+
+	@Override
+	void requireRanges(EmbeddedFilterProgram.Compiler compiler) {
+		compiler.requireRange(fieldNumber, start, end);
+	}
+
 }
@@ -0,0 +1,326 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+/**
+ * Describes the embedded sort slots a {@link Searcher} exposes through
+ * {@link DocIdSetIterator#getSorts()}: how many slots each sort row holds,
+ * the type of every slot and the timeliness boosting settings.
+ * <p>
+ * Slot <code>i</code> of a sort row holds the value of the
+ * {@link org.apache.lucene.document.EmbeddedSortField} whose sort slot is
+ * <code>i + 1</code>; -1 means the document has no value for it.
+ * <p>
+ * Searchers with different schemas may be used side by side. A schema with
+ * no slots ({@link #NONE}) turns off all sort row allocation and copying for
+ * searches that do not need embedded sort values. A schema must not be
+ * modified once it is handed to a searcher.
+ *
+ * @see Searcher#setEmbeddedSortSchema(EmbeddedSortSchema)
+ */
+public class EmbeddedSortSchema implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Slot holds a plain int value. */
+	public static final int INT = 0;
+
+	/**
+	 * Slot holds a time in minutes relative to the schema's
+	 * {@link #getEpochTime() epoch time}.
+	 */
+	public static final int TIMESTAMP = 1;
+
+	/** Schema without sort slots. It is shared, so its setters throw. */
+	public static final EmbeddedSortSchema NONE = new EmbeddedSortSchema(0).freeze();
+
+	private static EmbeddedSortSchema defaultSchema;
+
+	/** Default number of postings a leaf scorer buffers per refill. */
+	public static final int DEFAULT_BLOCK_SIZE = 32;
+
+	private final int[] slotTypes;
+	private final int[] unsetSorts;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	// used to save bytes on current time minutes (2005/1/1)
+	private long epochTime = 18408960L;
+
+	private TimelinessFunction timelinessFunction;
+	private int timelinessPosition;
+	private float timelinessBoost = 5.0f;
+	private int timelinessWindow = 10080; // 24 * 60 * 7 doing seven days boosting in minutes
+
+	// set on shared schemas, NONE and the default, that no caller may
+	// change for the others
+	private boolean frozen;
+
+	/** Creates a schema with <code>numSlots</code> slots of type {@link #INT}. */
+	public EmbeddedSortSchema(int numSlots) {
+		this(new int[numSlots]);
+	}
+
+	/** Creates a schema with one slot per entry of <code>slotTypes</code>. */
+	public EmbeddedSortSchema(int[] slotTypes) {
+		for (int i = 0; i < slotTypes.length; i++) {
+			if (slotTypes[i] != INT && slotTypes[i] != TIMESTAMP) {
+				throw new IllegalArgumentException("unknown type " + slotTypes[i] + " for slot " + i);
+			}
+		}
+		this.slotTypes = (int[]) slotTypes.clone();
+		this.unsetSorts = slotTypes.length == 0 ? DocIdSetIterator.NO_SORTS : new int[slotTypes.length];
+		Arrays.fill(unsetSorts, -1);
+	}
+
+	private EmbeddedSortSchema freeze() {
+		frozen = true;
+		return this;
+	}
+
+	/**
+	 * Returns a copy of this schema with the same slots and settings, that
+	 * may be changed even if this one is shared.
+	 */
+	public EmbeddedSortSchema copy() {
+		EmbeddedSortSchema copy = new EmbeddedSortSchema(slotTypes);
+		copy.blockSize = blockSize;
+		copy.epochTime = epochTime;
+		copy.timelinessFunction = timelinessFunction;
+		copy.timelinessPosition = timelinessPosition;
+		copy.timelinessBoost = timelinessBoost;
+		copy.timelinessWindow = timelinessWindow;
+		return copy;
+	}
+
+	private void ensureNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("this schema is shared and cannot be changed");
+		}
+	}
+
+	/** Returns the number of slots of each sort row. */
+	public int getNumSlots() {
+		return slotTypes.length;
+	}
+
+	/** Returns the type of the slot at <code>position</code> (0-based). */
+	public int getSlotType(int position) {
+		return slotTypes[position];
+	}
+
+	/** Returns a new sort row with every slot unset. */
+	public int[] newSorts() {
+		return slotTypes.length == 0 ? DocIdSetIterator.NO_SORTS : (int[]) unsetSorts.clone();
+	}
+
+	/**
+	 * Returns a shared sort row with every slot unset. Callers must not
+	 * modify it.
+	 */
+	public int[] getUnsetSorts() {
+		return unsetSorts;
+	}
+
+	/** Returns the number of postings a leaf scorer buffers per refill. */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Sets the number of postings (docs, freqs, norms and one column per
+	 * sort slot) a leaf scorer buffers per refill. Larger blocks mean fewer
+	 * refill calls on high-frequency terms at the cost of a larger buffer
+	 * per scorer.
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+		}
+		ensureNotFrozen();
+		this.blockSize = blockSize;
+	}
+
+	/** Returns the time, in minutes since 1970, that {@link #TIMESTAMP} slots count from. */
+	public long getEpochTime() {
+		return epochTime;
+	}
+
+	public void setEpochTime(long epochTime) {
+		ensureNotFrozen();
+		this.epochTime = epochTime;
+	}
+
+	/**
+	 * Boosts documents whose {@link #TIMESTAMP} slot at <code>position</code>
+	 * lies within <code>window</code> minutes of the current time by
+	 * <code>boost</code>, using a {@link TimelinessFunction.Step}.
+	 */
+	public void setTimelinessBoosting(int position, float boost, int window) {
+		ensureNotFrozen();
+		setTimelinessFunction(position, new TimelinessFunction.Step(boost, window));
+		this.timelinessBoost = boost;
+		this.timelinessWindow = window;
+	}
+
+	/**
+	 * Scales the score of every hit by <code>function</code> of the age in
+	 * the {@link #TIMESTAMP} slot at <code>position</code>, unless the query
+	 * is a {@link TimelinessQuery} already; null turns timeliness boosting
+	 * off.
+	 */
+	public void setTimelinessFunction(int position, TimelinessFunction function) {
+		ensureNotFrozen();
+		if (function != null && (position < 0 || position >= slotTypes.length)) {
+			throw new IllegalArgumentException("position " + position + " is out of bounds for " + slotTypes.length + " slots");
+		}
+		this.timelinessFunction = function;
+		this.timelinessPosition = position;
+	}
+
+	/** Returns the function timeliness boosting applies, or null. */
+	public TimelinessFunction getTimelinessFunction() {
+		return timelinessFunction;
+	}
+
+	public boolean isTimelinessBoosting() {
+		return timelinessFunction != null;
+	}
+
+	/** Returns the 0-based position of the slot timeliness boosting reads. */
+	public int getTimelinessPosition() {
+		return timelinessPosition;
+	}
+
+	public float getTimelinessBoost() {
+		return timelinessBoost;
+	}
+
+	/** Returns the boosting window in minutes. */
+	public int getTimelinessWindow() {
+		return timelinessWindow;
+	}
+
+	/**
+	 * Returns the schema searchers use unless told otherwise. It is read once
+	 * from the <code>lucene</code> resource bundle (keys
+	 * <code>sortablefield.num</code>, <code>solbaseEpochTime</code>,
+	 * <code>timelinessBoosting</code>,
+	 * <code>timelinessBoosting.field.position</code>,
+	 * <code>timelinessBoosting.boost</code> and
+	 * <code>timelinessBoosting.boostingFactor</code>); the
+	 * <code>lucene.sortablefield.num</code> system property overrides the
+	 * slot count. Without a bundle it has 5 {@link #INT} slots.
+	 * <p>
+	 * Every searcher that was not given a schema shares it, so its setters
+	 * throw; change a {@link #copy()} instead.
+	 */
+	public static synchronized EmbeddedSortSchema getDefault() {
+		if (defaultSchema == null) {
+			ResourceBundle luceneBundle = null;
+			try {
+				luceneBundle = ResourceBundle.getBundle("lucene");
+			} catch (MissingResourceException e) {
+				// ignore if resource is not here
+			}
+			defaultSchema = load(luceneBundle).freeze();
+		}
+		return defaultSchema;
+	}
+
+	/**
+	 * Sets the schema returned by {@link #getDefault()}. The schema is shared
+	 * from then on, so its setters throw.
+	 */
+	public static synchronized void setDefault(EmbeddedSortSchema schema) {
+		defaultSchema = schema == null ? null : schema.freeze();
+	}
+
+	private static EmbeddedSortSchema load(ResourceBundle bundle) {
+		int numSlots = parseInt(System.getProperty("lucene.sortablefield.num"), -1);
+		if (numSlots < 0) {
+			numSlots = parseInt(getString(bundle, "sortablefield.num"), 5);
+		}
+		int[] slotTypes = new int[numSlots];
+
+		long epochTime = 18408960L;
+		try {
+			String epochTimeStr = getString(bundle, "solbaseEpochTime");
+			if (epochTimeStr != null) {
+				epochTime = Long.parseLong(epochTimeStr);
+			}
+		} catch (NumberFormatException e) {
+			// use default
+		}
+
+		// timeliness boosting needs a valid slot to read the time from
+		int position = -1;
+		if ("true".equals(getString(bundle, "timelinessBoosting"))) {
+			position = parseInt(getString(bundle, "timelinessBoosting.field.position"), -1);
+			if (position >= numSlots) {
+				position = -1;
+			}
+		}
+		if (position >= 0) {
+			slotTypes[position] = TIMESTAMP;
+		}
+
+		EmbeddedSortSchema schema = new EmbeddedSortSchema(slotTypes);
+		schema.setEpochTime(epochTime);
+		if (position >= 0) {
+			float boost = 5.0f;
+			try {
+				String boostStr = getString(bundle, "timelinessBoosting.boost");
+				if (boostStr != null) {
+					boost = Float.parseFloat(boostStr);
+				}
+			} catch (NumberFormatException e) {
+				// use default 5.0f boost
+			}
+			int window = parseInt(getString(bundle, "timelinessBoosting.boostingFactor"), 10080);
+			schema.setTimelinessBoosting(position, boost, window);
+		}
+		return schema;
+	}
+
+	private static String getString(ResourceBundle bundle, String key) {
+		if (bundle == null) {
+			return null;
+		}
+		try {
+			return bundle.getString(key);
+		} catch (MissingResourceException e) {
+			return null;
+		}
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
@@ -21,4 +21,9 @@ public class EmbeddedTermFieldFilter extends EmbeddedFieldFilter{
 		}
 		return sort[fieldNumber-1] == val;
 	}
+
+	@Override
+	void compile(EmbeddedFilterProgram.Compiler compiler) {
+		compiler.term(fieldNumber, val);
+	}
 }
@@ -18,38 +18,249 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
-import org.apache.lucene.index.*;
+import java.util.Arrays;
 
-final class ExactPhraseScorer extends PhraseScorer {
+import org.apache.lucene.index.MultipleTermPositions;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.util.ArrayUtil;
 
-  ExactPhraseScorer(Weight weight, TermPositions[] tps, int[] offsets,
-      Similarity similarity, byte[] norms) {
-    super(weight, tps, offsets, similarity, norms);
+/** Scorer for exact phrases.
+ * <p>
+ * Docs are intersected first, as in a conjunction: the postings are
+ * ordered by document frequency, the rarest one leads and the others are
+ * skipped to its docs. Docs-only postings, such as those of the phrase's
+ * shingles, may join the intersection to narrow it further.
+ * <p>
+ * Only on docs having all of them are positions read. Those of the term
+ * with the fewest in the doc are decoded into an array, shifted by the
+ * term's offset in the phrase; each other term's positions are then
+ * merged against them in a single forward pass, which stops as soon as
+ * any term runs out. The phrase frequency is the number of positions
+ * all terms agree on.
+ */
+final class ExactPhraseScorer extends Scorer {
+  private final Weight weight;
+  private final byte[] norms;
+  private final float value;
+
+  private final TermPositions[] postings;   // in phrase order
+  private final int[] offsets;
+  private final TermDocs[] iterators;       // postings and docs-only ones, rarest first
+  private final int[] iteratorDocs;
+  private final int cost;
+
+  private int[] leadPositions = new int[16];
+  private final int[] remaining;
+  private final int[] positions;
+
+  private final TermDocs sortSource;
+  private final int[] sorts;
+
+  private int doc = -1;
+  private int freq;
+
+  /**
+   * @param docFreqs of <code>tps</code>
+   * @param required docs-only postings a match must also be in, or null
+   * @param requiredDocFreqs of <code>required</code>
+   */
+  ExactPhraseScorer(Weight weight, TermPositions[] tps, int[] offsets, int[] docFreqs,
+      TermDocs[] required, int[] requiredDocFreqs,
+      Similarity similarity, byte[] norms, EmbeddedSortSchema schema) {
+    super(similarity);
+    this.weight = weight;
+    this.norms = norms;
+    this.value = weight.getValue();
+    this.postings = tps;
+    this.offsets = offsets;
+    remaining = new int[tps.length];
+    positions = new int[tps.length];
+
+    int numRequired = required == null ? 0 : required.length;
+    final TermDocs[] all = new TermDocs[tps.length + numRequired];
+    final int[] costs = new int[all.length];
+    System.arraycopy(tps, 0, all, 0, tps.length);
+    System.arraycopy(docFreqs, 0, costs, 0, tps.length);
+    if (numRequired > 0) {
+      System.arraycopy(required, 0, all, tps.length, numRequired);
+      System.arraycopy(requiredDocFreqs, 0, costs, tps.length, numRequired);
+    }
+    // insertion sort by cost: phrases are short
+    for (int i = 1; i < all.length; i++) {
+      for (int j = i; j > 0 && costs[j] < costs[j - 1]; j--) {
+        TermDocs td = all[j]; all[j] = all[j - 1]; all[j - 1] = td;
+        int c = costs[j]; costs[j] = costs[j - 1]; costs[j - 1] = c;
+      }
+    }
+    iterators = all;
+    iteratorDocs = new int[all.length];
+    Arrays.fill(iteratorDocs, -1);
+    cost = costs[0];
+
+    // multi-term postings hold no sort values
+    TermDocs source = null;
+    for (int i = 0; i < tps.length && source == null; i++) {
+      if (!(tps[i] instanceof MultipleTermPositions)) {
+        source = tps[i];
+      }
+    }
+    sortSource = source;
+    sorts = schema.newSorts();
   }
 
-  protected final float phraseFreq() throws IOException {
-    // sort list with pq
-    pq.clear();
-    for (PhrasePositions pp = first; pp != null; pp = pp.next) {
-      pp.firstPosition();
-      pq.put(pp);				  // build pq from list
+  /** @deprecated use {@link #docID()} instead. */
+  public int doc() { return doc; }
+
+  public int docID() { return doc; }
+
+  /** @deprecated use {@link #nextDoc()} instead. */
+  public boolean next() throws IOException {
+    return nextDoc() != NO_MORE_DOCS;
+  }
+
+  public int nextDoc() throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    if (!iterators[0].next()) {
+      return exhausted();
+    }
+    return doNext(iterators[0].doc());
+  }
+
+  /** @deprecated use {@link #advance(int)} instead. */
+  public boolean skipTo(int target) throws IOException {
+    return advance(target) != NO_MORE_DOCS;
+  }
+
+  public int advance(int target) throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    // the lead is always on the current doc, which is before target
+    if (!iterators[0].skipTo(target)) {
+      return exhausted();
+    }
+    return doNext(iterators[0].doc());
+  }
+
+  // candidate is the lead's doc
+  private int doNext(int candidate) throws IOException {
+    final TermDocs lead = iterators[0];
+    outer:
+    while (true) {
+      for (int i = 1; i < iterators.length; i++) {
+        if (iteratorDocs[i] < candidate) {
+          if (!iterators[i].skipTo(candidate)) {
+            return exhausted();
+          }
+          iteratorDocs[i] = iterators[i].doc();
+        }
+        if (iteratorDocs[i] > candidate) {
+          if (!lead.skipTo(iteratorDocs[i])) {
+            return exhausted();
+          }
+          candidate = lead.doc();
+          continue outer;
+        }
+      }
+      // all on the candidate: check for the phrase
+      freq = phraseFreq();
+      if (freq > 0) {
+        return doc = candidate;
+      }
+      if (!lead.next()) {
+        return exhausted();
+      }
+      candidate = lead.doc();
+    }
+  }
+
+  private int exhausted() throws IOException {
+    for (int i = 0; i < iterators.length; i++) {
+      iterators[i].close();
+    }
+    return doc = NO_MORE_DOCS;
+  }
+
+  private int phraseFreq() throws IOException {
+    int lead = 0;
+    for (int i = 0; i < postings.length; i++) {
+      remaining[i] = postings[i].freq();
+      positions[i] = Integer.MIN_VALUE;
+      if (remaining[i] < remaining[lead]) {
+        lead = i;
+      }
+    }
+
+    final int count = remaining[lead];
+    if (count > leadPositions.length) {
+      leadPositions = ArrayUtil.grow(leadPositions, count);
+    }
+    final TermPositions leadPostings = postings[lead];
+    final int leadOffset = offsets[lead];
+    for (int j = 0; j < count; j++) {
+      leadPositions[j] = leadPostings.nextPosition() - leadOffset;
     }
-    pqToList();					  // rebuild list from pq
 
-    // for counting how many times the exact phrase is found in current document,
-    // just count how many times all PhrasePosition's have exactly the same position.   
     int freq = 0;
-    do {					  // find position w/ all terms
-      while (first.position < last.position) {	  // scan forward in first
-	    do {
-	      if (!first.nextPosition())
-	        return freq;
-	    } while (first.position < last.position);
-	      firstToLast();
-      }
-      freq++;					  // all equal: a match
-    } while (last.nextPosition());
-  
+    outer:
+    for (int j = 0; j < count; j++) {
+      final int position = leadPositions[j];
+      for (int i = 0; i < postings.length; i++) {
+        if (i == lead) {
+          continue;
+        }
+        while (positions[i] < position) {
+          if (remaining[i]-- == 0) {
+            break outer;                            // no more matches
+          }
+          positions[i] = postings[i].nextPosition() - offsets[i];
+        }
+        if (positions[i] != position) {
+          continue outer;
+        }
+      }
+      freq++;
+    }
     return freq;
   }
+
+  public float score() throws IOException {
+    float raw = getSimilarity().tf(freq) * value; // raw score
+    return norms == null ? raw : raw * Similarity.decodeNorm(norms[doc]); // normalize
+  }
+
+  public int cost() {
+    return cost;
+  }
+
+  public Explanation explain(final int doc) throws IOException {
+    Explanation tfExplanation = new Explanation();
+
+    int d = advance(doc);
+    float phraseFreq = (d == doc) ? freq : 0.0f;
+    tfExplanation.setValue(getSimilarity().tf(phraseFreq));
+    tfExplanation.setDescription("tf(phraseFreq=" + phraseFreq + ")");
+
+    return tfExplanation;
+  }
+
+  public String toString() { return "scorer(" + weight + ")"; }
+
+  public int getSort(int fieldNumber) {
+    return sortSource == null ? -1 : sortSource.getSort(fieldNumber);
+  }
+
+  public int[] getSorts() {
+    if (sorts.length > 0) {
+      if (sortSource == null) {
+        Arrays.fill(sorts, -1);
+      } else {
+        copySorts(sortSource.getSorts(), sorts);
+      }
+    }
+    return sorts;
+  }
 }
@@ -41,7 +41,11 @@ import java.text.DecimalFormat;
 public interface FieldCache {
 
   public static final class CreationPlaceholder {
-    Object value;
+    volatile Object value;
+    // estimated size of value, set as it loads
+    volatile long ramBytes;
+    // when value was last returned, for eviction
+    volatile long lastAccess;
   }
 
   /** Indicator for StringIndex values in the cache. */
@@ -88,6 +92,116 @@ public interface FieldCache {
     }
   }
 
+  /**
+   * Expert: the byte value of each document, as returned by {@link
+   * AccessorFieldCache#getByteValues}. Unlike the arrays of {@link
+   * #getBytes}, the values may be held anywhere, for example packed
+   * outside of the heap.
+   */
+  public static abstract class Bytes {
+    /** Returns the value of <code>doc</code>, or 0 if it has none. */
+    public abstract byte get(int doc);
+  }
+
+  /** Expert: the short value of each document, as returned by
+   * {@link AccessorFieldCache#getShortValues}. */
+  public static abstract class Shorts {
+    /** Returns the value of <code>doc</code>, or 0 if it has none. */
+    public abstract short get(int doc);
+  }
+
+  /** Expert: the int value of each document, as returned by
+   * {@link AccessorFieldCache#getIntValues}. */
+  public static abstract class Ints {
+    /** Returns the value of <code>doc</code>, or 0 if it has none. */
+    public abstract int get(int doc);
+  }
+
+  /** Expert: the long value of each document, as returned by
+   * {@link AccessorFieldCache#getLongValues}. */
+  public static abstract class Longs {
+    /** Returns the value of <code>doc</code>, or 0 if it has none. */
+    public abstract long get(int doc);
+  }
+
+  /** Expert: the float value of each document, as returned by
+   * {@link AccessorFieldCache#getFloatValues}. */
+  public static abstract class Floats {
+    /** Returns the value of <code>doc</code>, or 0 if it has none. */
+    public abstract float get(int doc);
+  }
+
+  /** Expert: the double value of each document, as returned by
+   * {@link AccessorFieldCache#getDoubleValues}. */
+  public static abstract class Doubles {
+    /** Returns the value of <code>doc</code>, or 0 if it has none. */
+    public abstract double get(int doc);
+  }
+
+  /**
+   * Expert: the terms of a field in natural order, and the ordinal of the
+   * term of each document, as returned by {@link
+   * AccessorFieldCache#getTermsIndex}. This is what a {@link StringIndex}
+   * holds, behind accessors.
+   */
+  public static abstract class DocTermsIndex {
+    /**
+     * Returns the ordinal of the term of <code>doc</code>, which is 0 if it
+     * has none.
+     */
+    public abstract int getOrd(int doc);
+
+    /** Returns the term of ordinal <code>ord</code>; that of ordinal 0 is null. */
+    public abstract String lookup(int ord);
+
+    /** Returns the number of ordinals, that is one more than the number of terms. */
+    public abstract int numOrd();
+
+    /**
+     * Returns the ordinal of <code>key</code> as {@link
+     * StringIndex#binarySearchLookup} does: 0 if it is null, otherwise
+     * <code>-(insertion point) - 1</code> if it is not a term.
+     */
+    public int binarySearchLookup(String key) {
+      if (key == null)
+        return 0;
+      int low = 1;
+      int high = numOrd() - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = lookup(mid).compareTo(key);
+        if (cmp < 0)
+          low = mid + 1;
+        else if (cmp > 0)
+          high = mid - 1;
+        else
+          return mid;
+      }
+      return -(low + 1);
+    }
+  }
+
+  /**
+   * Expert: the terms of a field in natural order, and the ordinals of all
+   * terms of each document, as returned by {@link AccessorFieldCache#getDocTermOrds}. A
+   * document's ordinals are in ascending order; {@link #getOrd} returns
+   * the least, so that documents sort by their least term.
+   */
+  public static abstract class DocTermOrds extends DocTermsIndex {
+    /** Returns the number of terms of <code>doc</code>. */
+    public abstract int ordCount(int doc);
+
+    /**
+     * Returns ordinal number <code>i</code>, from 0, of the terms of
+     * <code>doc</code>; <code>i</code> must be below {@link #ordCount}.
+     */
+    public abstract int ord(int doc, int i);
+
+    public int getOrd(int doc) {
+      return ordCount(doc) == 0 ? 0 : ord(doc, 0);
+    }
+  }
+
   /**
    * Marker interface as super-interface to all parsers. It
    * is used to specify a custom parser to {@link
@@ -144,8 +258,13 @@ public interface FieldCache {
     public double parseDouble(String string);
   }
 
-  /** Expert: The cache used internally by sorting and range query classes. */
-  public static FieldCache DEFAULT = new FieldCacheImpl();
+  /** Expert: The cache used internally by sorting and range query classes.
+   * It is a {@link PackedFieldCache}, which keeps values outside of the heap,
+   * if the system property <code>org.apache.lucene.packedFieldCache</code>
+   * is <code>true</code>. A {@link SortField} or {@link FieldCacheRangeFilter}
+   * may also use its own cache, see {@link SortField#setFieldCache}. */
+  public static FieldCache DEFAULT = Boolean.getBoolean("org.apache.lucene.packedFieldCache")
+      ? new PackedFieldCache() : new FieldCacheImpl();
   
   /** The default parser for byte values, which are encoded by {@link Byte#toString(byte)} */
   public static final ByteParser DEFAULT_BYTE_PARSER = new ByteParser() {
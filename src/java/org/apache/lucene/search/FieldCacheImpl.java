@@ -19,25 +19,37 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.document.NumericField; // javadoc
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.AverageGuessMemoryModel;
+import org.apache.lucene.util.MemoryModel;
+import org.apache.lucene.util.PackedInts;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.FieldCacheSanityChecker;
+import org.apache.lucene.util.TermPool;
 
 /**
  * Expert: The default cache implementation, storing all values in memory.
- * A WeakHashMap is used for storage.
+ * WeakHashMaps, each locked on its own, map readers to the
+ * ConcurrentHashMaps of their values, so that lookups do not wait for each
+ * other nor for values being loaded, only for the value they want.
  *
  * <p>Created: May 19, 2004 4:40:36 PM
  *
@@ -45,13 +57,14 @@ import org.apache.lucene.util.FieldCacheSanityChecker;
  * @version $Id: FieldCacheImpl.java 950451 2010-06-02 09:33:57Z mikemccand $
  */
  // TODO: change interface to FieldCache in 3.0 when removed
-class FieldCacheImpl implements ExtendedFieldCache {
+class FieldCacheImpl implements ExtendedFieldCache, AccessorFieldCache {
 	
-  private Map caches;
+  Map caches;
   FieldCacheImpl() {
     init();
   }
-  private synchronized void init() {
+  /** (Re)creates the caches; subclasses may add theirs, keyed by the type cached. */
+  synchronized void init() {
     caches = new HashMap(7);
     caches.put(Byte.TYPE, new ByteCache(this));
     caches.put(Short.TYPE, new ShortCache(this));
@@ -61,20 +74,27 @@ class FieldCacheImpl implements ExtendedFieldCache {
     caches.put(Double.TYPE, new DoubleCache(this));
     caches.put(String.class, new StringCache(this));
     caches.put(StringIndex.class, new StringIndexCache(this));
+    caches.put(DocTermOrds.class, new DocTermOrdsCache(this));
     caches.put(Comparable.class, new CustomCache(this));
     caches.put(Object.class, new AutoCache(this));
   }
 
   public void purgeAllCaches() {
     init();
+    ramBytesUsed.set(0);
   }
 
   public void purge(IndexReader r) {
+    List removed = new ArrayList();
     Iterator it = caches.values().iterator();
     while(it.hasNext()) {
       Cache c = (Cache) it.next();
-      c.purge(r);
+      Map innerCache = c.purge(r);
+      if (innerCache != null) {
+        removed.add(innerCache);
+      }
     }
+    removed(removed);
   }
   
   public CacheEntry[] getCacheEntries() {
@@ -83,28 +103,272 @@ class FieldCacheImpl implements ExtendedFieldCache {
     while (outerKeys.hasNext()) {
       Class cacheType = (Class)outerKeys.next();
       Cache cache = (Cache)caches.get(cacheType);
-      Iterator innerKeys = cache.readerCache.keySet().iterator();
-      while (innerKeys.hasNext()) {
-        // we've now materialized a hard ref
-        Object readerKey = innerKeys.next();
-        // innerKeys was backed by WeakHashMap, sanity check
-        // that it wasn't GCed before we made hard ref
-        if (null != readerKey && cache.readerCache.containsKey(readerKey)) {
-          Map innerCache = ((Map)cache.readerCache.get(readerKey));
+      for (int i = 0; i < cache.readerCaches.length; i++) {
+        Map readerCache = cache.readerCaches[i];
+        Object[] readerKeys;
+        synchronized (readerCache) {
+          // we now hold hard refs to keys of the WeakHashMap
+          readerKeys = readerCache.keySet().toArray();
+        }
+        for (int j = 0; j < readerKeys.length; j++) {
+          Object readerKey = readerKeys[j];
+          Map innerCache;
+          synchronized (readerCache) {
+            innerCache = (Map) readerCache.get(readerKey);
+          }
+          if (innerCache == null) {
+            continue;
+          }
           Iterator entrySetIterator = innerCache.entrySet().iterator();
           while (entrySetIterator.hasNext()) {
             Map.Entry mapEntry = (Map.Entry) entrySetIterator.next();
             Entry entry = (Entry) mapEntry.getKey();
-            result.add(new CacheEntryImpl(readerKey, entry.field,
-                                          cacheType, entry.type,
-                                          entry.custom, entry.locale,
-                                          mapEntry.getValue()));
+            Object value = ((CreationPlaceholder) mapEntry.getValue()).value;
+            if (value != null) {
+              result.add(new CacheEntryImpl(readerKey, entry.field,
+                                            cacheType, entry.type,
+                                            entry.custom, entry.locale,
+                                            value));
+            }
           }
         }
       }
     }
     return (CacheEntry[]) result.toArray(new CacheEntry[result.size()]);
   }
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong loadNanos = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private volatile long maxRamBytes = Long.MAX_VALUE;
+  // estimated size of the values held, each counted once; kept up to
+  // date as values load and are removed, and recounted when it goes
+  // over maxRamBytes
+  private final AtomicLong ramBytesUsed = new AtomicLong();
+
+  public void setMaxRamBytes(long maxRamBytes) {
+    if (maxRamBytes <= 0) {
+      throw new IllegalArgumentException("maxRamBytes must be > 0: " + maxRamBytes);
+    }
+    this.maxRamBytes = maxRamBytes;
+    evict(null);
+  }
+
+  public long getMaxRamBytes() {
+    return maxRamBytes;
+  }
+
+  public Stats getStats() {
+    List slots = new ArrayList();
+    long ramBytesUsed = loadedSlots(slots, new IdentityHashMap());
+    return new Stats(hitCount.get(), missCount.get(), loadNanos.get(), evictionCount.get(),
+                     slots.size(), ramBytesUsed);
+  }
+
+  /**
+   * Implemented by cached values that are not arrays, like values kept
+   * outside of the heap, to tell their size.
+   */
+  interface Sized {
+    long ramBytesUsed();
+  }
+
+  private static final MemoryModel MEMORY_MODEL = new AverageGuessMemoryModel();
+
+  // a String: header, hash, offset, count, the reference to its chars
+  // and the header of their array
+  private static final int STRING_BYTES = MEMORY_MODEL.getClassSize() + 3 * MEMORY_MODEL.getPrimitiveSize(int.class)
+    + MEMORY_MODEL.getReferenceSize() + MEMORY_MODEL.getArraySize();
+
+  /**
+   * Returns the estimated size of a cached value, from the lengths of its
+   * arrays. Elements of object arrays other than strings are counted as
+   * empty objects.
+   */
+  static long ramBytesUsed(Object value) {
+    if (value instanceof Sized) {
+      return ((Sized) value).ramBytesUsed();
+    } else if (value instanceof StringIndex) {
+      StringIndex index = (StringIndex) value;
+      return MEMORY_MODEL.getClassSize() + ramBytesUsed(index.order) + ramBytesUsed(index.lookup);
+    } else if (value instanceof Object[]) {
+      Object[] values = (Object[]) value;
+      long bytes = MEMORY_MODEL.getArraySize() + (long) values.length * MEMORY_MODEL.getReferenceSize();
+      // documents share the objects of their terms
+      Map seen = new IdentityHashMap();
+      Object last = null;
+      for (int i = 0; i < values.length; i++) {
+        Object v = values[i];
+        if (v == null || v == last || seen.put(v, v) != null) {
+          continue;
+        }
+        last = v;
+        bytes += v instanceof String ? STRING_BYTES + 2L * ((String) v).length() : MEMORY_MODEL.getClassSize();
+      }
+      return bytes;
+    } else if (value != null && value.getClass().isArray()) {
+      return MEMORY_MODEL.getArraySize()
+        + (long) Array.getLength(value) * MEMORY_MODEL.getPrimitiveSize(value.getClass().getComponentType());
+    }
+    return MEMORY_MODEL.getClassSize();
+  }
+
+  /** A loaded value, and where it is held. */
+  private static final class LoadedSlot {
+    final Map innerCache;
+    final Entry key;
+    final CreationPlaceholder slot;
+
+    LoadedSlot(Map innerCache, Entry key, CreationPlaceholder slot) {
+      this.innerCache = innerCache;
+      this.key = key;
+      this.slot = slot;
+    }
+  }
+
+  /**
+   * Collects the loaded values of all caches, counts how many entries
+   * hold each value, and returns the estimated size of the values, each
+   * counted once.
+   */
+  private long loadedSlots(List slots, Map holders) {
+    long ramBytesUsed = 0;
+    Iterator it = caches.values().iterator();
+    while (it.hasNext()) {
+      Cache cache = (Cache) it.next();
+      for (int i = 0; i < cache.readerCaches.length; i++) {
+        Map readerCache = cache.readerCaches[i];
+        Object[] innerCaches;
+        synchronized (readerCache) {
+          innerCaches = readerCache.values().toArray();
+        }
+        for (int j = 0; j < innerCaches.length; j++) {
+          Map innerCache = (Map) innerCaches[j];
+          Iterator entries = innerCache.entrySet().iterator();
+          while (entries.hasNext()) {
+            Map.Entry mapEntry = (Map.Entry) entries.next();
+            CreationPlaceholder slot = (CreationPlaceholder) mapEntry.getValue();
+            Object value = slot.value;
+            if (value == null) {
+              continue;
+            }
+            slots.add(new LoadedSlot(innerCache, (Entry) mapEntry.getKey(), slot));
+            int[] count = (int[]) holders.get(value);
+            if (count == null) {
+              holders.put(value, new int[] { 1 });
+              ramBytesUsed += slot.ramBytes;
+            } else {
+              count[0]++;
+            }
+          }
+        }
+      }
+    }
+    return ramBytesUsed;
+  }
+
+  /**
+   * Counts a value <code>slot</code> of the reader <code>readerKey</code>
+   * just loaded, unless another entry of the reader holds it already, as
+   * the entries of {@link AutoCache} and of a <code>null</code> parser
+   * hold the value of another entry; then evicts if the values no longer
+   * fit.
+   */
+  void loaded(Object readerKey, CreationPlaceholder slot) {
+    if (!isHeldElsewhere(readerKey, slot)) {
+      ramBytesUsed.addAndGet(slot.ramBytes);
+    }
+    evict(slot);
+  }
+
+  private boolean isHeldElsewhere(Object readerKey, CreationPlaceholder slot) {
+    Iterator it = caches.values().iterator();
+    while (it.hasNext()) {
+      Map innerCache = ((Cache) it.next()).innerCache(readerKey);
+      if (innerCache == null) {
+        continue;
+      }
+      Iterator slots = innerCache.values().iterator();
+      while (slots.hasNext()) {
+        CreationPlaceholder other = (CreationPlaceholder) slots.next();
+        if (other != slot && other.value == slot.value) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Uncounts the values of entries that were removed; <code>removed</code>
+   * holds the maps of entries to CreationPlaceholders.
+   */
+  private void removed(List removed) {
+    Map seen = new IdentityHashMap();
+    long bytes = 0;
+    for (int i = 0; i < removed.size(); i++) {
+      Iterator slots = ((Map) removed.get(i)).values().iterator();
+      while (slots.hasNext()) {
+        CreationPlaceholder slot = (CreationPlaceholder) slots.next();
+        Object value = slot.value;
+        if (value != null && seen.put(value, value) == null) {
+          bytes += slot.ramBytes;
+        }
+      }
+    }
+    ramBytesUsed.addAndGet(-bytes);
+  }
+
+  private final Object evictionLock = new Object();
+
+  /**
+   * If the values held take more than {@link #getMaxRamBytes()}, drops
+   * those returned least recently, but the value of <code>keep</code>,
+   * until the others fit. Values are only recounted, and sorted, once
+   * their running total is over the bound.
+   */
+  void evict(CreationPlaceholder keep) {
+    if (maxRamBytes == Long.MAX_VALUE || ramBytesUsed.get() <= maxRamBytes) {
+      return;
+    }
+    synchronized (evictionLock) {
+      if (ramBytesUsed.get() <= maxRamBytes) {
+        // another thread evicted
+        return;
+      }
+      List slots = new ArrayList();
+      Map holders = new IdentityHashMap();
+      // recount, as values of readers that were not purged are gone
+      // without being uncounted
+      long ramBytesUsed = loadedSlots(slots, holders);
+      if (ramBytesUsed > maxRamBytes) {
+        LoadedSlot[] lru = (LoadedSlot[]) slots.toArray(new LoadedSlot[slots.size()]);
+        Arrays.sort(lru, new Comparator() {
+          public int compare(Object o1, Object o2) {
+            long a = ((LoadedSlot) o1).slot.lastAccess;
+            long b = ((LoadedSlot) o2).slot.lastAccess;
+            return a < b ? -1 : (a == b ? 0 : 1);
+          }
+        });
+        final Object kept = keep == null ? null : keep.value;
+        for (int i = 0; i < lru.length && ramBytesUsed > maxRamBytes; i++) {
+          LoadedSlot loaded = lru[i];
+          Object value = loaded.slot.value;
+          if (value == kept || !((ConcurrentHashMap) loaded.innerCache).remove(loaded.key, loaded.slot)) {
+            continue;
+          }
+          evictionCount.incrementAndGet();
+          // a value is only freed once no entry holds it
+          int[] count = (int[]) holders.get(value);
+          if (--count[0] == 0) {
+            ramBytesUsed -= loaded.slot.ramBytes;
+          }
+        }
+      }
+      this.ramBytesUsed.set(ramBytesUsed);
+    }
+  }
   
   private static final class CacheEntryImpl extends CacheEntry {
     /** 
@@ -176,54 +440,88 @@ class FieldCacheImpl implements ExtendedFieldCache {
 
   /** Expert: Internal cache. */
   abstract static class Cache {
+    /** Number of maps, each with its own lock, readers are spread over. */
+    private static final int STRIPES = 16;
+
     Cache() {
-      this.wrapper = null;
+      this(null);
     }
 
     Cache(FieldCache wrapper) {
       this.wrapper = wrapper;
+      this.owner = wrapper instanceof FieldCacheImpl ? (FieldCacheImpl) wrapper : null;
+      for (int i = 0; i < STRIPES; i++) {
+        readerCaches[i] = new WeakHashMap();
+      }
     }
 
     final FieldCache wrapper;
 
-    final Map readerCache = new WeakHashMap();
+    /** Keeps the statistics and bounds the size, if the wrapper is a FieldCacheImpl. */
+    private final FieldCacheImpl owner;
+
+    /** Reader keys to the ConcurrentHashMaps of their entries, whose values are CreationPlaceholders. */
+    final Map[] readerCaches = new Map[STRIPES];
     
     protected abstract Object createValue(IndexReader reader, Entry key)
         throws IOException;
 
-    /** Remove this reader from the cache, if present. */
-    public void purge(IndexReader r) {
+    private Map readerCache(Object readerKey) {
+      return readerCaches[readerKey.hashCode() & (STRIPES - 1)];
+    }
+
+    /** Remove this reader from the cache, if present, and return its entries. */
+    public Map purge(IndexReader r) {
       Object readerKey = r.getFieldCacheKey();
+      Map readerCache = readerCache(readerKey);
       synchronized(readerCache) {
-        readerCache.remove(readerKey);
+        return (Map) readerCache.remove(readerKey);
+      }
+    }
+
+    /** Returns the entries of this reader, or null if it has none. */
+    Map innerCache(Object readerKey) {
+      Map readerCache = readerCache(readerKey);
+      synchronized(readerCache) {
+        return (Map) readerCache.get(readerKey);
       }
     }
 
     public Object get(IndexReader reader, Entry key) throws IOException {
-      Map innerCache;
-      Object value;
+      ConcurrentHashMap innerCache;
       final Object readerKey = reader.getFieldCacheKey();
+      final Map readerCache = readerCache(readerKey);
       synchronized (readerCache) {
-        innerCache = (Map) readerCache.get(readerKey);
+        innerCache = (ConcurrentHashMap) readerCache.get(readerKey);
         if (innerCache == null) {
-          innerCache = new HashMap();
+          innerCache = new ConcurrentHashMap();
           readerCache.put(readerKey, innerCache);
-          value = null;
-        } else {
-          value = innerCache.get(key);
         }
-        if (value == null) {
-          value = new CreationPlaceholder();
-          innerCache.put(key, value);
+      }
+      CreationPlaceholder progress = (CreationPlaceholder) innerCache.get(key);
+      if (progress == null) {
+        final CreationPlaceholder created = new CreationPlaceholder();
+        progress = (CreationPlaceholder) innerCache.putIfAbsent(key, created);
+        if (progress == null) {
+          progress = created;
         }
       }
-      if (value instanceof CreationPlaceholder) {
-        synchronized (value) {
-          CreationPlaceholder progress = (CreationPlaceholder) value;
-          if (progress.value == null) {
-            progress.value = createValue(reader, key);
-            synchronized (readerCache) {
-              innerCache.put(key, progress.value);
+      Object value = progress.value;
+      if (value == null) {
+        // only threads that want this entry wait for it
+        synchronized (progress) {
+          value = progress.value;
+          if (value == null) {
+            final long start = System.nanoTime();
+            value = createValue(reader, key);
+            progress.lastAccess = System.nanoTime();
+            if (owner != null) {
+              progress.ramBytes = ramBytesUsed(value);
+            }
+            progress.value = value;
+            if (owner != null) {
+              owner.missCount.incrementAndGet();
+              owner.loadNanos.addAndGet(progress.lastAccess - start);
             }
 
             // Only check if key.custom (the parser) is
@@ -232,13 +530,20 @@ class FieldCacheImpl implements ExtendedFieldCache {
             if (key.custom != null && wrapper != null) {
               final PrintStream infoStream = wrapper.getInfoStream();
               if (infoStream != null) {
-                printNewInsanity(infoStream, progress.value);
+                printNewInsanity(infoStream, value);
               }
             }
+            if (owner != null) {
+              owner.loaded(readerKey, progress);
+            }
+            return value;
           }
-          return progress.value;
         }
       }
+      if (owner != null) {
+        owner.hitCount.incrementAndGet();
+      }
+      progress.lastAccess = System.nanoTime();
       return value;
     }
 
@@ -749,6 +1054,314 @@ class FieldCacheImpl implements ExtendedFieldCache {
     }
   };
 
+  // inherit javadocs
+  public Bytes getByteValues(IndexReader reader, String field, ByteParser parser)
+      throws IOException {
+    return wrap(getBytes(reader, field, parser));
+  }
+
+  // inherit javadocs
+  public Shorts getShortValues(IndexReader reader, String field, ShortParser parser)
+      throws IOException {
+    return wrap(getShorts(reader, field, parser));
+  }
+
+  // inherit javadocs
+  public Ints getIntValues(IndexReader reader, String field, IntParser parser)
+      throws IOException {
+    return wrap(getInts(reader, field, parser));
+  }
+
+  // inherit javadocs
+  public Longs getLongValues(IndexReader reader, String field, FieldCache.LongParser parser)
+      throws IOException {
+    return wrap(getLongs(reader, field, parser));
+  }
+
+  // inherit javadocs
+  public Floats getFloatValues(IndexReader reader, String field, FloatParser parser)
+      throws IOException {
+    return wrap(getFloats(reader, field, parser));
+  }
+
+  // inherit javadocs
+  public Doubles getDoubleValues(IndexReader reader, String field, FieldCache.DoubleParser parser)
+      throws IOException {
+    return wrap(getDoubles(reader, field, parser));
+  }
+
+  // inherit javadocs
+  public DocTermsIndex getTermsIndex(IndexReader reader, String field)
+      throws IOException {
+    return wrap(getStringIndex(reader, field));
+  }
+
+  /** Returns the byte values of <code>cache</code> behind an accessor, those
+   *  of {@link AccessorFieldCache#getByteValues} if it has them. */
+  static Bytes getByteValues(FieldCache cache, IndexReader reader, String field,
+      ByteParser parser) throws IOException {
+    if (cache instanceof AccessorFieldCache) {
+      return ((AccessorFieldCache) cache).getByteValues(reader, field, parser);
+    }
+    return wrap(cache.getBytes(reader, field, parser));
+  }
+
+  /** Returns the short values of <code>cache</code> behind an accessor, those
+   *  of {@link AccessorFieldCache#getShortValues} if it has them. */
+  static Shorts getShortValues(FieldCache cache, IndexReader reader, String field,
+      ShortParser parser) throws IOException {
+    if (cache instanceof AccessorFieldCache) {
+      return ((AccessorFieldCache) cache).getShortValues(reader, field, parser);
+    }
+    return wrap(cache.getShorts(reader, field, parser));
+  }
+
+  /** Returns the int values of <code>cache</code> behind an accessor, those
+   *  of {@link AccessorFieldCache#getIntValues} if it has them. */
+  static Ints getIntValues(FieldCache cache, IndexReader reader, String field,
+      IntParser parser) throws IOException {
+    if (cache instanceof AccessorFieldCache) {
+      return ((AccessorFieldCache) cache).getIntValues(reader, field, parser);
+    }
+    return wrap(cache.getInts(reader, field, parser));
+  }
+
+  /** Returns the long values of <code>cache</code> behind an accessor, those
+   *  of {@link AccessorFieldCache#getLongValues} if it has them. */
+  static Longs getLongValues(FieldCache cache, IndexReader reader, String field,
+      FieldCache.LongParser parser) throws IOException {
+    if (cache instanceof AccessorFieldCache) {
+      return ((AccessorFieldCache) cache).getLongValues(reader, field, parser);
+    }
+    return wrap(cache.getLongs(reader, field, parser));
+  }
+
+  /** Returns the float values of <code>cache</code> behind an accessor, those
+   *  of {@link AccessorFieldCache#getFloatValues} if it has them. */
+  static Floats getFloatValues(FieldCache cache, IndexReader reader, String field,
+      FloatParser parser) throws IOException {
+    if (cache instanceof AccessorFieldCache) {
+      return ((AccessorFieldCache) cache).getFloatValues(reader, field, parser);
+    }
+    return wrap(cache.getFloats(reader, field, parser));
+  }
+
+  /** Returns the double values of <code>cache</code> behind an accessor, those
+   *  of {@link AccessorFieldCache#getDoubleValues} if it has them. */
+  static Doubles getDoubleValues(FieldCache cache, IndexReader reader, String field,
+      FieldCache.DoubleParser parser) throws IOException {
+    if (cache instanceof AccessorFieldCache) {
+      return ((AccessorFieldCache) cache).getDoubleValues(reader, field, parser);
+    }
+    return wrap(cache.getDoubles(reader, field, parser));
+  }
+
+  /** Returns the terms index of <code>cache</code> behind accessors, that
+   *  of {@link AccessorFieldCache#getTermsIndex} if it has one. */
+  static DocTermsIndex getTermsIndex(FieldCache cache, IndexReader reader, String field)
+      throws IOException {
+    if (cache instanceof AccessorFieldCache) {
+      return ((AccessorFieldCache) cache).getTermsIndex(reader, field);
+    }
+    return wrap(cache.getStringIndex(reader, field));
+  }
+
+  private static Bytes wrap(final byte[] values) {
+    return new Bytes() {
+      public byte get(int doc) {
+        return values[doc];
+      }
+    };
+  }
+
+  private static Shorts wrap(final short[] values) {
+    return new Shorts() {
+      public short get(int doc) {
+        return values[doc];
+      }
+    };
+  }
+
+  private static Ints wrap(final int[] values) {
+    return new Ints() {
+      public int get(int doc) {
+        return values[doc];
+      }
+    };
+  }
+
+  private static Longs wrap(final long[] values) {
+    return new Longs() {
+      public long get(int doc) {
+        return values[doc];
+      }
+    };
+  }
+
+  private static Floats wrap(final float[] values) {
+    return new Floats() {
+      public float get(int doc) {
+        return values[doc];
+      }
+    };
+  }
+
+  private static Doubles wrap(final double[] values) {
+    return new Doubles() {
+      public double get(int doc) {
+        return values[doc];
+      }
+    };
+  }
+
+  private static DocTermsIndex wrap(final StringIndex index) {
+    return new DocTermsIndex() {
+      public int getOrd(int doc) {
+        return index.order[doc];
+      }
+      public String lookup(int ord) {
+        return index.lookup[ord];
+      }
+      public int numOrd() {
+        return index.lookup.length;
+      }
+      public int binarySearchLookup(String key) {
+        return index.binarySearchLookup(key);
+      }
+    };
+  }
+
+  // inherit javadocs
+  public DocTermOrds getDocTermOrds(IndexReader reader, String field)
+      throws IOException {
+    return (DocTermOrds) ((Cache)caches.get(DocTermOrds.class)).get(reader, new Entry(field, (Parser)null));
+  }
+
+  static final class TermOrds extends DocTermOrds implements Sized {
+    private final TermPool terms;
+    // where the ordinals of each document start in ords, or null if no
+    // document has more than one term and ords holds one per document
+    private final PackedInts starts;
+    private final PackedInts ords;
+
+    TermOrds(TermPool terms, PackedInts starts, PackedInts ords) {
+      this.terms = terms;
+      this.starts = starts;
+      this.ords = ords;
+    }
+
+    public int ordCount(int doc) {
+      if (starts == null) {
+        return ords.get(doc) == 0 ? 0 : 1;
+      }
+      return (int) (starts.get(doc + 1) - starts.get(doc));
+    }
+
+    public int ord(int doc, int i) {
+      if (starts == null) {
+        return (int) ords.get(doc);
+      }
+      return (int) ords.get((int) starts.get(doc) + i);
+    }
+
+    public int getOrd(int doc) {
+      if (starts == null) {
+        return (int) ords.get(doc);
+      }
+      return super.getOrd(doc);
+    }
+
+    public String lookup(int ord) {
+      return ord == 0 ? null : terms.get(ord - 1);
+    }
+
+    public int numOrd() {
+      return terms.size() + 1;
+    }
+
+    public long ramBytesUsed() {
+      return terms.ramBytesUsed() + ords.sizeInBytes() + (starts == null ? 0 : starts.sizeInBytes());
+    }
+  }
+
+  static final class DocTermOrdsCache extends Cache {
+    DocTermOrdsCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    /**
+     * Reads the postings twice: once to pool the terms and count the terms
+     * of each document, then to pack the ordinals, which come in ascending
+     * order per document as the terms are read in order.
+     */
+    protected Object createValue(IndexReader reader, Entry entryKey)
+        throws IOException {
+      String field = StringHelper.intern((String) entryKey.field);
+      final int maxDoc = reader.maxDoc();
+      final TermPool terms = new TermPool();
+      final int[] counts = new int[maxDoc];
+      long total = 0;
+      int maxCount = 0;
+      TermDocs termDocs = reader.termDocs();
+      TermEnum termEnum = reader.terms (new Term (field));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field) break;
+          terms.add(term.text());
+          termDocs.seek (termEnum);
+          while (termDocs.next()) {
+            maxCount = Math.max(maxCount, ++counts[termDocs.doc()]);
+            total++;
+          }
+        } while (termEnum.next());
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+      if (total > Integer.MAX_VALUE) {
+        throw new IllegalStateException("field \"" + field + "\" has more than 2^31 postings");
+      }
+
+      final int bitsPerOrd = PackedInts.bitsRequired(terms.size());
+      final PackedInts starts;
+      final PackedInts ords;
+      if (maxCount <= 1) {
+        starts = null;
+        ords = PackedInts.allocateDirect(maxDoc, bitsPerOrd);
+      } else {
+        starts = PackedInts.allocateDirect(maxDoc + 1, PackedInts.bitsRequired(total));
+        ords = PackedInts.allocateDirect((int) total, bitsPerOrd);
+        // counts become where the next ordinal of each document goes
+        int upto = 0;
+        for (int doc = 0; doc < maxDoc; doc++) {
+          starts.set(doc, upto);
+          final int count = counts[doc];
+          counts[doc] = upto;
+          upto += count;
+        }
+        starts.set(maxDoc, upto);
+      }
+
+      termDocs = reader.termDocs();
+      termEnum = reader.terms (new Term (field));
+      try {
+        for (int ord = 1; ord <= terms.size(); ord++) {
+          termDocs.seek (termEnum);
+          while (termDocs.next()) {
+            final int doc = termDocs.doc();
+            ords.set(starts == null ? doc : counts[doc]++, ord);
+          }
+          termEnum.next();
+        }
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+      return new TermOrds(terms, starts, ords);
+    }
+  }
+
   /** The pattern used to detect integer values in a field */
   /** removed for java 1.3 compatibility
    protected static final Pattern pIntegers = Pattern.compile ("[0-9\\-]+");
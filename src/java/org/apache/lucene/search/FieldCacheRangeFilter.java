@@ -28,7 +28,10 @@ import org.apache.lucene.document.NumericField; // for javadocs
  * 
  * <p>FieldCacheRangeFilter builds a single cache for the field the first time it is used.
  * Each subsequent FieldCacheRangeFilter on the same field then reuses this cache,
- * even if the range itself changes. 
+ * even if the range itself changes. The values are read through the accessors of
+ * {@link FieldCache#DEFAULT} or of the cache set by {@link #setFieldCache}, such as
+ * {@link AccessorFieldCache#getIntValues}, so they may be held outside of the heap by a
+ * {@link PackedFieldCache}.
  * 
  * <p>This means that FieldCacheRangeFilter is much faster (sometimes more than 100x as fast) 
  * as building a {@link TermRangeFilter} (or {@link ConstantScoreRangeQuery} on a {@link TermRangeFilter})
@@ -59,6 +62,8 @@ public abstract class FieldCacheRangeFilter extends Filter {
   final Object upperVal;
   final boolean includeLower;
   final boolean includeUpper;
+  // null for FieldCache.DEFAULT; not part of equals, as it does not change the docs
+  private FieldCache fieldCache;
   
   private FieldCacheRangeFilter(String field, FieldCache.Parser parser, Object lowerVal, Object upperVal, boolean includeLower, boolean includeUpper) {
     this.field = field;
@@ -72,6 +77,20 @@ public abstract class FieldCacheRangeFilter extends Filter {
   /** This method is implemented for each data type */
   public abstract DocIdSet getDocIdSet(IndexReader reader) throws IOException;
 
+  /**
+   * Sets the cache the values are read from, for example a {@link
+   * PackedFieldCache}; by default, and if <code>null</code>, it is {@link
+   * FieldCache#DEFAULT}.
+   */
+  public void setFieldCache(FieldCache fieldCache) {
+    this.fieldCache = fieldCache;
+  }
+
+  /** Returns the cache the values are read from. */
+  public FieldCache getFieldCache() {
+    return fieldCache != null ? fieldCache : FieldCache.DEFAULT;
+  }
+
   /**
    * Creates a string range query using {@link FieldCache#getStringIndex}. This works with all
    * fields containing zero or one term in the field. The range can be half-open by setting one
@@ -80,7 +99,7 @@ public abstract class FieldCacheRangeFilter extends Filter {
   public static FieldCacheRangeFilter newStringRange(String field, String lowerVal, String upperVal, boolean includeLower, boolean includeUpper) {
     return new FieldCacheRangeFilter(field, null, lowerVal, upperVal, includeLower, includeUpper) {
       public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
-        final FieldCache.StringIndex fcsi = FieldCache.DEFAULT.getStringIndex(reader, field);
+        final FieldCache.DocTermsIndex fcsi = FieldCacheImpl.getTermsIndex(getFieldCache(), reader, field);
         final int lowerPoint = fcsi.binarySearchLookup((String) lowerVal);
         final int upperPoint = fcsi.binarySearchLookup((String) upperVal);
         
@@ -121,7 +140,8 @@ public abstract class FieldCacheRangeFilter extends Filter {
         // because deleted docs have an order of 0 (null entry in StringIndex)
         return new FieldCacheDocIdSet(reader, false) {
           final boolean matchDoc(int doc) {
-            return fcsi.order[doc] >= inclusiveLowerPoint && fcsi.order[doc] <= inclusiveUpperPoint;
+            final int ord = fcsi.getOrd(doc);
+            return ord >= inclusiveLowerPoint && ord <= inclusiveUpperPoint;
           }
         };
       }
@@ -166,11 +186,12 @@ public abstract class FieldCacheRangeFilter extends Filter {
         if (inclusiveLowerPoint > inclusiveUpperPoint)
           return DocIdSet.EMPTY_DOCIDSET;
         
-        final byte[] values = FieldCache.DEFAULT.getBytes(reader, field, (FieldCache.ByteParser) parser);
+        final FieldCache.Bytes values = FieldCacheImpl.getByteValues(getFieldCache(), reader, field, (FieldCache.ByteParser) parser);
         // we only request the usage of termDocs, if the range contains 0
         return new FieldCacheDocIdSet(reader, (inclusiveLowerPoint <= 0 && inclusiveUpperPoint >= 0)) {
           boolean matchDoc(int doc) {
-            return values[doc] >= inclusiveLowerPoint && values[doc] <= inclusiveUpperPoint;
+            final byte value = values.get(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
           }
         };
       }
@@ -215,11 +236,12 @@ public abstract class FieldCacheRangeFilter extends Filter {
         if (inclusiveLowerPoint > inclusiveUpperPoint)
           return DocIdSet.EMPTY_DOCIDSET;
         
-        final short[] values = FieldCache.DEFAULT.getShorts(reader, field, (FieldCache.ShortParser) parser);
+        final FieldCache.Shorts values = FieldCacheImpl.getShortValues(getFieldCache(), reader, field, (FieldCache.ShortParser) parser);
         // we only request the usage of termDocs, if the range contains 0
         return new FieldCacheDocIdSet(reader, (inclusiveLowerPoint <= 0 && inclusiveUpperPoint >= 0)) {
           boolean matchDoc(int doc) {
-            return values[doc] >= inclusiveLowerPoint && values[doc] <= inclusiveUpperPoint;
+            final short value = values.get(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
           }
         };
       }
@@ -264,11 +286,12 @@ public abstract class FieldCacheRangeFilter extends Filter {
         if (inclusiveLowerPoint > inclusiveUpperPoint)
           return DocIdSet.EMPTY_DOCIDSET;
         
-        final int[] values = FieldCache.DEFAULT.getInts(reader, field, (FieldCache.IntParser) parser);
+        final FieldCache.Ints values = FieldCacheImpl.getIntValues(getFieldCache(), reader, field, (FieldCache.IntParser) parser);
         // we only request the usage of termDocs, if the range contains 0
         return new FieldCacheDocIdSet(reader, (inclusiveLowerPoint <= 0 && inclusiveUpperPoint >= 0)) {
           boolean matchDoc(int doc) {
-            return values[doc] >= inclusiveLowerPoint && values[doc] <= inclusiveUpperPoint;
+            final int value = values.get(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
           }
         };
       }
@@ -313,11 +336,12 @@ public abstract class FieldCacheRangeFilter extends Filter {
         if (inclusiveLowerPoint > inclusiveUpperPoint)
           return DocIdSet.EMPTY_DOCIDSET;
         
-        final long[] values = FieldCache.DEFAULT.getLongs(reader, field, (FieldCache.LongParser) parser);
+        final FieldCache.Longs values = FieldCacheImpl.getLongValues(getFieldCache(), reader, field, (FieldCache.LongParser) parser);
         // we only request the usage of termDocs, if the range contains 0
         return new FieldCacheDocIdSet(reader, (inclusiveLowerPoint <= 0L && inclusiveUpperPoint >= 0L)) {
           boolean matchDoc(int doc) {
-            return values[doc] >= inclusiveLowerPoint && values[doc] <= inclusiveUpperPoint;
+            final long value = values.get(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
           }
         };
       }
@@ -366,11 +390,12 @@ public abstract class FieldCacheRangeFilter extends Filter {
         if (inclusiveLowerPoint > inclusiveUpperPoint)
           return DocIdSet.EMPTY_DOCIDSET;
         
-        final float[] values = FieldCache.DEFAULT.getFloats(reader, field, (FieldCache.FloatParser) parser);
+        final FieldCache.Floats values = FieldCacheImpl.getFloatValues(getFieldCache(), reader, field, (FieldCache.FloatParser) parser);
         // we only request the usage of termDocs, if the range contains 0
         return new FieldCacheDocIdSet(reader, (inclusiveLowerPoint <= 0.0f && inclusiveUpperPoint >= 0.0f)) {
           boolean matchDoc(int doc) {
-            return values[doc] >= inclusiveLowerPoint && values[doc] <= inclusiveUpperPoint;
+            final float value = values.get(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
           }
         };
       }
@@ -419,11 +444,12 @@ public abstract class FieldCacheRangeFilter extends Filter {
         if (inclusiveLowerPoint > inclusiveUpperPoint)
           return DocIdSet.EMPTY_DOCIDSET;
         
-        final double[] values = FieldCache.DEFAULT.getDoubles(reader, field, (FieldCache.DoubleParser) parser);
+        final FieldCache.Doubles values = FieldCacheImpl.getDoubleValues(getFieldCache(), reader, field, (FieldCache.DoubleParser) parser);
         // we only request the usage of termDocs, if the range contains 0
         return new FieldCacheDocIdSet(reader, (inclusiveLowerPoint <= 0.0 && inclusiveUpperPoint >= 0.0)) {
           boolean matchDoc(int doc) {
-            return values[doc] >= inclusiveLowerPoint && values[doc] <= inclusiveUpperPoint;
+            final double value = values.get(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
           }
         };
       }
@@ -474,8 +500,8 @@ public abstract class FieldCacheRangeFilter extends Filter {
       this.mayUseTermDocs = mayUseTermDocs;
     }
   
-    /** this method checks, if a doc is a hit, should throw AIOBE, when position invalid */
-    abstract boolean matchDoc(int doc) throws ArrayIndexOutOfBoundsException;
+    /** this method checks, if a doc below maxDoc is a hit */
+    abstract boolean matchDoc(int doc);
     
     /** this DocIdSet is cacheable, if it works solely with FieldCache and no TermDocs */
     public boolean isCacheable() {
@@ -495,7 +521,6 @@ public abstract class FieldCacheRangeFilter extends Filter {
         // a DocIdSetIterator using TermDocs to iterate valid docIds
         return new DocIdSetIterator() {
           private int doc = -1;
-          private int[] sorts = new int[Scorer.numSort];
           
           /** @deprecated use {@link #nextDoc()} instead. */
           public boolean next() throws IOException {
@@ -547,6 +572,7 @@ public abstract class FieldCacheRangeFilter extends Filter {
       } else {
         // a DocIdSetIterator generating docIds by incrementing a variable -
         // this one can be used if there are no deletions are on the index
+        final int maxDoc = reader.maxDoc();
         return new DocIdSetIterator() {
           private int doc = -1;
           
@@ -570,26 +596,23 @@ public abstract class FieldCacheRangeFilter extends Filter {
           }
           
           public int nextDoc() {
-            try {
-              do {
-                doc++;
-              } while (!matchDoc(doc));
-              return doc;
-            } catch (ArrayIndexOutOfBoundsException e) {
-              return doc = NO_MORE_DOCS;
+            if (doc != NO_MORE_DOCS) {
+              while (++doc < maxDoc) {
+                if (matchDoc(doc)) {
+                  return doc;
+                }
+              }
             }
+            return doc = NO_MORE_DOCS;
           }
           
           public int advance(int target) {
-            try {
-              doc = target;
-              while (!matchDoc(doc)) { 
-                doc++;
+            for (doc = target; doc < maxDoc; doc++) {
+              if (matchDoc(doc)) {
+                return doc;
               }
-              return doc;
-            } catch (ArrayIndexOutOfBoundsException e) {
-              return doc = NO_MORE_DOCS;
             }
+            return doc = NO_MORE_DOCS;
           }
 
 		public int getSort(int fieldNumber) {
@@ -0,0 +1,117 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Loads the {@link FieldCache} values that sorts will need before the
+ * first search asks for them, for example when a new reader is opened.
+ * Every segment and sort field is loaded by its own task on an {@link
+ * Executor}, so that the large fields of many segments load in parallel.
+ * <p>
+ * Values are loaded as the {@link FieldComparator} of each {@link
+ * SortField} loads them, into the cache it uses, see {@link
+ * SortField#getFieldCache()}.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public class FieldCacheWarmer {
+  private final Executor executor;
+
+  /** Creates a warmer that runs its tasks on <code>executor</code>. */
+  public FieldCacheWarmer(Executor executor) {
+    this.executor = executor;
+  }
+
+  /** Loads the values of all segments of <code>reader</code> that <code>sort</code> needs. */
+  public void warm(IndexReader reader, Sort sort) throws IOException {
+    warm(reader, sort.getSort());
+  }
+
+  /**
+   * Loads the values of all segments of <code>reader</code> that the
+   * <code>fields</code> need, and returns once all are loaded. An exception
+   * of any task is rethrown.
+   */
+  public void warm(IndexReader reader, SortField[] fields) throws IOException {
+    List subReaders = new ArrayList();
+    ReaderUtil.gatherSubReaders(subReaders, reader);
+    List tasks = new ArrayList();
+    int docBase = 0;
+    for (int i = 0; i < subReaders.size(); i++) {
+      final IndexReader subReader = (IndexReader) subReaders.get(i);
+      final int base = docBase;
+      for (int j = 0; j < fields.length; j++) {
+        final SortField field = fields[j];
+        final int sortPos = j;
+        if (field.getType() == SortField.SCORE || field.getType() == SortField.DOC) {
+          continue;
+        }
+        FutureTask task = new FutureTask(new Callable() {
+          public Object call() throws IOException {
+            field.getComparator(1, sortPos).setNextReader(subReader, base);
+            return null;
+          }
+        });
+        tasks.add(task);
+        executor.execute(task);
+      }
+      docBase += subReader.maxDoc();
+    }
+
+    try {
+      for (int i = 0; i < tasks.size(); i++) {
+        ((FutureTask) tasks.get(i)).get();
+      }
+    } catch (InterruptedException ie) {
+      cancel(tasks);
+      // In 3.0 we will change this to throw
+      // InterruptedException instead
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    } catch (ExecutionException ee) {
+      cancel(tasks);
+      Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  private static void cancel(List tasks) {
+    for (int i = 0; i < tasks.size(); i++) {
+      ((FutureTask) tasks.get(i)).cancel(false);
+    }
+  }
+}
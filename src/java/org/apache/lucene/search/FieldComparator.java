@@ -28,7 +28,6 @@ import org.apache.lucene.search.FieldCache.ByteParser;
 import org.apache.lucene.search.FieldCache.FloatParser;
 import org.apache.lucene.search.FieldCache.IntParser;
 import org.apache.lucene.search.FieldCache.ShortParser;
-import org.apache.lucene.search.FieldCache.StringIndex;
 
 /**
  * Expert: a FieldComparator compares hits so as to determine their
@@ -85,18 +84,20 @@ import org.apache.lucene.search.FieldCache.StringIndex;
 public abstract class FieldComparator {
 
   /** Parses field's values as byte (using {@link
-   *  FieldCache#getBytes} and sorts by ascending value */
+   *  AccessorFieldCache#getByteValues} and sorts by ascending value */
   public static final class ByteComparator extends FieldComparator {
     private final byte[] values;
-    private byte[] currentReaderValues;
+    private FieldCache.Bytes currentReaderValues;
+    private final FieldCache cache;
     private final String field;
     private ByteParser parser;
     private byte bottom;
 
-    ByteComparator(int numHits, String field, FieldCache.Parser parser) {
+    ByteComparator(int numHits, String field, FieldCache.Parser parser, FieldCache cache) {
       values = new byte[numHits];
       this.field = field;
       this.parser = (ByteParser) parser;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -104,15 +105,15 @@ public abstract class FieldComparator {
     }
 
     public int compareBottom(int doc) {
-      return bottom - currentReaderValues[doc];
+      return bottom - currentReaderValues.get(doc);
     }
 
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = currentReaderValues.get(doc);
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getBytes(reader, field, parser);
+      currentReaderValues = FieldCacheImpl.getByteValues(cache, reader, field, parser);
     }
     
     public void setBottom(final int bottom) {
@@ -165,18 +166,20 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as double (using {@link
-   *  FieldCache#getDoubles} and sorts by ascending value */
+   *  AccessorFieldCache#getDoubleValues} and sorts by ascending value */
   public static final class DoubleComparator extends FieldComparator {
     private final double[] values;
-    private double[] currentReaderValues;
+    private FieldCache.Doubles currentReaderValues;
+    private final FieldCache cache;
     private final String field;
     private DoubleParser parser;
     private double bottom;
 
-    DoubleComparator(int numHits, String field, FieldCache.Parser parser) {
+    DoubleComparator(int numHits, String field, FieldCache.Parser parser, FieldCache cache) {
       values = new double[numHits];
       this.field = field;
       this.parser = (DoubleParser) parser;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -192,7 +195,7 @@ public abstract class FieldComparator {
     }
 
     public int compareBottom(int doc) {
-      final double v2 = currentReaderValues[doc];
+      final double v2 = currentReaderValues.get(doc);
       if (bottom > v2) {
         return 1;
       } else if (bottom < v2) {
@@ -203,11 +206,11 @@ public abstract class FieldComparator {
     }
 
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = currentReaderValues.get(doc);
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getDoubles(reader, field, parser);
+      currentReaderValues = FieldCacheImpl.getDoubleValues(cache, reader, field, parser);
     }
     
     public void setBottom(final int bottom) {
@@ -220,18 +223,20 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as float (using {@link
-   *  FieldCache#getFloats} and sorts by ascending value */
+   *  AccessorFieldCache#getFloatValues} and sorts by ascending value */
   public static final class FloatComparator extends FieldComparator {
     private final float[] values;
-    private float[] currentReaderValues;
+    private FieldCache.Floats currentReaderValues;
+    private final FieldCache cache;
     private final String field;
     private FloatParser parser;
     private float bottom;
 
-    FloatComparator(int numHits, String field, FieldCache.Parser parser) {
+    FloatComparator(int numHits, String field, FieldCache.Parser parser, FieldCache cache) {
       values = new float[numHits];
       this.field = field;
       this.parser = (FloatParser) parser;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -251,7 +256,7 @@ public abstract class FieldComparator {
     public int compareBottom(int doc) {
       // TODO: are there sneaky non-branch ways to compute
       // sign of float?
-      final float v2 = currentReaderValues[doc];
+      final float v2 = currentReaderValues.get(doc);
       if (bottom > v2) {
         return 1;
       } else if (bottom < v2) {
@@ -262,11 +267,11 @@ public abstract class FieldComparator {
     }
 
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = currentReaderValues.get(doc);
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getFloats(reader, field, parser);
+      currentReaderValues = FieldCacheImpl.getFloatValues(cache, reader, field, parser);
     }
     
     public void setBottom(final int bottom) {
@@ -279,18 +284,20 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as int (using {@link
-   *  FieldCache#getInts} and sorts by ascending value */
+   *  AccessorFieldCache#getIntValues} and sorts by ascending value */
   public static final class IntComparator extends FieldComparator {
     private final int[] values;
-    private int[] currentReaderValues;
+    private FieldCache.Ints currentReaderValues;
+    private final FieldCache cache;
     private final String field;
     private IntParser parser;
     private int bottom;                           // Value of bottom of queue
 
-    IntComparator(int numHits, String field, FieldCache.Parser parser) {
+    IntComparator(int numHits, String field, FieldCache.Parser parser, FieldCache cache) {
       values = new int[numHits];
       this.field = field;
       this.parser = (IntParser) parser;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -314,7 +321,7 @@ public abstract class FieldComparator {
       // -1/+1/0 sign
       // Cannot return bottom - values[slot2] because that
       // may overflow
-      final int v2 = currentReaderValues[doc];
+      final int v2 = currentReaderValues.get(doc);
       if (bottom > v2) {
         return 1;
       } else if (bottom < v2) {
@@ -325,11 +332,11 @@ public abstract class FieldComparator {
     }
 
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = currentReaderValues.get(doc);
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getInts(reader, field, parser);
+      currentReaderValues = FieldCacheImpl.getIntValues(cache, reader, field, parser);
     }
     
     public void setBottom(final int bottom) {
@@ -342,18 +349,20 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as long (using {@link
-   *  FieldCache#getLongs} and sorts by ascending value */
+   *  AccessorFieldCache#getLongValues} and sorts by ascending value */
   public static final class LongComparator extends FieldComparator {
     private final long[] values;
-    private long[] currentReaderValues;
+    private FieldCache.Longs currentReaderValues;
+    private final FieldCache cache;
     private final String field;
     private LongParser parser;
     private long bottom;
 
-    LongComparator(int numHits, String field, FieldCache.Parser parser) {
+    LongComparator(int numHits, String field, FieldCache.Parser parser, FieldCache cache) {
       values = new long[numHits];
       this.field = field;
       this.parser = (LongParser) parser;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -373,7 +382,7 @@ public abstract class FieldComparator {
     public int compareBottom(int doc) {
       // TODO: there are sneaky non-branch ways to compute
       // -1/+1/0 sign
-      final long v2 = currentReaderValues[doc];
+      final long v2 = currentReaderValues.get(doc);
       if (bottom > v2) {
         return 1;
       } else if (bottom < v2) {
@@ -384,11 +393,11 @@ public abstract class FieldComparator {
     }
 
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = currentReaderValues.get(doc);
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getLongs(reader, field, parser);
+      currentReaderValues = FieldCacheImpl.getLongValues(cache, reader, field, parser);
     }
     
     public void setBottom(final int bottom) {
@@ -449,18 +458,20 @@ public abstract class FieldComparator {
   }
 
   /** Parses field's values as short (using {@link
-   *  FieldCache#getShorts} and sorts by ascending value */
+   *  AccessorFieldCache#getShortValues} and sorts by ascending value */
   public static final class ShortComparator extends FieldComparator {
     private final short[] values;
-    private short[] currentReaderValues;
+    private FieldCache.Shorts currentReaderValues;
+    private final FieldCache cache;
     private final String field;
     private ShortParser parser;
     private short bottom;
 
-    ShortComparator(int numHits, String field, FieldCache.Parser parser) {
+    ShortComparator(int numHits, String field, FieldCache.Parser parser, FieldCache cache) {
       values = new short[numHits];
       this.field = field;
       this.parser = (ShortParser) parser;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -468,15 +479,15 @@ public abstract class FieldComparator {
     }
 
     public int compareBottom(int doc) {
-      return bottom - currentReaderValues[doc];
+      return bottom - currentReaderValues.get(doc);
     }
 
     public void copy(int slot, int doc) {
-      values[slot] = currentReaderValues[doc];
+      values[slot] = currentReaderValues.get(doc);
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getShorts(reader, field, parser);
+      currentReaderValues = FieldCacheImpl.getShortValues(cache, reader, field, parser);
     }
     
     public void setBottom(final int bottom) {
@@ -495,12 +506,14 @@ public abstract class FieldComparator {
     private final String[] values;
     private String[] currentReaderValues;
     private final String field;
+    private final FieldCache cache;
     final Collator collator;
     private String bottom;
 
-    StringComparatorLocale(int numHits, String field, Locale locale) {
+    StringComparatorLocale(int numHits, String field, Locale locale, FieldCache cache) {
       values = new String[numHits];
       this.field = field;
+      this.cache = cache;
       collator = Collator.getInstance(locale);
     }
 
@@ -536,7 +549,7 @@ public abstract class FieldComparator {
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getStrings(reader, field);
+      currentReaderValues = cache.getStrings(reader, field);
     }
     
     public void setBottom(final int bottom) {
@@ -552,35 +565,52 @@ public abstract class FieldComparator {
    *  ordinals.  This is functionally equivalent to {@link
    *  StringValComparator}, but it first resolves the string
    *  to their relative ordinal positions (using the index
-   *  returned by {@link FieldCache#getStringIndex}), and
+   *  returned by {@link AccessorFieldCache#getTermsIndex}), and
    *  does most comparisons using the ordinals.  For medium
    *  to large results, this comparator will be much faster
    *  than {@link StringValComparator}.  For very small
-   *  result sets it may be slower. */
+   *  result sets it may be slower.
+   *  <p>
+   *  Strings are only looked up for the slots still in the
+   *  queue when the next segment starts, and compared only
+   *  when two slots were carried over from earlier segments
+   *  and fall between the same two terms of this one. */
   public static final class StringOrdValComparator extends FieldComparator {
 
     private final int[] ords;
     private final String[] values;
+    // the slot's value is not looked up yet
+    private final boolean[] pending;
+    // the slot's value is the term of its ordinal, not a value
+    // of an earlier segment that falls after it
+    private final boolean[] exact;
     private final int[] readerGen;
 
     private int currentReaderGen = -1;
-    private String[] lookup;
-    private int[] order;
+    private FieldCache.DocTermsIndex termsIndex;
     private final String field;
+    private final FieldCache cache;
 
     private int bottomSlot = -1;
     private int bottomOrd;
-    private String bottomValue;
+    private boolean bottomExact;
     private final boolean reversed;
     private final int sortPos;
 
     public StringOrdValComparator(int numHits, String field, int sortPos, boolean reversed) {
+      this(numHits, field, sortPos, reversed, FieldCache.DEFAULT);
+    }
+
+    public StringOrdValComparator(int numHits, String field, int sortPos, boolean reversed, FieldCache cache) {
       ords = new int[numHits];
       values = new String[numHits];
+      pending = new boolean[numHits];
+      exact = new boolean[numHits];
       readerGen = new int[numHits];
       this.sortPos = sortPos;
       this.reversed = reversed;
       this.field = field;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -589,10 +619,16 @@ public abstract class FieldComparator {
         if (cmp != 0) {
           return cmp;
         }
+        // a value that is not exact falls after the term of its ordinal
+        if (exact[slot1]) {
+          return exact[slot2] ? 0 : -1;
+        } else if (exact[slot2]) {
+          return 1;
+        }
       }
 
-      final String val1 = values[slot1];
-      final String val2 = values[slot2];
+      final String val1 = lookup(slot1);
+      final String val2 = lookup(slot2);
       if (val1 == null) {
         if (val2 == null) {
           return 0;
@@ -606,30 +642,30 @@ public abstract class FieldComparator {
 
     public int compareBottom(int doc) {
       assert bottomSlot != -1;
-      int order = this.order[doc];
+      int order = termsIndex.getOrd(doc);
       final int cmp = bottomOrd - order;
       if (cmp != 0) {
         return cmp;
       }
+      // the bottom is the term of the doc's ordinal, or falls after it
+      return bottomExact ? 0 : 1;
+    }
 
-      final String val2 = lookup[order];
-      if (bottomValue == null) {
-        if (val2 == null) {
-          return 0;
-        }
-        // bottom wins
-        return -1;
-      } else if (val2 == null) {
-        // doc wins
-        return 1;
+    /** Returns the value of <code>slot</code>, looking it up if it is pending. */
+    private String lookup(int slot) {
+      if (pending[slot]) {
+        assert readerGen[slot] == currentReaderGen;
+        values[slot] = termsIndex.lookup(ords[slot]);
+        pending[slot] = false;
       }
-      return bottomValue.compareTo(val2);
+      return values[slot];
     }
 
     private void convert(int slot) {
-      readerGen[slot] = currentReaderGen;
       int index = 0;
-      String value = values[slot];
+      String value = lookup(slot);
+      readerGen[slot] = currentReaderGen;
+      exact[slot] = true;
       if (value == null) {
         ords[slot] = 0;
         return;
@@ -638,40 +674,51 @@ public abstract class FieldComparator {
       if (sortPos == 0 && bottomSlot != -1 && bottomSlot != slot) {
         // Since we are the primary sort, the entries in the
         // queue are bounded by bottomOrd:
-        assert bottomOrd < lookup.length;
+        assert bottomOrd < termsIndex.numOrd();
         if (reversed) {
-          index = binarySearch(lookup, value, bottomOrd, lookup.length-1);
+          index = binarySearch(termsIndex, value, bottomOrd, termsIndex.numOrd()-1);
         } else {
-          index = binarySearch(lookup, value, 0, bottomOrd);
+          index = binarySearch(termsIndex, value, 0, bottomOrd);
         }
       } else {
         // Full binary search
-        index = binarySearch(lookup, value);
+        index = binarySearch(termsIndex, value, 0, termsIndex.numOrd()-1);
       }
 
       if (index < 0) {
         index = -index - 2;
+        exact[slot] = false;
       }
       ords[slot] = index;
     }
 
     public void copy(int slot, int doc) {
-      final int ord = order[doc];
+      final int ord = termsIndex.getOrd(doc);
       ords[slot] = ord;
       assert ord >= 0;
-      values[slot] = lookup[ord];
+      pending[slot] = true;
+      exact[slot] = true;
       readerGen[slot] = currentReaderGen;
     }
 
+    /** Looks up the pending values, before their segment is left. */
+    private void lookupPending() {
+      for (int slot = 0; slot < pending.length; slot++) {
+        if (pending[slot]) {
+          lookup(slot);
+        }
+      }
+    }
+
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      StringIndex currentReaderValues = FieldCache.DEFAULT.getStringIndex(reader, field);
+      lookupPending();
+      termsIndex = FieldCacheImpl.getTermsIndex(cache, reader, field);
       currentReaderGen++;
-      order = currentReaderValues.order;
-      lookup = currentReaderValues.lookup;
-      assert lookup.length > 0;
+      assert termsIndex.numOrd() > 0;
       if (bottomSlot != -1) {
         convert(bottomSlot);
         bottomOrd = ords[bottomSlot];
+        bottomExact = exact[bottomSlot];
       }
     }
     
@@ -682,15 +729,16 @@ public abstract class FieldComparator {
       }
       bottomOrd = ords[bottom];
       assert bottomOrd >= 0;
-      assert bottomOrd < lookup.length;
-      bottomValue = values[bottom];
+      assert bottomOrd < termsIndex.numOrd();
+      bottomExact = exact[bottom];
     }
 
     public Comparable value(int slot) {
-      return values[slot];
+      return lookup(slot);
     }
 
     public String[] getValues() {
+      lookupPending();
       return values;
     }
 
@@ -714,9 +762,12 @@ public abstract class FieldComparator {
     private final String field;
     private String bottom;
 
-    StringValComparator(int numHits, String field) {
+    private final FieldCache cache;
+
+    StringValComparator(int numHits, String field, FieldCache cache) {
       values = new String[numHits];
       this.field = field;
+      this.cache = cache;
     }
 
     public int compare(int slot1, int slot2) {
@@ -752,7 +803,7 @@ public abstract class FieldComparator {
     }
 
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
-      currentReaderValues = FieldCache.DEFAULT.getStrings(reader, field);
+      currentReaderValues = cache.getStrings(reader, field);
     }
     
     public void setBottom(final int bottom) {
@@ -764,6 +815,29 @@ public abstract class FieldComparator {
     }
   }
 
+  /** As {@link #binarySearch(String[],String,int,int)}, over the terms of an index. */
+  final protected static int binarySearch(FieldCache.DocTermsIndex a, String key, int low, int high) {
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      String midVal = a.lookup(mid);
+      int cmp;
+      if (midVal != null) {
+        cmp = midVal.compareTo(key);
+      } else {
+        cmp = -1;
+      }
+
+      if (cmp < 0)
+        low = mid + 1;
+      else if (cmp > 0)
+        high = mid - 1;
+      else
+        return mid;
+    }
+    return -(low + 1);
+  }
+
   final protected static int binarySearch(String[] a, String key) {
     return binarySearch(a, key, 0, a.length-1);
   }
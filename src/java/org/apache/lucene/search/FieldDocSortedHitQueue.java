@@ -130,7 +130,8 @@ extends PriorityQueue {
 					if (l1 > l2) c = 1;
 					break;
         }
-        case SortField.STRING:{
+        case SortField.STRING:
+        case SortField.STRING_VAL:{
 					String s1 = (String) docA.fields[i];
 					String s2 = (String) docB.fields[i];
 					// null values need to be sorted first, because of how FieldCache.getStringIndex()
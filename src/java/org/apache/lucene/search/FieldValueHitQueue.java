@@ -45,13 +45,13 @@ public abstract class FieldValueHitQueue extends PriorityQueue {
     int slot;
     int docID;
     float score;
-    int[] sorts = new int[Scorer.numSort];
+    int[] sorts = DocIdSetIterator.NO_SORTS;
 
     Entry(int slot, int docID, float score, int[] sorts) {
       this.slot = slot;
       this.docID = docID;
       this.score = score;
-      DocIdSetIterator.copySorts(sorts, this.sorts);
+      this.sorts = DocIdSetIterator.copyOfSorts(sorts, this.sorts);
     }
     
     public String toString() {
@@ -35,6 +35,10 @@ import java.util.TreeSet;
  * 
  * The cache is periodically cleaned up from a separate thread to ensure the
  * cache doesn't exceed the maximum size.
+ *
+ * @deprecated Use {@link SegmentFilterCache}, which bounds the bytes of the
+ * cached sets rather than the number of filters, and evicts as sets are
+ * cached rather than from a cleaner thread.
  */
 public class FilterManager {
 
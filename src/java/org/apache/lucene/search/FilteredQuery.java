@@ -119,7 +119,6 @@ extends Query {
         return new Scorer(similarity) {
 
           private int doc = -1;
-          private int[] sorts = new int[Scorer.numSort];
           
           private int advanceToCommon(int scorerDoc, int disiDoc) throws IOException {
             while (scorerDoc != disiDoc) {
@@ -142,9 +141,7 @@ extends Query {
             doc = (disiDoc = docIdSetIterator.nextDoc()) != NO_MORE_DOCS
                 && (scorerDoc = scorer.nextDoc()) != NO_MORE_DOCS
                 && advanceToCommon(scorerDoc, disiDoc) != NO_MORE_DOCS ? scorer.docID() : NO_MORE_DOCS;
-            
-                DocIdSetIterator.copySorts(scorer.getSorts(), this.sorts);
-                return doc;
+            return doc;
           }
           
           /** @deprecated use {@link #docID()} instead. */
@@ -161,9 +158,7 @@ extends Query {
             doc = (disiDoc = docIdSetIterator.advance(target)) != NO_MORE_DOCS
                 && (scorerDoc = scorer.advance(disiDoc)) != NO_MORE_DOCS 
                 && advanceToCommon(scorerDoc, disiDoc) != NO_MORE_DOCS ? scorer.docID() : NO_MORE_DOCS;
-                
-                DocIdSetIterator.copySorts(scorer.getSorts(), this.sorts);
-                return doc;
+            return doc;
           }
 
           public float score() throws IOException { return getBoost() * scorer.score(); }
@@ -183,11 +178,11 @@ extends Query {
           }
 
 		public int getSort(int fieldNumber) {
-			return this.sorts[fieldNumber];
+			return scorer.getSort(fieldNumber);
 		}
 
 		public int[] getSorts() {
-			return this.sorts;
+			return scorer.getSorts();
 		}
         };
       }
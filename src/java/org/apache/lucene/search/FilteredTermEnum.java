@@ -18,6 +18,7 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermEnum;
 
@@ -31,6 +32,12 @@ public abstract class FilteredTermEnum extends TermEnum {
     
     /** the delegate enum - to set this member use {@link #setEnum} */
     protected TermEnum actualEnum = null;
+
+    /** the reader actualEnum was opened on, if this enum seeks */
+    private IndexReader reader = null;
+
+    /** how many terms are stepped through before seeking instead */
+    private static final int MAX_SCAN = 8;
     
     public FilteredTermEnum() {}
 
@@ -55,6 +62,40 @@ public abstract class FilteredTermEnum extends TermEnum {
             currentTerm = term;
         else next();
     }
+
+    /**
+     * Like {@link #setEnum(TermEnum)}, with the terms of <code>reader</code>
+     * from <code>start</code> on, in which the enumeration may then seek:
+     * see {@link #nextSeekTerm(Term)}.
+     */
+    protected void setEnum(IndexReader reader, Term start) throws IOException {
+        this.reader = reader;
+        setEnum(reader.terms(start));
+    }
+
+    /**
+     * Expert: called when {@link #termCompare(Term)} rejected a term of an
+     * enum set with {@link #setEnum(IndexReader, Term)}, may return a
+     * later term such that no term in between will be accepted. The
+     * enumeration then seeks to it in the term dictionary rather than step
+     * through those terms. Returns null, to step to the next term, by
+     * default.
+     */
+    protected Term nextSeekTerm(Term rejected) {
+        return null;
+    }
+
+    // positions actualEnum at the first term >= target
+    private boolean seek(Term target) throws IOException {
+        // nearby terms are cheaper to step through than to seek to
+        for (int i = 0; i < MAX_SCAN; i++) {
+            if (!actualEnum.next()) return false;
+            if (actualEnum.term().compareTo(target) >= 0) return true;
+        }
+        actualEnum.close();
+        actualEnum = reader.terms(target);
+        return actualEnum.term() != null;
+    }
     
     /** 
      * Returns the docFreq of the current Term in the enumeration.
@@ -70,14 +111,16 @@ public abstract class FilteredTermEnum extends TermEnum {
     public boolean next() throws IOException {
         if (actualEnum == null) return false; // the actual enumerator is not initialized!
         currentTerm = null;
+        Term seekTerm = null;
         while (currentTerm == null) {
             if (endEnum()) return false;
-            if (actualEnum.next()) {
+            if (seekTerm == null ? actualEnum.next() : seek(seekTerm)) {
                 Term term = actualEnum.term();
                 if (termCompare(term)) {
                     currentTerm = term;
                     return true;
                 }
+                seekTerm = reader == null ? null : nextSeekTerm(term);
             }
             else return false;
         }
@@ -96,5 +139,6 @@ public abstract class FilteredTermEnum extends TermEnum {
         if (actualEnum != null) actualEnum.close();
         currentTerm = null;
         actualEnum = null;
+        reader = null;
     }
 }
@@ -36,9 +36,11 @@ public class FuzzyQuery extends MultiTermQuery {
   
   public final static float defaultMinSimilarity = 0.5f;
   public final static int defaultPrefixLength = 0;
+  public final static int defaultMaxExpansions = Integer.MAX_VALUE;
   
   private float minimumSimilarity;
   private int prefixLength;
+  private int maxExpansions;
   private boolean termLongEnough = false;
   
   protected Term term;
@@ -56,10 +58,14 @@ public class FuzzyQuery extends MultiTermQuery {
    *  as the query term is considered similar to the query term if the edit distance
    *  between both terms is less than <code>length(term)*0.5</code>
    * @param prefixLength length of common (non-fuzzy) prefix
+   * @param maxExpansions the maximum number of terms to match; the query
+   *  is rewritten to the most similar of them, and never to more than
+   *  {@link BooleanQuery#getMaxClauseCount()}
    * @throws IllegalArgumentException if minimumSimilarity is &gt;= 1 or &lt; 0
-   * or if prefixLength &lt; 0
+   * or if prefixLength &lt; 0 or maxExpansions &lt;= 0
    */
-  public FuzzyQuery(Term term, float minimumSimilarity, int prefixLength) throws IllegalArgumentException {
+  public FuzzyQuery(Term term, float minimumSimilarity, int prefixLength,
+      int maxExpansions) throws IllegalArgumentException {
     super(term); // will be removed in 3.0
     this.term = term;
     
@@ -69,6 +75,8 @@ public class FuzzyQuery extends MultiTermQuery {
       throw new IllegalArgumentException("minimumSimilarity < 0");
     if (prefixLength < 0)
       throw new IllegalArgumentException("prefixLength < 0");
+    if (maxExpansions <= 0)
+      throw new IllegalArgumentException("maxExpansions <= 0");
     
     if (term.text().length() > 1.0f / (1.0f - minimumSimilarity)) {
       this.termLongEnough = true;
@@ -76,8 +84,16 @@ public class FuzzyQuery extends MultiTermQuery {
     
     this.minimumSimilarity = minimumSimilarity;
     this.prefixLength = prefixLength;
+    this.maxExpansions = maxExpansions;
     rewriteMethod = SCORING_BOOLEAN_QUERY_REWRITE;
   }
+
+  /**
+   * Calls {@link #FuzzyQuery(Term, float, int, int) FuzzyQuery(term, minimumSimilarity, prefixLength, Integer.MAX_VALUE)}.
+   */
+  public FuzzyQuery(Term term, float minimumSimilarity, int prefixLength) throws IllegalArgumentException {
+    this(term, minimumSimilarity, prefixLength, defaultMaxExpansions);
+  }
   
   /**
    * Calls {@link #FuzzyQuery(Term, float) FuzzyQuery(term, minimumSimilarity, 0)}.
@@ -110,6 +126,13 @@ public class FuzzyQuery extends MultiTermQuery {
     return prefixLength;
   }
 
+  /**
+   * Returns the maximum number of terms the query is rewritten to.
+   */
+  public int getMaxExpansions() {
+    return maxExpansions;
+  }
+
   protected FilteredTermEnum getEnum(IndexReader reader) throws IOException {
     return new FuzzyTermEnum(reader, getTerm(), minimumSimilarity, prefixLength);
   }
@@ -131,7 +154,7 @@ public class FuzzyQuery extends MultiTermQuery {
     }
 
     FilteredTermEnum enumerator = getEnum(reader);
-    int maxClauseCount = BooleanQuery.getMaxClauseCount();
+    int maxClauseCount = Math.min(maxExpansions, BooleanQuery.getMaxClauseCount());
     ScoreTermQueue stQueue = new ScoreTermQueue(maxClauseCount);
     ScoreTerm reusableST = null;
 
@@ -154,6 +177,10 @@ public class FuzzyQuery extends MultiTermQuery {
           }
 
           reusableST = (ScoreTerm) stQueue.insertWithOverflow(reusableST);
+          if (stQueue.size() == maxClauseCount && enumerator instanceof FuzzyTermEnum) {
+            // only terms more similar than the least similar kept can make it
+            ((FuzzyTermEnum) enumerator).setMinDifference(((ScoreTerm) stQueue.top()).score);
+          }
         }
       } while (enumerator.next());
     } finally {
@@ -220,6 +247,7 @@ public class FuzzyQuery extends MultiTermQuery {
     int result = super.hashCode();
     result = prime * result + Float.floatToIntBits(minimumSimilarity);
     result = prime * result + prefixLength;
+    result = prime * result + maxExpansions;
     result = prime * result + ((term == null) ? 0 : term.hashCode());
     return result;
   }
@@ -237,6 +265,8 @@ public class FuzzyQuery extends MultiTermQuery {
       return false;
     if (prefixLength != other.prefixLength)
       return false;
+    if (maxExpansions != other.maxExpansions)
+      return false;
     if (term == null) {
       if (other.term != null)
         return false;
@@ -27,6 +27,14 @@ import java.io.IOException;
  *
  * <p>Term enumerations are always ordered by Term.compareTo().  Each term in
  * the enumeration is greater than all that precede it.
+ *
+ * <p>Unless the text to compare, the term text after the prefix, is empty
+ * or longer than 62 chars, terms are run through a Levenshtein automaton
+ * of the text, simulated bit-parallel one char at a time. Its states after
+ * the chars a term shares with the previous one are reused, and once no
+ * state is left the term, and every later term starting with the same
+ * chars, is too far from the text: the enumeration then seeks past them
+ * all in the term dictionary.
  */
 public final class FuzzyTermEnum extends FilteredTermEnum {
 
@@ -53,6 +61,23 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
   private final float scale_factor;
   private final int[] maxDistances = new int[TYPICAL_LONGEST_WORD_IN_INDEX];
 
+  /* The Levenshtein automaton. Bit i of states[j][k] is set when the first
+   * j chars of a term's suffix are within k edits of the first i chars of
+   * the text; only the first maxEdits + 1 levels are kept up to date.
+   */
+  private final boolean useAutomaton;
+  private int maxEdits;
+  private long mask;
+  private final long[] asciiMasks = new long[128];
+  private char[] otherChars;
+  private long[] otherMasks;
+  private long[][] states;
+  // the suffix chars states were computed for, and how many of them
+  private char[] suffix;
+  private int numStates;
+  // how many suffix chars of the last rejected term left no state, or 0
+  private int deadDepth;
+
   /**
    * Creates a FuzzyTermEnum with an empty prefix and a minSimilarity of 0.5f.
    * <p>
@@ -122,9 +147,14 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
     this.prefix = searchTerm.text().substring(0, realPrefixLength);
 
     initializeMaxDistances();
-    this.d = initDistanceArray();
+    this.useAutomaton = text.length() > 0 && text.length() <= 62;
+    if (useAutomaton) {
+      initializeAutomaton();
+    } else {
+      this.d = initDistanceArray();
+    }
 
-    setEnum(reader.terms(new Term(searchTerm.field(), prefix)));
+    setEnum(reader, new Term(searchTerm.field(), prefix));
   }
 
   /**
@@ -132,14 +162,58 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
    * calculate the distance between the given term and the comparing term. 
    */
   protected final boolean termCompare(Term term) {
+    deadDepth = 0;
     if (field == term.field() && term.text().startsWith(prefix)) {
-        final String target = term.text().substring(prefix.length());
-        this.similarity = similarity(target);
+        if (useAutomaton) {
+          this.similarity = automatonSimilarity(term.text());
+        } else {
+          final String target = term.text().substring(prefix.length());
+          this.similarity = similarity(target);
+        }
         return (similarity > minimumSimilarity);
     }
     endEnum = true;
     return false;
   }
+
+  /**
+   * Skips the terms that start with the chars of the last rejected term
+   * which left the automaton without a state.
+   */
+  protected Term nextSeekTerm(Term rejected) {
+    if (deadDepth == 0) {
+      return null;
+    }
+    final String target = rejected.text();
+    int end = prefix.length() + deadDepth;
+    // the terms after all those starting with target[0..end), where
+    // trailing max chars can be dropped from
+    while (end > prefix.length() && target.charAt(end - 1) == Character.MAX_VALUE) {
+      end--;
+    }
+    if (end == prefix.length()) {
+      return null;
+    }
+    return searchTerm.createTerm(target.substring(0, end - 1) + (char) (target.charAt(end - 1) + 1));
+  }
+
+  /**
+   * Expert: lets the enumeration leave out terms whose {@link #difference()}
+   * would not exceed <code>difference</code>, by lowering the number of
+   * edits the automaton allows. Some such terms may still be returned.
+   */
+  void setMinDifference(float difference) {
+    if (!useAutomaton) {
+      return;
+    }
+    // a term beating it has a similarity above this, so fewer edits than
+    // (1 - similarity) * (prefix + min(text, term suffix)) chars
+    final double similarity = minimumSimilarity + difference / scale_factor;
+    final int edits = (int) Math.ceil((1 - similarity) * (prefix.length() + text.length()));
+    if (edits < maxEdits) {
+      maxEdits = Math.max(0, edits);
+    }
+  }
   
   public final float difference() {
     return (float)((similarity - minimumSimilarity) * scale_factor);
@@ -152,6 +226,134 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
   /******************************
    * Compute Levenshtein distance
    ******************************/
+
+  private void initializeAutomaton() {
+    final int n = text.length();
+    maxEdits = calculateMaxDistance(Integer.MAX_VALUE);
+    mask = (1L << (n + 1)) - 1;
+
+    // bit i + 1 of the mask of a char is set when text[i] is that char
+    StringBuffer others = new StringBuffer();
+    for (int i = 0; i < n; i++) {
+      final char c = text.charAt(i);
+      if (c >= asciiMasks.length && others.indexOf(String.valueOf(c)) == -1) {
+        others.append(c);
+      }
+    }
+    otherChars = others.toString().toCharArray();
+    otherMasks = new long[otherChars.length];
+    for (int i = 0; i < n; i++) {
+      final char c = text.charAt(i);
+      final long bit = 1L << (i + 1);
+      if (c < asciiMasks.length) {
+        asciiMasks[c] |= bit;
+      } else {
+        for (int j = 0; j < otherChars.length; j++) {
+          if (otherChars[j] == c) {
+            otherMasks[j] |= bit;
+          }
+        }
+      }
+    }
+
+    suffix = new char[TYPICAL_LONGEST_WORD_IN_INDEX];
+    states = new long[TYPICAL_LONGEST_WORD_IN_INDEX + 1][maxEdits + 1];
+    // k edits delete up to k chars of the text
+    for (int k = 0; k <= maxEdits; k++) {
+      states[0][k] = k >= n ? mask : (1L << (k + 1)) - 1;
+    }
+  }
+
+  private long charMask(char c) {
+    if (c < asciiMasks.length) {
+      return asciiMasks[c];
+    }
+    for (int i = 0; i < otherChars.length; i++) {
+      if (otherChars[i] == c) {
+        return otherMasks[i];
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Computes the states after the next char of a term from those before,
+   * for up to maxEdits edits: a state follows a matching char, or, at one
+   * edit more, takes the char as inserted, substituted, or deletes the
+   * next char of the text.
+   */
+  private void step(long[] from, long[] to, long charMask) {
+    long prev = (from[0] << 1) & charMask;
+    to[0] = prev;
+    for (int k = 1; k <= maxEdits; k++) {
+      final long below = from[k - 1];
+      prev = (((from[k] << 1) & charMask) | below | (below << 1) | (prev << 1)) & mask;
+      to[k] = prev;
+    }
+  }
+
+  /**
+   * Returns the same similarity as {@link #similarity(String)} does for
+   * the term's suffix, reading the distance off the automaton.
+   */
+  private float automatonSimilarity(final String termText) {
+    final int p = prefix.length();
+    final int m = termText.length() - p;
+    final int n = text.length();
+    if (m == 0) {
+      return p == 0 ? 0.0f : 1.0f - ((float) n / p);
+    }
+
+    if (suffix.length < m) {
+      growAutomaton(m);
+    }
+    // the states of the chars shared with the last term are still valid
+    int j = 0;
+    final int shared = Math.min(numStates, m);
+    while (j < shared && suffix[j] == termText.charAt(p + j)) {
+      j++;
+      if (states[j][maxEdits] == 0) {
+        deadDepth = j;
+        return 0.0f;
+      }
+    }
+    for (; j < m; j++) {
+      final char c = termText.charAt(p + j);
+      suffix[j] = c;
+      step(states[j], states[j + 1], charMask(c));
+      numStates = j + 1;
+      if (states[j + 1][maxEdits] == 0) {
+        // no term starting with these chars is close enough
+        deadDepth = j + 1;
+        return 0.0f;
+      }
+    }
+    numStates = m;
+
+    final int maxDistance = getMaxDistance(m);
+    if (maxDistance < Math.abs(m-n)) {
+      return 0.0f;
+    }
+    final long[] last = states[m];
+    for (int k = 0; k <= maxEdits; k++) {
+      if ((last[k] >>> n & 1) != 0) {
+        return 1.0f - ((float) k / (float) (p + Math.min(n, m)));
+      }
+    }
+    return 0.0f;
+  }
+
+  private void growAutomaton(int m) {
+    final char[] newSuffix = new char[Math.max(m, 2 * suffix.length)];
+    System.arraycopy(suffix, 0, newSuffix, 0, suffix.length);
+    final long[][] newStates = new long[newSuffix.length + 1][];
+    System.arraycopy(states, 0, newStates, 0, states.length);
+    for (int i = states.length; i < newStates.length; i++) {
+      newStates[i] = new long[states[0].length];
+    }
+    suffix = newSuffix;
+    states = newStates;
+  }
   
   /**
    * Finds and returns the smallest of three integers 
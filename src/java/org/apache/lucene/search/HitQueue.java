@@ -67,20 +67,12 @@ final class HitQueue extends PriorityQueue {
     initialize(size);
   }
 
-  static final int[] bogusSorts = new int[Scorer.numSort];
-  
-  static {
-	  for(int i = 0; i < Scorer.numSort; i++){
-		  bogusSorts[i] = -1;
-	  }
-  }
-  
   // Returns null if prePopulate is false.
   protected Object getSentinelObject() {
     // Always set the doc Id to MAX_VALUE so that it won't be favored by
     // lessThan. This generally should not happen since if score is not NEG_INF,
     // TopScoreDocCollector will always add the object to the queue.
-    return !prePopulate ? null : new ScoreDoc(Integer.MAX_VALUE, Float.NEGATIVE_INFINITY, bogusSorts);
+    return !prePopulate ? null : new ScoreDoc(Integer.MAX_VALUE, Float.NEGATIVE_INFINITY, DocIdSetIterator.NO_SORTS);
   }
   
   protected final boolean lessThan(Object a, Object b) {
@@ -19,11 +19,18 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.EmbeddedIndexSort;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
@@ -46,6 +53,12 @@ import org.apache.lucene.util.ReaderUtil;
  * external synchronization, you should <b>not</b>
  * synchronize on the <code>IndexSearcher</code> instance;
  * use your own (non-Lucene) objects instead.</p>
+ *
+ * <p>A searcher given an {@link ExecutorService} searches groups of
+ * segments, its slices, concurrently for the top hits of a query, each
+ * with its own collector, and merges their hits with
+ * {@link TopDocs#merge(Sort, int, TopDocs[])}. Searches with a
+ * caller's {@link Collector} still run on the calling thread.</p>
  */
 public class IndexSearcher extends Searcher {
   IndexReader reader;
@@ -53,6 +66,16 @@ public class IndexSearcher extends Searcher {
   private IndexReader[] subReaders;
   private int[] docStarts;
 
+  // a slice holding a segment this large holds no other
+  private static final int MAX_DOCS_PER_SLICE = 250000;
+  private static final int MAX_SEGMENTS_PER_SLICE = 5;
+
+  private final ExecutorService executor;
+  // indexes into subReaders, one array per slice; computed on the first
+  // search with an executor, so that an overridden slices() runs on a
+  // fully constructed subclass
+  private volatile int[][] slices;
+
   /** Creates a searcher searching the index in the named directory.
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
@@ -104,13 +127,29 @@ public class IndexSearcher extends Searcher {
 
   /** Creates a searcher searching the provided index. */
   public IndexSearcher(IndexReader r) {
-    this(r, false);
+    this(r, false, null);
+  }
+
+  /**
+   * Creates a searcher searching the provided index, whose searches for
+   * top hits score slices of its segments concurrently on
+   * <code>executor</code>; the calling thread searches one slice itself
+   * and waits for the others. The executor is meant to be shared by all
+   * searchers, and is not shut down by {@link #close()}.
+   */
+  public IndexSearcher(IndexReader r, ExecutorService executor) {
+    this(r, false, executor);
+  }
+
+  private IndexSearcher(IndexReader r, boolean closeReader) {
+    this(r, closeReader, null);
   }
   
   @SuppressWarnings({ "rawtypes", "unchecked" })
-private IndexSearcher(IndexReader r, boolean closeReader) {
+private IndexSearcher(IndexReader r, boolean closeReader, ExecutorService executor) {
     reader = r;
     this.closeReader = closeReader;
+    this.executor = executor;
 
     List subReadersList = new ArrayList();
     gatherSubReaders(subReadersList, reader);
@@ -123,6 +162,60 @@ private IndexSearcher(IndexReader r, boolean closeReader) {
     }
   }
 
+  /**
+   * Expert: groups segments into the slices that are searched
+   * concurrently, returning the indexes of the segments of each slice.
+   * The default gives a large segment a slice of its own and packs
+   * smaller ones, largest first, into slices of up to 250,000 documents
+   * and 5 segments. It is called on the first search with an executor,
+   * not from the constructor.
+   */
+  protected int[][] slices(final IndexReader[] subReaders) {
+    Integer[] bySize = new Integer[subReaders.length];
+    for (int i = 0; i < bySize.length; i++) {
+      bySize[i] = new Integer(i);
+    }
+    Arrays.sort(bySize, new Comparator() {
+      public int compare(Object a, Object b) {
+        return subReaders[((Integer) b).intValue()].maxDoc() - subReaders[((Integer) a).intValue()].maxDoc();
+      }
+    });
+
+    List slices = new ArrayList();
+    List slice = new ArrayList();
+    int docs = 0;
+    for (int i = 0; i < bySize.length; i++) {
+      int maxDoc = subReaders[bySize[i].intValue()].maxDoc();
+      if (slice.size() > 0 && (docs + maxDoc > MAX_DOCS_PER_SLICE || slice.size() == MAX_SEGMENTS_PER_SLICE)) {
+        slices.add(slice);
+        slice = new ArrayList();
+        docs = 0;
+      }
+      slice.add(bySize[i]);
+      docs += maxDoc;
+    }
+    if (slice.size() > 0) {
+      slices.add(slice);
+    }
+
+    int[][] result = new int[slices.size()][];
+    for (int i = 0; i < result.length; i++) {
+      List segments = (List) slices.get(i);
+      result[i] = new int[segments.size()];
+      for (int j = 0; j < result[i].length; j++) {
+        result[i][j] = ((Integer) segments.get(j)).intValue();
+      }
+      // search a slice's segments in index order
+      Arrays.sort(result[i]);
+    }
+    return result;
+  }
+
+  /** Returns the executor slices are searched on, or null if there is none. */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
   @SuppressWarnings("rawtypes")
 protected void gatherSubReaders(List allSubReaders, IndexReader r) {
     ReaderUtil.gatherSubReaders(allSubReaders, r);
@@ -173,6 +266,14 @@ protected void gatherSubReaders(List allSubReaders, IndexReader r) {
 
     nDocs = Math.min(nDocs, reader.maxDoc());
 
+    if (isConcurrent()) {
+      TopDocsCollector[] collectors = new TopDocsCollector[slices.length];
+      for (int i = 0; i < slices.length; i++) {
+        collectors[i] = TopScoreDocCollector.create(nDocs, !weight.scoresDocsOutOfOrder());
+      }
+      return searchSlices(weight, filter, collectors, null, nDocs);
+    }
+
     TopScoreDocCollector collector = TopScoreDocCollector.create(nDocs, !weight.scoresDocsOutOfOrder());
     search(weight, filter, collector);
     return collector.topDocs();
@@ -238,37 +339,236 @@ public TopFieldDocs search(Weight weight, Filter filter, int nDocs,
       return (TopFieldDocs) collector.topDocs();
     }
     
+    if (isConcurrent()) {
+      // hits are merged on their fields, so every slice fills them
+      TopDocsCollector[] collectors = new TopDocsCollector[slices.length];
+      for (int i = 0; i < slices.length; i++) {
+        collectors[i] = TopFieldCollector.create(sort, nDocs,
+            true, fieldSortDoTrackScores, fieldSortDoMaxScore, !weight.scoresDocsOutOfOrder());
+      }
+      TopFieldDocs docs = (TopFieldDocs) searchSlices(weight, filter, collectors, sort, nDocs);
+      if (!fillFields) {
+        for (int i = 0; i < docs.scoreDocs.length; i++) {
+          ((FieldDoc) docs.scoreDocs[i]).fields = null;
+        }
+      }
+      return docs;
+    }
+
     TopFieldCollector collector = TopFieldCollector.create(sort, nDocs,
         fillFields, fieldSortDoTrackScores, fieldSortDoMaxScore, !weight.scoresDocsOutOfOrder());
     search(weight, filter, collector);
     return (TopFieldDocs) collector.topDocs();
   }
 
+  /**
+   * Like {@link #search(Query, Filter, int)}, but if
+   * <code>trackTotalHits</code> is false hits that cannot make the top
+   * <code>n</code> need not be counted, which lets disjunctions of terms
+   * skip them. The returned {@link TopDocs#isTotalHitsExact()} is then
+   * false and <code>totalHits</code> is a lower bound.
+   */
+  public TopDocs search(Query query, Filter filter, int n, boolean trackTotalHits) throws IOException {
+    if (n <= 0) {
+      throw new IllegalArgumentException("n must be > 0");
+    }
+    Weight weight = createWeight(query);
+    n = Math.max(1, Math.min(n, reader.maxDoc()));
+    // skipping hits needs scorers that go in doc order
+    boolean inOrder = !trackTotalHits || !weight.scoresDocsOutOfOrder();
+    if (isConcurrent()) {
+      // each slice skips against its own top hits
+      TopDocsCollector[] collectors = new TopDocsCollector[slices.length];
+      for (int i = 0; i < slices.length; i++) {
+        collectors[i] = TopScoreDocCollector.create(n, inOrder, trackTotalHits);
+      }
+      return searchSlices(weight, filter, collectors, null, n);
+    }
+    TopScoreDocCollector collector = TopScoreDocCollector.create(n, inOrder, trackTotalHits);
+    search(weight, filter, collector);
+    return collector.topDocs();
+  }
+
+  /**
+   * Like {@link #search(Query, Filter, int, Sort)}, for a sort whose first
+   * {@link SortField} orders by the same embedded slot and direction as
+   * <code>indexSort</code>. Segments written in that order stop being
+   * searched once <code>n</code> hits were collected from them; the
+   * returned {@link TopDocs#isTotalHitsExact()} tells whether
+   * <code>totalHits</code> is exact or a lower bound.
+   *
+   * @throws IllegalArgumentException if <code>sort</code> does not order
+   *         by an {@link EmbeddedFieldComparator.IntComparator} of the slot
+   *         and direction of <code>indexSort</code>, optionally followed by
+   *         {@link SortField#FIELD_DOC}
+   * @see org.apache.lucene.index.IndexWriter#setEmbeddedIndexSort(EmbeddedIndexSort)
+   */
+  public TopFieldDocs search(Query query, Filter filter, int n, Sort sort,
+      EmbeddedIndexSort indexSort) throws IOException {
+    checkIndexSort(sort, indexSort);
+    Weight weight = createWeight(query);
+    n = Math.max(1, Math.min(n, reader.maxDoc()));
+    if (isConcurrent()) {
+      TopFieldCollector[] collectors = new TopFieldCollector[slices.length];
+      EmbeddedEarlyTerminatingCollector[] earlies = new EmbeddedEarlyTerminatingCollector[slices.length];
+      for (int i = 0; i < slices.length; i++) {
+        collectors[i] = TopFieldCollector.create(sort, n,
+            true, fieldSortDoTrackScores, fieldSortDoMaxScore, true);
+        earlies[i] = new EmbeddedEarlyTerminatingCollector(collectors[i], indexSort, n);
+      }
+      searchSlices(weight, filter, earlies);
+      TopDocs[] results = new TopDocs[slices.length];
+      for (int i = 0; i < slices.length; i++) {
+        results[i] = collectors[i].topDocs();
+        results[i].setTotalHitsExact(!earlies[i].isEarlyTerminated());
+      }
+      return (TopFieldDocs) TopDocs.merge(sort, n, results);
+    }
+    TopFieldCollector collector = TopFieldCollector.create(sort, n,
+        true, fieldSortDoTrackScores, fieldSortDoMaxScore, true);
+    EmbeddedEarlyTerminatingCollector early = new EmbeddedEarlyTerminatingCollector(collector, indexSort, n);
+    search(weight, filter, early);
+    TopFieldDocs docs = (TopFieldDocs) collector.topDocs();
+    docs.setTotalHitsExact(!early.isEarlyTerminated());
+    return docs;
+  }
+
+  /** Throws IllegalArgumentException unless hits ordered by <code>sort</code>
+   *  come in the order of segments written by <code>indexSort</code>. */
+  private static void checkIndexSort(Sort sort, EmbeddedIndexSort indexSort) throws IOException {
+    SortField[] fields = sort.getSort();
+    boolean matches = fields.length == 1
+        || (fields.length == 2 && fields[1].getType() == SortField.DOC && !fields[1].getReverse());
+    if (matches) {
+      FieldComparator comparator = fields[0].getComparator(1, 0);
+      matches = comparator instanceof EmbeddedFieldComparator.IntComparator
+          && ((EmbeddedFieldComparator.IntComparator) comparator).getFieldNumber() == indexSort.getSlot()
+          && fields[0].getReverse() == indexSort.getReverse();
+    }
+    if (!matches) {
+      throw new IllegalArgumentException("sort " + sort + " does not match the index sort " + indexSort);
+    }
+  }
+
   public void search(Weight weight, Filter filter, Collector collector)
       throws IOException {
-    
-    if (filter == null) {
-      for (int i = 0; i < subReaders.length; i++) { // search each subreader
-        collector.setNextReader(subReaders[i], docStarts[i]);
-        Scorer scorer = weight.scorer(subReaders[i], !collector.acceptsDocsOutOfOrder(), true);
-        if (scorer != null) {
-          scorer.score(collector);
+    search(weight, filter, compile(filter), collector, null);
+  }
+
+  private static EmbeddedFilterProgram compile(Filter filter) {
+    // compiled once, evaluated a block of postings at a time per segment
+    return filter instanceof EmbeddedFieldFilter
+        ? ((EmbeddedFieldFilter) filter).compile() : null;
+  }
+
+  // searches the given segments, or all of them if segments is null
+  private void search(Weight weight, Filter filter, EmbeddedFilterProgram program,
+      Collector collector, int[] segments) throws IOException {
+    int n = segments == null ? subReaders.length : segments.length;
+    for (int j = 0; j < n; j++) { // search each subreader
+      int i = segments == null ? j : segments[j];
+      collector.setNextReader(subReaders[i], docStarts[i]);
+      try {
+        if (filter == null) {
+          Scorer scorer = weight.scorer(subReaders[i], !collector.acceptsDocsOutOfOrder(), true);
+          if (scorer != null) {
+            scorer.score(collector);
+          }
+        } else if (program != null) {
+          Scorer scorer = weight.scorer(subReaders[i], true, true);
+          if (scorer != null) {
+            scorer.score(collector, program);
+          }
+        } else {
+          searchWithFilter(subReaders[i], weight, filter, collector);
         }
+      } catch (CollectionTerminatedException e) {
+        // the collector is done with this segment
       }
-    } else {
-      for (int i = 0; i < subReaders.length; i++) { // search each subreader
-        collector.setNextReader(subReaders[i], docStarts[i]);
-        searchWithFilter(subReaders[i], weight, filter, collector);
+    }
+  }
+
+  private boolean isConcurrent() {
+    if (executor == null) {
+      return false;
+    }
+    int[][] slices = this.slices;
+    if (slices == null) {
+      // a racing search computes the same slices
+      this.slices = slices = slices(subReaders);
+    }
+    return slices.length > 1;
+  }
+
+  /** Searches slice i with collectors[i], concurrently. */
+  private void searchSlices(final Weight weight, final Filter filter,
+      final Collector[] collectors) throws IOException {
+    final EmbeddedFilterProgram program = compile(filter);
+    Future[] futures = new Future[slices.length];
+    boolean success = false;
+    try {
+      for (int i = 1; i < slices.length; i++) {
+        final int slice = i;
+        futures[i] = executor.submit(new Callable() {
+          public Object call() throws IOException {
+            search(weight, filter, program, collectors[slice], slices[slice]);
+            return null;
+          }
+        });
+      }
+      search(weight, filter, program, collectors[0], slices[0]);
+      for (int i = 1; i < futures.length; i++) {
+        try {
+          futures[i].get();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(ie);
+        } catch (ExecutionException ee) {
+          Throwable cause = ee.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        // slices that have not started yet never will; running ones are
+        // not interrupted, which would close the NIOFSDirectory channels
+        // they read from
+        for (int i = 1; i < futures.length; i++) {
+          if (futures[i] != null) {
+            futures[i].cancel(false);
+          }
+        }
       }
     }
   }
 
+  /** Searches the slices concurrently and merges the top hits of collectors. */
+  private TopDocs searchSlices(Weight weight, Filter filter,
+      TopDocsCollector[] collectors, Sort sort, int nDocs) throws IOException {
+    searchSlices(weight, filter, (Collector[]) collectors);
+    TopDocs[] results = new TopDocs[collectors.length];
+    for (int i = 0; i < collectors.length; i++) {
+      results[i] = collectors[i].topDocs();
+    }
+    return TopDocs.merge(sort, nDocs, results);
+  }
+
   private void searchWithFilter(IndexReader reader, Weight weight,
       final Filter filter, final Collector collector) throws IOException {
 
     assert filter != null;
     
-    Scorer scorer = weight.scorer(reader, true, false);
+    // a top scorer, so that it may skip hits below the collector's
+    // threshold, which the conjunction below passes on to it
+    Scorer scorer = weight.scorer(reader, true, true);
     if (scorer == null) {
       return;
     }
@@ -276,49 +576,23 @@ public TopFieldDocs search(Weight weight, Filter filter, int nDocs,
     int docID = scorer.docID();
     assert docID == -1 || docID == DocIdSetIterator.NO_MORE_DOCS;
 
-    
-    if(filter instanceof EmbeddedFieldFilter){
-    	EmbeddedFieldFilter eff = (EmbeddedFieldFilter) filter;
-    	collector.setScorer(scorer);
-    	int scorerDoc;
-		while((scorerDoc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS){
-			if(eff.filter(scorer.getSorts())){
-				collector.collect(scorerDoc, scorer.getSorts());
-			}
-		}
-    } else {
-			// CHECKME: use ConjunctionScorer here?
-			DocIdSet filterDocIdSet = filter.getDocIdSet(reader);
-			if (filterDocIdSet == null) {
-				// this means the filter does not accept any documents.
-				return;
-			}
-
-			DocIdSetIterator filterIter = filterDocIdSet.iterator();
-			if (filterIter == null) {
-				// this means the filter does not accept any documents.
-				return;
-			}
-			int filterDoc = filterIter.nextDoc();
-			int scorerDoc = scorer.advance(filterDoc);
-
-			collector.setScorer(scorer);
-			while (true) {
-				if (scorerDoc == filterDoc) {
-					// Check if scorer has exhausted, only before collecting.
-					if (scorerDoc == DocIdSetIterator.NO_MORE_DOCS) {
-						break;
-					}
-					collector.collect(scorerDoc, scorer.getSorts());
-					filterDoc = filterIter.nextDoc();
-					scorerDoc = scorer.advance(filterDoc);
-				} else if (scorerDoc > filterDoc) {
-					filterDoc = filterIter.advance(scorerDoc);
-				} else {
-					scorerDoc = scorer.advance(filterDoc);
-				}
-			}
+    DocIdSet filterDocIdSet = filter.getDocIdSet(reader);
+    if (filterDocIdSet == null) {
+      // this means the filter does not accept any documents.
+      return;
     }
+
+    DocIdSetIterator filterIter = filterDocIdSet.iterator();
+    if (filterIter == null) {
+      // this means the filter does not accept any documents.
+      return;
+    }
+
+    // the filter joins the query as a clause that does not score, and the
+    // query's cheapest clause leads
+    Scorer filtered = new ConjunctionScorer(scorer.getSimilarity(),
+        new Scorer[] { scorer }, new DocIdSetIterator[] { filterIter });
+    filtered.score(collector);
   }
 
   public Query rewrite(Query original) throws IOException {
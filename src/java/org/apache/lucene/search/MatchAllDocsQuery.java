@@ -47,14 +47,17 @@ public class MatchAllDocsQuery extends Query {
     final TermDocs termDocs;
     final float score;
     final byte[] norms;
+    final int[] sorts;
     private int doc = -1;
     
     MatchAllScorer(IndexReader reader, Similarity similarity, Weight w,
-        byte[] norms) throws IOException {
+        byte[] norms, EmbeddedSortSchema schema) throws IOException {
       super(similarity);
       this.termDocs = reader.termDocs(null);
       score = w.getValue();
       this.norms = norms;
+      // there is no term to read embedded sort values from
+      this.sorts = schema.getUnsetSorts();
     }
 
     public Explanation explain(int doc) {
@@ -93,21 +96,23 @@ public class MatchAllDocsQuery extends Query {
     }
 
 	public int getSort(int fieldNumber) {
-		throw new UnsupportedOperationException();
+		return -1;
 	}
 
 	public int[] getSorts() {
-		throw new UnsupportedOperationException();
+		return sorts;
 	}
   }
 
   private class MatchAllDocsWeight extends Weight {
     private Similarity similarity;
+    private EmbeddedSortSchema schema;
     private float queryWeight;
     private float queryNorm;
 
     public MatchAllDocsWeight(Searcher searcher) {
       this.similarity = searcher.getSimilarity();
+      this.schema = getEmbeddedSortSchema(searcher);
     }
 
     public String toString() {
@@ -134,7 +139,7 @@ public class MatchAllDocsQuery extends Query {
 
     public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer) throws IOException {
       return new MatchAllScorer(reader, similarity, this,
-          normsField != null ? reader.norms(normsField) : null);
+          normsField != null ? reader.norms(normsField) : null, schema);
     }
 
     public Explanation explain(IndexReader reader, int doc) {
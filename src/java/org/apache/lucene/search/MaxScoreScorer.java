@@ -0,0 +1,224 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.util.ScorerDocQueue;
+
+/** A Scorer for a pure disjunction that skips documents which cannot
+ * score above the threshold set by {@link #setMinCompetitiveScore(float)},
+ * using the MaxScore algorithm.
+ * <p>
+ * Subscorers are ordered by their {@link Scorer#getMaxScore()}.  The
+ * longest prefix of that order whose bounds add up to less than the
+ * threshold is "non-essential": a document matching only those cannot
+ * compete, so candidates are drawn from the other, essential, subscorers
+ * alone.  Non-essential subscorers are then advanced to each candidate,
+ * largest bound first, and the candidate is dropped as soon as what it
+ * has scored plus what it may still score falls below the threshold.
+ * Dropped documents are never collected, so the total hit count is no
+ * longer exact.
+ * <p>
+ * Scores are those of {@link BooleanScorer2} for the same clauses, up to
+ * the order the subscores are added in.
+ * <p>
+ * The bounds are only as good as the subscorers'.  A {@link TermScorer}'s
+ * is computed from the term's largest freq in the segment, which assumes
+ * {@link Similarity#tf(float)} never decreases as the freq grows; term
+ * queries therefore only report a bound under {@link DefaultSimilarity}
+ * itself, and a disjunction with an unbounded clause is not pruned.
+ */
+final class MaxScoreScorer extends Scorer {
+
+  // bounds are summed in double and widened by this much, so that the
+  // float sum of the actual scores, in any order, cannot exceed them
+  private static final double SLACK = 1.0 + 1.0 / (1 << 20);
+
+  private final Scorer[] scorers;       // by ascending bound
+  private final float[] prefixBounds;   // prefixBounds[i] bounds scorers[0..i-1]
+  private final float[] coordFactors;
+  private final float maxCoordFactor;
+
+  // scorers[0..numNonEssential-1] are non-essential
+  private int numNonEssential;
+  private final ScorerDocQueue queue;
+  private float minScore = Float.NEGATIVE_INFINITY;
+
+  private int doc = -1;
+  private float score = Float.NaN;
+  private int[] sorts = NO_SORTS;
+
+  /** @param subScorers at least two scorers, all with a finite
+   *  {@link Scorer#getMaxScore()} */
+  MaxScoreScorer(Similarity similarity, List subScorers) throws IOException {
+    super(similarity);
+    scorers = (Scorer[]) subScorers.toArray(new Scorer[subScorers.size()]);
+    Arrays.sort(scorers, new Comparator() {
+      public int compare(Object a, Object b) {
+        return Float.compare(((Scorer) a).getMaxScore(), ((Scorer) b).getMaxScore());
+      }
+    });
+
+    prefixBounds = new float[scorers.length + 1];
+    double sum = 0;
+    for (int i = 0; i < scorers.length; i++) {
+      sum += scorers[i].getMaxScore();
+      prefixBounds[i + 1] = (float) (sum * SLACK);
+    }
+
+    coordFactors = new float[scorers.length + 1];
+    float max = 0;
+    for (int i = 0; i < coordFactors.length; i++) {
+      coordFactors[i] = similarity.coord(i, scorers.length);
+      max = Math.max(max, coordFactors[i]);
+    }
+    maxCoordFactor = max;
+
+    queue = new ScorerDocQueue(scorers.length);
+    for (int i = 0; i < scorers.length; i++) {
+      if (scorers[i].nextDoc() != NO_MORE_DOCS) {
+        queue.insert(scorers[i]);
+      }
+    }
+  }
+
+  public float getMaxScore() {
+    return prefixBounds[scorers.length] * maxCoordFactor;
+  }
+
+  public void setMinCompetitiveScore(float minScore) {
+    this.minScore = minScore;
+    int k = numNonEssential;
+    while (k < scorers.length && prefixBounds[k + 1] * maxCoordFactor < minScore) {
+      k++;
+    }
+    if (k > numNonEssential) {
+      numNonEssential = k;
+      // candidates now come from fewer scorers; all of them are already
+      // beyond the current doc
+      queue.clear();
+      for (int i = k; i < scorers.length; i++) {
+        if (scorers[i].docID() != NO_MORE_DOCS) {
+          queue.insert(scorers[i]);
+        }
+      }
+    }
+  }
+
+  public int docID() {
+    return doc;
+  }
+
+  public int nextDoc() throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    return nextCandidate();
+  }
+
+  public int advance(int target) throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    while (queue.size() > 0 && queue.topDoc() < target) {
+      queue.topSkipToAndAdjustElsePop(target);
+    }
+    return nextCandidate();
+  }
+
+  // Essential scorers are all beyond the current doc when this is called,
+  // and are again when it returns
+  private int nextCandidate() throws IOException {
+    while (queue.size() > 0) {
+      final int candidate = queue.topDoc();
+      sorts = copyOfSorts(queue.getSorts(), sorts);
+      float sum = 0;
+      int matchers = 0;
+      do {
+        sum += queue.topScore();
+        matchers++;
+        if (!queue.topNextAndAdjustElsePop() && queue.size() == 0) {
+          break;
+        }
+      } while (queue.topDoc() == candidate);
+
+      // probe the non-essential scorers, best first
+      boolean competitive = true;
+      for (int i = numNonEssential - 1; i >= 0; i--) {
+        if ((sum + prefixBounds[i + 1]) * maxCoordFactor < minScore) {
+          competitive = false;
+          break;
+        }
+        final Scorer scorer = scorers[i];
+        int d = scorer.docID();
+        if (d < candidate) {
+          d = scorer.advance(candidate);
+        }
+        if (d == candidate) {
+          sum += scorer.score();
+          matchers++;
+        }
+      }
+
+      if (competitive) {
+        score = sum * coordFactors[matchers];
+        return doc = candidate;
+      }
+    }
+    return doc = NO_MORE_DOCS;
+  }
+
+  public float score() throws IOException {
+    return score;
+  }
+
+  public int cost() {
+    long cost = 0;
+    for (int i = 0; i < scorers.length; i++) {
+      cost += scorers[i].cost();
+    }
+    return (int) Math.min(cost, Integer.MAX_VALUE);
+  }
+
+  public int getSort(int fieldNumber) {
+    return sorts[fieldNumber];
+  }
+
+  public int[] getSorts() {
+    return sorts;
+  }
+
+  /** @deprecated use {@link #docID()} instead. */
+  public int doc() {
+    return doc;
+  }
+
+  /** @deprecated use {@link #nextDoc()} instead. */
+  public boolean next() throws IOException {
+    return nextDoc() != NO_MORE_DOCS;
+  }
+
+  /** @deprecated use {@link #advance(int)} instead. */
+  public boolean skipTo(int target) throws IOException {
+    return advance(target) != NO_MORE_DOCS;
+  }
+}
@@ -125,6 +125,7 @@ public class MultiPhraseQuery extends Query {
 
   private class MultiPhraseWeight extends Weight {
     private Similarity similarity;
+    private EmbeddedSortSchema schema;
     private float value;
     private float idf;
     private float queryNorm;
@@ -133,6 +134,7 @@ public class MultiPhraseQuery extends Query {
     public MultiPhraseWeight(Searcher searcher)
       throws IOException {
       this.similarity = getSimilarity(searcher);
+      this.schema = getEmbeddedSortSchema(searcher);
 
       // compute idf
       Iterator i = termArrays.iterator();
@@ -163,8 +165,12 @@ public class MultiPhraseQuery extends Query {
         return null;
 
       TermPositions[] tps = new TermPositions[termArrays.size()];
+      int[] docFreqs = new int[tps.length];
       for (int i=0; i<tps.length; i++) {
         Term[] terms = (Term[])termArrays.get(i);
+        for (int j = 0; j < terms.length; j++) {
+          docFreqs[i] += reader.docFreq(terms[j]);
+        }
 
         TermPositions p;
         if (terms.length > 1)
@@ -179,11 +185,12 @@ public class MultiPhraseQuery extends Query {
       }
 
       if (slop == 0)
-        return new ExactPhraseScorer(this, tps, getPositions(), similarity,
-                                     reader.norms(field));
+        return new ExactPhraseScorer(this, tps, getPositions(), docFreqs,
+                                     null, null, similarity,
+                                     reader.norms(field), schema);
       else
-        return new SloppyPhraseScorer(this, tps, getPositions(), similarity,
-                                      slop, reader.norms(field));
+        return new SloppyPhraseScorer(this, tps, getPositions(), docFreqs,
+                                      similarity, slop, reader.norms(field), schema);
     }
 
     public Explanation explain(IndexReader reader, int doc)
@@ -150,6 +150,17 @@ public class MultiSearcher extends Searcher {
     return docFreq;
   }
 
+  public int[] docFreqs(Term[] terms) throws IOException {
+    int[] aggregatedDfs = new int[terms.length];
+    for (int i = 0; i < searchables.length; i++) {
+      int[] dfs = searchables[i].docFreqs(terms);
+      for(int j=0; j<aggregatedDfs.length; j++){
+        aggregatedDfs[j] += dfs[j];
+      }
+    }
+    return aggregatedDfs;
+  }
+
   // inherit javadoc
   public Document doc(int n) throws CorruptIndexException, IOException {
     int i = subSearcher(n);			  // find searcher index
@@ -305,28 +316,32 @@ public class MultiSearcher extends Searcher {
     Query rewrittenQuery = rewrite(original);
 
     // step 2
-    Set terms = new HashSet();
-    rewrittenQuery.extractTerms(terms);
+    Term[] allTermsArray = extractTerms(rewrittenQuery);
 
     // step3
-    Term[] allTermsArray = new Term[terms.size()];
-    terms.toArray(allTermsArray);
-    int[] aggregatedDfs = new int[terms.size()];
-    for (int i = 0; i < searchables.length; i++) {
-      int[] dfs = searchables[i].docFreqs(allTermsArray);
-      for(int j=0; j<aggregatedDfs.length; j++){
-        aggregatedDfs[j] += dfs[j];
-      }
-    }
+    int[] aggregatedDfs = docFreqs(allTermsArray);
+
+    // step4
+    return createWeight(rewrittenQuery, allTermsArray, aggregatedDfs);
+  }
 
+  static Term[] extractTerms(Query rewrittenQuery) {
+    Set terms = new HashSet();
+    rewrittenQuery.extractTerms(terms);
+    return (Term[]) terms.toArray(new Term[terms.size()]);
+  }
+
+  /** Creates the weight of a rewritten query from the document
+   * frequencies of its terms across all searchables. */
+  Weight createWeight(Query rewrittenQuery, Term[] allTermsArray, int[] aggregatedDfs) throws IOException {
     HashMap dfMap = new HashMap();
     for(int i=0; i<allTermsArray.length; i++) {
       dfMap.put(allTermsArray[i], new Integer(aggregatedDfs[i]));
     }
 
-    // step4
     int numDocs = maxDoc();
     CachedDfSource cacheSim = new CachedDfSource(dfMap, numDocs, getSimilarity());
+    cacheSim.setEmbeddedSortSchema(getEmbeddedSortSchema());
 
     return rewrittenQuery.weight(cacheSim);
   }
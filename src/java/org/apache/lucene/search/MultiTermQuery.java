@@ -187,6 +187,7 @@ public abstract class MultiTermQuery extends Query {
 
     private int termCountCutoff = DEFAULT_TERM_COUNT_CUTOFF;
     private double docCountPercent = DEFAULT_DOC_COUNT_PERCENT;
+    private transient SegmentFilterCache docIdSetCache;
 
     /** If the number of terms in this query is equal to or
      *  larger than this setting then {@link
@@ -214,6 +215,23 @@ public abstract class MultiTermQuery extends Query {
       return docCountPercent;
     }
 
+    /** When the filter is used, its set for each segment is
+     *  looked up in, or else added to, this cache, within
+     *  the same bound as the other filters it caches.
+     *  Queries on high-cardinality fields that come back
+     *  often, such as prefixes typed by users, are then
+     *  only expanded once per segment. Default is null:
+     *  sets are not cached.  The cache is not serialized
+     *  with the rewrite method. */
+    public void setDocIdSetCache(SegmentFilterCache cache) {
+      docIdSetCache = cache;
+    }
+
+    /** @see #setDocIdSetCache */
+    public SegmentFilterCache getDocIdSetCache() {
+      return docIdSetCache;
+    }
+
     public Query rewrite(IndexReader reader, MultiTermQuery query) throws IOException {
       // Get the enum and start visiting terms.  If we
       // exhaust the enum before hitting either of the
@@ -239,7 +257,7 @@ public abstract class MultiTermQuery extends Query {
 
           if (pendingTerms.size() >= termCountLimit || docVisitCount >= docCountCutoff) {
             // Too many terms -- make a filter.
-            Query result = new ConstantScoreQuery(new MultiTermQueryWrapperFilter(query));
+            Query result = new ConstantScoreQuery(new MultiTermQueryWrapperFilter(query, docIdSetCache));
             result.setBoost(query.getBoost());
             return result;
           } else  if (!enumerator.next()) {
@@ -311,6 +329,10 @@ public abstract class MultiTermQuery extends Query {
       throw new UnsupportedOperationException("Please create a private instance");
     }
 
+    public void setDocIdSetCache(SegmentFilterCache cache) {
+      throw new UnsupportedOperationException("Please create a private instance");
+    }
+
     // Make sure we are still a singleton even after deserializing
     protected Object readResolve() {
       return CONSTANT_SCORE_AUTO_REWRITE_DEFAULT;
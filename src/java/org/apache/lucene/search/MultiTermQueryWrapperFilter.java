@@ -22,6 +22,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.SortedVIntList;
 
 import java.io.IOException;
 import java.util.BitSet;
@@ -43,12 +44,22 @@ import java.util.BitSet;
 public class MultiTermQueryWrapperFilter extends Filter {
     
   protected final MultiTermQuery query;
+  private final SegmentFilterCache cache;
 
   /**
    * Wrap a {@link MultiTermQuery} as a Filter.
    */
   protected MultiTermQueryWrapperFilter(MultiTermQuery query) {
+      this(query, null);
+  }
+
+  /**
+   * Wrap a {@link MultiTermQuery} as a Filter whose sets are cached in
+   * <code>cache</code>, if not null.
+   */
+  protected MultiTermQueryWrapperFilter(MultiTermQuery query, SegmentFilterCache cache) {
       this.query = query;
+      this.cache = cache;
   }
   
   //@Override
@@ -154,9 +165,58 @@ public class MultiTermQueryWrapperFilter extends Filter {
   /**
    * Returns a DocIdSet with documents that should be
    * permitted in search results.
+   * <p>
+   * The terms are walked once, reading their docs in bulk straight into
+   * an {@link OpenBitSet}. If few docs match, at most one in
+   * {@link #SPARSE_RATIO}, the set is then compacted into a
+   * {@link SortedVIntList}, which takes a few bytes per doc rather than a
+   * bit per doc of the segment. With a {@link SegmentFilterCache}, the
+   * set is cached for the segment and the query with its boost and
+   * rewrite method left out; terms are then not counted on cache hits.
    */
   //@Override
   public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+    if (cache == null) {
+      return buildDocIdSet(reader);
+    }
+    return cache.getDocIdSet(reader, new CacheKey());
+  }
+
+  /** Sets with fewer than one doc in this many of the segment are kept sparse. */
+  public static final int SPARSE_RATIO = 64;
+
+  private MultiTermQuery normalizedQuery() {
+    MultiTermQuery normalized = (MultiTermQuery) query.clone();
+    normalized.setBoost(1.0f);
+    normalized.setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+    return normalized;
+  }
+
+  /**
+   * Keys the sets of this filter in the cache by the normalized query, and
+   * builds them with this filter, so that its terms are counted.
+   */
+  private final class CacheKey extends Filter {
+    private final MultiTermQuery normalized = normalizedQuery();
+
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+      return buildDocIdSet(reader);
+    }
+
+    public String toString() {
+      return normalized.toString();
+    }
+
+    public boolean equals(Object o) {
+      return o instanceof CacheKey && normalized.equals(((CacheKey) o).normalized);
+    }
+
+    public int hashCode() {
+      return normalized.hashCode();
+    }
+  }
+
+  private DocIdSet buildDocIdSet(IndexReader reader) throws IOException {
     final TermEnum enumerator = query.getEnum(reader);
     try {
       // if current term in enum is null, the enum is empty -> shortcut
@@ -164,11 +224,37 @@ public class MultiTermQueryWrapperFilter extends Filter {
         return DocIdSet.EMPTY_DOCIDSET;
       // else fill into a OpenBitSet
       final OpenBitSet bitSet = new OpenBitSet(reader.maxDoc());
-      new TermGenerator() {
-        public void handleDoc(int doc) {
-          bitSet.set(doc);
-        }
-      }.generate(reader, enumerator);
+      final int[] docs = new int[128];
+      final int[] freqs = new int[128];
+      int termCount = 0;
+      long docCount = 0;
+      TermDocs termDocs = reader.termDocs();
+      try {
+        do {
+          Term term = enumerator.term();
+          if (term == null)
+            break;
+          termCount++;
+          termDocs.seek(term);
+          int count;
+          while ((count = termDocs.read(docs, freqs)) != 0) {
+            for (int i = 0; i < count; i++) {
+              bitSet.fastSet(docs[i]);
+            }
+            docCount += count;
+          }
+        } while (enumerator.next());
+      } finally {
+        termDocs.close();
+      }
+      query.incTotalNumberOfTerms(termCount);
+
+      // docCount only bounds the cardinality, as terms may share docs
+      if (docCount == 0) {
+        return DocIdSet.EMPTY_DOCIDSET;
+      } else if (docCount * SPARSE_RATIO < reader.maxDoc() || bitSet.cardinality() * SPARSE_RATIO < reader.maxDoc()) {
+        return new SortedVIntList(bitSet);
+      }
       return bitSet;
     } finally {
       enumerator.close();
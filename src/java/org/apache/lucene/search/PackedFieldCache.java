@@ -0,0 +1,468 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.PackedInts;
+import org.apache.lucene.util.TermPool;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Expert: a {@link FieldCache} that keeps values outside of the Java heap,
+ * so that large caches neither grow the heap nor slow down its collection.
+ * <p>
+ * The int, long, float and double values returned by the accessors ({@link
+ * #getIntValues}, {@link #getLongValues}, {@link #getFloatValues} and
+ * {@link #getDoubleValues}) and the ordinals of {@link #getTermsIndex} are
+ * bit-packed into direct {@link java.nio.ByteBuffer}s, see {@link
+ * PackedInts}. Each segment's values take as many bits as the spread
+ * between its least and greatest value needs, so that for example a field
+ * of timestamps within a few days takes about 20 bits per document, not 64.
+ * Floats and doubles are packed by their bits, which rarely saves much.
+ * <p>
+ * Everything else is held on the heap as by the default cache: the terms
+ * of {@link #getTermsIndex}, bytes and shorts, which are small already, and
+ * the arrays returned by {@link #getInts} and the like. Code that reads
+ * those arrays keeps working, but the values it reads are then held twice;
+ * {@link FieldComparator}s and {@link FieldCacheRangeFilter} only use the
+ * accessors.
+ * <p>
+ * It is used for everything if the system property
+ * <code>org.apache.lucene.packedFieldCache</code> is <code>true</code>, as
+ * {@link FieldCache#DEFAULT} then is one, or for one sort or filter by
+ * {@link SortField#setFieldCache} and {@link
+ * FieldCacheRangeFilter#setFieldCache}. Off-heap space is freed when the
+ * cache entry is collected, and is bounded by
+ * <code>-XX:MaxDirectMemorySize</code>.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public class PackedFieldCache extends FieldCacheImpl {
+
+  public PackedFieldCache() {
+  }
+
+  synchronized void init() {
+    super.init();
+    caches.put(Ints.class, new IntValuesCache(this));
+    caches.put(Longs.class, new LongValuesCache(this));
+    caches.put(Floats.class, new FloatValuesCache(this));
+    caches.put(Doubles.class, new DoubleValuesCache(this));
+    caches.put(DocTermsIndex.class, new TermsIndexCache(this));
+  }
+
+  // inherit javadocs
+  public Ints getIntValues(IndexReader reader, String field, IntParser parser)
+      throws IOException {
+    return (Ints) ((Cache)caches.get(Ints.class)).get(reader, new Entry(field, parser));
+  }
+
+  // inherit javadocs
+  public Longs getLongValues(IndexReader reader, String field, FieldCache.LongParser parser)
+      throws IOException {
+    return (Longs) ((Cache)caches.get(Longs.class)).get(reader, new Entry(field, parser));
+  }
+
+  // inherit javadocs
+  public Floats getFloatValues(IndexReader reader, String field, FloatParser parser)
+      throws IOException {
+    return (Floats) ((Cache)caches.get(Floats.class)).get(reader, new Entry(field, parser));
+  }
+
+  // inherit javadocs
+  public Doubles getDoubleValues(IndexReader reader, String field, FieldCache.DoubleParser parser)
+      throws IOException {
+    return (Doubles) ((Cache)caches.get(Doubles.class)).get(reader, new Entry(field, parser));
+  }
+
+  // inherit javadocs
+  public DocTermsIndex getTermsIndex(IndexReader reader, String field)
+      throws IOException {
+    return (DocTermsIndex) ((Cache)caches.get(DocTermsIndex.class)).get(reader, new Entry(field, (Parser)null));
+  }
+
+  /**
+   * Returns the packed values of the field of <code>entry</code>, as
+   * <code>cache</code> parses them; subclasses may read them from elsewhere.
+   */
+  Packed getPacked(IndexReader reader, Entry entry, NumericCache cache)
+      throws IOException {
+    return cache.pack(reader, entry.field, entry.custom, false);
+  }
+
+  /** Returns the terms index of <code>field</code>; subclasses may read it from elsewhere. */
+  DocTermsIndex createTermsIndex(IndexReader reader, String field)
+      throws IOException {
+    return TermsIndexCache.build(reader, field, false);
+  }
+
+  /**
+   * Returns the TermDocs to read values with: a raw one of a segment if
+   * values of deleted documents are wanted too.
+   */
+  static TermDocs termDocs(IndexReader reader, boolean withDeleted)
+      throws IOException {
+    return withDeleted ? ((SegmentReader) reader).rawTermDocs() : reader.termDocs();
+  }
+
+  /** The packed values of a field, and what was subtracted from them. */
+  static final class Packed {
+    final PackedInts values;
+    final long min;
+
+    Packed(PackedInts values, long min) {
+      this.values = values;
+      this.min = min;
+    }
+  }
+
+  /** Packs the values of numeric fields, taken as longs. */
+  abstract static class NumericCache extends Cache {
+    NumericCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    /** Returns the value of term text <code>text</code>, as a long. */
+    abstract long parse(Object parser, String text);
+
+    /**
+     * Reads the terms twice: once for the spread of the values, then to
+     * pack the value of each document, deleted ones too if
+     * <code>withDeleted</code>, which needs a {@link SegmentReader}.
+     */
+    Packed pack(IndexReader reader, String field, Object parser, boolean withDeleted)
+        throws IOException {
+      final int maxDoc = reader.maxDoc();
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      long postings = 0;
+      TermEnum termEnum = reader.terms (new Term (field));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field) break;
+          long termval = parse(parser, term.text());
+          min = Math.min(min, termval);
+          max = Math.max(max, termval);
+          postings += termEnum.docFreq();
+        } while (termEnum.next());
+      } catch (StopFillCacheException stop) {
+      } finally {
+        termEnum.close();
+      }
+      if (min > max) // no values
+        return new Packed(PackedInts.allocateDirect(maxDoc, 0), 0);
+      if (postings < maxDoc || (!withDeleted && reader.hasDeletions())) {
+        // some docs have no value, which reads as 0
+        min = Math.min(min, 0);
+        max = Math.max(max, 0);
+      }
+
+      // the difference is taken as unsigned
+      PackedInts packed = PackedInts.allocateDirect(maxDoc, PackedInts.bitsRequired(max - min));
+      // docs without a value must read as 0, which packs as -min
+      final OpenBitSet hasValue = min != 0 ? new OpenBitSet(maxDoc) : null;
+      TermDocs termDocs = termDocs(reader, withDeleted);
+      termEnum = reader.terms (new Term (field));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field) break;
+          long termval = parse(parser, term.text()) - min;
+          termDocs.seek (termEnum);
+          while (termDocs.next()) {
+            packed.set(termDocs.doc(), termval);
+            if (hasValue != null) {
+              hasValue.fastSet(termDocs.doc());
+            }
+          }
+        } while (termEnum.next());
+      } catch (StopFillCacheException stop) {
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+
+      if (hasValue != null && hasValue.cardinality() < maxDoc) {
+        if (min < 0 && max >= 0) {
+          for (int doc = 0; doc < maxDoc; doc++) {
+            if (!hasValue.fastGet(doc)) {
+              packed.set(doc, -min);
+            }
+          }
+        } else {
+          // docs having several values made up for docs having none, and
+          // 0 is out of the range: repack
+          final long newMin = Math.min(min, 0);
+          final PackedInts wider = PackedInts.allocateDirect(maxDoc, PackedInts.bitsRequired(Math.max(max, 0) - newMin));
+          for (int doc = 0; doc < maxDoc; doc++) {
+            final long value = hasValue.fastGet(doc) ? min + packed.get(doc) : 0;
+            wider.set(doc, value - newMin);
+          }
+          packed = wider;
+          min = newMin;
+        }
+      }
+      return new Packed(packed, min);
+    }
+  }
+
+  static final class IntValues extends Ints implements Sized {
+    private final PackedInts values;
+    private final long min;
+
+    IntValues(Packed packed) {
+      values = packed.values;
+      min = packed.min;
+    }
+
+    public int get(int doc) {
+      return (int) (min + values.get(doc));
+    }
+
+    public long ramBytesUsed() {
+      return values.sizeInBytes();
+    }
+  }
+
+  static final class IntValuesCache extends NumericCache {
+    IntValuesCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    long parse(Object parser, String text) {
+      return ((IntParser) parser).parseInt(text);
+    }
+
+    protected Object createValue(IndexReader reader, Entry entry)
+        throws IOException {
+      if (entry.custom == null) {
+        try {
+          return ((PackedFieldCache) wrapper).getIntValues(reader, entry.field, DEFAULT_INT_PARSER);
+        } catch (NumberFormatException ne) {
+          return ((PackedFieldCache) wrapper).getIntValues(reader, entry.field, NUMERIC_UTILS_INT_PARSER);
+        }
+      }
+      return new IntValues(((PackedFieldCache) wrapper).getPacked(reader, entry, this));
+    }
+  }
+
+  static final class LongValues extends Longs implements Sized {
+    private final PackedInts values;
+    private final long min;
+
+    LongValues(Packed packed) {
+      values = packed.values;
+      min = packed.min;
+    }
+
+    public long get(int doc) {
+      return min + values.get(doc);
+    }
+
+    public long ramBytesUsed() {
+      return values.sizeInBytes();
+    }
+  }
+
+  static final class LongValuesCache extends NumericCache {
+    LongValuesCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    long parse(Object parser, String text) {
+      return ((FieldCache.LongParser) parser).parseLong(text);
+    }
+
+    protected Object createValue(IndexReader reader, Entry entry)
+        throws IOException {
+      if (entry.custom == null) {
+        try {
+          return ((PackedFieldCache) wrapper).getLongValues(reader, entry.field, DEFAULT_LONG_PARSER);
+        } catch (NumberFormatException ne) {
+          return ((PackedFieldCache) wrapper).getLongValues(reader, entry.field, NUMERIC_UTILS_LONG_PARSER);
+        }
+      }
+      return new LongValues(((PackedFieldCache) wrapper).getPacked(reader, entry, this));
+    }
+  }
+
+  static final class FloatValues extends Floats implements Sized {
+    private final PackedInts values;
+    private final long min;
+
+    FloatValues(Packed packed) {
+      values = packed.values;
+      min = packed.min;
+    }
+
+    public float get(int doc) {
+      return Float.intBitsToFloat((int) (min + values.get(doc)));
+    }
+
+    public long ramBytesUsed() {
+      return values.sizeInBytes();
+    }
+  }
+
+  static final class FloatValuesCache extends NumericCache {
+    FloatValuesCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    long parse(Object parser, String text) {
+      return Float.floatToRawIntBits(((FloatParser) parser).parseFloat(text));
+    }
+
+    protected Object createValue(IndexReader reader, Entry entry)
+        throws IOException {
+      if (entry.custom == null) {
+        try {
+          return ((PackedFieldCache) wrapper).getFloatValues(reader, entry.field, DEFAULT_FLOAT_PARSER);
+        } catch (NumberFormatException ne) {
+          return ((PackedFieldCache) wrapper).getFloatValues(reader, entry.field, NUMERIC_UTILS_FLOAT_PARSER);
+        }
+      }
+      return new FloatValues(((PackedFieldCache) wrapper).getPacked(reader, entry, this));
+    }
+  }
+
+  static final class DoubleValues extends Doubles implements Sized {
+    private final PackedInts values;
+    private final long min;
+
+    DoubleValues(Packed packed) {
+      values = packed.values;
+      min = packed.min;
+    }
+
+    public double get(int doc) {
+      return Double.longBitsToDouble(min + values.get(doc));
+    }
+
+    public long ramBytesUsed() {
+      return values.sizeInBytes();
+    }
+  }
+
+  static final class DoubleValuesCache extends NumericCache {
+    DoubleValuesCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    long parse(Object parser, String text) {
+      return Double.doubleToRawLongBits(((FieldCache.DoubleParser) parser).parseDouble(text));
+    }
+
+    protected Object createValue(IndexReader reader, Entry entry)
+        throws IOException {
+      if (entry.custom == null) {
+        try {
+          return ((PackedFieldCache) wrapper).getDoubleValues(reader, entry.field, DEFAULT_DOUBLE_PARSER);
+        } catch (NumberFormatException ne) {
+          return ((PackedFieldCache) wrapper).getDoubleValues(reader, entry.field, NUMERIC_UTILS_DOUBLE_PARSER);
+        }
+      }
+      return new DoubleValues(((PackedFieldCache) wrapper).getPacked(reader, entry, this));
+    }
+  }
+
+  static final class TermsIndex extends DocTermsIndex implements Sized {
+    final PackedInts ords;
+    // term ord - 1, as ordinal 0 has none
+    final TermPool terms;
+
+    TermsIndex(PackedInts ords, TermPool terms) {
+      this.ords = ords;
+      this.terms = terms;
+    }
+
+    public int getOrd(int doc) {
+      return (int) ords.get(doc);
+    }
+
+    public String lookup(int ord) {
+      return ord == 0 ? null : terms.get(ord - 1);
+    }
+
+    public int numOrd() {
+      return terms.size() + 1;
+    }
+
+    public long ramBytesUsed() {
+      return ords.sizeInBytes() + terms.ramBytesUsed();
+    }
+  }
+
+  static final class TermsIndexCache extends Cache {
+    TermsIndexCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    protected Object createValue(IndexReader reader, Entry entryKey)
+        throws IOException {
+      return ((PackedFieldCache) wrapper).createTermsIndex(reader, StringHelper.intern((String) entryKey.field));
+    }
+
+    /**
+     * Reads the terms twice: once to collect them, then to pack the
+     * ordinal of each document, deleted ones too if <code>withDeleted</code>.
+     */
+    static TermsIndex build(IndexReader reader, String field, boolean withDeleted)
+        throws IOException {
+      // the terms first, for the number of bits of the ordinals; ordinal 0
+      // is for documents that have no terms in this field
+      final TermPool terms = new TermPool();
+      TermEnum termEnum = reader.terms (new Term (field));
+      try {
+        do {
+          Term term = termEnum.term();
+          if (term==null || term.field() != field) break;
+          terms.add(term.text());
+        } while (termEnum.next());
+      } finally {
+        termEnum.close();
+      }
+
+      final PackedInts ords = PackedInts.allocateDirect(reader.maxDoc(), PackedInts.bitsRequired(terms.size()));
+      TermDocs termDocs = termDocs(reader, withDeleted);
+      termEnum = reader.terms (new Term (field));
+      try {
+        for (int t = 1; t <= terms.size(); t++) {
+          termDocs.seek (termEnum);
+          while (termDocs.next()) {
+            ords.set(termDocs.doc(), t);
+          }
+          termEnum.next();
+        }
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+      return new TermsIndex(ords, terms);
+    }
+  }
+}
@@ -18,274 +18,322 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.util.PriorityQueue;
 
 /** Implements parallel search over a set of <code>Searchables</code>.
  *
  * <p>Applications usually need only call the inherited {@link #search(Query)}
  * or {@link #search(Query,Filter)} methods.
+ *
+ * <p>Each request asks every searchable on an {@link ExecutorService}, which
+ * is meant to be shared by all searchers: query rewriting, document
+ * frequencies and searches for top hits all fan out this way. Searches with
+ * a caller's {@link Collector} visit the searchables one after the other,
+ * since collectors are not thread-safe.
+ *
+ * <p>With a {@link #setTimeout(long) timeout}, a request that starts with a
+ * {@link Query} has until the timeout elapses to rewrite it, weight it and
+ * search; one that starts with a {@link Weight} has that long to search.
+ * Searchables that have not answered by then are cancelled and left out of
+ * the rest of the request, and its hits are those of the others, with
+ * {@link TopDocs#isTotalHitsExact()} false. Cancelling does not interrupt a
+ * searchable that already started, as interrupting a thread reading through
+ * an NIO channel closes the channel; its answer is dropped instead. The
+ * returned {@link TopDocs#getShardStats()} tells which searchables timed
+ * out and how long the others took.
  */
 public class ParallelMultiSearcher extends MultiSearcher {
 
-  private Searchable[] searchables;
-  private int[] starts;
-	
-  /** Creates a searchable which searches <i>searchables</i>. */
+  private static ExecutorService defaultExecutor;
+
+  private final ExecutorService executor;
+  private final Searchable[] searchables;
+  private final int[] starts;
+  private volatile long timeout;
+
+  /** Creates a searchable which searches <i>searchables</i> on a pool shared
+   * by all searchers created this way, of up to one daemon thread per
+   * processor. When all of them are busy, a searchable is searched on the
+   * calling thread instead, so that a searcher nested in another cannot
+   * wait on a pool its outer searcher holds every thread of. */
   public ParallelMultiSearcher(Searchable[] searchables) throws IOException {
+    this(getDefaultExecutor(), searchables);
+  }
+
+  /** Creates a searchable which searches <i>searchables</i> on
+   * <code>executor</code>, which {@link #close()} does not shut down. */
+  public ParallelMultiSearcher(ExecutorService executor, Searchable[] searchables) throws IOException {
     super(searchables);
+    this.executor = executor;
     this.searchables = searchables;
     this.starts = getStarts();
   }
 
-  /**
-   * TODO: parallelize this one too
-   */
-  public int docFreq(Term term) throws IOException {
-    return super.docFreq(term);
-  }
-
-  /**
-   * A search implementation which spans a new thread for each
-   * Searchable, waits for each search to complete and merge
-   * the results back together.
-   */
-  public TopDocs search(Weight weight, Filter filter, int nDocs)
-    throws IOException {
-    HitQueue hq = new HitQueue(nDocs, false);
-    int totalHits = 0;
-    MultiSearcherThread[] msta =
-      new MultiSearcherThread[searchables.length];
-    for (int i = 0; i < searchables.length; i++) { // search each searchable
-      // Assume not too many searchables and cost of creating a thread is by far inferior to a search
-      msta[i] = new MultiSearcherThread(searchables[i], weight, filter, nDocs,
-          hq, i, starts, "MultiSearcher thread #" + (i + 1));
-      msta[i].start();
+  private static synchronized ExecutorService getDefaultExecutor() {
+    if (defaultExecutor == null) {
+      int numThreads = Runtime.getRuntime().availableProcessors();
+      defaultExecutor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+          new SynchronousQueue(), new ThreadFactory() {
+            private int count;
+            public synchronized Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "MultiSearcher thread #" + (++count));
+              thread.setDaemon(true);
+              return thread;
+            }
+          }, new ThreadPoolExecutor.CallerRunsPolicy());
     }
+    return defaultExecutor;
+  }
 
-    for (int i = 0; i < searchables.length; i++) {
-      try {
-        msta[i].join();
-      } catch (InterruptedException ie) {
-        // In 3.0 we will change this to throw
-        // InterruptedException instead
-        Thread.currentThread().interrupt();
-        throw new RuntimeException(ie);
-      }
-      IOException ioe = msta[i].getIOException();
-      if (ioe == null) {
-        totalHits += msta[i].hits();
-      } else {
-        // if one search produced an IOException, rethrow it
-        throw ioe;
-      }
+  /** Sets how many milliseconds a request may take; 0, the default,
+   * waits for every searchable. */
+  public void setTimeout(long timeoutMillis) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("timeout must be >= 0: " + timeoutMillis);
     }
+    this.timeout = timeoutMillis;
+  }
 
-    ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
-    for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
-      scoreDocs[i] = (ScoreDoc) hq.pop();
+  public long getTimeout() {
+    return timeout;
+  }
 
-    float maxScore = (totalHits==0) ? Float.NEGATIVE_INFINITY : scoreDocs[0].score;
-    
-    return new TopDocs(totalHits, scoreDocs, maxScore);
+  /** What the searchables are asked for, one at a time. */
+  private interface ShardCall {
+    Object call(Searchable searchable, int i) throws IOException;
   }
 
-  /**
-   * A search implementation allowing sorting which spans a new thread for each
-   * Searchable, waits for each search to complete and merges
-   * the results back together.
-   */
-  public TopFieldDocs search(Weight weight, Filter filter, int nDocs, Sort sort)
-    throws IOException {
-    // don't specify the fields - we'll wait to do this until we get results
-    FieldDocSortedHitQueue hq = new FieldDocSortedHitQueue (null, nDocs);
-    int totalHits = 0;
-    MultiSearcherThread[] msta = new MultiSearcherThread[searchables.length];
-    for (int i = 0; i < searchables.length; i++) { // search each searchable
-      // Assume not too many searchables and cost of creating a thread is by far inferior to a search
-      msta[i] = new MultiSearcherThread(searchables[i], weight, filter, nDocs,
-          hq, sort, i, starts, "MultiSearcher thread #" + (i + 1));
-      msta[i].start();
+  /** The deadline of a request, and how its searchables answered. */
+  private final class Request {
+    final long deadline;
+    final ShardStats stats = new ShardStats(searchables.length);
+
+    Request() {
+      long timeout = ParallelMultiSearcher.this.timeout;
+      deadline = timeout == 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
     }
 
-    float maxScore=Float.NEGATIVE_INFINITY;
-    
-    for (int i = 0; i < searchables.length; i++) {
+    /**
+     * Asks every searchable that has not timed out yet, and returns the
+     * answers by searchable; that of a searchable which misses the
+     * deadline is null. An exception of any searchable is rethrown.
+     */
+    Object[] fanOut(final ShardCall call) throws IOException {
+      // timed by each task, so that waiting on the searchables before it
+      // does not count against a searchable
+      final long[] latencies = new long[searchables.length];
+      Future[] futures = new Future[searchables.length];
+      for (int i = 0; i < searchables.length; i++) {
+        if (!stats.isTimedOut(i)) {
+          final int shard = i;
+          futures[i] = executor.submit(new Callable() {
+            public Object call() throws IOException {
+              long start = System.nanoTime();
+              try {
+                return call.call(searchables[shard], shard);
+              } finally {
+                latencies[shard] = System.nanoTime() - start;
+              }
+            }
+          });
+        }
+      }
+
+      Object[] results = new Object[searchables.length];
       try {
-        msta[i].join();
+        for (int i = 0; i < futures.length; i++) {
+          if (futures[i] == null) {
+            continue;
+          }
+          try {
+            if (deadline == 0) {
+              results[i] = futures[i].get();
+            } else {
+              results[i] = futures[i].get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            stats.addLatency(i, latencies[i]);
+          } catch (TimeoutException te) {
+            futures[i].cancel(false);
+            stats.setTimedOut(i);
+          }
+        }
       } catch (InterruptedException ie) {
+        cancel(futures);
         // In 3.0 we will change this to throw
         // InterruptedException instead
         Thread.currentThread().interrupt();
         throw new RuntimeException(ie);
+      } catch (ExecutionException ee) {
+        cancel(futures);
+        // if one search produced an exception, rethrow it
+        Throwable cause = ee.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
       }
-      IOException ioe = msta[i].getIOException();
-      if (ioe == null) {
-        totalHits += msta[i].hits();
-        maxScore=Math.max(maxScore, msta[i].getMaxScore());
-      } else {
-        // if one search produced an IOException, rethrow it
-        throw ioe;
+      return results;
+    }
+
+    private void cancel(Future[] futures) {
+      for (int i = 0; i < futures.length; i++) {
+        if (futures[i] != null) {
+          futures[i].cancel(false);
+        }
       }
     }
+  }
 
-    ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
-    for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
-      scoreDocs[i] = (ScoreDoc) hq.pop();
+  public int docFreq(Term term) throws IOException {
+    return docFreqs(new Term[] { term })[0];
+  }
 
-    return new TopFieldDocs(totalHits, scoreDocs, hq.getFields(), maxScore);
+  /** Sums the document frequencies of all searchables, asked in parallel;
+   * a searchable that misses the deadline counts for none. */
+  public int[] docFreqs(Term[] terms) throws IOException {
+    return docFreqs(terms, new Request());
   }
 
-  /** Lower-level search API.
-  *
-  * <p>{@link Collector#collect(int)} is called for every matching document.
-  *
-  * <p>Applications should only use this if they need <i>all</i> of the
-  * matching documents.  The high-level search API ({@link
-  * Searcher#search(Query)}) is usually more efficient, as it skips
-  * non-high-scoring hits.
-  *
-  * @param weight to match documents
-  * @param filter if non-null, a bitset used to eliminate some documents
-  * @param collector to receive hits
-  * 
-  * TODO: parallelize this one too
-  */
-  public void search(Weight weight, Filter filter, final Collector collector)
-   throws IOException {
-   for (int i = 0; i < searchables.length; i++) {
+  private int[] docFreqs(final Term[] terms, Request request) throws IOException {
+    Object[] results = request.fanOut(new ShardCall() {
+      public Object call(Searchable searchable, int i) throws IOException {
+        return searchable.docFreqs(terms);
+      }
+    });
+    int[] aggregatedDfs = new int[terms.length];
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] != null) {
+        int[] dfs = (int[]) results[i];
+        for (int j = 0; j < aggregatedDfs.length; j++) {
+          aggregatedDfs[j] += dfs[j];
+        }
+      }
+    }
+    return aggregatedDfs;
+  }
 
-     final int start = starts[i];
+  /** Rewrites <code>original</code> on all searchables in parallel, and
+   * combines what those that met the deadline returned. */
+  public Query rewrite(Query original) throws IOException {
+    return rewrite(original, new Request());
+  }
 
-     final Collector hc = new Collector() {
-       public void setScorer(Scorer scorer) throws IOException {
-         collector.setScorer(scorer);
-       }
-       public void collect(int doc, int[] sorts) throws IOException {
-         collector.collect(doc, sorts);
-       }
-       public void setNextReader(IndexReader reader, int docBase) throws IOException {
-         collector.setNextReader(reader, start + docBase);
-       }
-       public boolean acceptsDocsOutOfOrder() {
-         return collector.acceptsDocsOutOfOrder();
-       }
-     };
-     
-     searchables[i].search(weight, filter, hc);
-   }
- }
+  private Query rewrite(final Query original, Request request) throws IOException {
+    Object[] results = request.fanOut(new ShardCall() {
+      public Object call(Searchable searchable, int i) throws IOException {
+        return searchable.rewrite(original);
+      }
+    });
+    List queries = new ArrayList();
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] != null) {
+        queries.add(results[i]);
+      }
+    }
+    if (queries.size() == 0) {
+      // nothing will be searched
+      return original;
+    }
+    Query[] rewritten = (Query[]) queries.toArray(new Query[queries.size()]);
+    return rewritten[0].combine(rewritten);
+  }
 
-  /*
-   * TODO: this one could be parallelized too
-   * @see org.apache.lucene.search.Searchable#rewrite(org.apache.lucene.search.Query)
-   */
-  public Query rewrite(Query original) throws IOException {
-    return super.rewrite(original);
+  protected Weight createWeight(Query original) throws IOException {
+    return createWeight(original, new Request());
   }
 
-}
+  private Weight createWeight(Query original, Request request) throws IOException {
+    Query rewrittenQuery = rewrite(original, request);
+    Term[] allTermsArray = extractTerms(rewrittenQuery);
+    return createWeight(rewrittenQuery, allTermsArray, docFreqs(allTermsArray, request));
+  }
 
-/**
- * A thread subclass for searching a single searchable 
- */
-class MultiSearcherThread extends Thread {
+  /** Rewrites, weights and searches <code>query</code> under one deadline. */
+  public TopDocs search(Query query, Filter filter, int n) throws IOException {
+    Request request = new Request();
+    return search(createWeight(query, request), filter, n, null, request);
+  }
 
-  private Searchable searchable;
-  private Weight weight;
-  private Filter filter;
-  private int nDocs;
-  private TopDocs docs;
-  private int i;
-  private PriorityQueue hq;
-  private int[] starts;
-  private IOException ioe;
-  private Sort sort;
+  /** Rewrites, weights and searches <code>query</code> under one deadline. */
+  public TopFieldDocs search(Query query, Filter filter, int n, Sort sort) throws IOException {
+    Request request = new Request();
+    return (TopFieldDocs) search(createWeight(query, request), filter, n, sort, request);
+  }
 
-  public MultiSearcherThread(Searchable searchable, Weight weight, Filter filter,
-      int nDocs, HitQueue hq, int i, int[] starts, String name) {
-    super(name);
-    this.searchable = searchable;
-    this.weight = weight;
-    this.filter = filter;
-    this.nDocs = nDocs;
-    this.hq = hq;
-    this.i = i;
-    this.starts = starts;
+  /**
+   * Searches every searchable in parallel and merges the top hits of
+   * those that met the deadline.
+   */
+  public TopDocs search(Weight weight, Filter filter, int nDocs)
+    throws IOException {
+    return search(weight, filter, nDocs, null, new Request());
   }
 
-  public MultiSearcherThread(Searchable searchable, Weight weight,
-      Filter filter, int nDocs, FieldDocSortedHitQueue hq, Sort sort, int i,
-      int[] starts, String name) {
-    super(name);
-    this.searchable = searchable;
-    this.weight = weight;
-    this.filter = filter;
-    this.nDocs = nDocs;
-    this.hq = hq;
-    this.i = i;
-    this.starts = starts;
-    this.sort = sort;
+  /**
+   * Searches every searchable in parallel, sorting, and merges the top
+   * hits of those that met the deadline.
+   */
+  public TopFieldDocs search(Weight weight, Filter filter, int nDocs, Sort sort)
+    throws IOException {
+    return (TopFieldDocs) search(weight, filter, nDocs, sort, new Request());
   }
 
-  public void run() {
-    try {
-      docs = (sort == null) ? searchable.search (weight, filter, nDocs)
-        : searchable.search (weight, filter, nDocs, sort);
-    }
-    // Store the IOException for later use by the caller of this thread
-    catch (IOException ioe) {
-      this.ioe = ioe;
-    }
-    if (ioe == null) {
-      // if we are sorting by fields, we need to tell the field sorted hit queue
-      // the actual type of fields, in case the original list contained AUTO.
-      // if the searchable returns null for fields, we'll have problems.
-      if (sort != null) {
-        TopFieldDocs docsFields = (TopFieldDocs) docs;
-        // If one of the Sort fields is FIELD_DOC, need to fix its values, so that
-        // it will break ties by doc Id properly. Otherwise, it will compare to
-        // 'relative' doc Ids, that belong to two different searchables.
-        for (int j = 0; j < docsFields.fields.length; j++) {
-          if (docsFields.fields[j].getType() == SortField.DOC) {
-            // iterate over the score docs and change their fields value
-            for (int j2 = 0; j2 < docs.scoreDocs.length; j2++) {
-              FieldDoc fd = (FieldDoc) docs.scoreDocs[j2];
-              fd.fields[j] = new Integer(((Integer) fd.fields[j]).intValue() + starts[i]);
+  private TopDocs search(final Weight weight, final Filter filter, final int nDocs,
+      final Sort sort, Request request) throws IOException {
+    Object[] results = request.fanOut(new ShardCall() {
+      public Object call(Searchable searchable, int i) throws IOException {
+        TopDocs docs = sort == null ? searchable.search(weight, filter, nDocs)
+            : searchable.search(weight, filter, nDocs, sort);
+        if (sort != null) {
+          TopFieldDocs docsFields = (TopFieldDocs) docs;
+          // If one of the Sort fields is FIELD_DOC, need to fix its values, so that
+          // it will break ties by doc Id properly. Otherwise, it will compare to
+          // 'relative' doc Ids, that belong to two different searchables.
+          for (int j = 0; j < docsFields.fields.length; j++) {
+            if (docsFields.fields[j].getType() == SortField.DOC) {
+              // iterate over the score docs and change their fields value
+              for (int j2 = 0; j2 < docs.scoreDocs.length; j2++) {
+                FieldDoc fd = (FieldDoc) docs.scoreDocs[j2];
+                fd.fields[j] = new Integer(((Integer) fd.fields[j]).intValue() + starts[i]);
+              }
+              break;
             }
-            break;
           }
         }
-
-        ((FieldDocSortedHitQueue) hq).setFields(docsFields.fields);
+        for (int j = 0; j < docs.scoreDocs.length; j++) {
+          docs.scoreDocs[j].doc += starts[i]; // convert doc
+        }
+        return docs;
       }
-      ScoreDoc[] scoreDocs = docs.scoreDocs;
-      for (int j = 0;
-           j < scoreDocs.length;
-           j++) { // merge scoreDocs into hq
-        ScoreDoc scoreDoc = scoreDocs[j];
-        scoreDoc.doc += starts[i]; // convert doc 
-        //it would be so nice if we had a thread-safe insert 
-        synchronized (hq) {
-          if (!hq.insert(scoreDoc))
-            break;
-        } // no more scores > minScore
+    });
+
+    List answered = new ArrayList();
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] != null) {
+        answered.add(results[i]);
       }
     }
+    TopDocs docs = TopDocs.merge(sort, nDocs, (TopDocs[]) answered.toArray(new TopDocs[answered.size()]));
+    if (request.stats.isPartial()) {
+      docs.setTotalHitsExact(false);
+    }
+    docs.setShardStats(request.stats);
+    return docs;
   }
-
-  public int hits() {
-    return docs.totalHits;
-  }
-
-  public float getMaxScore() {
-      return docs.getMaxScore();
-  }
-  
-  public IOException getIOException() {
-    return ioe;
-  }
-
 }
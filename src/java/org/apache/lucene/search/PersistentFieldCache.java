@@ -0,0 +1,426 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.PackedInts;
+import org.apache.lucene.util.TermPool;
+import org.apache.lucene.util.UnicodeUtil;
+
+/**
+ * Expert: a {@link PackedFieldCache} that keeps the packed values of each
+ * segment in a file next to the segment, so that they are loaded once per
+ * index rather than once per process.
+ * <p>
+ * The first time values of a segment are asked for, they are read from the
+ * terms as by {@link PackedFieldCache} and written to a file named after
+ * the segment, with extension <code>fcc</code>. From then on, in this
+ * process or any other, they are read from that file: mapped into memory
+ * if the index is in an {@link FSDirectory}, so that loading costs next to
+ * nothing and processes share the pages, else copied to a direct buffer.
+ * Files hold the values of deleted documents too, so that they stay valid
+ * as the segment gets more deletions. They are not part of any commit;
+ * {@link org.apache.lucene.index.IndexWriter} deletes them with their
+ * segment.
+ * <p>
+ * Segments written by merges may get their files before any reader asks,
+ * by a persistent merged segment warmer that loads the values searches will
+ * need:
+ * <pre>
+ *   writer.setMergedSegmentWarmer(new IndexWriter.IndexReaderWarmer() {
+ *     public void warm(IndexReader reader) throws IOException {
+ *       cache.getLongValues(reader, "timestamp", null);
+ *     }
+ *     public boolean isPersistent() {
+ *       return true;
+ *     }
+ *   });
+ * </pre>
+ * Only the int, long, float and double values of the accessors and the
+ * ordinals and terms of {@link #getTermsIndex} are persisted, and only for
+ * the parsers of {@link FieldCache}, as a custom parser cannot be told apart
+ * from another one in the next process. Readers that are not {@link
+ * SegmentReader}s, and directories that cannot be written to, get their
+ * values as by {@link PackedFieldCache}.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public class PersistentFieldCache extends PackedFieldCache {
+
+  /** Must match IndexFileNames.FIELD_CACHE_EXTENSION, whose files are deleted with their segment. */
+  static final String EXTENSION = "fcc";
+
+  private static final int MAGIC = 0x46434331; // FCC1
+
+  private static final byte NUMERIC = 0;
+  private static final byte TERMS = 1;
+
+  /** The parsers whose values may be persisted, known by their name in any process. */
+  private static final Object[] PARSERS = {
+    DEFAULT_INT_PARSER, DEFAULT_LONG_PARSER, DEFAULT_FLOAT_PARSER, DEFAULT_DOUBLE_PARSER,
+    NUMERIC_UTILS_INT_PARSER, NUMERIC_UTILS_LONG_PARSER, NUMERIC_UTILS_FLOAT_PARSER, NUMERIC_UTILS_DOUBLE_PARSER
+  };
+
+  private static long tempCounter = System.currentTimeMillis();
+
+  public PersistentFieldCache() {
+  }
+
+  Packed getPacked(IndexReader reader, Entry entry, NumericCache cache)
+      throws IOException {
+    String key = key(entry.field, entry.custom);
+    if (key == null || !(reader instanceof SegmentReader)) {
+      return super.getPacked(reader, entry, cache);
+    }
+    SegmentReader segment = (SegmentReader) reader;
+    String fileName = fileName(segment, key);
+    IndexInput input = open(segment, fileName, key, NUMERIC);
+    if (input != null) {
+      try {
+        long min = input.readLong();
+        int bits = input.readInt();
+        ByteBuffer buffer = body(segment, fileName, input, PackedInts.bytesRequired(segment.maxDoc(), bits));
+        if (buffer != null) {
+          return new Packed(new PackedInts(buffer, segment.maxDoc(), bits), min);
+        }
+      } finally {
+        input.close();
+      }
+    }
+
+    Packed packed = cache.pack(reader, entry.field, entry.custom, true);
+    String writeName = writeName(segment, fileName);
+    if (writeName != null) {
+      IndexOutput output = null;
+      try {
+        output = segment.directory().createOutput(writeName);
+        writeHeader(output, key, segment.maxDoc(), NUMERIC);
+        output.writeLong(packed.min);
+        output.writeInt(packed.values.getBitsPerValue());
+        writeBuffer(output, packed.values);
+        output.writeInt(MAGIC);
+        output.close();
+        output = null;
+        commit(segment, writeName, fileName);
+      } catch (IOException e) {
+        abort(segment, writeName, output, e);
+      }
+    }
+    return packed;
+  }
+
+  DocTermsIndex createTermsIndex(IndexReader reader, String field)
+      throws IOException {
+    String key = field + "/terms";
+    if (!(reader instanceof SegmentReader)) {
+      return super.createTermsIndex(reader, field);
+    }
+    SegmentReader segment = (SegmentReader) reader;
+    String fileName = fileName(segment, key);
+    IndexInput input = open(segment, fileName, key, TERMS);
+    if (input != null) {
+      try {
+        int numOrd = input.readInt();
+        int ordBits = input.readInt();
+        int offsetBits = input.readInt();
+        int termBytes = input.readInt();
+        int ordBytes = PackedInts.bytesRequired(segment.maxDoc(), ordBits);
+        int offsetBytes = PackedInts.bytesRequired(numOrd + 1, offsetBits);
+        ByteBuffer buffer = body(segment, fileName, input, ordBytes + offsetBytes + termBytes);
+        if (buffer != null) {
+          PackedInts ords = new PackedInts(slice(buffer, 0, ordBytes), segment.maxDoc(), ordBits);
+          PackedInts offsets = new PackedInts(slice(buffer, ordBytes, offsetBytes), numOrd + 1, offsetBits);
+          return new MappedTermsIndex(ords, offsets, slice(buffer, ordBytes + offsetBytes, termBytes));
+        }
+      } finally {
+        input.close();
+      }
+    }
+
+    TermsIndex index = TermsIndexCache.build(reader, field, true);
+    String writeName = writeName(segment, fileName);
+    if (writeName != null) {
+      IndexOutput output = null;
+      try {
+        output = segment.directory().createOutput(writeName);
+        writeTerms(output, key, segment.maxDoc(), index);
+        output.close();
+        output = null;
+        commit(segment, writeName, fileName);
+      } catch (IOException e) {
+        abort(segment, writeName, output, e);
+      }
+    }
+    return index;
+  }
+
+  /** Returns what identifies values across processes, or null if they must not be persisted. */
+  private static String key(String field, Object parser) {
+    for (int i = 0; i < PARSERS.length; i++) {
+      if (PARSERS[i] == parser) {
+        return field + "/" + parser;
+      }
+    }
+    return null;
+  }
+
+  /** Names the file of <code>key</code>; keys whose hashes collide are told apart by the header. */
+  private static String fileName(SegmentReader segment, String key) {
+    return segment.getSegmentName() + "_" + Integer.toString(key.hashCode() & 0x7fffffff, Character.MAX_RADIX)
+        + "." + EXTENSION;
+  }
+
+  /**
+   * Opens the file of <code>key</code> and reads its header, or returns
+   * null if there is none, or it is incomplete or holds something else.
+   */
+  private IndexInput open(SegmentReader segment, String fileName, String key, byte kind)
+      throws IOException {
+    Directory dir = segment.directory();
+    if (!dir.fileExists(fileName)) {
+      return null;
+    }
+    IndexInput input = dir.openInput(fileName);
+    boolean success = false;
+    try {
+      if (input.length() >= 8) {
+        input.seek(input.length() - 4);
+        if (input.readInt() == MAGIC) {
+          input.seek(0);
+          success = input.readInt() == MAGIC && key.equals(input.readString())
+              && input.readInt() == segment.maxDoc() && input.readByte() == kind;
+        }
+      }
+    } finally {
+      if (!success) {
+        input.close();
+      }
+    }
+    return success ? input : null;
+  }
+
+  /**
+   * Returns the <code>length</code> bytes that follow the header read from
+   * <code>input</code>, mapped if the file is in the file system, or null
+   * if the file has not as many.
+   */
+  private ByteBuffer body(SegmentReader segment, String fileName, IndexInput input, int length)
+      throws IOException {
+    if (input.getFilePointer() + length + 4 != input.length()) {
+      message("ignoring field cache file " + fileName + " of " + input.length() + " bytes, expected "
+          + (input.getFilePointer() + length + 4));
+      return null;
+    }
+    Directory dir = segment.directory();
+    if (dir instanceof FSDirectory) {
+      RandomAccessFile file = new RandomAccessFile(new File(((FSDirectory) dir).getFile(), fileName), "r");
+      try {
+        // the mapping stays valid once the file is closed
+        return file.getChannel().map(FileChannel.MapMode.READ_ONLY, input.getFilePointer(), length);
+      } finally {
+        file.close();
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+    byte[] bytes = new byte[Math.min(length, 8192)];
+    while (buffer.hasRemaining()) {
+      int chunk = Math.min(bytes.length, buffer.remaining());
+      input.readBytes(bytes, 0, chunk);
+      buffer.put(bytes, 0, chunk);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset);
+    slice.limit(offset + length);
+    return slice.slice();
+  }
+
+  /**
+   * Returns the name to write the file under, or null if it exists already.
+   * In the file system, files are written under a temporary name and
+   * renamed, so that no process ever maps a file that is still being
+   * written.
+   */
+  private String writeName(SegmentReader segment, String fileName)
+      throws IOException {
+    Directory dir = segment.directory();
+    if (dir.fileExists(fileName)) {
+      return null;
+    }
+    return dir instanceof FSDirectory ? tempFileName(fileName) : fileName;
+  }
+
+  /** A name that still belongs to the segment, so that it is deleted with it if left over. */
+  private static synchronized String tempFileName(String fileName) {
+    return fileName.substring(0, fileName.length() - EXTENSION.length() - 1) + "_"
+        + Long.toString(tempCounter++, Character.MAX_RADIX) + "." + EXTENSION;
+  }
+
+  private void commit(SegmentReader segment, String writeName, String fileName)
+      throws IOException {
+    if (!writeName.equals(fileName)) {
+      File path = ((FSDirectory) segment.directory()).getFile();
+      if (!new File(path, writeName).renameTo(new File(path, fileName))) {
+        // another process won the race
+        segment.directory().deleteFile(writeName);
+      }
+    }
+  }
+
+  /**
+   * Leaves no incomplete file behind; should that fail, the checks of the
+   * header ignore it, and it is deleted with the segment.
+   */
+  private void abort(SegmentReader segment, String writeName, IndexOutput output, IOException e) {
+    message("cannot write field cache file " + writeName + ": " + e);
+    try {
+      if (output != null) {
+        output.close();
+      }
+      if (segment.directory().fileExists(writeName)) {
+        segment.directory().deleteFile(writeName);
+      }
+    } catch (IOException ignored) {
+    }
+  }
+
+  private void message(String message) {
+    PrintStream infoStream = getInfoStream();
+    if (infoStream != null) {
+      infoStream.println("PersistentFieldCache: " + message);
+    }
+  }
+
+  private static void writeHeader(IndexOutput output, String key, int maxDoc, byte kind)
+      throws IOException {
+    output.writeInt(MAGIC);
+    output.writeString(key);
+    output.writeInt(maxDoc);
+    output.writeByte(kind);
+  }
+
+  private static void writeBuffer(IndexOutput output, PackedInts packed)
+      throws IOException {
+    ByteBuffer buffer = packed.getBuffer().duplicate();
+    int remaining = packed.sizeInBytes();
+    byte[] bytes = new byte[Math.min(remaining, 8192)];
+    while (remaining > 0) {
+      int chunk = Math.min(bytes.length, remaining);
+      buffer.get(bytes, 0, chunk);
+      output.writeBytes(bytes, 0, chunk);
+      remaining -= chunk;
+    }
+  }
+
+  /** Writes the ordinals, then the end offsets of the terms, then their UTF-8 bytes. */
+  private static void writeTerms(IndexOutput output, String key, int maxDoc, TermsIndex index)
+      throws IOException {
+    final TermPool terms = index.terms;
+    final int numOrd = index.numOrd();
+    // term ord takes the bytes from offset ord to ord + 1 of the file, and
+    // is term ord - 1 of the pool
+    final int termBytes = terms.offset(terms.size());
+    PackedInts offsets = PackedInts.allocateDirect(numOrd + 1, PackedInts.bitsRequired(termBytes));
+    writeHeader(output, key, maxDoc, TERMS);
+    output.writeInt(numOrd);
+    output.writeInt(index.ords.getBitsPerValue());
+    output.writeInt(offsets.getBitsPerValue());
+    output.writeInt(termBytes);
+    writeBuffer(output, index.ords);
+    for (int ord = 1; ord < numOrd; ord++) {
+      offsets.set(ord + 1, terms.offset(ord));
+    }
+    writeBuffer(output, offsets);
+    for (int ord = 1; ord < numOrd; ord++) {
+      byte[] bytes = terms.getBytes(ord - 1);
+      output.writeBytes(bytes, 0, bytes.length);
+    }
+    output.writeInt(MAGIC);
+  }
+
+  /**
+   * Terms index of a file: term <code>ord</code> takes the bytes from
+   * offset <code>ord</code> to offset <code>ord + 1</code>. Terms are
+   * decoded the first time they are looked up.
+   */
+  static final class MappedTermsIndex extends DocTermsIndex implements Sized {
+    private final PackedInts ords;
+    private final PackedInts offsets;
+    private final ByteBuffer terms;
+    private final String[] decoded;
+
+    MappedTermsIndex(PackedInts ords, PackedInts offsets, ByteBuffer terms) {
+      this.ords = ords;
+      this.offsets = offsets;
+      this.terms = terms;
+      this.decoded = new String[offsets.size() - 1];
+    }
+
+    public int getOrd(int doc) {
+      return (int) ords.get(doc);
+    }
+
+    public String lookup(int ord) {
+      if (ord == 0) {
+        return null;
+      }
+      // racing threads decode equal strings
+      String term = decoded[ord];
+      if (term == null) {
+        final int start = (int) offsets.get(ord);
+        final int length = (int) offsets.get(ord + 1) - start;
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = terms.duplicate();
+        buffer.position(start);
+        buffer.get(bytes);
+        UnicodeUtil.UTF16Result utf16 = new UnicodeUtil.UTF16Result();
+        UnicodeUtil.UTF8toUTF16(bytes, 0, length, utf16);
+        term = new String(utf16.result, 0, utf16.length);
+        decoded[ord] = term;
+      }
+      return term;
+    }
+
+    public int numOrd() {
+      return decoded.length;
+    }
+
+    /** Counts the mapped bytes, and a reference per term to hold it once decoded. */
+    public long ramBytesUsed() {
+      return ords.sizeInBytes() + offsets.sizeInBytes() + terms.capacity()
+          + FieldCacheImpl.ramBytesUsed(decoded);
+    }
+  }
+}
@@ -22,9 +22,12 @@ import java.util.Set;
 import java.util.ArrayList;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.index.TermPositions;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.Explanation.IDFExplanation;
+import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.ToStringUtils;
 
 /** A Query that matches documents containing a particular sequence of terms.
@@ -38,6 +41,7 @@ public class PhraseQuery extends Query {
   private ArrayList positions = new ArrayList(4);
   private int maxPosition = 0;
   private int slop = 0;
+  private String shingleField;
 
   /** Constructs an empty phrase query. */
   public PhraseQuery() {}
@@ -60,6 +64,22 @@ public class PhraseQuery extends Query {
   /** Returns the slop.  See setSlop(). */
   public int getSlop() { return slop; }
 
+  /**
+   * Sets the field holding the shingles of this query's field, two words
+   * joined by a space, as written by the contrib <code>ShingleFilter</code>
+   * with its defaults. Exact phrases then only check the positions of
+   * docs having all shingles of adjacent phrase terms, which are usually
+   * far fewer than those having all terms. Every doc with this query's
+   * field must have the shingle field as well; segments without it are
+   * searched on positions alone. Default is null, none.
+   */
+  public void setShingleField(String shingleField) {
+    this.shingleField = shingleField == null ? null : StringHelper.intern(shingleField);
+  }
+
+  /** Returns the shingle field.  See setShingleField(). */
+  public String getShingleField() { return shingleField; }
+
   /**
    * Adds a term to the end of the query phrase.
    * The relative position of the term is the one immediately after the last term added.
@@ -109,6 +129,7 @@ public class PhraseQuery extends Query {
 
   private class PhraseWeight extends Weight {
     private Similarity similarity;
+    private EmbeddedSortSchema schema;
     private float value;
     private float idf;
     private float queryNorm;
@@ -118,6 +139,7 @@ public class PhraseQuery extends Query {
     public PhraseWeight(Searcher searcher)
       throws IOException {
       this.similarity = getSimilarity(searcher);
+      this.schema = getEmbeddedSortSchema(searcher);
 
       idfExp = similarity.idfExplain(terms, searcher);
       idf = idfExp.getIdf();
@@ -144,20 +166,43 @@ public class PhraseQuery extends Query {
         return null;
 
       TermPositions[] tps = new TermPositions[terms.size()];
+      int[] docFreqs = new int[terms.size()];
       for (int i = 0; i < terms.size(); i++) {
         TermPositions p = reader.termPositions((Term)terms.get(i));
         if (p == null)
           return null;
         tps[i] = p;
+        docFreqs[i] = reader.docFreq((Term)terms.get(i));
       }
 
-      if (slop == 0)				  // optimize exact case
-        return new ExactPhraseScorer(this, tps, getPositions(), similarity,
-                                     reader.norms(field));
-      else
+      if (slop == 0) {				  // optimize exact case
+        TermDocs[] shingles = null;
+        int[] shingleDocFreqs = null;
+        if (shingleField != null && hasTerms(reader, shingleField)) {
+          Term[] shingleTerms = getShingles();
+          shingles = new TermDocs[shingleTerms.length];
+          shingleDocFreqs = new int[shingleTerms.length];
+          for (int i = 0; i < shingleTerms.length; i++) {
+            shingleDocFreqs[i] = reader.docFreq(shingleTerms[i]);
+            if (shingleDocFreqs[i] == 0) {
+              for (int j = 0; j < tps.length; j++) {
+                tps[j].close();
+              }
+              for (int j = 0; j < i; j++) {
+                shingles[j].close();
+              }
+              return null;
+            }
+            shingles[i] = reader.termDocs(shingleTerms[i]);
+          }
+        }
+        return new ExactPhraseScorer(this, tps, getPositions(), docFreqs,
+                                     shingles, shingleDocFreqs, similarity,
+                                     reader.norms(field), schema);
+      } else
         return
-          new SloppyPhraseScorer(this, tps, getPositions(), similarity, slop,
-                                 reader.norms(field));
+          new SloppyPhraseScorer(this, tps, getPositions(), docFreqs, similarity,
+                                 slop, reader.norms(field), schema);
 
     }
 
@@ -240,6 +285,30 @@ public class PhraseQuery extends Query {
     }
   }
 
+  private static boolean hasTerms(IndexReader reader, String field) throws IOException {
+    TermEnum terms = reader.terms(new Term(field, ""));
+    try {
+      return terms.term() != null && terms.term().field() == field;
+    } finally {
+      terms.close();
+    }
+  }
+
+  // the shingles of the terms at adjacent positions
+  private Term[] getShingles() {
+    ArrayList shingles = new ArrayList();
+    for (int i = 0; i < terms.size(); i++) {
+      int position = ((Integer) positions.get(i)).intValue();
+      for (int j = 0; j < terms.size(); j++) {
+        if (((Integer) positions.get(j)).intValue() == position + 1) {
+          shingles.add(new Term(shingleField,
+              ((Term) terms.get(i)).text() + " " + ((Term) terms.get(j)).text()));
+        }
+      }
+    }
+    return (Term[]) shingles.toArray(new Term[shingles.size()]);
+  }
+
   public Weight createWeight(Searcher searcher) throws IOException {
     if (terms.size() == 1) {			  // optimize one-term case
       Term term = (Term)terms.get(0);
@@ -308,7 +377,8 @@ public class PhraseQuery extends Query {
     return (this.getBoost() == other.getBoost())
       && (this.slop == other.slop)
       &&  this.terms.equals(other.terms)
-      && this.positions.equals(other.positions);
+      && this.positions.equals(other.positions)
+      && (this.shingleField == null ? other.shingleField == null : this.shingleField.equals(other.shingleField));
   }
 
   /** Returns a hash code value for this object.*/
@@ -316,7 +386,8 @@ public class PhraseQuery extends Query {
     return Float.floatToIntBits(getBoost())
       ^ slop
       ^ terms.hashCode()
-      ^ positions.hashCode();
+      ^ positions.hashCode()
+      ^ (shingleField == null ? 0 : shingleField.hashCode());
   }
 
 }
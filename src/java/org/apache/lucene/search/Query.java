@@ -96,6 +96,7 @@ public abstract class Query implements java.io.Serializable, Cloneable {
    */
   public Weight weight(Searcher searcher) throws IOException {
     Query query = searcher.rewrite(this);
+    query = TimelinessQuery.wrap(query, getEmbeddedSortSchema(searcher));
     Weight weight = query.createWeight(searcher);
     float sum = weight.sumOfSquaredWeights();
     float norm = getSimilarity(searcher).queryNorm(sum);
@@ -207,6 +208,13 @@ public abstract class Query implements java.io.Serializable, Cloneable {
     return searcher.getSimilarity();
   }
 
+  /** Expert: Returns the embedded sort schema to be used for this query.
+   * Subclasses may override this method to use their own schema.
+   * By default the Searcher's schema is returned.*/
+  public EmbeddedSortSchema getEmbeddedSortSchema(Searcher searcher) {
+    return searcher.getEmbeddedSortSchema();
+  }
+
   /** Returns a clone of this query. */
   public Object clone() {
     try {
@@ -30,7 +30,6 @@ class ReqExclScorer extends Scorer {
   private Scorer reqScorer;
   private DocIdSetIterator exclDisi;
   private int doc = -1;
-  private int[] sorts = new int[Scorer.numSort];
 
   /** Construct a <code>ReqExclScorer</code>.
    * @param reqScorer The scorer that must match, except where
@@ -52,7 +51,6 @@ class ReqExclScorer extends Scorer {
       return doc;
     }
     doc = reqScorer.nextDoc();
-    copySorts(reqScorer.getSorts(), this.sorts);
     if (doc == NO_MORE_DOCS) {
       reqScorer = null; // exhausted, nothing left
       return doc;
@@ -61,8 +59,7 @@ class ReqExclScorer extends Scorer {
       return doc;
     }
     doc = toNonExcluded();
-	  copySorts(reqScorer.getSorts(), this.sorts);
-	  return doc;
+    return doc;
   }
   
   /** Advance to non excluded doc.
@@ -114,6 +111,16 @@ class ReqExclScorer extends Scorer {
     return reqScorer.score(); // reqScorer may be null when next() or skipTo() already return false
   }
   
+  public int cost() {
+    return reqScorer == null ? 0 : reqScorer.cost();
+  }
+
+  void restrict(EmbeddedFilterProgram program) {
+    if (reqScorer != null) {
+      reqScorer.restrict(program);
+    }
+  }
+
   /** @deprecated use {@link #advance(int)} instead. */
   public boolean skipTo(int target) throws IOException {
     return advance(target) != NO_MORE_DOCS;
@@ -125,7 +132,6 @@ class ReqExclScorer extends Scorer {
     }
     if (exclDisi == null) {
       doc = reqScorer.advance(target);
-	  copySorts(reqScorer.getSorts(), this.sorts);
       return doc;
     }
     if (reqScorer.advance(target) == NO_MORE_DOCS) {
@@ -133,7 +139,6 @@ class ReqExclScorer extends Scorer {
       return doc = NO_MORE_DOCS;
     }
     doc = toNonExcluded();
-    copySorts(reqScorer.getSorts(), this.sorts);
     return doc;
   }
   
@@ -148,11 +153,12 @@ class ReqExclScorer extends Scorer {
     return res;
   }
 
+	// reqScorer is always on the current doc, so its sorts need no copy
 	public int getSort(int fieldNumber) {
-		return this.sorts[fieldNumber];
+		return reqScorer.getSort(fieldNumber); // reqScorer may be null when next() or skipTo() already return false
 	}
 
 	public int[] getSorts() {
-		return this.sorts;
+		return reqScorer.getSorts(); // reqScorer may be null when next() or skipTo() already return false
 	}
 }
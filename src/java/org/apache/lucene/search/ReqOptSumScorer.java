@@ -91,6 +91,14 @@ class ReqOptSumScorer extends Scorer {
     return optScorerDoc == curDoc ? reqScore + optScorer.score() : reqScore;
   }
 
+  public int cost() {
+    return reqScorer.cost();
+  }
+
+  void restrict(EmbeddedFilterProgram program) {
+    reqScorer.restrict(program);
+  }
+
   /** Explain the score of a document.
    * TODO: Also show the total score.
    * See BooleanScorer.explain() on how to do this.
@@ -35,7 +35,6 @@ public class ScoreCachingWrappingScorer extends Scorer {
   private Scorer scorer;
   private int curDoc = -1;
   private float curScore;
-  private int[] curSorts = new int[Scorer.numSort];
   
   /** Creates a new instance by wrapping the given scorer. */
   public ScoreCachingWrappingScorer(Scorer scorer) {
@@ -60,7 +59,6 @@ public class ScoreCachingWrappingScorer extends Scorer {
     if (doc != curDoc) {
       curScore = scorer.score();
       curDoc = doc;
-      copySorts(scorer.getSorts(), this.curSorts);
     }
     
     return curScore;
@@ -98,11 +96,11 @@ public class ScoreCachingWrappingScorer extends Scorer {
   }
 
 public int getSort(int fieldNumber) {
-	return this.curSorts[fieldNumber];
+	return scorer.getSort(fieldNumber);
 }
 
 public int[] getSorts() {
-	return this.curSorts;
+	return scorer.getSorts();
 }
   
 }
@@ -28,13 +28,15 @@ public class ScoreDoc implements java.io.Serializable {
    */
   public int doc;
   
-  public int sorts[] = new int[Scorer.numSort];
+  /** Expert: The embedded sort values of this document, as wide as the
+   * {@link EmbeddedSortSchema} of the search. */
+  public int sorts[] = DocIdSetIterator.NO_SORTS;
 
   /** Expert: Constructs a ScoreDoc. */
   public ScoreDoc(int doc, float score, int[] sorts) {
     this.doc = doc;
     this.score = score;
-    DocIdSetIterator.copySorts(sorts, this.sorts);
+    this.sorts = DocIdSetIterator.copyOfSorts(sorts, this.sorts);
   }
   
   // A convenience method for debugging.
@@ -18,7 +18,6 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
-import java.util.ResourceBundle;
 
 /**
  * Expert: Common scoring functionality for different types of queries.
@@ -41,94 +40,6 @@ import java.util.ResourceBundle;
  * @see BooleanQuery#setAllowDocsOutOfOrder
  */
 public abstract class Scorer extends DocIdSetIterator {
-	// TODO: may want to read number of sort fields straight out from schema.xml instead of setting property 
-	public static int numSort = 5; // set default to be 5 sortable fields
-	
-	// used to save bytes on current time minutes (2005/1/1)
-	protected static long SolbaseEpochTime = 18408960l;
-	
-	// flag to use timeliness boosting factor.
-	protected static boolean enableTimelinessBoosting = false;
-	
-	// field position for timeliness boosting
-	protected static int timelinessFieldPosition;
-	
-	// boosting factor
-	protected static int boostingFactor = 10080; // 24 * 60 * 7 doing seven days boosting in minutes;
-	
-	// timeliness boosting factor
-	protected static float boost = 5.0f;
-	
-	static {
-		String numSortsStr = System.getProperty("lucene.sortablefield.num");
-		try {
-			ResourceBundle luceneBundle = ResourceBundle.getBundle("lucene");
-			if (numSortsStr == null && luceneBundle != null) {
-				try {
-					numSortsStr = luceneBundle.getString("sortablefield.num");
-					try {
-						numSort = Integer.parseInt(numSortsStr);
-					} catch (NumberFormatException e) {
-						// use default which is already set above
-					}
-				}catch (java.util.MissingResourceException e){	
-					// use default
-				}
-			}
-			// initialize SolbaseEpochTime
-			try {
-				String solbaseEpochTimeStr = luceneBundle.getString("solbaseEpochTime");
-				try {
-					SolbaseEpochTime = Long.parseLong(solbaseEpochTimeStr);
-				} catch (NumberFormatException e) {
-					// use default
-				}
-			}catch (java.util.MissingResourceException e){	
-				// use default
-			}
-			
-			// init enableTimelinessBoosting flag
-			try {
-				String timelinessBoosting = luceneBundle.getString("timelinessBoosting");
-				if(timelinessBoosting.equals("true")) {
-					// make sure we have a field to get value for boosting comparison
-					try {
-						String fieldStr = luceneBundle.getString("timelinessBoosting.field.position");
-						timelinessFieldPosition = Integer.parseInt(fieldStr);
-						enableTimelinessBoosting = true;
-					} catch (NumberFormatException e) {
-						// can't get field postiion for timeliness boosting
-						// suppress timeliness boosting feature
-					} catch (java.util.MissingResourceException e) {
-						// use default
-					}
-					// init boosting val
-					try {
-						String boostStr = luceneBundle.getString("timelinessBoosting.boost");
-						boost = Float.parseFloat(boostStr);
-					} catch (NumberFormatException e) {
-						// use default 5.0f boost
-					} catch (java.util.MissingResourceException e) {
-						// use default
-					}
-					// init boosting factor
-					try {
-						String boostingFactorStr = luceneBundle.getString("timelinessBoosting.boostingFactor");
-						boostingFactor = Integer.parseInt(boostingFactorStr);
-					} catch (NumberFormatException e) {
-						// use default 7 days in seconds.
-					} catch (java.util.MissingResourceException e) {
-						// use default
-					}
-				}
-			} catch (java.util.MissingResourceException e){	
-				// use default
-			}
-		} catch (java.util.MissingResourceException e){
-			// ignore if resouce is not here
-		}
-	}
-	
   private Similarity similarity;
 	
   /** Constructs a Scorer.
@@ -165,6 +76,32 @@ public abstract class Scorer extends DocIdSetIterator {
     }
   }
 
+  /** Scores and collects the matching documents whose sort row passes
+   * <code>program</code>. Scorers that buffer sort values column by column
+   * override this to test a whole block at once.
+   * @param collector The collector to which the accepted documents are passed.
+   * @param program The compiled {@link EmbeddedFieldFilter}.
+   */
+  public void score(Collector collector, EmbeddedFilterProgram program) throws IOException {
+    restrict(program);
+    collector.setScorer(this);
+    int doc;
+    while ((doc = nextDoc()) != NO_MORE_DOCS) {
+      final int[] sorts = getSorts();
+      if (program.matches(sorts)) {
+        collector.collect(doc, sorts);
+      }
+    }
+  }
+
+  /** Tells this scorer that the documents it matches are tested against
+   * <code>program</code> and dropped unless they pass, so that it may leave
+   * out documents that fail it without reading them. The default
+   * implementation ignores it.
+   */
+  void restrict(EmbeddedFilterProgram program) {
+  }
+
   /** Expert: Collects matching documents in a range.  Hook for optimization.
    * Note that {@link #next()} must be called once before this method is called
    * for the first time.
@@ -209,6 +146,31 @@ public abstract class Scorer extends DocIdSetIterator {
    */
   public abstract float score() throws IOException;
 
+  /** Expert: Returns an upper bound of the score of every document this
+   * scorer can match, or Float.POSITIVE_INFINITY if it cannot tell.
+   * Disjunctions use it to skip documents that cannot become competitive.
+   */
+  public float getMaxScore() {
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /** Expert: Returns an estimate of the number of documents this scorer
+   * matches, or Integer.MAX_VALUE if it cannot tell.  Conjunctions lead
+   * with their cheapest clause.
+   */
+  public int cost() {
+    return Integer.MAX_VALUE;
+  }
+
+  /** Expert: Tells this scorer that documents scoring below
+   * <code>minScore</code> will not be collected, so that it may skip them.
+   * Collectors that do not need every hit call this from
+   * {@link Collector#collect} as their threshold rises, and only ever with
+   * a growing value.  The default implementation ignores it.
+   */
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+  }
+
   /** Returns an explanation of the score for a document.
    * <br>When this method is used, the {@link #next()}, {@link #skipTo(int)} and
    * {@link #score(HitCollector)} methods should not be used.
@@ -222,6 +222,29 @@ public abstract class Searcher implements Searchable {
     return this.similarity;
   }
 
+  /** The embedded sort schema used by this searcher. */
+  private EmbeddedSortSchema embeddedSortSchema = EmbeddedSortSchema.getDefault();
+
+  /** Expert: Set the embedded sort schema used by this Searcher. Use
+   * {@link EmbeddedSortSchema#NONE} when no search needs embedded sort values.
+   *
+   * @see EmbeddedSortSchema#setDefault(EmbeddedSortSchema)
+   */
+  public void setEmbeddedSortSchema(EmbeddedSortSchema embeddedSortSchema) {
+    this.embeddedSortSchema = embeddedSortSchema;
+  }
+
+  /** Expert: Return the embedded sort schema used by this Searcher.
+   *
+   * <p>This defaults to the current value of {@link EmbeddedSortSchema#getDefault()},
+   * which all searchers share and which therefore cannot be changed; set a
+   * {@link EmbeddedSortSchema#copy() copy} of it to change its settings for
+   * this searcher only.
+   */
+  public EmbeddedSortSchema getEmbeddedSortSchema() {
+    return this.embeddedSortSchema;
+  }
+
   /**
    * creates a weight for <code>query</code>
    * @return new weight
@@ -0,0 +1,415 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.OpenBitSetDISI;
+import org.apache.lucene.util.Parameter;
+import org.apache.lucene.util.RunLengthDocIdSet;
+import org.apache.lucene.util.SortedVIntList;
+
+/**
+ * Caches the {@link DocIdSet}s of many filters on many segments within one
+ * bound on the bytes they take. Sets are keyed by the segment's core, its
+ * deletions and the filter, which must implement <code>equals</code> and
+ * <code>hashCode</code>; they go away with the segment, or when the cache
+ * grows beyond its bound, the least recently or least frequently used
+ * first.
+ * <p>
+ * Each set is kept in whichever form takes the fewest bytes: an {@link
+ * OpenBitSet} for dense sets, a {@link SortedVIntList} for sparse ones,
+ * or a {@link RunLengthDocIdSet} for sets of few long runs.
+ * <p>
+ * As a reader is reopened, its unchanged segments keep their sets. Sets
+ * built while a segment had no deletions serve it with any deletions, and
+ * its deleted docs are left out as the set is iterated, like {@link
+ * CachingWrapperFilter.DeletesMode#DYNAMIC}; sets built with deletions
+ * only serve readers with the very same deletions.
+ * <p>
+ * Unlike {@link CachingWrapperFilter}, which caches one filter without
+ * bound, and {@link FilterManager}, which bounds the number of filters
+ * from a cleaner thread, one cache may serve all filters of an
+ * application:
+ *
+ * <pre>
+ * SegmentFilterCache filters = new SegmentFilterCache(32 * 1024 * 1024);
+ * searcher.search(query, filters.getFilter(new TermsFilter(...)), 10);
+ * </pre>
+ *
+ * Thread-safe.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public class SegmentFilterCache {
+
+  /** Which sets are evicted first as the cache grows beyond its bound. */
+  public static final class EvictionPolicy extends Parameter implements Serializable {
+    private EvictionPolicy(String name) {
+      super(name);
+    }
+    /** The least recently used sets go first. */
+    public static final EvictionPolicy LRU = new EvictionPolicy("LRU");
+    /** The least used sets go first, and of those the least recently used. */
+    public static final EvictionPolicy LFU = new EvictionPolicy("LFU");
+  }
+
+  /** Default bound on the bytes of the cached sets: 64 MB. */
+  public static final long DEFAULT_MAX_RAM_BYTES = 64 * 1024 * 1024;
+
+  // estimated bytes of an entry besides its set
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private static final Comparator LRU_ORDER = new Comparator() {
+    public int compare(Object a, Object b) {
+      long t1 = ((Entry) a).lastAccess;
+      long t2 = ((Entry) b).lastAccess;
+      return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+    }
+  };
+
+  private static final Comparator LFU_ORDER = new Comparator() {
+    public int compare(Object a, Object b) {
+      long c1 = ((Entry) a).useCount;
+      long c2 = ((Entry) b).useCount;
+      if (c1 != c2) {
+        return c1 < c2 ? -1 : 1;
+      }
+      return LRU_ORDER.compare(a, b);
+    }
+  };
+
+  /** A cached set, and where it is held. */
+  private static final class Entry {
+    final Map segmentEntries;
+    final Object filter;
+    final DocIdSet docIdSet;
+    final long ramBytes;
+    long lastAccess;
+    long useCount;
+
+    Entry(Map segmentEntries, Object filter, DocIdSet docIdSet) {
+      this.segmentEntries = segmentEntries;
+      this.filter = filter;
+      this.docIdSet = docIdSet;
+      this.ramBytes = ramBytesUsed(docIdSet) + ENTRY_OVERHEAD;
+    }
+  }
+
+  // deletions of the segment, or its core if it has none -> filter -> Entry
+  private final Map segments = new WeakHashMap();
+  private final Comparator evictionOrder;
+  private long maxRamBytes;
+  // bytes of the entries cached, kept up to date as they are added and
+  // removed, and recounted once it goes over maxRamBytes
+  private long ramBytesUsed;
+  // orders the uses of entries
+  private long clock;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /** Creates a cache of {@link #DEFAULT_MAX_RAM_BYTES} that evicts by {@link EvictionPolicy#LRU}. */
+  public SegmentFilterCache() {
+    this(DEFAULT_MAX_RAM_BYTES);
+  }
+
+  /** Creates a cache of <code>maxRamBytes</code> that evicts by {@link EvictionPolicy#LRU}. */
+  public SegmentFilterCache(long maxRamBytes) {
+    this(maxRamBytes, EvictionPolicy.LRU);
+  }
+
+  /** Creates a cache of <code>maxRamBytes</code> that evicts by <code>policy</code>. */
+  public SegmentFilterCache(long maxRamBytes, EvictionPolicy policy) {
+    if (maxRamBytes < 0) {
+      throw new IllegalArgumentException("maxRamBytes must be >= 0");
+    }
+    this.maxRamBytes = maxRamBytes;
+    this.evictionOrder = policy == EvictionPolicy.LFU ? LFU_ORDER : LRU_ORDER;
+  }
+
+  /**
+   * Returns a filter that reads the sets of <code>filter</code> through
+   * this cache. Filters that are equal share their sets.
+   */
+  public Filter getFilter(Filter filter) {
+    return new CachedFilter(this, filter);
+  }
+
+  /**
+   * Returns the set of <code>filter</code> on <code>reader</code>, from
+   * the cache, or else built by the filter and cached.
+   */
+  public DocIdSet getDocIdSet(final IndexReader reader, Filter filter) throws IOException {
+    final Object coreKey = reader.getFieldCacheKey();
+    final Object delCoreKey = reader.hasDeletions() ? reader.getDeletesCacheKey() : coreKey;
+    synchronized (this) {
+      Entry entry = get(delCoreKey, filter);
+      if (entry != null) {
+        hitCount++;
+        entry.lastAccess = ++clock;
+        entry.useCount++;
+        return entry.docIdSet;
+      }
+      // a set built without deletions holds every doc the filter
+      // matches, so it serves the segment with any deletions
+      entry = delCoreKey == coreKey ? null : get(coreKey, filter);
+      if (entry != null) {
+        hitCount++;
+        entry.lastAccess = ++clock;
+        entry.useCount++;
+        return new FilteredDocIdSet(entry.docIdSet) {
+          protected boolean match(int docID) {
+            return !reader.isDeleted(docID);
+          }
+        };
+      }
+      missCount++;
+    }
+
+    // built outside the lock: at worst, two threads build the same set
+    final DocIdSet docIdSet = compact(filter.getDocIdSet(reader), reader.maxDoc());
+    put(delCoreKey, filter, docIdSet);
+    return docIdSet;
+  }
+
+  private Entry get(Object segmentKey, Filter filter) {
+    Map entries = (Map) segments.get(segmentKey);
+    return entries == null ? null : (Entry) entries.get(filter);
+  }
+
+  private synchronized void put(Object segmentKey, Filter filter, DocIdSet docIdSet) {
+    Map entries = (Map) segments.get(segmentKey);
+    if (entries == null) {
+      entries = new HashMap();
+      segments.put(segmentKey, entries);
+    }
+    Entry entry = new Entry(entries, filter, docIdSet);
+    entry.lastAccess = ++clock;
+    entry.useCount = 1;
+    Entry replaced = (Entry) entries.put(filter, entry);
+    ramBytesUsed += entry.ramBytes - (replaced == null ? 0 : replaced.ramBytes);
+    evict(entry);
+  }
+
+  /**
+   * Evicts entries in eviction order until the cache is within its bound,
+   * but not <code>keep</code>: a set larger than the bound is kept until
+   * the next one is cached. Entries are only recounted, and sorted, once
+   * their running total is over the bound.
+   */
+  private void evict(Entry keep) {
+    if (ramBytesUsed <= maxRamBytes) {
+      return;
+    }
+    // recount, as the entries of segments that went away were not
+    // taken off
+    List all = entries();
+    ramBytesUsed = 0;
+    for (int i = 0; i < all.size(); i++) {
+      ramBytesUsed += ((Entry) all.get(i)).ramBytes;
+    }
+    if (ramBytesUsed <= maxRamBytes) {
+      return;
+    }
+    Collections.sort(all, evictionOrder);
+    for (int i = 0; i < all.size() && ramBytesUsed > maxRamBytes; i++) {
+      Entry entry = (Entry) all.get(i);
+      if (entry != keep) {
+        entry.segmentEntries.remove(entry.filter);
+        ramBytesUsed -= entry.ramBytes;
+        evictionCount++;
+      }
+    }
+  }
+
+  /** Returns the entries of the segments still alive. */
+  private List entries() {
+    List all = new ArrayList();
+    for (Iterator it = segments.values().iterator(); it.hasNext();) {
+      all.addAll(((Map) it.next()).values());
+    }
+    return all;
+  }
+
+  /**
+   * Returns <code>docIdSet</code> in the form that takes the fewest bytes
+   * for a segment of <code>maxDoc</code> docs.
+   */
+  public static DocIdSet compact(DocIdSet docIdSet, int maxDoc) throws IOException {
+    if (docIdSet == null) {
+      return DocIdSet.EMPTY_DOCIDSET;
+    }
+    final OpenBitSet bits;
+    if (docIdSet instanceof OpenBitSet) {
+      bits = (OpenBitSet) docIdSet;
+    } else {
+      final DocIdSetIterator it = docIdSet.iterator();
+      if (it == null) {
+        return DocIdSet.EMPTY_DOCIDSET;
+      }
+      bits = new OpenBitSetDISI(it, maxDoc);
+    }
+    final long cardinality = bits.cardinality();
+    if (cardinality == 0) {
+      return DocIdSet.EMPTY_DOCIDSET;
+    }
+    final long bitSetBytes = (long) bits.getNumWords() * 8;
+    final long runBytes = (long) RunLengthDocIdSet.countRuns(bits) * 8;
+    // each doc takes at least one byte of vInt
+    final long vIntBytes = cardinality < Math.min(bitSetBytes, runBytes) ? vIntBytes(bits) : Long.MAX_VALUE;
+    if (vIntBytes < bitSetBytes && vIntBytes < runBytes) {
+      return new SortedVIntList(bits);
+    } else if (runBytes < bitSetBytes) {
+      return new RunLengthDocIdSet(bits);
+    }
+    return bits;
+  }
+
+  /** Returns the bytes the set bits of <code>bits</code> take as vInt deltas. */
+  private static long vIntBytes(OpenBitSet bits) {
+    long bytes = 0;
+    int last = 0;
+    for (int doc = bits.nextSetBit(0); doc != -1; doc = bits.nextSetBit(doc + 1)) {
+      int delta = doc - last;
+      do {
+        bytes++;
+        delta >>>= 7;
+      } while (delta != 0);
+      last = doc;
+    }
+    return bytes;
+  }
+
+  private static long ramBytesUsed(DocIdSet docIdSet) {
+    if (docIdSet instanceof OpenBitSet) {
+      return (long) ((OpenBitSet) docIdSet).getBits().length * 8;
+    } else if (docIdSet instanceof SortedVIntList) {
+      return ((SortedVIntList) docIdSet).getByteSize();
+    } else if (docIdSet instanceof RunLengthDocIdSet) {
+      return ((RunLengthDocIdSet) docIdSet).getByteSize();
+    }
+    return 0;
+  }
+
+  /** Drops all sets. */
+  public synchronized void clear() {
+    segments.clear();
+    ramBytesUsed = 0;
+  }
+
+  /** Bounds the bytes of the cached sets, evicting sets beyond it now. */
+  public synchronized void setMaxRamBytes(long maxRamBytes) {
+    if (maxRamBytes < 0) {
+      throw new IllegalArgumentException("maxRamBytes must be >= 0");
+    }
+    this.maxRamBytes = maxRamBytes;
+    evict(null);
+  }
+
+  /** Returns the bound on the bytes of the cached sets. */
+  public synchronized long getMaxRamBytes() {
+    return maxRamBytes;
+  }
+
+  /** Returns the number of lookups that found a set. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups that found none. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the share of lookups that found a set, or 0 before the first. */
+  public synchronized double getHitRate() {
+    long lookups = hitCount + missCount;
+    return lookups == 0 ? 0 : (double) hitCount / lookups;
+  }
+
+  /** Returns the number of sets evicted to stay within the bound. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Returns the number of sets cached for segments still alive. */
+  public synchronized int getEntryCount() {
+    return entries().size();
+  }
+
+  /** Returns the estimated bytes of the sets cached for segments still alive. */
+  public synchronized long getRamBytesUsed() {
+    List all = entries();
+    long ramBytes = 0;
+    for (int i = 0; i < all.size(); i++) {
+      ramBytes += ((Entry) all.get(i)).ramBytes;
+    }
+    return ramBytes;
+  }
+
+  public synchronized String toString() {
+    return "SegmentFilterCache(hits=" + hitCount + " misses=" + missCount
+        + " evictions=" + evictionCount + " entries=" + getEntryCount()
+        + " ramBytes=" + getRamBytesUsed() + "/" + maxRamBytes + ")";
+  }
+
+  /** Reads the sets of a filter through a cache. */
+  private static final class CachedFilter extends Filter {
+    // not serialized: a deserialized filter reads its sets uncached
+    private final transient SegmentFilterCache cache;
+    private final Filter filter;
+
+    CachedFilter(SegmentFilterCache cache, Filter filter) {
+      this.cache = cache;
+      this.filter = filter;
+    }
+
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+      if (cache == null) {
+        return filter.getDocIdSet(reader);
+      }
+      return cache.getDocIdSet(reader, filter);
+    }
+
+    public String toString() {
+      return "SegmentFilterCache(" + filter + ")";
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof CachedFilter)) return false;
+      return this.filter.equals(((CachedFilter) o).filter);
+    }
+
+    public int hashCode() {
+      return filter.hashCode() ^ 0x5E6F17C4;
+    }
+  }
+}
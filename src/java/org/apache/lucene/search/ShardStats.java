@@ -0,0 +1,76 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * How each {@link Searchable} of a {@link ParallelMultiSearcher} took part
+ * in one request: whether it answered before the request's deadline, and
+ * how long it took to.
+ *
+ * @see TopDocs#getShardStats()
+ */
+public class ShardStats implements java.io.Serializable {
+
+  private final boolean[] timedOut;
+  private final long[] latencies;
+
+  ShardStats(int numShards) {
+    timedOut = new boolean[numShards];
+    latencies = new long[numShards];
+  }
+
+  /** Returns the number of searchables the request went to. */
+  public int getNumShards() {
+    return timedOut.length;
+  }
+
+  /** Returns true if some searchable missed the deadline, so the hits
+   * of the request are those of the others only. */
+  public boolean isPartial() {
+    for (int i = 0; i < timedOut.length; i++) {
+      if (timedOut[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns true if searchable <code>shard</code> missed the deadline;
+   * what it was asked was then cancelled, and its hits are missing. */
+  public boolean isTimedOut(int shard) {
+    return timedOut[shard];
+  }
+
+  /**
+   * Returns the nanoseconds searchable <code>shard</code> took to answer,
+   * from when it started on each call to when it returned,
+   * summed over the calls of the request (query rewriting, document
+   * frequencies and search); -1 if it timed out.
+   */
+  public long getLatency(int shard) {
+    return timedOut[shard] ? -1 : latencies[shard];
+  }
+
+  void setTimedOut(int shard) {
+    timedOut[shard] = true;
+  }
+
+  void addLatency(int shard, long nanos) {
+    latencies[shard] += nanos;
+  }
+}
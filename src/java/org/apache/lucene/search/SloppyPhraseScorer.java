@@ -17,200 +17,375 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.MultipleTermPositions;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.util.ArrayUtil;
 
-import java.io.IOException;
-import java.util.HashMap;
-
-final class SloppyPhraseScorer extends PhraseScorer {
-    private int slop;
-    private PhrasePositions repeats[];
-    private PhrasePositions tmpPos[]; // for flipping repeating pps.
-    private boolean checkedRepeats;
-
-    SloppyPhraseScorer(Weight weight, TermPositions[] tps, int[] offsets, Similarity similarity,
-                       int slop, byte[] norms) {
-        super(weight, tps, offsets, similarity, norms);
-        this.slop = slop;
-    }
-
-    /**
-     * Score a candidate doc for all slop-valid position-combinations (matches) 
-     * encountered while traversing/hopping the PhrasePositions.
-     * <br> The score contribution of a match depends on the distance: 
-     * <br> - highest score for distance=0 (exact match).
-     * <br> - score gets lower as distance gets higher.
-     * <br>Example: for query "a b"~2, a document "x a b a y" can be scored twice: 
-     * once for "a b" (distance=0), and once for "b a" (distance=2).
-     * <br>Possibly not all valid combinations are encountered, because for efficiency  
-     * we always propagate the least PhrasePosition. This allows to base on 
-     * PriorityQueue and move forward faster. 
-     * As result, for example, document "a b c b a"
-     * would score differently for queries "a b c"~4 and "c b a"~4, although 
-     * they really are equivalent. 
-     * Similarly, for doc "a b c b a f g", query "c b"~2 
-     * would get same score as "g f"~2, although "c b"~2 could be matched twice.
-     * We may want to fix this in the future (currently not, for performance reasons).
-     */
-    protected final float phraseFreq() throws IOException {
-        int end = initPhrasePositions();
-        
-        float freq = 0.0f;
-        boolean done = (end<0);
-        while (!done) {
-            PhrasePositions pp = (PhrasePositions) pq.pop();
-            int start = pp.position;
-            int next = ((PhrasePositions) pq.top()).position;
-
-            boolean tpsDiffer = true;
-            for (int pos = start; pos <= next || !tpsDiffer; pos = pp.position) {
-                if (pos<=next && tpsDiffer)
-                    start = pos;                  // advance pp to min window
-                if (!pp.nextPosition()) {
-                    done = true;          // ran out of a term -- done
-                    break;
-                }
-                PhrasePositions pp2 = null;
-                tpsDiffer = !pp.repeats || (pp2 = termPositionsDiffer(pp))==null;
-                if (pp2!=null && pp2!=pp) {
-                  pp = flip(pp,pp2); // flip pp to pp2
-                }
-            }
-
-            int matchLength = end - start;
-            if (matchLength <= slop)
-                freq += getSimilarity().sloppyFreq(matchLength); // score match
-
-            if (pp.position > end)
-                end = pp.position;
-            pq.put(pp);               // restore pq
+/** Scorer for sloppy phrases.
+ * <p>
+ * Docs are intersected as in {@link ExactPhraseScorer}, rarest postings
+ * first. On docs having all terms, each term's positions are read in one
+ * go into an array, shifted by the term's offset in the phrase, and the
+ * windows are found by sliding over those arrays: the term at the least
+ * position is moved forward as long as it stays at or before the next
+ * least one, and the window from there to the greatest position is a
+ * match if it is no wider than the slop.
+ * <p>
+ * Terms that occur more than once in the query never share a position in
+ * the doc. Which terms repeat is found on the first doc scored; only
+ * positions of those terms are compared, against each other.
+ */
+final class SloppyPhraseScorer extends Scorer {
+  private final Weight weight;
+  private final byte[] norms;
+  private final float value;
+  private final int slop;
+
+  private final TermPositions[] postings;   // in phrase order
+  private final int[] offsets;
+  private final TermPositions[] iterators;  // rarest first
+  private final int[] iteratorDocs;
+  private final int cost;
+
+  private final int[][] positions;          // of each term in the doc, minus its offset
+  private final int[] counts;
+  private final int[] upto;                 // index of each term's current position
+  private final int[] current;              // each term's current position
+
+  private boolean checkedRepeats;
+  private int[][] repeats;                  // for each term, the others it may not share a position with, or null
+
+  private final TermDocs sortSource;
+  private final int[] sorts;
+
+  private int doc = -1;
+  private float freq;
+
+  /**
+   * @param docFreqs of <code>tps</code>
+   */
+  SloppyPhraseScorer(Weight weight, TermPositions[] tps, int[] offsets, int[] docFreqs,
+      Similarity similarity, int slop, byte[] norms, EmbeddedSortSchema schema) {
+    super(similarity);
+    this.weight = weight;
+    this.norms = norms;
+    this.value = weight.getValue();
+    this.slop = slop;
+    this.postings = tps;
+    this.offsets = offsets;
+    positions = new int[tps.length][];
+    for (int i = 0; i < tps.length; i++) {
+      positions[i] = new int[16];
+    }
+    counts = new int[tps.length];
+    upto = new int[tps.length];
+    current = new int[tps.length];
+
+    final TermPositions[] all = new TermPositions[tps.length];
+    final int[] costs = new int[tps.length];
+    System.arraycopy(tps, 0, all, 0, tps.length);
+    System.arraycopy(docFreqs, 0, costs, 0, tps.length);
+    // insertion sort by cost: phrases are short
+    for (int i = 1; i < all.length; i++) {
+      for (int j = i; j > 0 && costs[j] < costs[j - 1]; j--) {
+        TermPositions tp = all[j]; all[j] = all[j - 1]; all[j - 1] = tp;
+        int c = costs[j]; costs[j] = costs[j - 1]; costs[j - 1] = c;
+      }
+    }
+    iterators = all;
+    iteratorDocs = new int[all.length];
+    Arrays.fill(iteratorDocs, -1);
+    cost = costs[0];
+
+    // multi-term postings hold no sort values
+    TermDocs source = null;
+    for (int i = 0; i < tps.length && source == null; i++) {
+      if (!(tps[i] instanceof MultipleTermPositions)) {
+        source = tps[i];
+      }
+    }
+    sortSource = source;
+    sorts = schema.newSorts();
+  }
+
+  /** @deprecated use {@link #docID()} instead. */
+  public int doc() { return doc; }
+
+  public int docID() { return doc; }
+
+  /** @deprecated use {@link #nextDoc()} instead. */
+  public boolean next() throws IOException {
+    return nextDoc() != NO_MORE_DOCS;
+  }
+
+  public int nextDoc() throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    if (!iterators[0].next()) {
+      return exhausted();
+    }
+    return doNext(iterators[0].doc());
+  }
+
+  /** @deprecated use {@link #advance(int)} instead. */
+  public boolean skipTo(int target) throws IOException {
+    return advance(target) != NO_MORE_DOCS;
+  }
+
+  public int advance(int target) throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    // the lead is always on the current doc, which is before target
+    if (!iterators[0].skipTo(target)) {
+      return exhausted();
+    }
+    return doNext(iterators[0].doc());
+  }
+
+  // candidate is the lead's doc
+  private int doNext(int candidate) throws IOException {
+    final TermDocs lead = iterators[0];
+    outer:
+    while (true) {
+      for (int i = 1; i < iterators.length; i++) {
+        if (iteratorDocs[i] < candidate) {
+          if (!iterators[i].skipTo(candidate)) {
+            return exhausted();
+          }
+          iteratorDocs[i] = iterators[i].doc();
+        }
+        if (iteratorDocs[i] > candidate) {
+          if (!lead.skipTo(iteratorDocs[i])) {
+            return exhausted();
+          }
+          candidate = lead.doc();
+          continue outer;
         }
+      }
+      // all on the candidate: check for the phrase
+      freq = phraseFreq();
+      if (freq > 0.0f) {
+        return doc = candidate;
+      }
+      if (!lead.next()) {
+        return exhausted();
+      }
+      candidate = lead.doc();
+    }
+  }
+
+  private int exhausted() throws IOException {
+    for (int i = 0; i < iterators.length; i++) {
+      iterators[i].close();
+    }
+    return doc = NO_MORE_DOCS;
+  }
 
-        return freq;
-    }
-    
-    // flip pp2 and pp in the queue: pop until finding pp2, insert back all but pp2, insert pp back.
-    // assumes: pp!=pp2, pp2 in pq, pp not in pq.
-    // called only when there are repeating pps.
-    private PhrasePositions flip(PhrasePositions pp, PhrasePositions pp2) {
-      int n=0;
-      PhrasePositions pp3;
-      //pop until finding pp2
-      while ((pp3=(PhrasePositions)pq.pop()) != pp2) {
-        tmpPos[n++] = pp3;
-      }
-      //insert back all but pp2
-      for (n--; n>=0; n--) {
-        pq.insert(tmpPos[n]);
-      }
-      //insert pp back
-      pq.put(pp);
-      return pp2;
-    }
-
-    /**
-     * Init PhrasePositions in place.
-     * There is a one time initialization for this scorer:
-     * <br>- Put in repeats[] each pp that has another pp with same position in the doc.
-     * <br>- Also mark each such pp by pp.repeats = true.
-     * <br>Later can consult with repeats[] in termPositionsDiffer(pp), making that check efficient.
-     * In particular, this allows to score queries with no repetitions with no overhead due to this computation.
-     * <br>- Example 1 - query with no repetitions: "ho my"~2
-     * <br>- Example 2 - query with repetitions: "ho my my"~2
-     * <br>- Example 3 - query with repetitions: "my ho my"~2
-     * <br>Init per doc w/repeats in query, includes propagating some repeating pp's to avoid false phrase detection.  
-     * @return end (max position), or -1 if any term ran out (i.e. done) 
-     * @throws IOException 
-     */
-    private int initPhrasePositions() throws IOException {
-        int end = 0;
-        
-        // no repeats at all (most common case is also the simplest one)
-        if (checkedRepeats && repeats==null) {
-            // build queue from list
-            pq.clear();
-            for (PhrasePositions pp = first; pp != null; pp = pp.next) {
-                pp.firstPosition();
-                if (pp.position > end)
-                    end = pp.position;
-                pq.put(pp);         // build pq from list
-            }
-            return end;
+  // reads all positions of the doc
+  private void loadPositions() throws IOException {
+    for (int i = 0; i < postings.length; i++) {
+      final TermPositions tp = postings[i];
+      final int count = tp.freq();
+      if (count > positions[i].length) {
+        positions[i] = ArrayUtil.grow(positions[i], count);
+      }
+      final int[] termPositions = positions[i];
+      final int offset = offsets[i];
+      for (int j = 0; j < count; j++) {
+        termPositions[j] = tp.nextPosition() - offset;
+      }
+      counts[i] = count;
+      upto[i] = 0;
+    }
+  }
+
+  private int position(int i) {
+    return positions[i][upto[i]];
+  }
+
+  /**
+   * Sums the sloppy frequencies of the windows found. The window of a
+   * match depends on the distance: the closer the terms, the higher its
+   * score. For query "a b"~2, doc "x a b a y" scores twice: once for
+   * "a b" (distance=0) and once for "b a" (distance=2).
+   * <p>
+   * Only the least term is ever moved, so not all windows are found: doc
+   * "a b c b a" scores differently for "a b c"~4 and "c b a"~4, although
+   * these are equivalent.
+   */
+  private float phraseFreq() throws IOException {
+    loadPositions();
+    if (!checkedRepeats) {
+      checkedRepeats = true;
+      findRepeats();
+    }
+    if (repeats != null && !separateRepeats()) {
+      return 0.0f;
+    }
+
+    final int n = postings.length;
+    final int[] current = this.current;
+    int end = Integer.MIN_VALUE;
+    for (int i = 0; i < n; i++) {
+      current[i] = positions[i][upto[i]];
+      end = Math.max(end, current[i]);
+    }
+
+    float freq = 0.0f;
+    boolean done = false;
+    while (!done) {
+      // the least term, by position then offset, and the next least position
+      int least = 0;
+      int next = Integer.MAX_VALUE;
+      for (int i = 1; i < n; i++) {
+        if (current[i] < current[least]
+            || (current[i] == current[least] && offsets[i] < offsets[least])) {
+          next = Math.min(next, current[least]);
+          least = i;
+        } else {
+          next = Math.min(next, current[i]);
         }
-        
-        // position the pp's
-        for (PhrasePositions pp = first; pp != null; pp = pp.next)
-            pp.firstPosition();
-        
-        // one time initializatin for this scorer
-        if (!checkedRepeats) {
-            checkedRepeats = true;
-            // check for repeats
-            HashMap m = null;
-            for (PhrasePositions pp = first; pp != null; pp = pp.next) {
-                int tpPos = pp.position + pp.offset;
-                for (PhrasePositions pp2 = pp.next; pp2 != null; pp2 = pp2.next) {
-                    int tpPos2 = pp2.position + pp2.offset;
-                    if (tpPos2 == tpPos) { 
-                        if (m == null)
-                            m = new HashMap();
-                        pp.repeats = true;
-                        pp2.repeats = true;
-                        m.put(pp,null);
-                        m.put(pp2,null);
-                    }
-                }
-            }
-            if (m!=null)
-                repeats = (PhrasePositions[]) m.keySet().toArray(new PhrasePositions[0]);
+      }
+
+      int start = current[least];
+      if (repeats == null) {
+        // slide the least term up to the next one
+        final int[] termPositions = positions[least];
+        final int count = counts[least];
+        int j = upto[least];
+        while (++j < count && termPositions[j] <= next) {
+          start = termPositions[j];
         }
-        
-        // with repeats must advance some repeating pp's so they all start with differing tp's       
-        if (repeats!=null) {
-            for (int i = 0; i < repeats.length; i++) {
-                PhrasePositions pp = repeats[i];
-                PhrasePositions pp2;
-                while ((pp2 = termPositionsDiffer(pp)) != null) {
-                  if (!pp2.nextPosition())  // out of pps that do not differ, advance the pp with higher offset 
-                      return -1;           // ran out of a term -- done  
-                } 
-            }
+        if (j == count) {
+          done = true;                            // ran out of a term
+          j--;
         }
-      
-        // build queue from list
-        pq.clear();
-        for (PhrasePositions pp = first; pp != null; pp = pp.next) {
-            if (pp.position > end)
-                end = pp.position;
-            pq.put(pp);         // build pq from list
+        upto[least] = j;
+        current[least] = termPositions[j];
+      } else {
+        boolean differ = true;
+        for (int pos = start; pos <= next || !differ; pos = current[least]) {
+          if (pos <= next && differ) {
+            start = pos;                          // advance to the least window
+          }
+          if (upto[least] + 1 == counts[least]) {
+            done = true;                          // ran out of a term
+            break;
+          }
+          current[least] = positions[least][++upto[least]];
+          int other = repeats[least] == null ? -1 : collision(least);
+          differ = other == -1;
+          if (!differ) {
+            least = other;                        // move on the one further in the phrase
+          }
         }
+      }
 
-        if (repeats!=null) {
-          tmpPos = new PhrasePositions[pq.size()];
+      int matchLength = end - start;
+      if (matchLength <= slop) {
+        freq += getSimilarity().sloppyFreq(matchLength); // score match
+      }
+      end = Math.max(end, current[least]);
+    }
+    return freq;
+  }
+
+  // terms at the same position on the first doc repeat in the query
+  private void findRepeats() {
+    final int n = postings.length;
+    int[][] found = null;
+    for (int i = 0; i < n; i++) {
+      int count = 0;
+      int[] peers = new int[n - 1];
+      for (int j = 0; j < n; j++) {
+        if (j != i && position(j) + offsets[j] == position(i) + offsets[i]) {
+          peers[count++] = j;
         }
-        return end;
-    }
-
-    /**
-     * We disallow two pp's to have the same TermPosition, thereby verifying multiple occurrences 
-     * in the query of the same word would go elsewhere in the matched doc.
-     * @return null if differ (i.e. valid) otherwise return the higher offset PhrasePositions
-     * out of the first two PPs found to not differ.
-     */
-    private PhrasePositions termPositionsDiffer(PhrasePositions pp) {
-        // efficiency note: a more efficient implementation could keep a map between repeating 
-        // pp's, so that if pp1a, pp1b, pp1c are repeats term1, and pp2a, pp2b are repeats 
-        // of term2, pp2a would only be checked against pp2b but not against pp1a, pp1b, pp1c. 
-        // However this would complicate code, for a rather rare case, so choice is to compromise here.
-        int tpPos = pp.position + pp.offset;
-        for (int i = 0; i < repeats.length; i++) {
-            PhrasePositions pp2 = repeats[i];
-            if (pp2 == pp)
-                continue;
-            int tpPos2 = pp2.position + pp2.offset;
-            if (tpPos2 == tpPos)
-                return pp.offset > pp2.offset ? pp : pp2; // do not differ: return the one with higher offset.
+      }
+      if (count > 0) {
+        if (found == null) {
+          found = new int[n][];
         }
-        return null; 
+        found[i] = new int[count];
+        System.arraycopy(peers, 0, found[i], 0, count);
+      }
+    }
+    repeats = found;
+  }
+
+  /**
+   * Returns -1 if the term <code>i</code> is on differs from those of its
+   * repeats, otherwise the one of the two sharing it that is further in
+   * the phrase.
+   */
+  private int collision(int i) {
+    final int[] peers = repeats[i];
+    final int tpPos = position(i) + offsets[i];
+    for (int k = 0; k < peers.length; k++) {
+      final int j = peers[k];
+      if (position(j) + offsets[j] == tpPos) {
+        return offsets[i] > offsets[j] ? i : j;
+      }
+    }
+    return -1;
+  }
+
+  // moves repeats forward until no two share a position; false if one ran out
+  private boolean separateRepeats() {
+    for (int i = 0; i < repeats.length; i++) {
+      if (repeats[i] == null) {
+        continue;
+      }
+      int other;
+      while ((other = collision(i)) != -1) {
+        if (++upto[other] == counts[other]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  public float score() throws IOException {
+    float raw = getSimilarity().tf(freq) * value; // raw score
+    return norms == null ? raw : raw * Similarity.decodeNorm(norms[doc]); // normalize
+  }
+
+  public int cost() {
+    return cost;
+  }
+
+  public Explanation explain(final int doc) throws IOException {
+    Explanation tfExplanation = new Explanation();
+
+    int d = advance(doc);
+    float phraseFreq = (d == doc) ? freq : 0.0f;
+    tfExplanation.setValue(getSimilarity().tf(phraseFreq));
+    tfExplanation.setDescription("tf(phraseFreq=" + phraseFreq + ")");
+
+    return tfExplanation;
+  }
+
+  public String toString() { return "scorer(" + weight + ")"; }
+
+  public int getSort(int fieldNumber) {
+    return sortSource == null ? -1 : sortSource.getSort(fieldNumber);
+  }
+
+  public int[] getSorts() {
+    if (sorts.length > 0) {
+      if (sortSource == null) {
+        Arrays.fill(sorts, -1);
+      } else {
+        copySorts(sortSource.getSorts(), sorts);
+      }
     }
+    return sorts;
+  }
 }
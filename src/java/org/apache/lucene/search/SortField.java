@@ -118,6 +118,9 @@ implements Serializable {
 
   private boolean useLegacy = false; // remove in Lucene 3.0
 
+  // null for FieldCache.DEFAULT; not part of equals, as it does not change the order
+  private transient FieldCache fieldCache;
+
   /** Creates a sort by terms in the given field where the type of term value
    * is determined dynamically ({@link #AUTO AUTO}).
    * @param field Name of field to sort by, cannot be
@@ -325,6 +328,20 @@ implements Serializable {
   public FieldComparatorSource getComparatorSource() {
     return comparatorSource;
   }
+
+  /**
+   * Sets the cache the values to sort by are read from, for example a
+   * {@link PackedFieldCache}; by default, and if <code>null</code>, it is
+   * {@link FieldCache#DEFAULT}. The cache is not serialized.
+   */
+  public void setFieldCache(FieldCache fieldCache) {
+    this.fieldCache = fieldCache;
+  }
+
+  /** Returns the cache the values to sort by are read from. */
+  public FieldCache getFieldCache() {
+    return fieldCache != null ? fieldCache : FieldCache.DEFAULT;
+  }
   
   /**
    * Use legacy IndexSearch implementation: search with a DirectoryReader rather
@@ -469,7 +486,7 @@ implements Serializable {
       // TODO: it'd be nice to allow FieldCache.getStringIndex
       // to optionally accept a Locale so sorting could then use
       // the faster StringComparator impls
-      return new FieldComparator.StringComparatorLocale(numHits, field, locale);
+      return new FieldComparator.StringComparatorLocale(numHits, field, locale, getFieldCache());
     }
 
     switch (type) {
@@ -480,32 +497,32 @@ implements Serializable {
       return new FieldComparator.DocComparator(numHits);
 
     case SortField.INT:
-      return new FieldComparator.IntComparator(numHits, field, parser);
+      return new FieldComparator.IntComparator(numHits, field, parser, getFieldCache());
 
     case SortField.FLOAT:
-      return new FieldComparator.FloatComparator(numHits, field, parser);
+      return new FieldComparator.FloatComparator(numHits, field, parser, getFieldCache());
 
     case SortField.LONG:
-      return new FieldComparator.LongComparator(numHits, field, parser);
+      return new FieldComparator.LongComparator(numHits, field, parser, getFieldCache());
 
     case SortField.DOUBLE:
-      return new FieldComparator.DoubleComparator(numHits, field, parser);
+      return new FieldComparator.DoubleComparator(numHits, field, parser, getFieldCache());
 
     case SortField.BYTE:
-      return new FieldComparator.ByteComparator(numHits, field, parser);
+      return new FieldComparator.ByteComparator(numHits, field, parser, getFieldCache());
 
     case SortField.SHORT:
-      return new FieldComparator.ShortComparator(numHits, field, parser);
+      return new FieldComparator.ShortComparator(numHits, field, parser, getFieldCache());
 
     case SortField.CUSTOM:
       assert factory == null && comparatorSource != null;
       return comparatorSource.newComparator(field, numHits, sortPos, reverse);
 
     case SortField.STRING:
-      return new FieldComparator.StringOrdValComparator(numHits, field, sortPos, reverse);
+      return new FieldComparator.StringOrdValComparator(numHits, field, sortPos, reverse, getFieldCache());
 
     case SortField.STRING_VAL:
-      return new FieldComparator.StringValComparator(numHits, field);
+      return new FieldComparator.StringValComparator(numHits, field, getFieldCache());
         
     default:
       throw new IllegalStateException("Illegal sort type: " + type);
@@ -0,0 +1,210 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * Counts hits per term of a field, which may have many terms per document.
+ * Hits are counted per term ordinal of {@link AccessorFieldCache#getDocTermOrds}
+ * into an array; terms are only looked up for the ordinals a segment
+ * counted, as the collector moves on to the next segment.
+ * <p>
+ * Hits are optionally passed on to another collector, so facets and top
+ * hits come from one search:
+ *
+ * <pre>
+ * TopScoreDocCollector top = TopScoreDocCollector.create(10, true);
+ * TermFacetCollector tags = new TermFacetCollector("tag", top);
+ * searcher.search(query, tags);
+ * TermFacetCollector.Entry[] topTags = tags.getTopTerms(10);
+ * </pre>
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public class TermFacetCollector extends Collector {
+
+  /** A term and the number of hits that have it. */
+  public static final class Entry {
+    private final String term;
+    private final int count;
+
+    Entry(String term, int count) {
+      this.term = term;
+      this.count = count;
+    }
+
+    public String getTerm() {
+      return term;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public String toString() {
+      return term + "=" + count;
+    }
+  }
+
+  private final String field;
+  private final Collector in;
+  private final AccessorFieldCache cache;
+
+  private FieldCache.DocTermOrds ords;
+  private int[] ordCounts = new int[0];
+  // term -> int[1] count, of the segments done
+  private final Map counts = new HashMap();
+  private int missingCount;
+  private int totalHits;
+
+  /** Creates a collector that only counts. */
+  public TermFacetCollector(String field) {
+    this(field, null);
+  }
+
+  /** Creates a collector that counts and passes every hit on to <code>in</code>. */
+  public TermFacetCollector(String field, Collector in) {
+    this(field, in, (AccessorFieldCache) FieldCache.DEFAULT);
+  }
+
+  /** Creates a collector that reads the terms of <code>field</code> from <code>cache</code>. */
+  public TermFacetCollector(String field, Collector in, AccessorFieldCache cache) {
+    this.field = field;
+    this.in = in;
+    this.cache = cache;
+  }
+
+  public void setScorer(Scorer scorer) throws IOException {
+    if (in != null) {
+      in.setScorer(scorer);
+    }
+  }
+
+  public void collect(int doc, int[] sorts) throws IOException {
+    totalHits++;
+    final int count = ords.ordCount(doc);
+    if (count == 0) {
+      // ordinal 0 counts the hits without terms
+      ordCounts[0]++;
+    }
+    for (int i = 0; i < count; i++) {
+      ordCounts[ords.ord(doc, i)]++;
+    }
+    if (in != null) {
+      in.collect(doc, sorts);
+    }
+  }
+
+  public void setNextReader(IndexReader reader, int docBase) throws IOException {
+    addSegmentCounts();
+    ords = cache.getDocTermOrds(reader, field);
+    if (ordCounts.length < ords.numOrd()) {
+      ordCounts = new int[ords.numOrd()];
+    }
+    if (in != null) {
+      in.setNextReader(reader, docBase);
+    }
+  }
+
+  public boolean acceptsDocsOutOfOrder() {
+    return in == null || in.acceptsDocsOutOfOrder();
+  }
+
+  /** Adds the counts of the current segment by term, and clears them. */
+  private void addSegmentCounts() {
+    if (ords == null) {
+      return;
+    }
+    missingCount += ordCounts[0];
+    ordCounts[0] = 0;
+    final int numOrd = ords.numOrd();
+    for (int ord = 1; ord < numOrd; ord++) {
+      if (ordCounts[ord] != 0) {
+        String term = ords.lookup(ord);
+        int[] count = (int[]) counts.get(term);
+        if (count == null) {
+          counts.put(term, new int[] { ordCounts[ord] });
+        } else {
+          count[0] += ordCounts[ord];
+        }
+        ordCounts[ord] = 0;
+      }
+    }
+    ords = null;
+  }
+
+  /** Returns the number of hits that have <code>term</code>. */
+  public int getCount(String term) {
+    addSegmentCounts();
+    int[] count = (int[]) counts.get(term);
+    return count == null ? 0 : count[0];
+  }
+
+  /** Returns the number of hits that have no term in the field. */
+  public int getMissingCount() {
+    addSegmentCounts();
+    return missingCount;
+  }
+
+  /** Returns the number of hits collected. */
+  public int getTotalHits() {
+    return totalHits;
+  }
+
+  /**
+   * Returns up to <code>n</code> terms that the most hits have, by
+   * descending count, and terms of the same count in term order.
+   */
+  public Entry[] getTopTerms(int n) {
+    addSegmentCounts();
+    EntryQueue queue = new EntryQueue(Math.min(n, counts.size()));
+    for (Iterator it = counts.entrySet().iterator(); it.hasNext();) {
+      Map.Entry e = (Map.Entry) it.next();
+      queue.insertWithOverflow(new Entry((String) e.getKey(), ((int[]) e.getValue())[0]));
+    }
+    Entry[] top = new Entry[queue.size()];
+    for (int i = top.length - 1; i >= 0; i--) {
+      top[i] = (Entry) queue.pop();
+    }
+    return top;
+  }
+
+  /** Keeps the top entries, with the least one on top. */
+  private static final class EntryQueue extends PriorityQueue {
+    EntryQueue(int size) {
+      initialize(size);
+    }
+
+    protected boolean lessThan(Object a, Object b) {
+      Entry e1 = (Entry) a;
+      Entry e2 = (Entry) b;
+      if (e1.count != e2.count) {
+        return e1.count < e2.count;
+      }
+      return e1.term.compareTo(e2.term) > 0;
+    }
+  }
+}
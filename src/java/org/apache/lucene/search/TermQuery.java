@@ -34,6 +34,7 @@ public class TermQuery extends Query {
 
   private class TermWeight extends Weight {
     private Similarity similarity;
+    private EmbeddedSortSchema schema;
     private float value;
     private float idf;
     private float queryNorm;
@@ -43,6 +44,7 @@ public class TermQuery extends Query {
     public TermWeight(Searcher searcher)
       throws IOException {
       this.similarity = getSimilarity(searcher);
+      this.schema = getEmbeddedSortSchema(searcher);
       idfExp = similarity.idfExplain(term, searcher);
       idf = idfExp.getIdf();
     }
@@ -69,7 +71,18 @@ public class TermQuery extends Query {
       if (termDocs == null)
         return null;
 
-      return new TermScorer(this, termDocs, similarity, reader.norms(term.field()));
+      TermScorer scorer = new TermScorer(this, termDocs, similarity, reader.norms(term.field()), schema);
+      scorer.setCost(reader.docFreq(term));
+      int maxFreq = reader.maxFreq(term);
+      // only DefaultSimilarity's tf is known to grow with the freq; any
+      // other, subclasses included, leaves the score unbounded
+      if (maxFreq > 0 && value >= 0 && similarity.getClass() == DefaultSimilarity.class) {
+        // the score grows with the freq and the norm, so their maxima
+        // bound it; a norm byte of 0 scores as 1
+        float maxNorm = Math.max(1.0f, Similarity.decodeNorm(reader.maxNorm(term.field())));
+        scorer.setMaxScore(similarity.tf(maxFreq) * value * maxNorm);
+      }
+      return scorer;
     }
 
     public Explanation explain(IndexReader reader, int doc)
@@ -18,11 +18,9 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
-import java.sql.Timestamp;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 
 import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.util.ReaderUtil;
 
 /** Expert: A <code>Scorer</code> for documents matching a <code>Term</code>.
  */
@@ -35,10 +33,14 @@ final class TermScorer extends Scorer {
   private float weightValue;
   private int doc = -1;
 
-  private final int[] docs = new int[32];         // buffered doc numbers
-  private final int[] freqs = new int[32];        // buffered term freqs
-  private final int[][] sort = new int[32][numSort]; 
-  private byte[] norms = new byte[32];
+  private final int blockSize;
+  private final int[] docs;                       // buffered doc numbers
+  private final int[] freqs;                      // buffered term freqs
+  private final byte[] norms;                     // buffered norms
+  private final int numSlots;
+  private final int[] sorts;                      // buffered sort values, one column of blockSize per slot
+  private final int[] row;                        // sort values of the current doc, built on demand
+  private int rowPointer = -1;                    // pointer the row was built for
   
   private int pointer;
   private int pointerMax;
@@ -46,17 +48,11 @@ final class TermScorer extends Scorer {
   private static final int SCORE_CACHE_SIZE = 32;
   private float[] scoreCache = new float[SCORE_CACHE_SIZE];
 
-  private static int[] EMPTY_SORTS = new int[numSort];
-  
-  static {
-	  // initiallize
-	  for(int i = 0; i < EMPTY_SORTS.length; i++){
-		  EMPTY_SORTS[i] = -1;
-	  }
-  }
-  
-	private int boostingFactor;
-  
+  private final int[] unsetSorts;
+
+  private float maxScore = Float.POSITIVE_INFINITY;
+  private int cost = Integer.MAX_VALUE;
+
   /**
    * Construct a <code>TermScorer</code>.
    * 
@@ -71,15 +67,29 @@ final class TermScorer extends Scorer {
    *          The field norms of the document fields for the <code>Term</code>.
    */
   TermScorer(Weight weight, TermDocs td, Similarity similarity, byte[] norms) {
+    this(weight, td, similarity, norms, EmbeddedSortSchema.getDefault());
+  }
+
+  /**
+   * Construct a <code>TermScorer</code> exposing the sort slots of
+   * <code>schema</code>.
+   */
+  TermScorer(Weight weight, TermDocs td, Similarity similarity, byte[] norms, EmbeddedSortSchema schema) {
     super(similarity);
     this.weight = weight;
     this.termDocs = td;
     //this.norms = norms;
     this.weightValue = weight.getValue();
 
-    this.boostingFactor = (int) ((System.currentTimeMillis()/60000) - boostingFactor);
-    this.boostingFactor -= SolbaseEpochTime; 
-    
+    this.blockSize = schema.getBlockSize();
+    this.docs = new int[blockSize];
+    this.freqs = new int[blockSize];
+    this.norms = new byte[blockSize];
+    this.numSlots = schema.getNumSlots();
+    this.sorts = numSlots == 0 ? NO_SORTS : new int[numSlots * blockSize];
+    this.row = schema.newSorts();
+    this.unsetSorts = schema.getUnsetSorts();
+
     for (int i = 0; i < SCORE_CACHE_SIZE; i++)
       scoreCache[i] = getSimilarity().tf(i) * weightValue;
   }
@@ -93,23 +103,59 @@ final class TermScorer extends Scorer {
     score(c, Integer.MAX_VALUE, nextDoc());
   }
 
+  /** Tests each refilled block against <code>program</code> in one pass and
+   * collects the accepted docs only. Postings outside the ranges the
+   * program requires may not be read at all. */
+  public void score(Collector c, EmbeddedFilterProgram program) throws IOException {
+    if (doc != -1) {
+      super.score(c, program);
+      return;
+    }
+    c.setScorer(this);
+    program.restrict(termDocs, numSlots);
+    final EmbeddedFilterProgram.Evaluator evaluator = program.newEvaluator(numSlots, blockSize);
+    while ((pointerMax = ReaderUtil.readSortColumns(termDocs, docs, freqs, norms, sorts, numSlots)) != 0) {
+      rowPointer = -1;
+      final long[] mask = evaluator.evaluate(sorts, pointerMax);
+      for (int w = 0, base = 0; base < pointerMax; w++, base += 64) {
+        long bits = mask[w];
+        while (bits != 0) {
+          pointer = base + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+          doc = docs[pointer];
+          c.collect(doc, getSorts());
+        }
+      }
+    }
+    termDocs.close();
+    pointer = 0;
+    doc = NO_MORE_DOCS;
+  }
+
   /** @deprecated use {@link #score(Collector, int, int)} instead. */
   protected boolean score(HitCollector c, int end) throws IOException {
     return score(new HitCollectorWrapper(c), end, doc);
   }
   
   public int getSort(int fieldNumber) {
-	  if(sort.length <= pointer){
+	  if(blockSize <= pointer){
 		  return -1;
 	  }
-	  return sort[pointer][fieldNumber];
+	  return sorts[fieldNumber * blockSize + pointer];
   }
   
   public int[] getSorts() {
-	  if(sort.length <= pointer){
-		  return EMPTY_SORTS;
+	  if(blockSize <= pointer){
+		  return unsetSorts;
+	  }
+	  if (rowPointer != pointer) {
+		  // gather the current doc's values out of the columns
+		  for (int slot = 0, pos = pointer; slot < numSlots; slot++, pos += blockSize) {
+			  row[slot] = sorts[pos];
+		  }
+		  rowPointer = pointer;
 	  }
-	  return sort[pointer];
+	  return row;
   }
   
   // firstDocID is ignored since nextDoc() sets 'doc'
@@ -119,7 +165,8 @@ final class TermScorer extends Scorer {
       c.collect(doc, getSorts());                      // collect score
         
       if (++pointer >= pointerMax) {
-        pointerMax = termDocs.read(docs, freqs, norms, sort);  // refill buffers
+        pointerMax = ReaderUtil.readSortColumns(termDocs, docs, freqs, norms, sorts, numSlots);  // refill buffers
+        rowPointer = -1;
         if (pointerMax != 0) {
           pointer = 0;
         } else {
@@ -160,7 +207,8 @@ final class TermScorer extends Scorer {
   public int nextDoc() throws IOException {
     pointer++;
     if (pointer >= pointerMax) {
-      pointerMax = termDocs.read(docs, freqs, norms, sort);    // refill buffer
+      pointerMax = ReaderUtil.readSortColumns(termDocs, docs, freqs, norms, sorts, numSlots);    // refill buffer
+      rowPointer = -1;
       if (pointerMax != 0) {
         pointer = 0;
       } else {
@@ -179,21 +227,32 @@ final class TermScorer extends Scorer {
       f < SCORE_CACHE_SIZE                        // check cache
       ? scoreCache[f]                             // cache hit
       : getSimilarity().tf(f)*weightValue;        // cache miss
-      
-
-      // boost score according to field val and timeliness
-      if(enableTimelinessBoosting) {
-		int timeliness = sort[pointer][timelinessFieldPosition];
 
-		if (timeliness >= this.boostingFactor) {
-			// default boosting is 5.0f
-			raw *= boost;
-		}
-      }
-      
     return norms[pointer] == 0 ? raw : raw * SIM_NORM_DECODER[norms[pointer] & 0xFF]; // normalize for field
   }
 
+  /** Sets the bound returned by {@link #getMaxScore()}. */
+  void setMaxScore(float maxScore) {
+    this.maxScore = maxScore;
+  }
+
+  public float getMaxScore() {
+    return maxScore;
+  }
+
+  /** Sets the estimate returned by {@link #cost()}, the term's docFreq. */
+  void setCost(int cost) {
+    this.cost = cost;
+  }
+
+  public int cost() {
+    return cost;
+  }
+
+  void restrict(EmbeddedFilterProgram program) {
+    program.restrict(termDocs, numSlots);
+  }
+
   /**
    * Skips to the first match beyond the current whose document number is
    * greater than or equal to a given target. <br>
@@ -211,19 +270,34 @@ final class TermScorer extends Scorer {
   /**
    * Advances to the first match beyond the current whose document number is
    * greater than or equal to a given target. <br>
-   * The implementation uses {@link TermDocs#skipTo(int)}.
+   * Targets within the buffered block are found by galloping search;
+   * beyond it the implementation uses {@link TermDocs#skipTo(int)}.
    * 
    * @param target
    *          The target document number.
    * @return the matching document or -1 if none exist.
    */
   public int advance(int target) throws IOException {
-    // first scan in cache
-    for (pointer++; pointer < pointerMax; pointer++) {
-      if (docs[pointer] >= target) {
-        return doc = docs[pointer];
+    // gallop through the buffered block, then binary search the last step
+    int lo = pointer + 1;
+    if (lo < pointerMax && docs[pointerMax - 1] >= target) {
+      int hi = lo;
+      for (int step = 1; docs[hi] < target; step <<= 1) {
+        lo = hi + 1;
+        hi = Math.min(hi + step, pointerMax - 1);
       }
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (docs[mid] < target) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      pointer = lo;
+      return doc = docs[pointer];
     }
+    pointer = pointerMax;
 
     // not found in cache, seek underlying stream
     boolean result = termDocs.skipTo(target);
@@ -233,7 +307,11 @@ final class TermScorer extends Scorer {
       docs[pointer] = doc = termDocs.doc();
       freqs[pointer] = termDocs.freq();
       norms[pointer] = termDocs.norm();
-      sort[pointer] = termDocs.getSorts();
+      final int[] docSorts = termDocs.getSorts();
+      for (int slot = 0, pos = 0; slot < numSlots; slot++, pos += blockSize) {
+        sorts[pos] = slot < docSorts.length ? docSorts[slot] : -1;
+      }
+      rowPointer = -1;
     } else {
       doc = NO_MORE_DOCS;
     }
@@ -0,0 +1,299 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serializable;
+
+/**
+ * Maps the age of a document, in minutes, to the factor its score is
+ * multiplied by. The age is read from a {@link EmbeddedSortSchema#TIMESTAMP}
+ * slot by {@link TimelinessQuery}.
+ * <p>
+ * Ages are grouped into buckets of {@link #getBucketMinutes()} minutes and
+ * the factor of every bucket up to {@link #getHorizonMinutes()} is computed
+ * once, so scoring a document is a table lookup. Older documents get the
+ * factor of the horizon; documents stamped in the future count as age 0.
+ * <p>
+ * The built-in functions decay from <code>boost</code> at age 0 towards 1.
+ * A function is immutable once built and may be shared between queries and
+ * threads.
+ */
+public abstract class TimelinessFunction implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Largest number of buckets the built-in functions use. */
+	public static final int MAX_BUCKETS = 4096;
+
+	private final int horizonMinutes;
+	private final int bucketMinutes;
+	private float[] table;
+
+	/**
+	 * @param horizonMinutes age from which on the factor no longer changes
+	 * @param bucketMinutes width of the age buckets; the factor of a bucket
+	 *          is that of its youngest age
+	 */
+	protected TimelinessFunction(int horizonMinutes, int bucketMinutes) {
+		if (horizonMinutes < 0) {
+			throw new IllegalArgumentException("horizonMinutes must be >= 0: " + horizonMinutes);
+		}
+		if (bucketMinutes < 1) {
+			throw new IllegalArgumentException("bucketMinutes must be > 0: " + bucketMinutes);
+		}
+		this.horizonMinutes = horizonMinutes;
+		this.bucketMinutes = bucketMinutes;
+	}
+
+	/** Returns the exact factor for a document <code>ageMinutes</code> old. */
+	public abstract float factor(int ageMinutes);
+
+	public int getHorizonMinutes() {
+		return horizonMinutes;
+	}
+
+	public int getBucketMinutes() {
+		return bucketMinutes;
+	}
+
+	/** Returns the factor of every bucket, the horizon's last. */
+	final synchronized float[] getTable() {
+		if (table == null) {
+			float[] t = new float[horizonMinutes / bucketMinutes + 2];
+			for (int i = 0; i < t.length - 1; i++) {
+				t[i] = factor(i * bucketMinutes);
+			}
+			t[t.length - 1] = factor(horizonMinutes);
+			table = t;
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the lookup for slot values counted in minutes since
+	 * <code>epochTime</code>, seen at <code>nowMinutes</code> (both in
+	 * minutes since 1970).
+	 */
+	public Lookup newLookup(long epochTime, long nowMinutes) {
+		return new Lookup(getTable(), bucketMinutes, nowMinutes - epochTime);
+	}
+
+	private static int buckets(int horizonMinutes) {
+		return Math.max(1, (horizonMinutes + MAX_BUCKETS - 1) / MAX_BUCKETS);
+	}
+
+	/** Factors of one search, relative to the time it started. */
+	public static final class Lookup implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final float[] table;
+		private final int last;
+		private final int bucketMinutes;
+		private final long origin;
+		private final float maxFactor;
+
+		Lookup(float[] table, int bucketMinutes, long origin) {
+			this.table = table;
+			this.last = table.length - 1;
+			this.bucketMinutes = bucketMinutes;
+			this.origin = origin;
+			float max = 1.0f;
+			for (int i = 0; i < table.length; i++) {
+				max = Math.max(max, table[i]);
+			}
+			this.maxFactor = max;
+		}
+
+		/** Returns the largest factor this lookup returns. */
+		public float getMaxFactor() {
+			return maxFactor;
+		}
+
+		/**
+		 * Returns the factor for a slot value; unset (-1) values get a factor
+		 * of 1.
+		 */
+		public float factor(int value) {
+			if (value == -1) {
+				return 1.0f;
+			}
+			long bucket = (origin - value) / bucketMinutes;
+			return table[bucket <= 0 ? 0 : bucket >= last ? last : (int) bucket];
+		}
+	}
+
+	/**
+	 * Multiplies the score of documents at most <code>window</code> minutes
+	 * old by <code>boost</code>.
+	 */
+	public static class Step extends TimelinessFunction {
+		private static final long serialVersionUID = 1L;
+
+		private final float boost;
+		private final int window;
+
+		public Step(float boost, int window) {
+			super(window + 1, window + 1);
+			this.boost = boost;
+			this.window = window;
+		}
+
+		public float factor(int ageMinutes) {
+			return ageMinutes <= window ? boost : 1.0f;
+		}
+
+		public String toString() {
+			return "step(" + boost + "," + window + ")";
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Step)) {
+				return false;
+			}
+			Step other = (Step) o;
+			return boost == other.boost && window == other.window;
+		}
+
+		public int hashCode() {
+			return Float.floatToIntBits(boost) * 31 + window;
+		}
+	}
+
+	/** Decays linearly from <code>boost</code> to 1 over <code>window</code> minutes. */
+	public static class Linear extends TimelinessFunction {
+		private static final long serialVersionUID = 1L;
+
+		private final float boost;
+		private final int window;
+
+		public Linear(float boost, int window) {
+			super(window, buckets(window));
+			if (window < 1) {
+				throw new IllegalArgumentException("window must be > 0: " + window);
+			}
+			this.boost = boost;
+			this.window = window;
+		}
+
+		public float factor(int ageMinutes) {
+			if (ageMinutes >= window) {
+				return 1.0f;
+			}
+			return 1.0f + (boost - 1.0f) * (window - Math.max(0, ageMinutes)) / window;
+		}
+
+		public String toString() {
+			return "linear(" + boost + "," + window + ")";
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Linear)) {
+				return false;
+			}
+			Linear other = (Linear) o;
+			return boost == other.boost && window == other.window;
+		}
+
+		public int hashCode() {
+			return Float.floatToIntBits(boost) * 31 + window;
+		}
+	}
+
+	/**
+	 * Decays exponentially from <code>boost</code> towards 1, halving the
+	 * extra boost every <code>halfLife</code> minutes. The table covers 16
+	 * half lives.
+	 */
+	public static class Exponential extends TimelinessFunction {
+		private static final long serialVersionUID = 1L;
+
+		private final float boost;
+		private final int halfLife;
+
+		public Exponential(float boost, int halfLife) {
+			super(16 * halfLife, buckets(16 * halfLife));
+			if (halfLife < 1) {
+				throw new IllegalArgumentException("halfLife must be > 0: " + halfLife);
+			}
+			this.boost = boost;
+			this.halfLife = halfLife;
+		}
+
+		public float factor(int ageMinutes) {
+			return 1.0f + (boost - 1.0f) * (float) Math.pow(0.5, (double) Math.max(0, ageMinutes) / halfLife);
+		}
+
+		public String toString() {
+			return "exp(" + boost + "," + halfLife + ")";
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Exponential)) {
+				return false;
+			}
+			Exponential other = (Exponential) o;
+			return boost == other.boost && halfLife == other.halfLife;
+		}
+
+		public int hashCode() {
+			return Float.floatToIntBits(boost) * 31 + halfLife;
+		}
+	}
+
+	/**
+	 * Decays from <code>boost</code> towards 1 along a Gaussian curve with
+	 * standard deviation <code>sigma</code> minutes. The table covers 6
+	 * standard deviations.
+	 */
+	public static class Gaussian extends TimelinessFunction {
+		private static final long serialVersionUID = 1L;
+
+		private final float boost;
+		private final int sigma;
+
+		public Gaussian(float boost, int sigma) {
+			super(6 * sigma, buckets(6 * sigma));
+			if (sigma < 1) {
+				throw new IllegalArgumentException("sigma must be > 0: " + sigma);
+			}
+			this.boost = boost;
+			this.sigma = sigma;
+		}
+
+		public float factor(int ageMinutes) {
+			double x = (double) Math.max(0, ageMinutes) / sigma;
+			return 1.0f + (boost - 1.0f) * (float) Math.exp(-0.5 * x * x);
+		}
+
+		public String toString() {
+			return "gauss(" + boost + "," + sigma + ")";
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Gaussian)) {
+				return false;
+			}
+			Gaussian other = (Gaussian) o;
+			return boost == other.boost && sigma == other.sigma;
+		}
+
+		public int hashCode() {
+			return Float.floatToIntBits(boost) * 31 + sigma;
+		}
+	}
+}
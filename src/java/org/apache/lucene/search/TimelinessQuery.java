@@ -0,0 +1,345 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ToStringUtils;
+
+/**
+ * Multiplies the score of every document matching the wrapped query by a
+ * {@link TimelinessFunction} of its age, read from an embedded sort slot
+ * holding minutes since the schema's
+ * {@link EmbeddedSortSchema#getEpochTime() epoch time}.
+ * <p>
+ * The factor is applied once per hit, on top of the wrapped query's score,
+ * and the age is measured from the time the query's weight is created
+ * unless {@link #setReferenceTime(long)} fixes it.
+ * <p>
+ * Searches whose schema has {@link EmbeddedSortSchema#getTimelinessFunction()
+ * a timeliness function} wrap their top-level query in a
+ * <code>TimelinessQuery</code> unless it already is one.
+ */
+public class TimelinessQuery extends Query {
+
+	private static final long serialVersionUID = 1L;
+
+	private Query query;
+	private final int fieldNumber;
+	private final TimelinessFunction function;
+	private long referenceTime = -1;
+
+	/**
+	 * @param query the query to rescore
+	 * @param fieldNumber the slot holding the document's time, numbered
+	 *          from 1 as in {@link EmbeddedFieldFilter}
+	 * @param function the factor for each age
+	 */
+	public TimelinessQuery(Query query, int fieldNumber, TimelinessFunction function) {
+		if (fieldNumber < 1) {
+			throw new IllegalArgumentException("fieldNumber must be > 0: " + fieldNumber);
+		}
+		this.query = query;
+		this.fieldNumber = fieldNumber;
+		this.function = function;
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	public int getFieldNumber() {
+		return fieldNumber;
+	}
+
+	public TimelinessFunction getFunction() {
+		return function;
+	}
+
+	/**
+	 * Measures ages from <code>millis</code> (as returned by
+	 * {@link System#currentTimeMillis()}) instead of the current time; -1
+	 * restores the default.
+	 */
+	public void setReferenceTime(long millis) {
+		this.referenceTime = millis;
+	}
+
+	public long getReferenceTime() {
+		return referenceTime;
+	}
+
+	/** Wraps <code>query</code> if <code>schema</code> boosts by timeliness. */
+	static Query wrap(Query query, EmbeddedSortSchema schema) {
+		if (query instanceof TimelinessQuery || schema.getTimelinessFunction() == null) {
+			return query;
+		}
+		return new TimelinessQuery(query, schema.getTimelinessPosition() + 1, schema.getTimelinessFunction());
+	}
+
+	public Weight createWeight(Searcher searcher) throws IOException {
+		return new TimelinessWeight(searcher);
+	}
+
+	private class TimelinessWeight extends Weight {
+		private static final long serialVersionUID = 1L;
+
+		private final Weight weight;
+		private final Similarity similarity;
+		private final TimelinessFunction.Lookup lookup;
+		private final int slot;
+		private float value;
+
+		TimelinessWeight(Searcher searcher) throws IOException {
+			this.weight = query.createWeight(searcher);
+			this.similarity = query.getSimilarity(searcher);
+			EmbeddedSortSchema schema = getEmbeddedSortSchema(searcher);
+			long millis = referenceTime == -1 ? System.currentTimeMillis() : referenceTime;
+			this.lookup = function.newLookup(schema.getEpochTime(), millis / 60000);
+			// slots outside the schema read as unset
+			this.slot = fieldNumber <= schema.getNumSlots() ? fieldNumber - 1 : -1;
+		}
+
+		public Query getQuery() {
+			return TimelinessQuery.this;
+		}
+
+		public float getValue() {
+			return value;
+		}
+
+		public float sumOfSquaredWeights() throws IOException {
+			return weight.sumOfSquaredWeights() * getBoost() * getBoost();
+		}
+
+		public void normalize(float norm) {
+			weight.normalize(norm);
+			value = weight.getValue() * getBoost();
+		}
+
+		public boolean scoresDocsOutOfOrder() {
+			return weight.scoresDocsOutOfOrder();
+		}
+
+		public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer) throws IOException {
+			Scorer scorer = weight.scorer(reader, scoreDocsInOrder, topScorer);
+			return scorer == null ? null : new TimelinessScorer(similarity, scorer, this);
+		}
+
+		public Explanation explain(IndexReader reader, int doc) throws IOException {
+			Explanation inner = weight.explain(reader, doc);
+			if (!inner.isMatch()) {
+				return inner;
+			}
+			Scorer scorer = weight.scorer(reader, true, false);
+			int value = -1;
+			if (scorer != null && scorer.advance(doc) == doc && slot != -1) {
+				value = scorer.getSort(slot);
+			}
+			float factor = lookup.factor(value) * getBoost();
+			Explanation result = new Explanation(inner.getValue() * factor, "timeliness(" + function + "), product of:");
+			result.addDetail(inner);
+			result.addDetail(new Explanation(factor, "timeliness factor of slot value " + value
+					+ (getBoost() != 1 ? " times boost" : "")));
+			return result;
+		}
+
+		float factor(int[] sorts) {
+			return slot == -1 || slot >= sorts.length ? getBoost() : lookup.factor(sorts[slot]) * getBoost();
+		}
+
+		float factor(Scorer scorer) {
+			return slot == -1 ? getBoost() : lookup.factor(scorer.getSort(slot)) * getBoost();
+		}
+
+		float maxScore(Scorer scorer) {
+			float maxFactor = lookup.getMaxFactor() * getBoost();
+			return maxFactor < 0 ? Float.POSITIVE_INFINITY : scorer.getMaxScore() * maxFactor;
+		}
+
+		void setMinCompetitiveScore(Scorer scorer, float minScore) throws IOException {
+			float maxFactor = lookup.getMaxFactor() * getBoost();
+			if (maxFactor > 0) {
+				// a hit scaled by at most maxFactor competes only if its own score
+				// does; shaved a little so rounding never drops one that ties
+				scorer.setMinCompetitiveScore(minScore / maxFactor * 0.999999f);
+			}
+		}
+	}
+
+	/**
+	 * Scales the wrapped scorer's scores. Bulk scoring is left to the wrapped
+	 * scorer; the collector sees a scorer that scales the score of the row
+	 * last passed to it.
+	 */
+	private static final class TimelinessScorer extends Scorer {
+		private final Scorer scorer;
+		private final TimelinessWeight weight;
+
+		TimelinessScorer(Similarity similarity, Scorer scorer, TimelinessWeight weight) {
+			super(similarity);
+			this.scorer = scorer;
+			this.weight = weight;
+		}
+
+		public int docID() {
+			return scorer.docID();
+		}
+
+		public int nextDoc() throws IOException {
+			return scorer.nextDoc();
+		}
+
+		public int advance(int target) throws IOException {
+			return scorer.advance(target);
+		}
+
+		public int getSort(int fieldNumber) {
+			return scorer.getSort(fieldNumber);
+		}
+
+		public int[] getSorts() {
+			return scorer.getSorts();
+		}
+
+		public float score() throws IOException {
+			return scorer.score() * weight.factor(scorer);
+		}
+
+		public float getMaxScore() {
+			return weight.maxScore(scorer);
+		}
+
+		public int cost() {
+			return scorer.cost();
+		}
+
+		void restrict(EmbeddedFilterProgram program) {
+			scorer.restrict(program);
+		}
+
+		public void setMinCompetitiveScore(float minScore) throws IOException {
+			weight.setMinCompetitiveScore(scorer, minScore);
+		}
+
+		public void score(Collector collector) throws IOException {
+			scorer.score(new ScalingCollector(collector, weight));
+		}
+
+		public void score(Collector collector, EmbeddedFilterProgram program) throws IOException {
+			scorer.score(new ScalingCollector(collector, weight), program);
+		}
+	}
+
+	private static final class ScalingCollector extends Collector {
+		private final Collector in;
+		private final TimelinessWeight weight;
+		private final Scorer scaled;
+		private Scorer scorer;
+		private int[] sorts;
+
+		ScalingCollector(Collector in, TimelinessWeight weight) {
+			this.in = in;
+			this.weight = weight;
+			this.scaled = new Scorer(null) {
+				public int docID() {
+					return scorer.docID();
+				}
+
+				public int nextDoc() {
+					throw new UnsupportedOperationException();
+				}
+
+				public int advance(int target) {
+					throw new UnsupportedOperationException();
+				}
+
+				public int getSort(int fieldNumber) {
+					return sorts[fieldNumber];
+				}
+
+				public int[] getSorts() {
+					return sorts;
+				}
+
+				public float score() throws IOException {
+					return scorer.score() * ScalingCollector.this.weight.factor(sorts);
+				}
+
+				public float getMaxScore() {
+					return ScalingCollector.this.weight.maxScore(scorer);
+				}
+
+				public void setMinCompetitiveScore(float minScore) throws IOException {
+					ScalingCollector.this.weight.setMinCompetitiveScore(scorer, minScore);
+				}
+			};
+		}
+
+		public void setScorer(Scorer scorer) throws IOException {
+			this.scorer = scorer;
+			in.setScorer(scaled);
+		}
+
+		public void collect(int doc, int[] sorts) throws IOException {
+			this.sorts = sorts;
+			in.collect(doc, sorts);
+		}
+
+		public void setNextReader(IndexReader reader, int docBase) throws IOException {
+			in.setNextReader(reader, docBase);
+		}
+
+		public boolean acceptsDocsOutOfOrder() {
+			return in.acceptsDocsOutOfOrder();
+		}
+	}
+
+	public Query rewrite(IndexReader reader) throws IOException {
+		Query rewritten = query.rewrite(reader);
+		if (rewritten != query) {
+			TimelinessQuery clone = (TimelinessQuery) this.clone();
+			clone.query = rewritten;
+			return clone;
+		}
+		return this;
+	}
+
+	public void extractTerms(Set terms) {
+		query.extractTerms(terms);
+	}
+
+	public String toString(String field) {
+		return "timeliness(" + query.toString(field) + "," + fieldNumber + "," + function + ")" + ToStringUtils.boost(getBoost());
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof TimelinessQuery)) {
+			return false;
+		}
+		TimelinessQuery other = (TimelinessQuery) o;
+		return getBoost() == other.getBoost() && query.equals(other.query) && fieldNumber == other.fieldNumber
+				&& function.equals(other.function) && referenceTime == other.referenceTime;
+	}
+
+	public int hashCode() {
+		return query.hashCode() ^ (fieldNumber * 31 + function.hashCode()) ^ Float.floatToIntBits(getBoost());
+	}
+}
@@ -73,6 +73,7 @@ public class TopDocCollector extends HitCollector {
         // need to try inserting it
         reusableSD.doc = doc;
         reusableSD.score = score;
+        reusableSD.sorts = DocIdSetIterator.copyOfSorts(sorts, reusableSD.sorts);
       } else {
         return;
       }
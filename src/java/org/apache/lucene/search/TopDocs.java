@@ -17,6 +17,8 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.util.PriorityQueue;
+
 /** Represents hits returned by {@link
  * Searcher#search(Query,Filter,int)} and {@link
  * Searcher#search(Query,int)}. */
@@ -41,6 +43,38 @@ public class TopDocs implements java.io.Serializable {
       this.maxScore=maxScore;
   }
 
+  /** Whether {@link #totalHits} counts every hit. */
+  private boolean totalHitsExact = true;
+
+  /**
+   * Returns false if the search stopped collecting before it saw every
+   * hit, making {@link #totalHits} a lower bound.
+   *
+   * @see EmbeddedEarlyTerminatingCollector
+   */
+  public boolean isTotalHitsExact() {
+    return totalHitsExact;
+  }
+
+  public void setTotalHitsExact(boolean totalHitsExact) {
+    this.totalHitsExact = totalHitsExact;
+  }
+
+  /** How the searchables of a {@link ParallelMultiSearcher} answered. */
+  private ShardStats shardStats;
+
+  /**
+   * Returns how each searchable answered, for hits of a
+   * {@link ParallelMultiSearcher}; null otherwise.
+   */
+  public ShardStats getShardStats() {
+    return shardStats;
+  }
+
+  public void setShardStats(ShardStats shardStats) {
+    this.shardStats = shardStats;
+  }
+
   /** Constructs a TopDocs with a default maxScore=Float.NaN. */
   TopDocs(int totalHits, ScoreDoc[] scoreDocs) {
     this(totalHits, scoreDocs, Float.NaN);
@@ -51,4 +85,58 @@ public class TopDocs implements java.io.Serializable {
     this.scoreDocs = scoreDocs;
     this.maxScore = maxScore;
   }
+
+  /**
+   * Merges the top hits of searches over disjoint sets of documents into
+   * the top <code>n</code> of them all. The doc ids of the hits must
+   * already be in one space, as they are when each search's collector was
+   * given the docBase of its segments.
+   * <p>
+   * If <code>sort</code> is null hits are ranked as by a {@link HitQueue},
+   * otherwise every result must be a {@link TopFieldDocs} whose hits have
+   * their {@link FieldDoc#fields} filled, and a {@link TopFieldDocs} is
+   * returned. Ties go to the lower doc id either way. The hits themselves,
+   * including their {@link ScoreDoc#sorts}, are reused.
+   */
+  public static TopDocs merge(Sort sort, int n, TopDocs[] results) {
+    PriorityQueue queue;
+    SortField[] fields = null;
+    if (sort == null) {
+      queue = new HitQueue(n, false);
+    } else {
+      for (int i = 0; i < results.length && fields == null; i++) {
+        fields = ((TopFieldDocs) results[i]).fields;
+      }
+      queue = new FieldDocSortedHitQueue(fields == null ? sort.getSort() : fields, n);
+    }
+
+    int totalHits = 0;
+    boolean exact = true;
+    float maxScore = Float.NaN;
+    for (int i = 0; i < results.length; i++) {
+      TopDocs result = results[i];
+      totalHits += result.totalHits;
+      exact &= result.isTotalHitsExact();
+      // results without hits, or without scores, have no max
+      if (!Float.isNaN(result.getMaxScore()) && result.scoreDocs.length > 0) {
+        maxScore = Float.isNaN(maxScore) ? result.getMaxScore() : Math.max(maxScore, result.getMaxScore());
+      }
+      for (int j = 0; j < result.scoreDocs.length; j++) {
+        if (queue.insertWithOverflow(result.scoreDocs[j]) == result.scoreDocs[j]) {
+          // hits come best first, so the rest cannot make it either
+          break;
+        }
+      }
+    }
+
+    ScoreDoc[] scoreDocs = new ScoreDoc[queue.size()];
+    for (int i = scoreDocs.length - 1; i >= 0; i--) {
+      scoreDocs[i] = (ScoreDoc) queue.pop();
+    }
+    TopDocs merged = sort == null
+        ? new TopDocs(totalHits, scoreDocs, maxScore)
+        : new TopFieldDocs(totalHits, scoreDocs, fields, maxScore);
+    merged.setTotalHitsExact(exact);
+    return merged;
+  }
 }
@@ -57,10 +57,10 @@ public abstract class TopFieldCollector extends TopDocsCollector {
       reverseMul = queue.getReverseMul()[0];
     }
     
-    final void updateBottom(int doc, int[] sorts) {
+    final void updateBottom(int doc, int[] sort) {
+      bottom.sorts = DocIdSetIterator.copyOfSorts(sort, bottom.sorts);
       // bottom.score is already set to Float.NaN in add().
       bottom.docID = docBase + doc;
-      DocIdSetIterator.copySorts(sorts, bottom.sorts);
       bottom = (Entry) pq.updateTop();
     }
 
@@ -159,7 +159,8 @@ public abstract class TopFieldCollector extends TopDocsCollector {
       super(queue, numHits, fillFields);
     }
     
-    final void updateBottom(int doc, float score) {
+    final void updateBottom(int doc, float score, int[] sort) {
+      bottom.sorts = DocIdSetIterator.copyOfSorts(sort, bottom.sorts);
       bottom.docID = docBase + doc;
       bottom.score = score;
       bottom = (Entry) pq.updateTop();
@@ -180,7 +181,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
 
         // This hit is competitive - replace bottom element in queue & adjustTop
         comparator.copy(bottom.slot, doc);
-        updateBottom(doc, score);
+        updateBottom(doc, score, sort);
         comparator.setBottom(bottom.slot);
       } else {
         // Compute the score only if the hit is competitive.
@@ -232,7 +233,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
 
         // This hit is competitive - replace bottom element in queue & adjustTop
         comparator.copy(bottom.slot, doc);
-        updateBottom(doc, score);
+        updateBottom(doc, score, sort);
         comparator.setBottom(bottom.slot);
       } else {
         // Compute the score only if the hit is competitive.
@@ -272,6 +273,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
     }
     
     final void updateBottom(int doc, float score, int[] sort) {
+      bottom.sorts = DocIdSetIterator.copyOfSorts(sort, bottom.sorts);
       bottom.docID = docBase + doc;
       bottom.score = score;
       bottom = (Entry) pq.updateTop();
@@ -379,7 +381,8 @@ public abstract class TopFieldCollector extends TopDocsCollector {
       reverseMul = queue.getReverseMul();
     }
     
-    final void updateBottom(int doc) {
+    final void updateBottom(int doc, int[] sort) {
+      bottom.sorts = DocIdSetIterator.copyOfSorts(sort, bottom.sorts);
       // bottom.score is already set to Float.NaN in add().
       bottom.docID = docBase + doc;
       bottom = (Entry) pq.updateTop();
@@ -410,7 +413,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
           comparators[i].copy(bottom.slot, doc);
         }
 
-        updateBottom(doc);
+        updateBottom(doc, sort);
 
         for (int i = 0; i < comparators.length; i++) {
           comparators[i].setBottom(bottom.slot);
@@ -486,7 +489,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
           comparators[i].copy(bottom.slot, doc);
         }
 
-        updateBottom(doc);
+        updateBottom(doc, sort);
 
         for (int i = 0; i < comparators.length; i++) {
           comparators[i].setBottom(bottom.slot);
@@ -528,7 +531,8 @@ public abstract class TopFieldCollector extends TopDocsCollector {
       maxScore = Float.NEGATIVE_INFINITY;
     }
     
-    final void updateBottom(int doc, float score) {
+    final void updateBottom(int doc, float score, int[] sort) {
+      bottom.sorts = DocIdSetIterator.copyOfSorts(sort, bottom.sorts);
       bottom.docID = docBase + doc;
       bottom.score = score;
       bottom = (Entry) pq.updateTop();
@@ -563,7 +567,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
           comparators[i].copy(bottom.slot, doc);
         }
 
-        updateBottom(doc, score);
+        updateBottom(doc, score, sort);
 
         for (int i = 0; i < comparators.length; i++) {
           comparators[i].setBottom(bottom.slot);
@@ -634,7 +638,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
           comparators[i].copy(bottom.slot, doc);
         }
 
-        updateBottom(doc, score);
+        updateBottom(doc, score, sort);
 
         for (int i = 0; i < comparators.length; i++) {
           comparators[i].setBottom(bottom.slot);
@@ -674,7 +678,8 @@ public abstract class TopFieldCollector extends TopDocsCollector {
       super(queue, numHits, fillFields);
     }
     
-    final void updateBottom(int doc, float score) {
+    final void updateBottom(int doc, float score, int[] sort) {
+      bottom.sorts = DocIdSetIterator.copyOfSorts(sort, bottom.sorts);
       bottom.docID = docBase + doc;
       bottom.score = score;
       bottom = (Entry) pq.updateTop();
@@ -707,7 +712,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
 
         // Compute score only if it is competitive.
         final float score = scorer.score();
-        updateBottom(doc, score);
+        updateBottom(doc, score, sort);
 
         for (int i = 0; i < comparators.length; i++) {
           comparators[i].setBottom(bottom.slot);
@@ -780,7 +785,7 @@ public abstract class TopFieldCollector extends TopDocsCollector {
 
         // Compute score only if it is competitive.
         final float score = scorer.score();
-        updateBottom(doc, score);
+        updateBottom(doc, score, sort);
 
         for (int i = 0; i < comparators.length; i++) {
           comparators[i].setBottom(bottom.slot);
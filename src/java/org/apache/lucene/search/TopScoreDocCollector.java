@@ -38,8 +38,8 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
 
   // Assumes docs are scored in order.
   private static class InOrderTopScoreDocCollector extends TopScoreDocCollector {
-    private InOrderTopScoreDocCollector(int numHits) {
-      super(numHits);
+    private InOrderTopScoreDocCollector(int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
     }
     
     public void collect(int doc, int[] sort) throws IOException {
@@ -58,8 +58,11 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
       }
       pqTop.doc = doc + docBase;
       pqTop.score = score;
-      DocIdSetIterator.copySorts(sort, pqTop.sorts);
+      pqTop.sorts = DocIdSetIterator.copyOfSorts(sort, pqTop.sorts);
       pqTop = (ScoreDoc) pq.updateTop();
+      if (!trackTotalHits) {
+        scorer.setMinCompetitiveScore(pqTop.score);
+      }
     }
     
     public boolean acceptsDocsOutOfOrder() {
@@ -69,8 +72,8 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
 
   // Assumes docs are scored out of order.
   private static class OutOfOrderTopScoreDocCollector extends TopScoreDocCollector {
-    private OutOfOrderTopScoreDocCollector(int numHits) {
-      super(numHits);
+    private OutOfOrderTopScoreDocCollector(int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
     }
     
     public void collect(int doc, int[] sort) throws IOException {
@@ -86,8 +89,11 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
       }
       pqTop.doc = doc;
       pqTop.score = score;
-      DocIdSetIterator.copySorts(sort, pqTop.sorts);
+      pqTop.sorts = DocIdSetIterator.copyOfSorts(sort, pqTop.sorts);
       pqTop = (ScoreDoc) pq.updateTop();
+      if (!trackTotalHits) {
+        scorer.setMinCompetitiveScore(pqTop.score);
+      }
     }
     
     public boolean acceptsDocsOutOfOrder() {
@@ -106,11 +112,23 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
    * objects.
    */
   public static TopScoreDocCollector create(int numHits, boolean docsScoredInOrder) {
+    return create(numHits, docsScoredInOrder, true);
+  }
+
+  /**
+   * Like {@link #create(int, boolean)}, but if <code>trackTotalHits</code>
+   * is false the collector passes the score of its worst hit to
+   * {@link Scorer#setMinCompetitiveScore(float)} once it holds
+   * <code>numHits</code> hits, and scorers able to may then skip hits
+   * that cannot compete. The total hit count is then a lower bound, and
+   * {@link TopDocs#isTotalHitsExact()} is false.
+   */
+  public static TopScoreDocCollector create(int numHits, boolean docsScoredInOrder, boolean trackTotalHits) {
     
     if (docsScoredInOrder) {
-      return new InOrderTopScoreDocCollector(numHits);
+      return new InOrderTopScoreDocCollector(numHits, trackTotalHits);
     } else {
-      return new OutOfOrderTopScoreDocCollector(numHits);
+      return new OutOfOrderTopScoreDocCollector(numHits, trackTotalHits);
     }
     
   }
@@ -118,10 +136,12 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
   ScoreDoc pqTop;
   int docBase = 0;
   Scorer scorer;
+  final boolean trackTotalHits;
     
   // prevents instantiation
-  private TopScoreDocCollector(int numHits) {
+  private TopScoreDocCollector(int numHits, boolean trackTotalHits) {
     super(new HitQueue(numHits, true));
+    this.trackTotalHits = trackTotalHits;
     // HitQueue implements getSentinelObject to return a ScoreDoc, so we know
     // that at this point top() is already initialized.
     pqTop = (ScoreDoc) pq.top();
@@ -144,7 +164,9 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
       maxScore = ((ScoreDoc) pq.pop()).score;
     }
     
-    return new TopDocs(totalHits, results, maxScore);
+    TopDocs topDocs = new TopDocs(totalHits, results, maxScore);
+    topDocs.setTotalHitsExact(trackTotalHits);
+    return topDocs;
   }
   
   public void setNextReader(IndexReader reader, int base) {
@@ -153,5 +175,9 @@ public abstract class TopScoreDocCollector extends TopDocsCollector {
   
   public void setScorer(Scorer scorer) throws IOException {
     this.scorer = scorer;
+    if (!trackTotalHits && pqTop.score != Float.NEGATIVE_INFINITY) {
+      // the threshold carries over from the previous segments
+      scorer.setMinCompetitiveScore(pqTop.score);
+    }
   }
 }
@@ -92,7 +92,8 @@ public abstract class Weight implements Serializable {
    * @param topScorer
    *          if true, {@link Scorer#score(Collector)} will be called; if false,
    *          {@link Scorer#nextDoc()} and/or {@link Scorer#advance(int)} will
-   *          be called.
+   *          be called. An in-order top scorer may also be iterated by
+   *          {@link IndexSearcher}, which does so to apply a {@link Filter}.
    * @return a {@link Scorer} which scores documents in/out-of order.
    * @throws IOException
    */
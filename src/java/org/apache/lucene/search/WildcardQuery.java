@@ -19,6 +19,8 @@ package org.apache.lucene.search;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.ToStringUtils;
 
 import java.io.IOException;
@@ -30,6 +32,14 @@ import java.io.IOException;
  * a Wildcard term should not start with one of the wildcards <code>*</code> or
  * <code>?</code>.
  * 
+ * <p>Terms are enumerated with a {@link WildcardTermEnum}, which skips
+ * those that cannot match. A pattern that starts with a wildcard however
+ * has no literal prefix to start from; if the field's terms are also
+ * indexed reversed in another field (as written by the contrib
+ * <code>ReverseStringFilter</code> with no marker), see
+ * {@link #setReversedField(String)}, the reversed pattern is matched
+ * against those instead when it does start with a literal.
+ * 
  * <p>This query uses the {@link
  * MultiTermQuery#CONSTANT_SCORE_AUTO_REWRITE_DEFAULT}
  * rewrite method.
@@ -38,6 +48,7 @@ import java.io.IOException;
 public class WildcardQuery extends MultiTermQuery {
   private boolean termContainsWildcard;
   protected Term term;
+  private String reversedField;
     
   public WildcardQuery(Term term) {
     super(term); //will be removed in 3.0
@@ -46,8 +57,44 @@ public class WildcardQuery extends MultiTermQuery {
   }
 
   protected FilteredTermEnum getEnum(IndexReader reader) throws IOException {
+    if (reversedField != null && startsWithWildcard(term.text())) {
+      String reversed = new StringBuffer(term.text()).reverse().toString();
+      if (!startsWithWildcard(reversed) && hasTerms(reader, reversedField)) {
+        return new WildcardTermEnum(reader, new Term(reversedField, reversed));
+      }
+    }
     return new WildcardTermEnum(reader, getTerm());
   }
+
+  private static boolean startsWithWildcard(String text) {
+    return text.length() > 0
+        && (text.charAt(0) == WildcardTermEnum.WILDCARD_STRING || text.charAt(0) == WildcardTermEnum.WILDCARD_CHAR);
+  }
+
+  private static boolean hasTerms(IndexReader reader, String field) throws IOException {
+    TermEnum terms = reader.terms(new Term(field, ""));
+    try {
+      return terms.term() != null && terms.term().field() == field;
+    } finally {
+      terms.close();
+    }
+  }
+
+  /**
+   * Sets the field which holds the terms of this query's field reversed,
+   * for patterns that start with a wildcard but end with a literal, such as
+   * <code>*ing</code>: the terms matching <code>gni*</code> there are
+   * found by seeking rather than by scanning the whole field. Readers
+   * without that field are scanned as before. Default is null, none.
+   */
+  public void setReversedField(String reversedField) {
+    this.reversedField = reversedField == null ? null : StringHelper.intern(reversedField);
+  }
+
+  /** @see #setReversedField(String) */
+  public String getReversedField() {
+    return reversedField;
+  }
   
   /**
    * Returns the pattern term.
@@ -80,6 +127,7 @@ public class WildcardQuery extends MultiTermQuery {
     final int prime = 31;
     int result = super.hashCode();
     result = prime * result + ((term == null) ? 0 : term.hashCode());
+    result = prime * result + ((reversedField == null) ? 0 : reversedField.hashCode());
     return result;
   }
 
@@ -97,6 +145,11 @@ public class WildcardQuery extends MultiTermQuery {
         return false;
     } else if (!term.equals(other.term))
       return false;
+    if (reversedField == null) {
+      if (other.reversedField != null)
+        return false;
+    } else if (!reversedField.equals(other.reversedField))
+      return false;
     return true;
   }
 
@@ -21,6 +21,7 @@ import java.io.IOException;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.util.RunAutomaton;
 
 /**
  * Subclass of FilteredTermEnum for enumerating all terms that match the
@@ -28,6 +29,13 @@ import org.apache.lucene.index.Term;
  * <p>
  * Term enumerations are always ordered by Term.compareTo().  Each term in
  * the enumeration is greater than all that precede it.
+ * <p>
+ * The pattern is compiled to a {@link RunAutomaton}, so when a term is
+ * rejected the enumeration seeks to the next term that may still match
+ * rather than stepping through all those in between: a pattern like
+ * <code>a?c*</code> visits the terms starting with <code>a</code> only a
+ * few at a time. Patterns too complex to compile are matched with
+ * {@link #wildcardEquals} against every term after the literal prefix.
  *
  * @version $Id: WildcardTermEnum.java 783371 2009-06-10 14:39:56Z mikemccand $
  */
@@ -37,8 +45,12 @@ public class WildcardTermEnum extends FilteredTermEnum {
   final String text;
   final String pre;
   final int preLen;
+  final RunAutomaton automaton;
   boolean endEnum = false;
 
+  /** compiled patterns with more states than this are not used */
+  private static final int MAX_STATES = 1000;
+
   /**
    * Creates a new <code>WildcardTermEnum</code>.
    * <p>
@@ -64,13 +76,21 @@ public class WildcardTermEnum extends FilteredTermEnum {
 
     preLen = pre.length();
     text = searchTermText.substring(preLen);
-    setEnum(reader.terms(new Term(searchTerm.field(), pre)));
+    automaton = toAutomaton(searchTermText);
+    if (automaton != null) {
+      setEnum(reader, new Term(searchTerm.field(), pre));
+    } else {
+      setEnum(reader.terms(new Term(searchTerm.field(), pre)));
+    }
   }
 
   protected final boolean termCompare(Term term) {
     if (field == term.field()) {
       String searchText = term.text();
       if (searchText.startsWith(pre)) {
+        if (automaton != null) {
+          return automaton.run(searchText);
+        }
         return wildcardEquals(text, 0, searchText, preLen);
       }
     }
@@ -78,6 +98,18 @@ public class WildcardTermEnum extends FilteredTermEnum {
     return false;
   }
 
+  protected Term nextSeekTerm(Term rejected) {
+    if (endEnum) {
+      return null;
+    }
+    String target = automaton.nextPrefix(rejected.text());
+    if (target == null) {
+      endEnum = true;
+      return null;
+    }
+    return searchTerm.createTerm(target);
+  }
+
   public float difference() {
     return 1.0f;
   }
@@ -93,6 +125,32 @@ public class WildcardTermEnum extends FilteredTermEnum {
   public static final char WILDCARD_STRING = '*';
   public static final char WILDCARD_CHAR = '?';
 
+  /**
+   * Compiles a wildcard pattern to an automaton accepting the strings
+   * {@link #wildcardEquals} matches it against, or returns null if that
+   * would take too many states.
+   */
+  public static RunAutomaton toAutomaton(String pattern) {
+    RunAutomaton.Builder builder = new RunAutomaton.Builder();
+    int state = builder.newState();
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == WILDCARD_STRING) {
+        builder.addTransition(state, Character.MIN_VALUE, Character.MAX_VALUE, state);
+      } else {
+        int next = builder.newState();
+        if (c == WILDCARD_CHAR) {
+          builder.addTransition(state, Character.MIN_VALUE, Character.MAX_VALUE, next);
+        } else {
+          builder.addTransition(state, c, c, next);
+        }
+        state = next;
+      }
+    }
+    builder.setAccept(state);
+    return builder.build(0, MAX_STATES);
+  }
+
   /**
    * Determines if a word matches a wildcard pattern.
    * <small>Work released by Granta Design Ltd after originally being done on
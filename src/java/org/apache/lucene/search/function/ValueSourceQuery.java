@@ -64,11 +64,13 @@ public class ValueSourceQuery extends Query {
 
   class ValueSourceWeight extends Weight {
     Similarity similarity;
+    EmbeddedSortSchema schema;
     float queryNorm;
     float queryWeight;
 
     public ValueSourceWeight(Searcher searcher) {
       this.similarity = getSimilarity(searcher);
+      this.schema = getEmbeddedSortSchema(searcher);
     }
 
     /*(non-Javadoc) @see org.apache.lucene.search.Weight#getQuery() */
@@ -115,7 +117,7 @@ public class ValueSourceQuery extends Query {
     private final DocValues vals;
     private final TermDocs termDocs;
     private int doc = -1;
-    private int[] sorts = new int[Scorer.numSort];
+    private final int[] sorts;
 
     // constructor
     private ValueSourceScorer(Similarity similarity, IndexReader reader, ValueSourceWeight w) throws IOException {
@@ -125,6 +127,8 @@ public class ValueSourceQuery extends Query {
       // this is when/where the values are first created.
       vals = valSrc.getValues(reader);
       termDocs = reader.termDocs(null);
+      // there is no term to read embedded sort values from
+      sorts = w.schema.getUnsetSorts();
     }
 
     /** @deprecated use {@link #nextDoc()} instead. */
@@ -135,7 +139,6 @@ public class ValueSourceQuery extends Query {
     public int nextDoc() throws IOException {
     	if(termDocs.next()){
     		doc = termDocs.doc();
-    		DocIdSetIterator.copySorts(termDocs.getSorts(), this.sorts);
     	} else {
     		doc = NO_MORE_DOCS;
     	}
@@ -164,7 +167,6 @@ public class ValueSourceQuery extends Query {
     public int advance(int target) throws IOException {
     	if(termDocs.skipTo(target)){
     		doc = termDocs.doc();
-    		DocIdSetIterator.copySorts(termDocs.getSorts(), this.sorts);
     	} else {
     		doc = NO_MORE_DOCS;
     	}
@@ -185,7 +187,7 @@ public class ValueSourceQuery extends Query {
     }
 
 	public int getSort(int fieldNumber) {
-		return this.sorts[fieldNumber];
+		return -1;
 	}
 
 	public int[] getSorts() {
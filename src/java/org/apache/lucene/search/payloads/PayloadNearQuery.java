@@ -25,11 +25,13 @@ import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.spans.NearSpansOrdered;
 import org.apache.lucene.search.spans.NearSpansUnordered;
+import org.apache.lucene.search.spans.PayloadBuffer;
 import org.apache.lucene.search.spans.SpanNearQuery;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanScorer;
 import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.ToStringUtils;
 
 import java.io.IOException;
@@ -159,32 +161,79 @@ public class PayloadNearQuery extends SpanNearQuery {
     protected float payloadScore;
     private int payloadsSeen;
     Similarity similarity = getSimilarity();
+    // true if a subclass overrides the deprecated processPayloads
+    private final boolean collectionOverridden;
+    // reused to hand scorePayload each payload from offset 0 on
+    private byte[] payload = new byte[256];
 
     protected PayloadNearSpanScorer(Spans spans, Weight weight,
         Similarity similarity, byte[] norms) throws IOException {
       super(spans, weight, similarity, norms);
       this.spans = spans;
+      this.collectionOverridden = overridesCollectionProcessPayloads(getClass());
+    }
+
+    private boolean overridesCollectionProcessPayloads(Class clazz) {
+      for (; clazz != PayloadNearSpanScorer.class; clazz = clazz.getSuperclass()) {
+        try {
+          clazz.getDeclaredMethod("processPayloads", new Class[] { Collection.class, int.class, int.class });
+          return true;
+        } catch (NoSuchMethodException e) {
+          // not declared here
+        }
+      }
+      return false;
     }
 
     // Get the payloads associated with all underlying subspans
     public void getPayloads(Spans[] subSpans) throws IOException {
       for (int i = 0; i < subSpans.length; i++) {
         if (subSpans[i] instanceof NearSpansOrdered) {
-          if (((NearSpansOrdered) subSpans[i]).isPayloadAvailable()) {
-            processPayloads(((NearSpansOrdered) subSpans[i]).getPayload(),
-                subSpans[i].start(), subSpans[i].end());
-          }
+          processPayloads(subSpans[i].getPayloadBuffer(),
+              subSpans[i].start(), subSpans[i].end());
           getPayloads(((NearSpansOrdered) subSpans[i]).getSubSpans());
         } else if (subSpans[i] instanceof NearSpansUnordered) {
-          if (((NearSpansUnordered) subSpans[i]).isPayloadAvailable()) {
-            processPayloads(((NearSpansUnordered) subSpans[i]).getPayload(),
-                subSpans[i].start(), subSpans[i].end());
-          }
+          processPayloads(subSpans[i].getPayloadBuffer(),
+              subSpans[i].start(), subSpans[i].end());
           getPayloads(((NearSpansUnordered) subSpans[i]).getSubSpans());
         }
       }
     }
 
+    /**
+     * Processes the payloads of a span. By default, uses the {@link
+     * PayloadFunction} to score them, reading them from the buffer without
+     * copies; if a subclass overrides {@link #processPayloads(Collection,
+     * int, int)}, hands copies of them to that instead.
+     * 
+     * @param payloads The payloads, valid until the spans move
+     * @param start The start position of the span being scored
+     * @param end The end position of the span being scored
+     * 
+     * @see Spans#getPayloadBuffer()
+     */
+    protected void processPayloads(PayloadBuffer payloads, int start, int end) {
+      final int size = payloads.size();
+      if (size == 0) {
+        return;
+      }
+      if (collectionOverridden) {
+        processPayloads(payloads.toList(), start, end);
+        return;
+      }
+      for (int i = 0; i < size; i++) {
+        final int length = payloads.getLength(i);
+        if (payload.length < length) {
+          payload = ArrayUtil.grow(payload, length);
+        }
+        System.arraycopy(payloads.getBytes(), payloads.getOffset(i), payload, 0, length);
+        payloadScore = function.currentScore(doc, fieldName, start, end,
+            payloadsSeen, payloadScore, similarity.scorePayload(doc, fieldName,
+                spans.start(), spans.end(), payload, 0, length));
+        ++payloadsSeen;
+      }
+    }
+
     /**
      * By default, uses the {@link PayloadFunction} to score the payloads, but
      * can be overridden to do other things.
@@ -194,6 +243,8 @@ public class PayloadNearQuery extends SpanNearQuery {
      * @param end The end position of the span being scored
      * 
      * @see Spans
+     * @deprecated override {@link #processPayloads(PayloadBuffer, int, int)}
+     *             instead
      */
     protected void processPayloads(Collection payLoads, int start, int end) {
       for (Iterator iterator = payLoads.iterator(); iterator.hasNext();) {
@@ -26,10 +26,12 @@ import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.spans.PayloadBuffer;
 import org.apache.lucene.search.spans.TermSpans;
 import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.SpanScorer;
+import org.apache.lucene.util.ArrayUtil;
 
 import java.io.IOException;
 
@@ -112,12 +114,18 @@ public class PayloadTermQuery extends SpanTermQuery {
       }
 
       protected void processPayload(Similarity similarity) throws IOException {
-        if (positions.isPayloadAvailable()) {
-          payload = positions.getPayload(payload, 0);
+        PayloadBuffer payloads = spans.getPayloadBuffer();
+        if (payloads.size() > 0) {
+          // scorePayload has always been given the payload from offset 0 on
+          int length = payloads.getLength(0);
+          if (payload.length < length) {
+            payload = ArrayUtil.grow(payload, length);
+          }
+          System.arraycopy(payloads.getBytes(), payloads.getOffset(0), payload, 0, length);
           payloadScore = function.currentScore(doc, term.field(),
               spans.start(), spans.end(), payloadsSeen, payloadScore,
               similarity.scorePayload(doc, term.field(), spans.start(), spans
-                  .end(), payload, 0, positions.getPayloadLength()));
+                  .end(), payload, 0, length));
           payloadsSeen++;
 
         } else {
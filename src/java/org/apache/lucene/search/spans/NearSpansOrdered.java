@@ -20,14 +20,9 @@ package org.apache.lucene.search.spans;
 import org.apache.lucene.index.IndexReader;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Collection;
-import java.util.Set;
 
 /** A Spans that is formed from the ordered subspans of a SpanNearQuery
  * where the subspans do not overlap and have a maximum slop between them.
@@ -65,7 +60,9 @@ public class NearSpansOrdered extends Spans {
   private int matchDoc = -1;
   private int matchStart = -1;
   private int matchEnd = -1;
-  private List/*<byte[]>*/ matchPayload;
+  private final PayloadBuffer matchPayload = new PayloadBuffer();
+  private final PayloadBuffer possibleMatchPayload = new PayloadBuffer();
+  private final PayloadBuffer prevPayload = new PayloadBuffer();
 
   private final Spans[] subSpansByDoc;
   private final Comparator spanDocComparator = new Comparator() {
@@ -91,7 +88,6 @@ public class NearSpansOrdered extends Spans {
     allowedSlop = spanNearQuery.getSlop();
     SpanQuery[] clauses = spanNearQuery.getClauses();
     subSpans = new Spans[clauses.length];
-    matchPayload = new LinkedList();
     subSpansByDoc = new Spans[clauses.length];
     for (int i = 0; i < clauses.length; i++) {
       subSpans[i] = clauses[i].getSpans(reader);
@@ -116,12 +112,16 @@ public class NearSpansOrdered extends Spans {
   // TODO: Remove warning after API has been finalized
   // TODO: Would be nice to be able to lazy load payloads
   public Collection/*<byte[]>*/ getPayload() throws IOException {
+    return matchPayload.toList();
+  }
+
+  public PayloadBuffer getPayloadBuffer() throws IOException {
     return matchPayload;
   }
 
   // TODO: Remove warning after API has been finalized
  public boolean isPayloadAvailable() {
-    return matchPayload.isEmpty() == false;
+    return matchPayload.size() > 0;
   }
 
   // inherit javadocs
@@ -256,22 +256,19 @@ public class NearSpansOrdered extends Spans {
   private boolean shrinkToAfterShortestMatch() throws IOException {
     matchStart = subSpans[subSpans.length - 1].start();
     matchEnd = subSpans[subSpans.length - 1].end();
-    Set possibleMatchPayloads = new HashSet();
-    if (subSpans[subSpans.length - 1].isPayloadAvailable()) {
-      possibleMatchPayloads.addAll(subSpans[subSpans.length - 1].getPayload());
+    if (collectPayloads) {
+      possibleMatchPayload.clear();
+      possibleMatchPayload.addAll(subSpans[subSpans.length - 1].getPayloadBuffer());
     }
 
-    Collection possiblePayload = null;
-    
     int matchSlop = 0;
     int lastStart = matchStart;
     int lastEnd = matchEnd;
     for (int i = subSpans.length - 2; i >= 0; i--) {
       Spans prevSpans = subSpans[i];
-      if (collectPayloads && prevSpans.isPayloadAvailable()) {
-        Collection payload = prevSpans.getPayload();
-        possiblePayload = new ArrayList(payload.size());
-        possiblePayload.addAll(payload);
+      if (collectPayloads) {
+        prevPayload.clear();
+        prevPayload.addAll(prevSpans.getPayloadBuffer());
       }
       
       int prevStart = prevSpans.start();
@@ -292,17 +289,16 @@ public class NearSpansOrdered extends Spans {
           } else { // prevSpans still before (lastStart, lastEnd)
             prevStart = ppStart;
             prevEnd = ppEnd;
-            if (collectPayloads && prevSpans.isPayloadAvailable()) {
-              Collection payload = prevSpans.getPayload();
-              possiblePayload = new ArrayList(payload.size());
-              possiblePayload.addAll(payload);
+            if (collectPayloads) {
+              prevPayload.clear();
+              prevPayload.addAll(prevSpans.getPayloadBuffer());
             }
           }
         }
       }
 
-      if (collectPayloads && possiblePayload != null) {
-        possibleMatchPayloads.addAll(possiblePayload);
+      if (collectPayloads) {
+        possibleMatchPayload.addAll(prevPayload);
       }
       
       assert prevStart <= matchStart;
@@ -320,8 +316,8 @@ public class NearSpansOrdered extends Spans {
     
     boolean match = matchSlop <= allowedSlop;
     
-    if(collectPayloads && match && possibleMatchPayloads.size() > 0) {
-      matchPayload.addAll(possibleMatchPayloads);
+    if(collectPayloads && match) {
+      matchPayload.addAll(possibleMatchPayload);
     }
 
     return match; // ordered and allowed slop
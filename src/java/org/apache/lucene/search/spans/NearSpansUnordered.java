@@ -24,8 +24,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
 
 /**
  * Similar to {@link NearSpansOrdered}, but for the unordered case.
@@ -43,10 +41,12 @@ public class NearSpansUnordered extends Spans {
   private SpansCell first;                        // linked list of spans
   private SpansCell last;                         // sorted by doc only
 
-  private int totalLength;                        // sum of current lengths
+  private int totalLength;                        // sum of current lengths, set by atMatch()
 
   private CellQueue queue;                        // sorted queue of spans
-  private SpansCell max;                          // max element in queue
+  private SpansCell max;                          // max element in queue: by doc, and by end once atMatch() looked
+
+  private final PayloadBuffer matchPayload = new PayloadBuffer();
 
   private boolean more = true;                    // true iff not done
   private boolean firstTime = true;               // true before first next()
@@ -72,7 +72,6 @@ public class NearSpansUnordered extends Spans {
   private class SpansCell extends Spans {
     private Spans spans;
     private SpansCell next;
-    private int length = -1;
     private int index;
 
     public SpansCell(Spans spans, int index) {
@@ -88,18 +87,10 @@ public class NearSpansUnordered extends Spans {
       return adjust(spans.skipTo(target));
     }
     
+    // only looks at docs: positions are not needed until all are in one
     private boolean adjust(boolean condition) {
-      if (length != -1) {
-        totalLength -= length;  // subtract old length
-      }
-      if (condition) {
-        length = end() - start(); 
-        totalLength += length; // add new length
-
-        if (max == null || doc() > max.doc()
-            || (doc() == max.doc()) && (end() > max.end())) {
-          max = this;
-        }
+      if (condition && (max == null || doc() > max.doc())) {
+        max = this;
       }
       more = condition;
       return condition;
@@ -113,6 +104,10 @@ public class NearSpansUnordered extends Spans {
       return new ArrayList(spans.getPayload());
     }
 
+    public PayloadBuffer getPayloadBuffer() throws IOException {
+      return spans.getPayloadBuffer();
+    }
+
     // TODO: Remove warning after API has been finalized
    public boolean isPayloadAvailable() {
       return spans.isPayloadAvailable();
@@ -226,11 +221,13 @@ public class NearSpansUnordered extends Spans {
    * @throws IOException
    */
   public Collection/*<byte[]>*/ getPayload() throws IOException {
-    Set/*<byte[]*/ matchPayload = new HashSet();
+    return getPayloadBuffer().toList();
+  }
+
+  public PayloadBuffer getPayloadBuffer() throws IOException {
+    matchPayload.clear();
     for (SpansCell cell = first; cell != null; cell = cell.next) {
-      if (cell.isPayloadAvailable()) {
-        matchPayload.addAll(cell.getPayload());
-      }
+      matchPayload.addAll(cell.getPayloadBuffer());
     }
     return matchPayload;
   }
@@ -295,7 +292,18 @@ public class NearSpansUnordered extends Spans {
   }
 
   private boolean atMatch() {
-    return (min().doc() == max.doc())
-        && ((max.end() - min().start() - totalLength) <= slop);
+    if (min().doc() != max.doc()) {
+      return false;
+    }
+    // all in one doc: look at positions
+    totalLength = 0;
+    for (int i = 0; i < ordered.size(); i++) {
+      SpansCell cell = (SpansCell) ordered.get(i);
+      totalLength += cell.end() - cell.start();
+      if (cell.end() > max.end()) {
+        max = cell;
+      }
+    }
+    return (max.end() - min().start() - totalLength) <= slop;
   }
 }
@@ -0,0 +1,129 @@
+package org.apache.lucene.search.spans;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Expert: a list of payloads kept end to end in one byte array, which is
+ * reused as the list is cleared and filled again. Payload <code>i</code>
+ * is the {@link #getLength(int)} bytes of {@link #getBytes()} from
+ * {@link #getOffset(int)} on.
+ * <p>
+ * Returned by {@link Spans#getPayloadBuffer()}; valid until the spans
+ * move.
+ * <p><font color="#FF0000">
+ * WARNING: The status of the <b>Payloads</b> feature is experimental.
+ * The APIs introduced here might change in the future and will not be
+ * supported anymore in such a case.</font>
+ */
+public final class PayloadBuffer {
+  private byte[] bytes = new byte[32];
+  private int[] starts = new int[8];  // starts[size] is where the next payload goes
+  private int size;
+
+  /** Returns the number of payloads. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the array holding all payloads. */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /** Returns where payload <code>i</code> starts in {@link #getBytes()}. */
+  public int getOffset(int i) {
+    return starts[i];
+  }
+
+  /** Returns the length of payload <code>i</code>. */
+  public int getLength(int i) {
+    return starts[i + 1] - starts[i];
+  }
+
+  /** Removes all payloads, keeping the space they took. */
+  public void clear() {
+    size = 0;
+  }
+
+  // makes room for one more payload of length bytes, and returns its offset
+  private int reserve(int length) {
+    if (size + 2 > starts.length) {
+      starts = ArrayUtil.grow(starts, size + 2);
+    }
+    final int offset = starts[size];
+    if (offset + length > bytes.length) {
+      bytes = ArrayUtil.grow(bytes, offset + length);
+    }
+    starts[++size] = offset + length;
+    return offset;
+  }
+
+  /** Appends a copy of <code>length</code> bytes of <code>payload</code> from <code>offset</code> on. */
+  public void add(byte[] payload, int offset, int length) {
+    final int start = reserve(length);
+    System.arraycopy(payload, offset, bytes, start, length);
+  }
+
+  /** Appends copies of all payloads of <code>other</code>. */
+  public void addAll(PayloadBuffer other) {
+    for (int i = 0; i < other.size; i++) {
+      add(other.bytes, other.getOffset(i), other.getLength(i));
+    }
+  }
+
+  /**
+   * Appends the payload at the current position of <code>positions</code>,
+   * which is empty if there is none.
+   */
+  void add(TermPositions positions) throws IOException {
+    if (positions.isPayloadAvailable()) {
+      final int start = reserve(positions.getPayloadLength());
+      positions.getPayload(bytes, start);
+    } else {
+      reserve(0);
+    }
+  }
+
+  /** Appends the payloads of a {@link Spans#getPayload()} collection. */
+  void addAll(Collection/*<byte[]>*/ payloads) {
+    for (Iterator it = payloads.iterator(); it.hasNext();) {
+      byte[] payload = (byte[]) it.next();
+      add(payload, 0, payload.length);
+    }
+  }
+
+  /** Returns copies of the payloads, as {@link Spans#getPayload()} does. */
+  public List/*<byte[]>*/ toList() {
+    List list = new ArrayList(size);
+    for (int i = 0; i < size; i++) {
+      byte[] payload = new byte[getLength(i)];
+      System.arraycopy(bytes, getOffset(i), payload, 0, payload.length);
+      list.add(payload);
+    }
+    return list;
+  }
+}
@@ -107,6 +107,10 @@ public class SpanFirstQuery extends SpanQuery implements Cloneable {
         return result;//TODO: any way to avoid the new construction?
       }
 
+      public PayloadBuffer getPayloadBuffer() throws IOException {
+        return spans.getPayloadBuffer();
+      }
+
       // TODO: Remove warning after API has been finalized
      public boolean isPayloadAvailable() {
         return spans.isPayloadAvailable();
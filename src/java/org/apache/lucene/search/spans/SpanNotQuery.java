@@ -145,6 +145,10 @@ public class SpanNotQuery extends SpanQuery implements Cloneable {
         return result;
       }
 
+      public PayloadBuffer getPayloadBuffer() throws IOException {
+        return includeSpans.getPayloadBuffer();
+      }
+
       // TODO: Remove warning after API has been finalized
      public boolean isPayloadAvailable() {
         return includeSpans.isPayloadAvailable();
@@ -242,6 +242,11 @@ public class SpanOrQuery extends SpanQuery implements Cloneable {
         return result;
       }
 
+      public PayloadBuffer getPayloadBuffer() throws IOException {
+        Spans theTop = top();
+        return theTop == null ? super.getPayloadBuffer() : theTop.getPayloadBuffer();
+      }
+
       // TODO: Remove warning after API has been finalized
      public boolean isPayloadAvailable() {
         Spans top = top();
@@ -38,7 +38,7 @@ public class SpanScorer extends Scorer {
   protected boolean more = true;
 
   protected int doc;
-  protected int[] sorts = new int[Scorer.numSort];
+  protected int[] sorts = NO_SORTS;
   
   protected float freq;
 
@@ -49,6 +49,10 @@ public class SpanScorer extends Scorer {
     this.norms = norms;
     this.weight = weight;
     this.value = weight.getValue();
+    // spans hold no embedded sort values
+    if (weight instanceof SpanWeight) {
+      sorts = ((SpanWeight) weight).schema.getUnsetSorts();
+    }
     if (this.spans.next()) {
       doc = -1;
     } else {
@@ -123,12 +127,12 @@ public class SpanScorer extends Scorer {
     return tfExplanation;
   }
 
-public int getSort(int fieldNumber) {
-	throw new UnsupportedOperationException();
-}
+  public int getSort(int fieldNumber) {
+    return -1;
+  }
 
-public int[] getSorts() {
-	throw new UnsupportedOperationException();
-}
+  public int[] getSorts() {
+    return sorts;
+  }
 
 }
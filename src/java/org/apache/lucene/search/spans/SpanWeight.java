@@ -37,12 +37,14 @@ public class SpanWeight extends Weight {
 
   protected Set terms;
   protected SpanQuery query;
+  protected EmbeddedSortSchema schema;
   private IDFExplanation idfExp;
 
   public SpanWeight(SpanQuery query, Searcher searcher)
     throws IOException {
     this.similarity = query.getSimilarity(searcher);
     this.query = query;
+    this.schema = query.getEmbeddedSortSchema(searcher);
     terms=new HashSet();
     query.extractTerms(terms);
     idfExp = similarity.idfExplain(terms, searcher);
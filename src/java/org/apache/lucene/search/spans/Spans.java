@@ -87,4 +87,33 @@ public abstract class Spans {
    */
   public abstract boolean isPayloadAvailable();
 
+  private PayloadBuffer payloadBuffer;
+
+  /**
+   * Expert: returns the payloads of the current span, like
+   * {@link #getPayload()} but in a buffer that is reused from one span to
+   * the next, so that no arrays are made per match. The buffer is empty
+   * if no payload is available, and is valid until the next move.
+   * <p>
+   * The same restriction as for {@link #getPayload()} applies: call it at
+   * most once per move. This implementation copies what {@link #getPayload()}
+   * returns; subclasses holding their payloads in buffers should override it.
+   * <p><font color="#FF0000">
+   * WARNING: The status of the <b>Payloads</b> feature is experimental.
+   * The APIs introduced here might change in the future and will not be
+   * supported anymore in such a case.</font>
+   */
+  public PayloadBuffer getPayloadBuffer() throws IOException {
+    if (payloadBuffer == null) {
+      payloadBuffer = new PayloadBuffer();
+    }
+    payloadBuffer.clear();
+    if (isPayloadAvailable()) {
+      Collection payloads = getPayload();
+      if (payloads != null) {
+        payloadBuffer.addAll(payloads);
+      }
+    }
+    return payloadBuffer;
+  }
 }
@@ -18,6 +18,7 @@ package org.apache.lucene.search.spans;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.util.ArrayUtil;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -26,6 +27,12 @@ import java.util.Collection;
 /**
  * Expert:
  * Public for extension only
+ * <p>
+ * Positions are not read until a span of the doc is looked at, so spans
+ * that only move between docs, as when intersecting docs for a
+ * {@link SpanNearQuery}, never read them. Then all positions of the doc,
+ * and their payloads, are read in one go into buffers that are reused
+ * from doc to doc.
  */
 public class TermSpans extends Spans {
   protected TermPositions positions;
@@ -33,8 +40,14 @@ public class TermSpans extends Spans {
   protected int doc;
   protected int freq;
   protected int count;
+  /** The current position, once {@link #start()} has been called for the doc. */
   protected int position;
 
+  private boolean loaded;                     // positions of doc are read
+  private int[] positionBuffer = new int[16];
+  private final PayloadBuffer docPayloads = new PayloadBuffer();    // one per position
+  private final PayloadBuffer payload = new PayloadBuffer();        // of the current position
+
 
   public TermSpans(TermPositions positions, Term term) throws IOException {
 
@@ -52,9 +65,12 @@ public class TermSpans extends Spans {
       doc = positions.doc();
       freq = positions.freq();
       count = 0;
+      loaded = false;
     }
-    position = positions.nextPosition();
     count++;
+    if (loaded) {
+      position = positionBuffer[count - 1];
+    }
     return true;
   }
 
@@ -66,36 +82,70 @@ public class TermSpans extends Spans {
 
     doc = positions.doc();
     freq = positions.freq();
-    count = 0;
-
-    position = positions.nextPosition();
-    count++;
+    count = 1;
+    loaded = false;
 
     return true;
   }
 
+  // reads all positions of the doc, on the first look at a span of it
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    if (freq > positionBuffer.length) {
+      positionBuffer = ArrayUtil.grow(positionBuffer, freq);
+    }
+    docPayloads.clear();
+    try {
+      for (int i = 0; i < freq; i++) {
+        positionBuffer[i] = positions.nextPosition();
+        docPayloads.add(positions);
+      }
+    } catch (IOException e) {
+      // start() and end() cannot throw it
+      throw new RuntimeException(e);
+    }
+    loaded = true;
+    position = positionBuffer[count - 1];
+  }
+
   public int doc() {
     return doc;
   }
 
   public int start() {
+    load();
     return position;
   }
 
   public int end() {
+    load();
     return position + 1;
   }
 
   // TODO: Remove warning after API has been finalized
   public Collection/*<byte[]>*/ getPayload() throws IOException {
-    byte [] bytes = new byte[positions.getPayloadLength()]; 
-    bytes = positions.getPayload(bytes, 0);
+    load();
+    byte[] bytes = new byte[docPayloads.getLength(count - 1)];
+    System.arraycopy(docPayloads.getBytes(), docPayloads.getOffset(count - 1), bytes, 0, bytes.length);
     return Collections.singletonList(bytes);
   }
 
+  public PayloadBuffer getPayloadBuffer() throws IOException {
+    load();
+    payload.clear();
+    final int length = docPayloads.getLength(count - 1);
+    if (length > 0) {
+      payload.add(docPayloads.getBytes(), docPayloads.getOffset(count - 1), length);
+    }
+    return payload;
+  }
+
   // TODO: Remove warning after API has been finalized
  public boolean isPayloadAvailable() {
-    return positions.isPayloadAvailable();
+    load();
+    return docPayloads.getLength(count - 1) > 0;
   }
 
   public String toString() {
@@ -103,7 +153,11 @@ public class TermSpans extends Spans {
             (doc == -1 ? "START" : (doc == Integer.MAX_VALUE) ? "END" : doc + "-" + position);
   }
 
-
+  /**
+   * Returns the postings read from. All positions of a doc are read at
+   * once, so payloads must be had from {@link #getPayloadBuffer()}, not
+   * from these.
+   */
   public TermPositions getPositions() {
     return positions;
   }
@@ -0,0 +1,230 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A map from int keys to int values, stored in two parallel arrays with
+ * open addressing and linear probing. Unlike a {@link java.util.HashMap}
+ * it allocates nothing per entry, which makes it suitable for counting
+ * inside a search's collect loop.
+ * <p>
+ * Key 0 marks free slots and is kept aside. The table is doubled when it
+ * becomes half full. Not thread-safe.
+ */
+public class IntIntHashMap implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private int[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  private boolean hasZero;
+  private int zeroValue;
+
+  public IntIntHashMap() {
+    this(16);
+  }
+
+  /** Creates a map that holds <code>expectedSize</code> keys without growing. */
+  public IntIntHashMap(int expectedSize) {
+    int capacity = 4;
+    while (capacity < 2 * expectedSize) {
+      capacity <<= 1;
+    }
+    keys = new int[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  private int home(int key) {
+    // spread the bits; keys are often small and consecutive
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private int slot(int key) {
+    int i = home(key);
+    while (keys[i] != 0 && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /** Returns the value of <code>key</code>, or <code>missingValue</code> if it is absent. */
+  public int get(int key, int missingValue) {
+    if (key == 0) {
+      return hasZero ? zeroValue : missingValue;
+    }
+    int i = slot(key);
+    return keys[i] == 0 ? missingValue : values[i];
+  }
+
+  public boolean containsKey(int key) {
+    return key == 0 ? hasZero : keys[slot(key)] != 0;
+  }
+
+  public void put(int key, int value) {
+    if (key == 0) {
+      if (!hasZero) {
+        hasZero = true;
+        size++;
+      }
+      zeroValue = value;
+      return;
+    }
+    int i = slot(key);
+    values[i] = value;
+    if (keys[i] == 0) {
+      keys[i] = key;
+      if (++size > keys.length >> 1) {
+        rehash();
+      }
+    }
+  }
+
+  /**
+   * Adds <code>delta</code> to the value of <code>key</code>, treating an
+   * absent key as 0, and returns the new value.
+   */
+  public int adjust(int key, int delta) {
+    if (key == 0) {
+      if (!hasZero) {
+        hasZero = true;
+        size++;
+      }
+      return zeroValue += delta;
+    }
+    int i = slot(key);
+    if (keys[i] == 0) {
+      keys[i] = key;
+      values[i] = delta;
+      if (++size > keys.length >> 1) {
+        rehash();
+      }
+      return delta;
+    }
+    return values[i] += delta;
+  }
+
+  /** Removes <code>key</code> and returns its value, or <code>missingValue</code> if it was absent. */
+  public int remove(int key, int missingValue) {
+    if (key == 0) {
+      if (!hasZero) {
+        return missingValue;
+      }
+      hasZero = false;
+      size--;
+      int value = zeroValue;
+      zeroValue = 0;
+      return value;
+    }
+    int i = slot(key);
+    if (keys[i] == 0) {
+      return missingValue;
+    }
+    int value = values[i];
+    size--;
+    // shift back the entries that probed past the freed slot
+    int free = i;
+    int j = (i + 1) & mask;
+    while (keys[j] != 0) {
+      int home = home(keys[j]);
+      if (((j - home) & mask) >= ((j - free) & mask)) {
+        keys[free] = keys[j];
+        values[free] = values[j];
+        free = j;
+      }
+      j = (j + 1) & mask;
+    }
+    keys[free] = 0;
+    return value;
+  }
+
+  /** Adds every value of <code>other</code> to the value of the same key in this map. */
+  public void adjustAll(IntIntHashMap other) {
+    if (other.hasZero) {
+      adjust(0, other.zeroValue);
+    }
+    for (int i = 0; i < other.keys.length; i++) {
+      if (other.keys[i] != 0) {
+        adjust(other.keys[i], other.values[i]);
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Returns the keys, in the same order as {@link #values()}. */
+  public int[] keys() {
+    int[] result = new int[size];
+    int upto = 0;
+    if (hasZero) {
+      result[upto++] = 0;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        result[upto++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  /** Returns the values, in the same order as {@link #keys()}. */
+  public int[] values() {
+    int[] result = new int[size];
+    int upto = 0;
+    if (hasZero) {
+      result[upto++] = zeroValue;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        result[upto++] = values[i];
+      }
+    }
+    return result;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, 0);
+    size = 0;
+    hasZero = false;
+    zeroValue = 0;
+  }
+
+  private void rehash() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new int[oldKeys.length << 1];
+    values = new int[oldKeys.length << 1];
+    mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int j = slot(oldKeys[i]);
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+}
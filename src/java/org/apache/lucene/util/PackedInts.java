@@ -0,0 +1,136 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A fixed number of unsigned values of at most 64 bits each, packed with
+ * the same number of bits per value into the longs of a {@link ByteBuffer}.
+ * Values are stored low bits first and may straddle two longs.
+ * <p>
+ * The buffer may be a direct one, see {@link #allocateDirect}, so that
+ * large arrays of values live outside of the Java heap, or a mapped file.
+ * <p>
+ * Reads may be done concurrently; writes must not be concurrent with
+ * anything else.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public final class PackedInts {
+  private final ByteBuffer buffer;
+  private final LongBuffer longs;
+  private final int valueCount;
+  private final int bitsPerValue;
+  private final long mask;
+
+  /**
+   * Wraps <code>buffer</code>, which holds at least {@link
+   * #bytesRequired bytesRequired(valueCount, bitsPerValue)} bytes from its
+   * position on.
+   */
+  public PackedInts(ByteBuffer buffer, int valueCount, int bitsPerValue) {
+    if (bitsPerValue < 0 || bitsPerValue > 64) {
+      throw new IllegalArgumentException("bitsPerValue must be 0..64, got " + bitsPerValue);
+    }
+    if (buffer.remaining() < bytesRequired(valueCount, bitsPerValue)) {
+      throw new IllegalArgumentException("buffer holds " + buffer.remaining() + " bytes, "
+          + bytesRequired(valueCount, bitsPerValue) + " are needed");
+    }
+    this.buffer = buffer;
+    this.longs = buffer.asLongBuffer();
+    this.valueCount = valueCount;
+    this.bitsPerValue = bitsPerValue;
+    this.mask = bitsPerValue == 64 ? -1L : (1L << bitsPerValue) - 1;
+  }
+
+  /** Returns packed space for <code>valueCount</code> zeros, outside of the heap. */
+  public static PackedInts allocateDirect(int valueCount, int bitsPerValue) {
+    return new PackedInts(ByteBuffer.allocateDirect(bytesRequired(valueCount, bitsPerValue)),
+        valueCount, bitsPerValue);
+  }
+
+  /** Returns the number of bits needed to hold <code>maxValue</code>, taken as unsigned. */
+  public static int bitsRequired(long maxValue) {
+    return 64 - Long.numberOfLeadingZeros(maxValue);
+  }
+
+  /**
+   * Returns the number of bytes that <code>valueCount</code> packed values
+   * take.
+   * @throws IllegalArgumentException if that is more than a buffer holds
+   */
+  public static int bytesRequired(int valueCount, int bitsPerValue) {
+    final long blocks = ((long) valueCount * bitsPerValue + 63) >>> 6;
+    // always one long, so that reads need no special case
+    final long bytes = Math.max(1, blocks) << 3;
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(valueCount + " values of " + bitsPerValue
+          + " bits take " + bytes + " bytes, more than a buffer holds");
+    }
+    return (int) bytes;
+  }
+
+  /** Returns the value at <code>index</code>. */
+  public long get(int index) {
+    assert index >= 0 && index < valueCount;
+    final long bitPos = (long) index * bitsPerValue;
+    final int block = (int) (bitPos >>> 6);
+    final int shift = (int) (bitPos & 63);
+    long value = longs.get(block) >>> shift;
+    if (shift + bitsPerValue > 64) {
+      value |= longs.get(block + 1) << (64 - shift);
+    }
+    return value & mask;
+  }
+
+  /** Sets the value at <code>index</code>, which must fit in {@link #getBitsPerValue()} bits. */
+  public void set(int index, long value) {
+    assert index >= 0 && index < valueCount;
+    assert (value & ~mask) == 0 : value + " does not fit in " + bitsPerValue + " bits";
+    final long bitPos = (long) index * bitsPerValue;
+    final int block = (int) (bitPos >>> 6);
+    final int shift = (int) (bitPos & 63);
+    longs.put(block, (longs.get(block) & ~(mask << shift)) | (value << shift));
+    if (shift + bitsPerValue > 64) {
+      final int written = 64 - shift;
+      longs.put(block + 1, (longs.get(block + 1) & ~(mask >>> written)) | (value >>> written));
+    }
+  }
+
+  /** Returns the number of values. */
+  public int size() {
+    return valueCount;
+  }
+
+  public int getBitsPerValue() {
+    return bitsPerValue;
+  }
+
+  /** Returns the buffer the values are packed into. */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /** Returns the number of bytes the values take. */
+  public int sizeInBytes() {
+    return bytesRequired(valueCount, bitsPerValue);
+  }
+}
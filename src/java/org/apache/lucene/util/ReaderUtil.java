@@ -17,10 +17,14 @@ package org.apache.lucene.util;
  * limitations under the License.
  */
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.lucene.index.ColumnSortTermDocs;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SortRangeTermDocs;
+import org.apache.lucene.index.TermDocs;
 
 /**
  * Common util methods for dealing with {@link IndexReader}s.
@@ -46,6 +50,50 @@ public class ReaderUtil {
     }
   }
 
+  /**
+   * Reads entries of <code>termDocs</code> in bulk with their embedded sort
+   * values column by column, as {@link ColumnSortTermDocs#read} does. Other
+   * implementations are read entry by entry: a missing norm reads as 0, and
+   * slots beyond a doc's sort row as unset (-1).
+   */
+  public static int readSortColumns(TermDocs termDocs, int[] docs, int[] freqs, byte[] norms, int[] sorts, int numSlots)
+      throws IOException {
+    if (termDocs instanceof ColumnSortTermDocs) {
+      return ((ColumnSortTermDocs) termDocs).read(docs, freqs, norms, sorts, numSlots);
+    }
+    final int length = docs.length;
+    int i = 0;
+    while (i < length && termDocs.next()) {
+      docs[i] = termDocs.doc();
+      freqs[i] = termDocs.freq();
+      if (norms != null) {
+        Byte norm = termDocs.norm();
+        norms[i] = norm == null ? 0 : norm.byteValue();
+      }
+      if (numSlots > 0) {
+        final int[] row = termDocs.getSorts();
+        for (int slot = 0; slot < numSlots; slot++) {
+          sorts[slot * length + i] = slot < row.length ? row[slot] : -1;
+        }
+      }
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Passes a sort range down to <code>termDocs</code> if it is a {@link
+   * SortRangeTermDocs}, and returns whether it was. Either way the caller
+   * still tests the entries it reads against the range.
+   */
+  public static boolean restrictSortRange(TermDocs termDocs, int slot, int min, int max) {
+    if (termDocs instanceof SortRangeTermDocs) {
+      ((SortRangeTermDocs) termDocs).restrictSortRange(slot, min, max);
+      return true;
+    }
+    return false;
+  }
+
   /**
    * Returns sub IndexReader that contains the given document id.
    *    
@@ -0,0 +1,386 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A deterministic automaton over chars, in a form that is cheap to run:
+ * chars are grouped into classes which every state treats alike, and
+ * transitions are kept in one table indexed by state and class.
+ * <p>
+ * States from which no accepted string can be reached are dropped, so a
+ * string is rejected as soon as {@link #step(int, char)} returns -1. This
+ * is what lets a term enumeration skip ahead: see {@link #nextPrefix(String)}.
+ * <p>
+ * Automata are made with a {@link Builder}. They are immutable and may be
+ * shared between threads.
+ */
+public final class RunAutomaton {
+
+  private final char[] points;      // class k holds the chars from points[k] to points[k + 1] - 1
+  private final byte[] asciiClasses;
+  private final int[] transitions;  // [state * points.length + class], -1 if dead
+  private final boolean[] accept;
+
+  private RunAutomaton(char[] points, int[] transitions, boolean[] accept) {
+    this.points = points;
+    this.transitions = transitions;
+    this.accept = accept;
+    asciiClasses = new byte[128];
+    if (points.length <= Byte.MAX_VALUE) {
+      for (char c = 0; c < 128; c++) {
+        asciiClasses[c] = (byte) classOf(points, c);
+      }
+    }
+  }
+
+  private static int classOf(char[] points, char c) {
+    int k = Arrays.binarySearch(points, c);
+    return k >= 0 ? k : -k - 2;
+  }
+
+  private int classOf(char c) {
+    if (c < 128 && points.length <= Byte.MAX_VALUE) {
+      return asciiClasses[c];
+    }
+    return classOf(points, c);
+  }
+
+  /** Returns the number of states. */
+  public int getNumStates() {
+    return accept.length;
+  }
+
+  /** Returns the state strings are run from. */
+  public int getInitialState() {
+    return 0;
+  }
+
+  /** Returns true if strings ending in <code>state</code> are accepted. */
+  public boolean isAccept(int state) {
+    return accept[state];
+  }
+
+  /**
+   * Returns the state reached from <code>state</code> on <code>c</code>, or
+   * -1 if no string continuing that way is accepted.
+   */
+  public int step(int state, char c) {
+    return transitions[state * points.length + classOf(c)];
+  }
+
+  /** Returns true if <code>s</code> is accepted. */
+  public boolean run(String s) {
+    int state = 0;
+    for (int i = 0, len = s.length(); i < len; i++) {
+      state = step(state, s.charAt(i));
+      if (state == -1) {
+        return false;
+      }
+    }
+    return accept[state];
+  }
+
+  /** Returns the longest string that all accepted strings start with. */
+  public String getCommonPrefix() {
+    StringBuffer prefix = new StringBuffer();
+    int state = 0;
+    while (!accept[state] && prefix.length() < accept.length) {
+      // exactly one char may follow
+      int next = -1;
+      int k = 0;
+      for (int j = 0; j < points.length; j++) {
+        if (transitions[state * points.length + j] != -1) {
+          if (next != -1) {
+            return prefix.toString();
+          }
+          next = transitions[state * points.length + j];
+          k = j;
+        }
+      }
+      int width = (k + 1 < points.length ? points[k + 1] : Character.MAX_VALUE + 1) - points[k];
+      if (next == -1 || width != 1) {
+        break;
+      }
+      prefix.append(points[k]);
+      state = next;
+    }
+    return prefix.toString();
+  }
+
+  // the smallest char >= from that leaves state alive, or -1
+  private int nextLiveChar(int state, int from) {
+    final int base = state * points.length;
+    for (int k = classOf((char) from); k < points.length; k++) {
+      if (transitions[base + k] != -1) {
+        return Math.max(from, points[k]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the smallest string after <code>s</code>, in {@link String}
+   * order, that some accepted string starts with, or null if there is
+   * none. No string between <code>s</code> and the one returned is
+   * accepted, so a sorted enumeration of candidates may seek to it.
+   */
+  public String nextPrefix(String s) {
+    final int len = s.length();
+    final int[] states = new int[len + 1];
+    int depth = 0;
+    while (depth < len) {
+      int next = step(states[depth], s.charAt(depth));
+      if (next == -1) {
+        break;
+      }
+      states[++depth] = next;
+    }
+
+    int i = depth;
+    if (depth == len) {
+      // all of s may be continued: its extensions come first
+      int c = nextLiveChar(states[len], 0);
+      if (c != -1) {
+        return s + (char) c;
+      }
+      i--;
+    }
+    // from the last live position back, the next char that stays alive
+    for (; i >= 0; i--) {
+      int from = s.charAt(i) + 1;
+      int c = from > Character.MAX_VALUE ? -1 : nextLiveChar(states[i], from);
+      if (c != -1) {
+        return s.substring(0, i) + (char) c;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Builds a {@link RunAutomaton} from a nondeterministic automaton, by
+   * subset construction. States are numbered in the order they are made;
+   * transitions are made on ranges of chars, or on no char at all.
+   */
+  public static final class Builder {
+
+    private int numStates;
+    private final BitSet accept = new BitSet();
+
+    private int[] from = new int[8];
+    private int[] to = new int[8];
+    private char[] min = new char[8];
+    private char[] max = new char[8];
+    private int numTransitions;
+
+    private int[] epsilonFrom = new int[4];
+    private int[] epsilonTo = new int[4];
+    private int numEpsilons;
+
+    /** Adds a state and returns its number. */
+    public int newState() {
+      return numStates++;
+    }
+
+    /** Makes strings ending in <code>state</code> accepted. */
+    public void setAccept(int state) {
+      accept.set(state);
+    }
+
+    /** Adds a transition on the chars from <code>min</code> to <code>max</code>, inclusive. */
+    public void addTransition(int source, char min, char max, int dest) {
+      if (numTransitions == from.length) {
+        from = ArrayUtil.grow(from);
+        to = ArrayUtil.grow(to, from.length);
+        char[] newMin = new char[from.length];
+        System.arraycopy(this.min, 0, newMin, 0, numTransitions);
+        this.min = newMin;
+        char[] newMax = new char[from.length];
+        System.arraycopy(this.max, 0, newMax, 0, numTransitions);
+        this.max = newMax;
+      }
+      from[numTransitions] = source;
+      to[numTransitions] = dest;
+      this.min[numTransitions] = min;
+      this.max[numTransitions] = max;
+      numTransitions++;
+    }
+
+    /** Adds a transition that consumes no char. */
+    public void addEpsilon(int source, int dest) {
+      if (numEpsilons == epsilonFrom.length) {
+        epsilonFrom = ArrayUtil.grow(epsilonFrom);
+        epsilonTo = ArrayUtil.grow(epsilonTo, epsilonFrom.length);
+      }
+      epsilonFrom[numEpsilons] = source;
+      epsilonTo[numEpsilons] = dest;
+      numEpsilons++;
+    }
+
+    // adds to set all states reachable from it on no char
+    private void close(BitSet set, int[][] epsilons) {
+      int[] stack = new int[numStates];
+      int size = 0;
+      for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+        stack[size++] = s;
+      }
+      while (size > 0) {
+        int s = stack[--size];
+        for (int j = 0; j < epsilons[s].length; j++) {
+          int d = epsilons[s][j];
+          if (!set.get(d)) {
+            set.set(d);
+            stack[size++] = d;
+          }
+        }
+      }
+    }
+
+    // for each state, the indexes of the transitions (or epsilons) leaving it
+    private int[][] outgoing(int[] sources, int count) {
+      int[] counts = new int[numStates];
+      for (int i = 0; i < count; i++) {
+        counts[sources[i]]++;
+      }
+      int[][] result = new int[numStates][];
+      for (int s = 0; s < numStates; s++) {
+        result[s] = new int[counts[s]];
+        counts[s] = 0;
+      }
+      for (int i = 0; i < count; i++) {
+        result[sources[i]][counts[sources[i]]++] = i;
+      }
+      return result;
+    }
+
+    /**
+     * Returns the deterministic automaton accepting what this one accepts
+     * from <code>start</code>, or null if it would have more than
+     * <code>maxStates</code> states.
+     */
+    public RunAutomaton build(int start, int maxStates) {
+      // class boundaries: every range starts and ends on one
+      char[] allPoints = new char[2 * numTransitions + 1];
+      int numPoints = 0;
+      allPoints[numPoints++] = 0;
+      for (int i = 0; i < numTransitions; i++) {
+        allPoints[numPoints++] = min[i];
+        if (max[i] < Character.MAX_VALUE) {
+          allPoints[numPoints++] = (char) (max[i] + 1);
+        }
+      }
+      Arrays.sort(allPoints, 0, numPoints);
+      int unique = 0;
+      for (int i = 0; i < numPoints; i++) {
+        if (unique == 0 || allPoints[i] != allPoints[unique - 1]) {
+          allPoints[unique++] = allPoints[i];
+        }
+      }
+      final char[] points = new char[unique];
+      System.arraycopy(allPoints, 0, points, 0, unique);
+
+      int[][] epsilons = outgoing(epsilonFrom, numEpsilons);
+      for (int s = 0; s < numStates; s++) {
+        for (int j = 0; j < epsilons[s].length; j++) {
+          epsilons[s][j] = epsilonTo[epsilons[s][j]];
+        }
+      }
+      final int[][] moves = outgoing(from, numTransitions);
+
+      List sets = new ArrayList();
+      Map numbers = new HashMap();
+      BitSet initial = new BitSet(numStates);
+      initial.set(start);
+      close(initial, epsilons);
+      sets.add(initial);
+      numbers.put(initial, new Integer(0));
+
+      int[] table = new int[points.length * 4];
+      for (int state = 0; state < sets.size(); state++) {
+        BitSet set = (BitSet) sets.get(state);
+        if ((state + 1) * points.length > table.length) {
+          table = ArrayUtil.grow(table, (state + 1) * points.length);
+        }
+        for (int k = 0; k < points.length; k++) {
+          final char c = points[k];
+          BitSet dest = new BitSet(numStates);
+          for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+            for (int j = 0; j < moves[s].length; j++) {
+              int t = moves[s][j];
+              if (min[t] <= c && c <= max[t]) {
+                dest.set(to[t]);
+              }
+            }
+          }
+          int target = -1;
+          if (!dest.isEmpty()) {
+            close(dest, epsilons);
+            Integer number = (Integer) numbers.get(dest);
+            if (number == null) {
+              if (sets.size() == maxStates) {
+                return null;
+              }
+              number = new Integer(sets.size());
+              sets.add(dest);
+              numbers.put(dest, number);
+            }
+            target = number.intValue();
+          }
+          table[state * points.length + k] = target;
+        }
+      }
+
+      final int numDStates = sets.size();
+      boolean[] accepts = new boolean[numDStates];
+      for (int state = 0; state < numDStates; state++) {
+        accepts[state] = ((BitSet) sets.get(state)).intersects(accept);
+      }
+
+      // states that lead to no accepting state are dead
+      boolean[] live = new boolean[numDStates];
+      System.arraycopy(accepts, 0, live, 0, numDStates);
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for (int state = 0; state < numDStates; state++) {
+          if (!live[state]) {
+            for (int k = 0; k < points.length; k++) {
+              int target = table[state * points.length + k];
+              if (target != -1 && live[target]) {
+                live[state] = changed = true;
+                break;
+              }
+            }
+          }
+        }
+      }
+      final int[] transitions = new int[numDStates * points.length];
+      for (int i = 0; i < transitions.length; i++) {
+        int target = table[i];
+        transitions[i] = target != -1 && live[target] ? target : -1;
+      }
+      return new RunAutomaton(points, transitions, accepts);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+
+/**
+ * Stores doc ids as runs of consecutive ids, 8 bytes per run whatever its
+ * length. Smaller than an {@link OpenBitSet} or a {@link SortedVIntList}
+ * for sets of few, long runs, such as the docs of a range of a field the
+ * docs were added in order of.
+ */
+public class RunLengthDocIdSet extends DocIdSet {
+  // run i holds the docs from starts[i] inclusive to ends[i] exclusive
+  private final int[] starts;
+  private final int[] ends;
+
+  /** Creates a set of the bits set in <code>bits</code>. */
+  public RunLengthDocIdSet(OpenBitSet bits) {
+    final int numRuns = countRuns(bits);
+    starts = new int[numRuns];
+    ends = new int[numRuns];
+    int doc = bits.nextSetBit(0);
+    for (int i = 0; i < numRuns; i++) {
+      starts[i] = doc;
+      ends[i] = nextClearBit(bits, doc);
+      doc = bits.nextSetBit(ends[i]);
+    }
+  }
+
+  /** Returns the number of runs of set bits in <code>bits</code>. */
+  public static int countRuns(OpenBitSet bits) {
+    final long[] words = bits.getBits();
+    final int numWords = bits.getNumWords();
+    long count = 0;
+    long carry = 0;
+    for (int i = 0; i < numWords; i++) {
+      final long word = words[i];
+      // a run starts at each set bit whose lower neighbour is clear
+      count += BitUtil.pop(word & ~((word << 1) | carry));
+      carry = word >>> 63;
+    }
+    return (int) count;
+  }
+
+  private static int nextClearBit(OpenBitSet bits, int index) {
+    final long[] words = bits.getBits();
+    final int numWords = bits.getNumWords();
+    int i = index >> 6;
+    if (i >= numWords) {
+      return index;
+    }
+    long word = ~words[i] >>> (index & 0x3f);
+    if (word != 0) {
+      return index + BitUtil.ntz(word);
+    }
+    while (++i < numWords) {
+      word = ~words[i];
+      if (word != 0) {
+        return (i << 6) + BitUtil.ntz(word);
+      }
+    }
+    return numWords << 6;
+  }
+
+  /** Returns the number of runs. */
+  public int getRunCount() {
+    return starts.length;
+  }
+
+  /** Returns the number of bytes the runs take. */
+  public int getByteSize() {
+    return starts.length * 8;
+  }
+
+  /** This DocIdSet implementation is cacheable. */
+  public boolean isCacheable() {
+    return true;
+  }
+
+  public DocIdSetIterator iterator() {
+    return new DocIdSetIterator() {
+      private int run = 0;
+      private int doc = -1;
+
+      public int docID() {
+        return doc;
+      }
+
+      public int nextDoc() {
+        return advance(doc + 1);
+      }
+
+      public int advance(int target) {
+        if (doc == NO_MORE_DOCS) {
+          return doc;
+        }
+        while (run < ends.length && ends[run] <= target) {
+          run++;
+        }
+        if (run == ends.length) {
+          return doc = NO_MORE_DOCS;
+        }
+        return doc = Math.max(target, starts[run]);
+      }
+
+      /** @deprecated use {@link #docID()} instead. */
+      public int doc() {
+        return doc;
+      }
+
+      /** @deprecated use {@link #nextDoc()} instead. */
+      public boolean next() {
+        return nextDoc() != NO_MORE_DOCS;
+      }
+
+      /** @deprecated use {@link #advance(int)} instead. */
+      public boolean skipTo(int target) {
+        return advance(target) != NO_MORE_DOCS;
+      }
+
+      public int getSort(int fieldNumber) {
+        throw new UnsupportedOperationException();
+      }
+
+      public int[] getSorts() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
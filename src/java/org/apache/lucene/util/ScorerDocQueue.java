@@ -36,21 +36,15 @@ public class ScorerDocQueue {  // later: SpansQueue for spans with doc and term
   private class HeapedScorerDoc {
     Scorer scorer;
     int doc;
-    int[] sorts = new int[Scorer.numSort];
     
     HeapedScorerDoc(Scorer s) { this(s, s.docID()); }
     
     HeapedScorerDoc(Scorer scorer, int doc) {
       this.scorer = scorer;
       this.doc = doc;
-      copySorts(scorer.getSorts());
     }
     
     void adjust() { doc = scorer.docID(); }
-    
-	private void copySorts(int[] sorts) {		
-		DocIdSetIterator.copySorts(sorts, this.sorts);		
-	}
   }
   
   private HeapedScorerDoc topHSD; // same as heap[1], only for speed
@@ -131,7 +125,6 @@ public class ScorerDocQueue {  // later: SpansQueue for spans with doc and term
   private boolean checkAdjustElsePop(boolean cond) {
     if (cond) { // see also adjustTop
       topHSD.doc = topHSD.scorer.docID();
-      DocIdSetIterator.copySorts(topHSD.scorer.getSorts(), topHSD.sorts);
     } else { // see also popNoResult
       heap[1] = heap[size]; // move last to first
       heap[size] = null;
@@ -222,7 +215,9 @@ public class ScorerDocQueue {  // later: SpansQueue for spans with doc and term
     topHSD = heap[1];
   }
   
-	public int[] getSorts() {
-		return topHSD.sorts;
-	}
+  /** Returns the sort values of the top scorer's document. The row
+   * belongs to that scorer and is only valid until it moves. */
+  public int[] getSorts() {
+    return topHSD.scorer.getSorts();
+  }
 }
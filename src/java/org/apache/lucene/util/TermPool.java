@@ -0,0 +1,115 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Terms, numbered in the order they are added, held as UTF-8 bytes in
+ * blocks of 32 KB rather than as one String each: a term takes its bytes
+ * and 4 bytes of offset, and the heap holds a few large arrays instead of
+ * many small objects. Terms are decoded when asked for.
+ * <p>
+ * Terms are added by one thread; once all are added, reads may be
+ * concurrent.
+ *
+ * <b>NOTE:</b> This API is experimental and might change in
+ * incompatible ways in the next release.
+ */
+public final class TermPool {
+  private static final int BLOCK_SHIFT = 15;
+  private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+  private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+  private byte[][] blocks = new byte[1][];
+  private int numBlocks;
+  // offsets[i] is where term i starts, offsets[size] where the last one ends
+  private int[] offsets = new int[17];
+  private int size;
+  private int byteCount;
+  private final UnicodeUtil.UTF8Result utf8 = new UnicodeUtil.UTF8Result();
+
+  /** Adds <code>term</code> and returns its number. */
+  public int add(String term) {
+    UnicodeUtil.UTF16toUTF8(term, 0, term.length(), utf8);
+    if (byteCount + (long) utf8.length > Integer.MAX_VALUE) {
+      throw new IllegalStateException("terms take more than 2 GB");
+    }
+    int upto = 0;
+    while (upto < utf8.length) {
+      final int blockOffset = byteCount & BLOCK_MASK;
+      if (blockOffset == 0 && (byteCount >>> BLOCK_SHIFT) == numBlocks) {
+        if (numBlocks == blocks.length) {
+          byte[][] newBlocks = new byte[ArrayUtil.getNextSize(numBlocks + 1)][];
+          System.arraycopy(blocks, 0, newBlocks, 0, numBlocks);
+          blocks = newBlocks;
+        }
+        blocks[numBlocks++] = new byte[BLOCK_SIZE];
+      }
+      final int chunk = Math.min(utf8.length - upto, BLOCK_SIZE - blockOffset);
+      System.arraycopy(utf8.result, upto, blocks[byteCount >>> BLOCK_SHIFT], blockOffset, chunk);
+      upto += chunk;
+      byteCount += chunk;
+    }
+    if (size + 2 > offsets.length) {
+      offsets = ArrayUtil.grow(offsets, size + 2);
+    }
+    offsets[++size] = byteCount;
+    return size - 1;
+  }
+
+  /** Returns the number of terms. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns term number <code>index</code>. */
+  public String get(int index) {
+    final byte[] bytes = getBytes(index);
+    final UnicodeUtil.UTF16Result utf16 = new UnicodeUtil.UTF16Result();
+    UnicodeUtil.UTF8toUTF16(bytes, 0, bytes.length, utf16);
+    return new String(utf16.result, 0, utf16.length);
+  }
+
+  /** Returns a copy of the UTF-8 bytes of term number <code>index</code>. */
+  public byte[] getBytes(int index) {
+    final int start = offsets[index];
+    final int length = offsets[index + 1] - start;
+    final byte[] bytes = new byte[length];
+    int upto = 0;
+    while (upto < length) {
+      final int pos = start + upto;
+      final int chunk = Math.min(length - upto, BLOCK_SIZE - (pos & BLOCK_MASK));
+      System.arraycopy(blocks[pos >>> BLOCK_SHIFT], pos & BLOCK_MASK, bytes, upto, chunk);
+      upto += chunk;
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns where the UTF-8 bytes of term number <code>index</code> start
+   * in the pool; <code>offset(size())</code> is the number of bytes of all
+   * terms.
+   */
+  public int offset(int index) {
+    return offsets[index];
+  }
+
+  /** Returns the number of bytes the terms and their offsets take. */
+  public long ramBytesUsed() {
+    return (long) numBlocks * BLOCK_SIZE + (long) offsets.length * 4;
+  }
+}
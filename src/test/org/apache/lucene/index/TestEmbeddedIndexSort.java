@@ -0,0 +1,246 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.EmbeddedFieldComparator;
+import org.apache.lucene.search.EmbeddedSortSchema;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldComparatorSource;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestEmbeddedIndexSort extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 200;
+
+  private static final EmbeddedIndexSort SORT = new EmbeddedIndexSort(1, true);
+
+  // with duplicates, and unset for some docs
+  private static int value(int id) {
+    return id % 11 == 0 ? -1 : (id * 37) % 50;
+  }
+
+  private MockRAMDirectory buildIndex(EmbeddedIndexSort indexSort) throws IOException {
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(10);
+    writer.setMergeFactor(3);
+    writer.setEmbeddedIndexSort(indexSort);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("body", "all " + (i % 2 == 0 ? "even" : "odd") + " all", Field.Store.NO,
+          Field.Index.ANALYZED, Field.TermVector.WITH_POSITIONS));
+      if (value(i) != -1) {
+        doc.add(new EmbeddedSortField("price", Integer.toString(value(i)), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      }
+      doc.add(new EmbeddedSortField("rank", Integer.toString(i % 5), Field.Store.NO, Field.Index.NOT_ANALYZED, 2));
+      writer.addDocument(doc);
+      if (i % 30 == 29) {
+        writer.deleteDocuments(new Term("id", Integer.toString(i - 7)));
+      }
+    }
+    writer.optimize();
+    writer.close();
+    return dir;
+  }
+
+  private static boolean deleted(int id) {
+    return id % 30 == 22;
+  }
+
+  public void testMergeWritesSortedSegment() throws IOException {
+    MockRAMDirectory dir = buildIndex(SORT);
+    IndexReader reader = IndexReader.open(dir, true);
+    IndexReader[] subReaders = reader.getSequentialSubReaders();
+    assertEquals(1, subReaders.length);
+    assertEquals(SORT, ((SegmentReader) subReaders[0]).getEmbeddedIndexSort());
+
+    int numDocs = 0;
+    for (int i = 0; i < NUM_DOCS; i++) {
+      if (!deleted(i)) {
+        numDocs++;
+      }
+    }
+    assertEquals(numDocs, reader.numDocs());
+
+    int[] ids = new int[reader.maxDoc()];
+    int lastValue = Integer.MAX_VALUE;
+    int lastId = -1;
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      int id = Integer.parseInt(reader.document(doc).get("id"));
+      assertFalse(deleted(id));
+      ids[doc] = id;
+      // descending by value, ties in the order docs were added
+      assertTrue(value(id) <= lastValue);
+      if (value(id) == lastValue) {
+        assertTrue(id > lastId);
+      }
+      lastValue = value(id);
+      lastId = id;
+
+      TermFreqVector vector = reader.getTermFreqVector(doc, "body");
+      assertEquals(2, vector.size());
+      assertEquals(2, vector.getTermFrequencies()[vector.indexOf("all")]);
+      assertTrue(vector.indexOf(id % 2 == 0 ? "even" : "odd") != -1);
+    }
+
+    TermPositions positions = reader.termPositions(new Term("body", "all"));
+    int expected = 0;
+    while (positions.next()) {
+      assertEquals(expected, positions.doc());
+      int id = ids[positions.doc()];
+      assertEquals(value(id), positions.getSorts()[0]);
+      assertEquals(id % 5, positions.getSorts()[1]);
+      assertEquals(2, positions.freq());
+      assertEquals(0, positions.nextPosition());
+      assertEquals(2, positions.nextPosition());
+      expected++;
+    }
+    assertEquals(numDocs, expected);
+    positions.close();
+
+    TermDocs termDocs = reader.termDocs(new Term("id", "42"));
+    assertTrue(termDocs.next());
+    assertEquals(42, ids[termDocs.doc()]);
+    termDocs.close();
+    reader.close();
+
+    CheckIndex checker = new CheckIndex(dir);
+    assertTrue(checker.checkIndex().clean);
+  }
+
+  public void testDeletesDuringMerge() throws IOException {
+    MockRAMDirectory dir = buildIndex(SORT);
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), false, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setEmbeddedIndexSort(SORT);
+    writer.deleteDocuments(new Term("id", "7"));
+    writer.deleteDocuments(new Term("id", "8"));
+    // buffered deletes are applied before the merge, and carried over
+    writer.expungeDeletes();
+    writer.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    assertEquals(1, reader.getSequentialSubReaders().length);
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      if (!reader.isDeleted(doc)) {
+        String id = reader.document(doc).get("id");
+        assertFalse(id.equals("7") || id.equals("8"));
+      }
+    }
+    TermDocs termDocs = reader.termDocs(new Term("id", "7"));
+    assertFalse(termDocs.next());
+    termDocs.close();
+    reader.close();
+  }
+
+  private Sort sort() {
+    return new Sort(new SortField("price", new FieldComparatorSource() {
+      public FieldComparator newComparator(String fieldname, int numHits, int sortPos, boolean reversed) {
+        return new EmbeddedFieldComparator.IntComparator(numHits, fieldname, null, 1);
+      }
+    }, true));
+  }
+
+  public void testEarlyTermination() throws IOException {
+    MockRAMDirectory sortedDir = buildIndex(SORT);
+    MockRAMDirectory unsortedDir = buildIndex(null);
+    IndexSearcher sorted = new IndexSearcher(sortedDir, true);
+    sorted.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    IndexSearcher unsorted = new IndexSearcher(unsortedDir, true);
+    unsorted.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+
+    String[] terms = new String[] { "all", "even", "odd" };
+    for (int t = 0; t < terms.length; t++) {
+      TermQuery query = new TermQuery(new Term("body", terms[t]));
+      TopDocs full = unsorted.search(query, null, 10, sort());
+      TopDocs early = sorted.search(query, null, 10, sort(), SORT);
+      TopDocs unsortedEarly = unsorted.search(query, null, 10, sort(), SORT);
+
+      assertEquals(10, early.scoreDocs.length);
+      assertFalse(early.isTotalHitsExact());
+      assertTrue(early.totalHits < full.totalHits);
+      assertTrue(unsortedEarly.isTotalHitsExact());
+      assertEquals(full.totalHits, unsortedEarly.totalHits);
+
+      for (int i = 0; i < 10; i++) {
+        assertEquals(full.scoreDocs[i].sorts[0], early.scoreDocs[i].sorts[0]);
+        assertEquals(unsorted.doc(full.scoreDocs[i].doc).get("id"), sorted.doc(early.scoreDocs[i].doc).get("id"));
+      }
+    }
+
+    // fewer hits than asked for: nothing to stop early
+    TopDocs hits = sorted.search(new TermQuery(new Term("id", "3")), null, 10, sort(), SORT);
+    assertEquals(1, hits.totalHits);
+    assertTrue(hits.isTotalHitsExact());
+
+    // exactly n hits: all were seen, none skipped
+    TermQuery all = new TermQuery(new Term("body", "all"));
+    int numHits = unsorted.search(all, null, 10, sort()).totalHits;
+    hits = sorted.search(all, null, numHits, sort(), SORT);
+    assertEquals(numHits, hits.totalHits);
+    assertTrue(hits.isTotalHitsExact());
+
+    sorted.close();
+    unsorted.close();
+  }
+
+  private static Sort sort(final int slot, boolean reverse) {
+    return new Sort(new SortField("price", new FieldComparatorSource() {
+      public FieldComparator newComparator(String fieldname, int numHits, int sortPos, boolean reversed) {
+        return new EmbeddedFieldComparator.IntComparator(numHits, fieldname, null, slot);
+      }
+    }, reverse));
+  }
+
+  public void testSortMustMatchIndexSort() throws IOException {
+    MockRAMDirectory dir = buildIndex(SORT);
+    IndexSearcher searcher = new IndexSearcher(dir, true);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    TermQuery query = new TermQuery(new Term("body", "all"));
+
+    Sort[] mismatches = new Sort[] {
+        sort(1, false),
+        sort(2, true),
+        new Sort(new SortField("price", SortField.INT, true)),
+        new Sort(new SortField[] { sort().getSort()[0], new SortField("rank", SortField.INT) })
+    };
+    for (int i = 0; i < mismatches.length; i++) {
+      try {
+        searcher.search(query, null, 10, mismatches[i], SORT);
+        fail("sort " + mismatches[i] + " should not match " + SORT);
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+
+    Sort withDoc = new Sort(new SortField[] { sort().getSort()[0], SortField.FIELD_DOC });
+    assertEquals(10, searcher.search(query, null, 10, withDoc, SORT).scoreDocs.length);
+    searcher.close();
+  }
+}
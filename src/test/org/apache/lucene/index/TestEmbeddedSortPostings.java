@@ -0,0 +1,264 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.EmbeddedRangeFieldFilter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.ReaderUtil;
+
+public class TestEmbeddedSortPostings extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 157;
+
+  private MockRAMDirectory dir;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(10);
+    writer.setMergeFactor(3);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", "all " + (i % 2 == 0 ? "even" : "odd"), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new EmbeddedSortField("timestamp", Integer.toString(1000 + i), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      if (i % 3 == 0) {
+        doc.add(new EmbeddedSortField("category", Integer.toString(i % 7), Field.Store.NO, Field.Index.NOT_ANALYZED, 3));
+      }
+      writer.addDocument(doc);
+    }
+    writer.close();
+  }
+
+  private void assertSorts(int doc, int[] sorts) {
+    assertEquals(1000 + doc, sorts[0]);
+    assertEquals(-1, sorts[1]);
+    assertEquals(doc % 3 == 0 ? doc % 7 : -1, sorts[2]);
+  }
+
+  public void testNextAndSkipTo() throws IOException {
+    IndexReader reader = IndexReader.open(dir, true);
+    IndexReader[] subReaders = reader.getSequentialSubReaders();
+    int base = 0;
+    for (int i = 0; i < subReaders.length; i++) {
+      TermDocs termDocs = subReaders[i].termDocs(new Term("body", "all"));
+      int count = 0;
+      while (termDocs.next()) {
+        assertSorts(base + termDocs.doc(), termDocs.getSorts());
+        count++;
+      }
+      assertEquals(subReaders[i].maxDoc(), count);
+
+      termDocs.seek(new Term("body", "odd"));
+      int target = subReaders[i].maxDoc() / 2;
+      if (termDocs.skipTo(target)) {
+        assertTrue(termDocs.doc() >= target);
+        assertSorts(base + termDocs.doc(), termDocs.getSorts());
+      }
+      termDocs.close();
+      base += subReaders[i].maxDoc();
+    }
+    reader.close();
+  }
+
+  public void testBulkReadAfterOptimize() throws IOException {
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), false, IndexWriter.MaxFieldLength.LIMITED);
+    writer.optimize();
+    writer.close();
+
+    IndexReader reader = IndexReader.open(dir, false);
+    reader.deleteDocument(4);
+    TermDocs termDocs = reader.termDocs(new Term("body", "even"));
+    int[] docs = new int[16];
+    int[] freqs = new int[16];
+    byte[] norms = new byte[16];
+    int[][] sorts = new int[16][4];
+    int expected = 0;
+    int n;
+    while ((n = termDocs.read(docs, freqs, norms, sorts)) > 0) {
+      for (int i = 0; i < n; i++) {
+        if (expected == 4) {
+          expected += 2;
+        }
+        assertEquals(expected, docs[i]);
+        assertEquals(1, freqs[i]);
+        assertSorts(docs[i], sorts[i]);
+        assertEquals(-1, sorts[i][3]);
+        expected += 2;
+      }
+    }
+    assertEquals(NUM_DOCS + 1, expected);
+    termDocs.close();
+    reader.close();
+  }
+
+  public void testColumnarRead() throws IOException {
+    IndexReader reader = IndexReader.open(dir, true);
+    TermDocs termDocs = reader.termDocs(new Term("body", "all"));
+    int[] docs = new int[20];
+    int[] freqs = new int[20];
+    int[] sorts = new int[3 * 20];
+    int expected = 0;
+    int n;
+    while ((n = ReaderUtil.readSortColumns(termDocs, docs, freqs, null, sorts, 3)) > 0) {
+      for (int i = 0; i < n; i++) {
+        assertEquals(expected, docs[i]);
+        assertSorts(docs[i], new int[] { sorts[i], sorts[20 + i], sorts[40 + i] });
+        expected++;
+      }
+    }
+    assertEquals(NUM_DOCS, expected);
+
+    // fewer slots than the index holds: the rest are skipped
+    termDocs.seek(new Term("body", "odd"));
+    n = ReaderUtil.readSortColumns(termDocs, docs, freqs, null, sorts, 1);
+    assertTrue(n > 0);
+    for (int i = 0; i < n; i++) {
+      assertEquals(1000 + docs[i], sorts[i]);
+    }
+    termDocs.close();
+    reader.close();
+  }
+
+  /** A TermDocs that only has the methods of the interface. */
+  private static final class PlainTermDocs implements TermDocs {
+    private final TermDocs in;
+
+    PlainTermDocs(TermDocs in) {
+      this.in = in;
+    }
+
+    public void seek(Term term) throws IOException { in.seek(term); }
+    public void seek(TermEnum termEnum) throws IOException { in.seek(termEnum); }
+    public int doc() { return in.doc(); }
+    public int freq() { return in.freq(); }
+    public int[] getSorts() { return in.getSorts(); }
+    public int getSort(int fieldNumber) { return in.getSort(fieldNumber); }
+    public boolean next() throws IOException { return in.next(); }
+    public int read(int[] docs, int[] freqs) throws IOException { return in.read(docs, freqs); }
+    public int read(int[] docs, int[] freqs, byte[] norms, int[][] sorts) throws IOException { return in.read(docs, freqs, norms, sorts); }
+    public boolean skipTo(int target) throws IOException { return in.skipTo(target); }
+    public void close() throws IOException { in.close(); }
+    public Byte norm() { return in.norm(); }
+  }
+
+  public void testColumnarReadOfPlainTermDocs() throws IOException {
+    IndexReader reader = IndexReader.open(dir, true);
+    TermDocs termDocs = new PlainTermDocs(reader.termDocs(new Term("body", "odd")));
+    assertFalse(termDocs instanceof ColumnSortTermDocs);
+    int[] docs = new int[20];
+    int[] freqs = new int[20];
+    byte[] norms = new byte[20];
+    int[] sorts = new int[4 * 20];
+    int expected = 1;
+    int n;
+    while ((n = ReaderUtil.readSortColumns(termDocs, docs, freqs, norms, sorts, 4)) > 0) {
+      for (int i = 0; i < n; i++) {
+        assertEquals(expected, docs[i]);
+        assertEquals(1, freqs[i]);
+        assertSorts(docs[i], new int[] { sorts[i], sorts[20 + i], sorts[40 + i] });
+        assertEquals(-1, sorts[60 + i]);
+        expected += 2;
+      }
+    }
+    assertEquals(NUM_DOCS, expected);
+    termDocs.close();
+    reader.close();
+  }
+
+  public void testFilteredSearch() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(dir, true);
+    TopDocs hits = searcher.search(new TermQuery(new Term("body", "odd")),
+        new EmbeddedRangeFieldFilter(1100, 1120, 1), 100);
+    assertEquals(10, hits.totalHits);
+    for (int i = 0; i < hits.scoreDocs.length; i++) {
+      ScoreDoc hit = hits.scoreDocs[i];
+      assertEquals(1, hit.doc % 2);
+      assertSorts(hit.doc, hit.sorts);
+    }
+    searcher.close();
+  }
+
+  public void testSortRangeSkipsIntervals() throws IOException {
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    for (int i = 0; i < 3000; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", "all", Field.Store.NO, Field.Index.ANALYZED));
+      if (i % 10 != 0) {
+        doc.add(new EmbeddedSortField("timestamp", Integer.toString(i), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      }
+      writer.addDocument(doc);
+    }
+    writer.optimize();
+    writer.close();
+
+    IndexReader reader = IndexReader.open(dir, false);
+    reader.deleteDocument(2005);
+    int[][] ranges = new int[][] { { 2000, 2010 }, { 0, 5 }, { 2990, 5000 }, { -1, -1 }, { 4000, 5000 } };
+    int[] docs = new int[32];
+    int[] freqs = new int[32];
+    int[] sorts = new int[2 * 32];
+    for (int r = 0; r < ranges.length; r++) {
+      TermDocs termDocs = reader.termDocs(new Term("body", "all"));
+      assertTrue(ReaderUtil.restrictSortRange(termDocs, 0, ranges[r][0], ranges[r][1]));
+      int read = 0;
+      int matches = 0;
+      int n;
+      while ((n = ReaderUtil.readSortColumns(termDocs, docs, freqs, null, sorts, 2)) > 0) {
+        for (int i = 0; i < n; i++) {
+          assertEquals(docs[i] % 10 == 0 ? -1 : docs[i], sorts[i]);
+          assertEquals(-1, sorts[32 + i]);
+          if (sorts[i] >= ranges[r][0] && sorts[i] <= ranges[r][1]) {
+            matches++;
+          }
+          read++;
+        }
+      }
+      termDocs.close();
+
+      int expected = 0;
+      for (int doc = 0; doc < 3000; doc++) {
+        int value = doc % 10 == 0 ? -1 : doc;
+        if (doc != 2005 && value >= ranges[r][0] && value <= ranges[r][1]) {
+          expected++;
+        }
+      }
+      assertEquals(expected, matches);
+      // every interval holds an unset doc, so -1 cannot be skipped
+      assertTrue("read " + read + " for range " + r, r == 3 || read < 100);
+    }
+    reader.close();
+  }
+
+  public void testCheckIndex() throws IOException {
+    CheckIndex checker = new CheckIndex(dir);
+    assertTrue(checker.checkIndex().clean);
+  }
+}
@@ -24,7 +24,6 @@ import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.TermPositions;
 import org.apache.lucene.util.PriorityQueue;
 
 /**
@@ -294,19 +293,6 @@ final class JustCompileSearch {
     
   }
 
-  static final class JustCompilePhraseScorer extends PhraseScorer {
-
-    JustCompilePhraseScorer(Weight weight, TermPositions[] tps, int[] offsets,
-        Similarity similarity, byte[] norms) {
-      super(weight, tps, offsets, similarity, norms);
-    }
-
-    protected float phraseFreq() throws IOException {
-      throw new UnsupportedOperationException(UNSUPPORTED_MSG);
-    }
-    
-  }
-
   static final class JustCompileQuery extends Query {
 
     public String toString(String field) {
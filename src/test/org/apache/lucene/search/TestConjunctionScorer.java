@@ -0,0 +1,226 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+
+public class TestConjunctionScorer extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 2000;
+  private static final int NUM_WORDS = 20;
+
+  private MockRAMDirectory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  private Random random;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(700);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      // word w<k> is in about one doc in k + 1, so lists differ in length
+      StringBuffer body = new StringBuffer();
+      for (int k = 0; k < NUM_WORDS; k++) {
+        if (random.nextInt(k + 1) == 0) {
+          body.append(" w").append(k);
+        }
+      }
+      Document doc = new Document();
+      doc.add(new Field("body", body.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new EmbeddedSortField("price", Integer.toString(i % 100), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    searcher = new IndexSearcher(reader);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  private BitSet docs(String word) throws IOException {
+    BitSet docs = new BitSet();
+    TermDocs termDocs = reader.termDocs(new Term("body", word));
+    while (termDocs.next()) {
+      docs.set(termDocs.doc());
+    }
+    termDocs.close();
+    return docs;
+  }
+
+  private BooleanQuery randomConjunction(BitSet expected) throws IOException {
+    BooleanQuery query = new BooleanQuery();
+    expected.set(0, NUM_DOCS);
+    int numClauses = 2 + random.nextInt(3);
+    for (int i = 0; i < numClauses; i++) {
+      String word = "w" + random.nextInt(NUM_WORDS / 2);
+      query.add(new TermQuery(new Term("body", word)), BooleanClause.Occur.MUST);
+      expected.and(docs(word));
+    }
+    return query;
+  }
+
+  private void assertHits(Query query, Filter filter, BitSet expected) throws IOException {
+    TopDocs hits = searcher.search(query, filter, NUM_DOCS);
+    assertEquals(query.toString(), expected.cardinality(), hits.totalHits);
+    for (int i = 0; i < hits.scoreDocs.length; i++) {
+      int doc = hits.scoreDocs[i].doc;
+      assertTrue(expected.get(doc));
+      assertEquals(searcher.explain(query, doc).getValue(), hits.scoreDocs[i].score, 1e-5f);
+    }
+  }
+
+  public void testConjunctions() throws IOException {
+    for (int i = 0; i < 30; i++) {
+      BitSet expected = new BitSet();
+      Query query = randomConjunction(expected);
+      assertHits(query, null, expected);
+    }
+  }
+
+  public void testLeadsWithRarestClause() throws IOException {
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("body", "w0")), BooleanClause.Occur.MUST);
+    query.add(new TermQuery(new Term("body", "w9")), BooleanClause.Occur.MUST);
+    query.add(new TermQuery(new Term("body", "w3")), BooleanClause.Occur.MUST);
+    Scorer scorer = query.weight(searcher).scorer(segment, true, false);
+    assertEquals(segment.docFreq(new Term("body", "w9")), scorer.cost());
+  }
+
+  // Accepts the docs of a top-level bit set, one segment at a time
+  private static class BitsFilter extends Filter {
+    private final BitSet bits;
+    private final IndexReader[] segments;
+
+    BitsFilter(BitSet bits, IndexReader[] segments) {
+      this.bits = bits;
+      this.segments = segments;
+    }
+
+    public DocIdSet getDocIdSet(IndexReader reader) {
+      int base = 0;
+      for (int i = 0; segments[i] != reader; i++) {
+        base += segments[i].maxDoc();
+      }
+      OpenBitSet result = new OpenBitSet(reader.maxDoc());
+      for (int doc = 0; doc < reader.maxDoc(); doc++) {
+        if (bits.get(base + doc)) {
+          result.set(doc);
+        }
+      }
+      return result;
+    }
+  }
+
+  public void testFilterAsClause() throws IOException {
+    IndexReader[] segments = reader.getSequentialSubReaders();
+    for (int i = 0; i < 20; i++) {
+      BitSet bits = new BitSet();
+      for (int doc = 0; doc < NUM_DOCS; doc++) {
+        if (random.nextInt(4) == 0) {
+          bits.set(doc);
+        }
+      }
+      BitSet expected = new BitSet();
+      Query query;
+      if (i % 2 == 0) {
+        query = randomConjunction(expected);
+      } else {
+        query = new TermQuery(new Term("body", "w1"));
+        expected = docs("w1");
+      }
+      expected.and(bits);
+      assertHits(query, new BitsFilter(bits, segments), expected);
+    }
+  }
+
+  public void testEmbeddedFilterOnClauses() throws IOException {
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(1));
+    EmbeddedFieldFilter filter = new EmbeddedRangeFieldFilter(20, 40, 1);
+    for (int i = 0; i < 20; i++) {
+      BitSet expected = new BitSet();
+      Query query = randomConjunction(expected);
+      for (int doc = expected.nextSetBit(0); doc >= 0; doc = expected.nextSetBit(doc + 1)) {
+        if (doc % 100 < 20 || doc % 100 > 40) {
+          expected.clear(doc);
+        }
+      }
+      assertHits(query, filter, expected);
+    }
+  }
+
+  public void testGallopingAdvance() throws IOException {
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    for (int i = 0; i < 50; i++) {
+      Term term = new Term("body", "w" + random.nextInt(4));
+      int[] postings = new int[segment.docFreq(term)];
+      TermDocs termDocs = segment.termDocs(term);
+      for (int j = 0; termDocs.next(); j++) {
+        postings[j] = termDocs.doc();
+      }
+      termDocs.close();
+
+      Scorer scorer = new TermQuery(term).weight(searcher).scorer(segment, true, false);
+      // index in postings of the scorer's doc
+      int current = -1;
+      while (true) {
+        int expected;
+        int doc;
+        if (random.nextBoolean()) {
+          // mostly short hops within a block, sometimes long ones
+          int from = current == -1 ? 0 : postings[current];
+          int target = from + 1 + (random.nextInt(10) == 0 ? random.nextInt(300) : random.nextInt(8));
+          expected = current + 1;
+          while (expected < postings.length && postings[expected] < target) {
+            expected++;
+          }
+          doc = scorer.advance(target);
+        } else {
+          expected = current + 1;
+          doc = scorer.nextDoc();
+        }
+        if (expected == postings.length) {
+          assertEquals(DocIdSetIterator.NO_MORE_DOCS, doc);
+          break;
+        }
+        assertEquals(postings[expected], doc);
+        current = expected;
+      }
+    }
+  }
+}
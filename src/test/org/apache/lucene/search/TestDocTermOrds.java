@@ -0,0 +1,172 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestDocTermOrds extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 300;
+
+  private IndexReader reader;
+  // the tags of each document
+  private SortedSet[] tags;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    Random random = newRandom();
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(100);
+    writer.setMergeFactor(10);
+    tags = new SortedSet[NUM_DOCS];
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", String.valueOf(i), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("single", "s" + random.nextInt(20), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      tags[i] = new TreeSet();
+      int count = random.nextInt(4);
+      for (int j = 0; j < count; j++) {
+        String tag = "t" + random.nextInt(30) + "é";
+        tags[i].add(tag);
+        doc.add(new Field("tag", tag, Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, false);
+    for (int i = 0; i < NUM_DOCS; i += 9) {
+      reader.deleteDocuments(new Term("id", String.valueOf(i)));
+    }
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  public void testOrds() throws IOException {
+    AccessorFieldCache cache = new FieldCacheImpl();
+    IndexReader[] segments = reader.getSequentialSubReaders();
+    int docBase = 0;
+    for (int s = 0; s < segments.length; s++) {
+      IndexReader segment = segments[s];
+      FieldCache.DocTermOrds ords = cache.getDocTermOrds(segment, "tag");
+      assertSame(ords, cache.getDocTermOrds(segment, "tag"));
+      assertNull(ords.lookup(0));
+      for (int ord = 2; ord < ords.numOrd(); ord++) {
+        assertTrue(ords.lookup(ord - 1).compareTo(ords.lookup(ord)) < 0);
+      }
+      for (int doc = 0; doc < segment.maxDoc(); doc++) {
+        if (segment.isDeleted(doc)) {
+          continue;
+        }
+        SortedSet expected = tags[docBase + doc];
+        assertEquals(expected.size(), ords.ordCount(doc));
+        SortedSet actual = new TreeSet();
+        for (int i = 0; i < ords.ordCount(doc); i++) {
+          if (i > 0) {
+            assertTrue(ords.ord(doc, i - 1) < ords.ord(doc, i));
+          }
+          actual.add(ords.lookup(ords.ord(doc, i)));
+        }
+        assertEquals(expected, actual);
+        assertEquals(expected.isEmpty() ? null : expected.first(), ords.lookup(ords.getOrd(doc)));
+      }
+      docBase += segment.maxDoc();
+    }
+  }
+
+  public void testSingleValued() throws IOException {
+    AccessorFieldCache cache = new FieldCacheImpl();
+    IndexReader[] segments = reader.getSequentialSubReaders();
+    for (int s = 0; s < segments.length; s++) {
+      IndexReader segment = segments[s];
+      FieldCache.DocTermOrds ords = cache.getDocTermOrds(segment, "single");
+      FieldCache.StringIndex index = cache.getStringIndex(segment, "single");
+      assertEquals(index.lookup.length, ords.numOrd());
+      for (int doc = 0; doc < segment.maxDoc(); doc++) {
+        if (!segment.isDeleted(doc)) {
+          assertEquals(1, ords.ordCount(doc));
+          assertEquals(index.order[doc], ords.getOrd(doc));
+          assertEquals(index.lookup[index.order[doc]], ords.lookup(ords.ord(doc, 0)));
+        }
+      }
+      assertEquals(index.binarySearchLookup("s3"), ords.binarySearchLookup("s3"));
+    }
+  }
+
+  public void testFacetCounts() throws IOException {
+    AccessorFieldCache cache = new FieldCacheImpl();
+    TopScoreDocCollector top = TopScoreDocCollector.create(10, true);
+    TermFacetCollector facets = new TermFacetCollector("tag", top, cache);
+    new IndexSearcher(reader).search(new MatchAllDocsQuery(), facets);
+
+    int[] expected = new int[30];
+    int missing = 0;
+    for (int i = 0; i < NUM_DOCS; i++) {
+      if (i % 9 == 0) {
+        continue;
+      }
+      if (tags[i].isEmpty()) {
+        missing++;
+      }
+      for (int t = 0; t < expected.length; t++) {
+        if (tags[i].contains("t" + t + "é")) {
+          expected[t]++;
+        }
+      }
+    }
+    assertEquals(reader.numDocs(), facets.getTotalHits());
+    assertEquals(reader.numDocs(), top.getTotalHits());
+    assertEquals(missing, facets.getMissingCount());
+    for (int t = 0; t < expected.length; t++) {
+      assertEquals(expected[t], facets.getCount("t" + t + "é"));
+    }
+
+    TermFacetCollector.Entry[] topTerms = facets.getTopTerms(5);
+    assertEquals(5, topTerms.length);
+    for (int i = 1; i < topTerms.length; i++) {
+      TermFacetCollector.Entry prev = topTerms[i - 1];
+      assertTrue(prev.getCount() > topTerms[i].getCount()
+          || (prev.getCount() == topTerms[i].getCount() && prev.getTerm().compareTo(topTerms[i].getTerm()) < 0));
+    }
+    // every term counted more than the last is among them
+    for (int t = 0; t < expected.length; t++) {
+      if (expected[t] > topTerms[4].getCount()) {
+        boolean found = false;
+        for (int i = 0; i < topTerms.length; i++) {
+          found |= topTerms[i].getTerm().equals("t" + t + "é");
+        }
+        assertTrue(found);
+      }
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestEmbeddedCollapseCollector extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 500;
+
+  private IndexSearcher searcher;
+
+  private static int seller(int id) {
+    return id % 23 == 0 ? -1 : (id * 7) % 31;
+  }
+
+  private static int price(int id) {
+    return (id * 37) % 211;
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(70);
+    writer.setMergeFactor(50);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", "all" + (i % 2 == 0 ? " even" : "") + (i % 3 == 0 ? " three" : ""),
+          Field.Store.NO, Field.Index.ANALYZED));
+      if (seller(i) != -1) {
+        doc.add(new EmbeddedSortField("seller", Integer.toString(seller(i)), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      }
+      doc.add(new EmbeddedSortField("price", Integer.toString(price(i)), Field.Store.NO, Field.Index.NOT_ANALYZED, 2));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    searcher = new IndexSearcher(dir, true);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    assertTrue(searcher.getIndexReader().getSequentialSubReaders().length > 1);
+  }
+
+  protected void tearDown() throws Exception {
+    searcher.close();
+    super.tearDown();
+  }
+
+  private static Sort byPrice() {
+    return new Sort(new SortField("price", new FieldComparatorSource() {
+      public FieldComparator newComparator(String fieldname, int numHits, int sortPos, boolean reversed) {
+        return new EmbeddedFieldComparator.IntComparator(numHits, fieldname, null, 2);
+      }
+    }, true));
+  }
+
+  private static final int ALL = 0, EVEN = 1, EVEN_NOT_THREE = 2;
+
+  private static boolean matches(int id, int docs) {
+    switch (docs) {
+    case EVEN:
+      return id % 2 == 0;
+    case EVEN_NOT_THREE:
+      return id % 2 == 0 && id % 3 != 0;
+    default:
+      return true;
+    }
+  }
+
+  private void assertCollapsed(Query query, int docs, int numGroups) throws IOException {
+    EmbeddedCollapseCollector collector = new EmbeddedCollapseCollector(1, byPrice(), numGroups, false);
+    searcher.search(query, collector);
+
+    // the best hit of each group: highest price, then lowest id
+    int[] heads = new int[32];
+    int[] counts = new int[32];
+    int numHits = 0;
+    Arrays.fill(heads, -1);
+    for (int id = 0; id < NUM_DOCS; id++) {
+      if (matches(id, docs)) {
+        numHits++;
+        int group = seller(id) + 1;
+        counts[group]++;
+        if (heads[group] == -1 || price(id) > price(heads[group])) {
+          heads[group] = id;
+        }
+      }
+    }
+    int numGroupsSeen = 0;
+    for (int g = 0; g < counts.length; g++) {
+      if (counts[g] > 0) {
+        numGroupsSeen++;
+      }
+      assertEquals("group " + (g - 1), counts[g], collector.getGroupHitCount(g - 1));
+    }
+    assertEquals(numHits, collector.getTotalHits());
+    assertEquals(numGroupsSeen, collector.getTotalGroupCount());
+
+    TopFieldDocs top = collector.topDocs();
+    assertEquals(numHits, top.totalHits);
+    assertEquals(Math.min(numGroups, numGroupsSeen), top.scoreDocs.length);
+    boolean[] returned = new boolean[32];
+    for (int i = 0; i < top.scoreDocs.length; i++) {
+      ScoreDoc hit = top.scoreDocs[i];
+      int group = collector.getGroup(hit);
+      assertFalse(returned[group + 1]);
+      returned[group + 1] = true;
+      assertEquals("group " + group, heads[group + 1], hit.doc);
+      assertEquals(price(hit.doc), ((Integer) ((FieldDoc) hit).fields[0]).intValue());
+      if (i > 0) {
+        ScoreDoc prev = top.scoreDocs[i - 1];
+        assertTrue(price(prev.doc) > price(hit.doc) || (price(prev.doc) == price(hit.doc) && prev.doc < hit.doc));
+      }
+    }
+    // no group left out has a better head than the last one returned
+    ScoreDoc last = top.scoreDocs[top.scoreDocs.length - 1];
+    for (int g = 0; g < heads.length; g++) {
+      if (heads[g] != -1 && !returned[g]) {
+        assertTrue(price(heads[g]) < price(last.doc) || (price(heads[g]) == price(last.doc) && heads[g] > last.doc));
+      }
+    }
+  }
+
+  public void testCollapse() throws IOException {
+    Query all = new TermQuery(new Term("body", "all"));
+    Query even = new TermQuery(new Term("body", "even"));
+    assertCollapsed(all, ALL, 5);
+    assertCollapsed(all, ALL, 1);
+    assertCollapsed(all, ALL, 100);
+    assertCollapsed(even, EVEN, 7);
+
+    // out of order
+    BooleanQuery disjunction = new BooleanQuery();
+    disjunction.add(even, BooleanClause.Occur.SHOULD);
+    disjunction.add(new TermQuery(new Term("body", "three")), BooleanClause.Occur.SHOULD);
+    disjunction.add(new TermQuery(new Term("body", "missing")), BooleanClause.Occur.SHOULD);
+    BooleanQuery query = new BooleanQuery();
+    query.add(disjunction, BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("body", "three")), BooleanClause.Occur.MUST_NOT);
+    assertCollapsed(query, EVEN_NOT_THREE, 10);
+  }
+
+  public void testRelevance() throws IOException {
+    Query query = new TermQuery(new Term("body", "all"));
+    float[] scores = new float[NUM_DOCS];
+    ScoreDoc[] hits = searcher.search(query, NUM_DOCS).scoreDocs;
+    for (int i = 0; i < hits.length; i++) {
+      scores[hits[i].doc] = hits[i].score;
+    }
+
+    EmbeddedCollapseCollector collector = new EmbeddedCollapseCollector(1, Sort.RELEVANCE, 10, true);
+    searcher.search(query, collector);
+    TopFieldDocs top = collector.topDocs();
+    assertEquals(10, top.scoreDocs.length);
+    for (int i = 0; i < top.scoreDocs.length; i++) {
+      ScoreDoc hit = top.scoreDocs[i];
+      assertEquals(scores[hit.doc], hit.score, 0.0f);
+      // the head scores highest in its group, and is its first doc to do so
+      int group = collector.getGroup(hit);
+      for (int id = 0; id < NUM_DOCS; id++) {
+        if (seller(id) == group) {
+          assertTrue(scores[id] < hit.score || (scores[id] == hit.score && id >= hit.doc));
+        }
+      }
+      if (i > 0) {
+        ScoreDoc prev = top.scoreDocs[i - 1];
+        assertTrue(prev.score > hit.score || (prev.score == hit.score && prev.doc < hit.doc));
+      }
+    }
+    assertEquals(top.scoreDocs[0].score, top.getMaxScore(), 0.0f);
+  }
+}
@@ -0,0 +1,184 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestEmbeddedFacetCollector extends LuceneTestCase {
+
+  private static final int[] BOUNDS = new int[] { 0, 100, 250, 500, 900 };
+
+  private static int category(int id) {
+    return id % 13 == 0 ? -1 : id % 7;
+  }
+
+  private static int price(int id) {
+    return (id * 17) % 1000;
+  }
+
+  private MockRAMDirectory buildIndex(int from, int to) throws IOException {
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(20);
+    for (int i = from; i < to; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", "all " + (i % 3 == 0 ? "three" : "other"), Field.Store.NO, Field.Index.ANALYZED));
+      if (category(i) != -1) {
+        doc.add(new EmbeddedSortField("category", Integer.toString(category(i)), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      }
+      doc.add(new EmbeddedSortField("price", Integer.toString(price(i)), Field.Store.NO, Field.Index.NOT_ANALYZED, 2));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    return dir;
+  }
+
+  private EmbeddedFacetCollector newCollector(Collector in) {
+    EmbeddedFacetCollector collector = new EmbeddedFacetCollector(in);
+    collector.addValueFacet(1);
+    collector.addRangeFacet(2, BOUNDS);
+    return collector;
+  }
+
+  private void assertCounts(EmbeddedFacetCounts counts, int from, int to) {
+    int[] categories = new int[7];
+    int[] ranges = new int[BOUNDS.length - 1];
+    int missing = 0;
+    int hits = 0;
+    for (int i = from; i < to; i++) {
+      if (i % 3 != 0) {
+        continue;
+      }
+      hits++;
+      if (category(i) == -1) {
+        missing++;
+      } else {
+        categories[category(i)]++;
+      }
+      for (int r = 0; r < ranges.length; r++) {
+        if (price(i) >= BOUNDS[r] && price(i) < BOUNDS[r + 1]) {
+          ranges[r]++;
+        }
+      }
+    }
+    assertEquals(hits, counts.getTotalHits());
+    assertEquals(missing, counts.getMissingCount(1));
+    assertEquals(0, counts.getMissingCount(2));
+    for (int c = 0; c < categories.length; c++) {
+      assertEquals(categories[c], counts.getCount(1, c));
+    }
+    assertEquals(7, counts.getNumValues(1));
+    int[] rangeCounts = counts.getRangeCounts(2);
+    for (int r = 0; r < ranges.length; r++) {
+      assertEquals(ranges[r], rangeCounts[r]);
+    }
+
+    EmbeddedFacetCounts.Entry[] top = counts.getTopValues(1, 3);
+    assertEquals(3, top.length);
+    for (int i = 0; i < top.length; i++) {
+      assertEquals(categories[top[i].value], top[i].count);
+      for (int c = 0; c < categories.length; c++) {
+        boolean ranked = false;
+        for (int j = 0; j <= i; j++) {
+          ranked |= top[j].value == c;
+        }
+        // every value left out ranks below the ones returned
+        if (!ranked) {
+          assertTrue(categories[c] < top[i].count || (categories[c] == top[i].count && c > top[i].value));
+        }
+      }
+    }
+    assertEquals(7, counts.getTopValues(1, 20).length);
+  }
+
+  public void testCounts() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(buildIndex(0, 300), true);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    TopScoreDocCollector top = TopScoreDocCollector.create(10, true);
+    EmbeddedFacetCollector collector = newCollector(top);
+    searcher.search(new TermQuery(new Term("body", "three")), collector);
+    assertCounts(collector.getCounts(), 0, 300);
+    assertEquals(100, top.getTotalHits());
+    assertEquals(10, top.topDocs().scoreDocs.length);
+
+    try {
+      collector.getCounts().getCount(2, 5);
+      fail("slot 2 is counted by range");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      collector.addValueFacet(1);
+      fail("slot 1 is counted already");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    searcher.close();
+  }
+
+  public void testSlotOutsideSchema() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(buildIndex(0, 60), true);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(1));
+    EmbeddedFacetCollector collector = newCollector(null);
+    searcher.search(new TermQuery(new Term("body", "three")), collector);
+    assertEquals(20, collector.getCounts().getTotalHits());
+    assertEquals(20, collector.getCounts().getMissingCount(2));
+    searcher.close();
+  }
+
+  public void testMergeShards() throws IOException {
+    IndexSearcher first = new IndexSearcher(buildIndex(0, 150), true);
+    IndexSearcher second = new IndexSearcher(buildIndex(150, 300), true);
+    Searchable[] shards = new Searchable[] { first, second };
+    Query query = new TermQuery(new Term("body", "three"));
+
+    EmbeddedFacetCounts[] shardCounts = new EmbeddedFacetCounts[shards.length];
+    for (int i = 0; i < shards.length; i++) {
+      ((IndexSearcher) shards[i]).setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+      EmbeddedFacetCollector collector = newCollector(null);
+      ((IndexSearcher) shards[i]).search(query, collector);
+      shardCounts[i] = collector.getCounts();
+    }
+    assertCounts(EmbeddedFacetCounts.merge(shardCounts), 0, 300);
+
+    MultiSearcher multi = new MultiSearcher(shards);
+    multi.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    EmbeddedFacetCollector collector = newCollector(null);
+    multi.search(query, collector);
+    assertCounts(collector.getCounts(), 0, 300);
+
+    EmbeddedFacetCollector ranges = new EmbeddedFacetCollector();
+    ranges.addRangeFacet(2, BOUNDS);
+    try {
+      collector.getCounts().merge(ranges.getCounts());
+      fail("cannot merge counts of other slots");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    multi.close();
+  }
+}
@@ -0,0 +1,186 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestEmbeddedFieldFilter extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 300;
+
+  private MockRAMDirectory dir;
+  private IndexReader reader;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(70);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", "all " + (i % 2 == 0 ? "even" : "odd"), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new EmbeddedSortField("price", Integer.toString(i), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      if (i % 4 != 0) {
+        doc.add(new EmbeddedSortField("category", Integer.toString(i % 7), Field.Store.NO, Field.Index.NOT_ANALYZED, 2));
+      }
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  private static int[] row(int doc) {
+    return new int[] { doc, doc % 4 != 0 ? doc % 7 : -1 };
+  }
+
+  private EmbeddedFieldFilter[] filters() {
+    EmbeddedMultiFieldsFilter and = new EmbeddedMultiFieldsFilter();
+    and.addFilter(new EmbeddedRangeFieldFilter(50, 250, 1));
+    and.addFilter(new EmbeddedTermFieldFilter(3, 2));
+
+    EmbeddedMultiFieldsFilter or = new EmbeddedMultiFieldsFilter(EmbeddedMultiFieldsFilter.OR);
+    or.addFilter(new EmbeddedRangeFieldFilter(0, 20, 1));
+    or.addFilter(new EmbeddedNotFieldFilter(new EmbeddedInFieldFilter(new int[] { 5, 1, 3 }, 2)));
+
+    EmbeddedMultiFieldsFilter nested = new EmbeddedMultiFieldsFilter();
+    nested.addFilter(or);
+    nested.addFilter(new EmbeddedNotFieldFilter(new EmbeddedRangeFieldFilter(100, 199, 1)));
+
+    // not compiled into instructions, called back per row
+    EmbeddedFieldFilter custom = new EmbeddedFieldFilter(1) {
+      boolean filter(int[] sort) {
+        return sort[0] % 3 == 0;
+      }
+    };
+    EmbeddedMultiFieldsFilter withCustom = new EmbeddedMultiFieldsFilter(EmbeddedMultiFieldsFilter.OR);
+    withCustom.addFilter(custom);
+    withCustom.addFilter(new EmbeddedInFieldFilter(new int[] { 6 }, 2));
+
+    return new EmbeddedFieldFilter[] {
+        new EmbeddedRangeFieldFilter(10, 60, 1),
+        new EmbeddedTermFieldFilter(2, 2),
+        new EmbeddedInFieldFilter(new int[] { 0, 4 }, 2),
+        and, or, nested, withCustom,
+        new EmbeddedMultiFieldsFilter(),
+        new EmbeddedMultiFieldsFilter(EmbeddedMultiFieldsFilter.OR),
+        // slot 3 is not in the schema below, so it is always unset
+        new EmbeddedTermFieldFilter(8, 3),
+    };
+  }
+
+  public void testProgramMatchesFilter() {
+    EmbeddedFieldFilter[] filters = filters();
+    // the last filter reads a slot the rows here do not have
+    for (int f = 0; f < filters.length - 1; f++) {
+      EmbeddedFieldFilter filter = filters[f];
+      EmbeddedFilterProgram program = filter.compile();
+      for (int doc = 0; doc < NUM_DOCS; doc++) {
+        assertEquals("filter " + f + " doc " + doc, filter.filter(row(doc)), program.matches(row(doc)));
+      }
+    }
+  }
+
+  public void testBlockEvaluation() {
+    int[] blockSizes = new int[] { 1, 63, 64, 65, 200 };
+    EmbeddedFieldFilter[] filters = filters();
+    for (int b = 0; b < blockSizes.length; b++) {
+      int blockSize = blockSizes[b];
+      int[] columns = new int[2 * blockSize];
+      for (int f = 0; f < filters.length - 1; f++) {
+        EmbeddedFilterProgram.Evaluator evaluator = filters[f].compile().newEvaluator(2, blockSize);
+        for (int start = 0; start < NUM_DOCS; start += blockSize) {
+          int count = Math.min(blockSize, NUM_DOCS - start);
+          for (int i = 0; i < count; i++) {
+            int[] row = row(start + i);
+            columns[i] = row[0];
+            columns[blockSize + i] = row[1];
+          }
+          long[] mask = evaluator.evaluate(columns, count);
+          for (int i = count; i < ((count + 63) & ~63); i++) {
+            assertEquals(0, mask[i >>> 6] & (1L << i));
+          }
+          for (int i = 0; i < count; i++) {
+            boolean expected = filters[f].filter(row(start + i));
+            assertEquals("filter " + f + " doc " + (start + i), expected, (mask[i >>> 6] & (1L << i)) != 0);
+          }
+        }
+      }
+    }
+  }
+
+  public void testSearch() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    BooleanQuery bq = new BooleanQuery();
+    bq.add(new TermQuery(new Term("body", "even")), BooleanClause.Occur.SHOULD);
+    bq.add(new TermQuery(new Term("body", "odd")), BooleanClause.Occur.SHOULD);
+    // the term query evaluates whole blocks, the boolean query row by row
+    Query[] queries = new Query[] { new TermQuery(new Term("body", "all")), bq };
+
+    EmbeddedFieldFilter[] filters = filters();
+    for (int f = 0; f < filters.length; f++) {
+      int expected = 0;
+      for (int doc = 0; doc < NUM_DOCS; doc++) {
+        if (f == filters.length - 1 || filters[f].filter(row(doc))) {
+          expected++;
+        }
+      }
+      for (int q = 0; q < queries.length; q++) {
+        TopDocs hits = searcher.search(queries[q], filters[f], NUM_DOCS);
+        assertEquals("filter " + f + " query " + q, expected, hits.totalHits);
+        for (int i = 0; i < hits.scoreDocs.length; i++) {
+          ScoreDoc hit = hits.scoreDocs[i];
+          assertEquals(hit.doc, hit.sorts[0]);
+          if (f < filters.length - 1) {
+            assertTrue(filters[f].filter(hit.sorts));
+          }
+        }
+      }
+    }
+  }
+
+  public void testTooDeep() {
+    EmbeddedFieldFilter filter = new EmbeddedTermFieldFilter(1, 1);
+    for (int i = 0; i < EmbeddedFilterProgram.MAX_DEPTH; i++) {
+      EmbeddedMultiFieldsFilter parent = new EmbeddedMultiFieldsFilter();
+      parent.addFilter(new EmbeddedTermFieldFilter(1, 1));
+      parent.addFilter(filter);
+      filter = parent;
+    }
+    try {
+      filter.compile();
+      fail("filter is too deep");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestEmbeddedSortSchema extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 60;
+
+  private MockRAMDirectory dir;
+  private IndexReader reader;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(7);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", "quick brown " + (i % 2 == 0 ? "fox" : "dog"), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new EmbeddedSortField("price", Integer.toString(100 + i), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      doc.add(new EmbeddedSortField("rank", Integer.toString(i % 5), Field.Store.NO, Field.Index.NOT_ANALYZED, 3));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  private Query[] queries() {
+    BooleanQuery bq = new BooleanQuery();
+    bq.add(new TermQuery(new Term("body", "fox")), BooleanClause.Occur.SHOULD);
+    bq.add(new TermQuery(new Term("body", "dog")), BooleanClause.Occur.SHOULD);
+    BooleanQuery conj = new BooleanQuery();
+    conj.add(new TermQuery(new Term("body", "quick")), BooleanClause.Occur.MUST);
+    conj.add(new TermQuery(new Term("body", "dog")), BooleanClause.Occur.MUST_NOT);
+    PhraseQuery pq = new PhraseQuery();
+    pq.add(new Term("body", "brown"));
+    pq.add(new Term("body", "fox"));
+    return new Query[] { new TermQuery(new Term("body", "quick")), bq, conj, pq };
+  }
+
+  public void testSchemasSideBySide() throws IOException {
+    IndexSearcher narrow = new IndexSearcher(reader);
+    narrow.setEmbeddedSortSchema(new EmbeddedSortSchema(1));
+    IndexSearcher wide = new IndexSearcher(reader);
+    wide.setEmbeddedSortSchema(new EmbeddedSortSchema(4));
+
+    Query[] queries = queries();
+    for (int i = 0; i < queries.length; i++) {
+      ScoreDoc[] narrowHits = narrow.search(queries[i], NUM_DOCS).scoreDocs;
+      ScoreDoc[] wideHits = wide.search(queries[i], NUM_DOCS).scoreDocs;
+      assertTrue(narrowHits.length > 0);
+      assertEquals(narrowHits.length, wideHits.length);
+      for (int j = 0; j < narrowHits.length; j++) {
+        int doc = narrowHits[j].doc;
+        assertEquals(1, narrowHits[j].sorts.length);
+        assertEquals(100 + doc, narrowHits[j].sorts[0]);
+
+        doc = wideHits[j].doc;
+        assertEquals(4, wideHits[j].sorts.length);
+        assertEquals(100 + doc, wideHits[j].sorts[0]);
+        assertEquals(-1, wideHits[j].sorts[1]);
+        assertEquals(doc % 5, wideHits[j].sorts[2]);
+        assertEquals(-1, wideHits[j].sorts[3]);
+      }
+    }
+  }
+
+  public void testBlockSizes() throws IOException {
+    int[] blockSizes = new int[] { 1, 3, 32, 100 };
+    for (int b = 0; b < blockSizes.length; b++) {
+      EmbeddedSortSchema schema = new EmbeddedSortSchema(3);
+      schema.setBlockSize(blockSizes[b]);
+      IndexSearcher searcher = new IndexSearcher(reader);
+      searcher.setEmbeddedSortSchema(schema);
+      Query[] queries = queries();
+      for (int i = 0; i < queries.length; i++) {
+        ScoreDoc[] hits = searcher.search(queries[i], NUM_DOCS).scoreDocs;
+        assertTrue(hits.length > 0);
+        for (int j = 0; j < hits.length; j++) {
+          assertEquals(100 + hits[j].doc, hits[j].sorts[0]);
+          assertEquals(hits[j].doc % 5, hits[j].sorts[2]);
+        }
+      }
+      TopDocs hits = searcher.search(new TermQuery(new Term("body", "quick")),
+          new EmbeddedRangeFieldFilter(110, 119, 1), NUM_DOCS);
+      assertEquals(10, hits.totalHits);
+    }
+  }
+
+  public void testNoSlots() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setEmbeddedSortSchema(EmbeddedSortSchema.NONE);
+    Query[] queries = queries();
+    for (int i = 0; i < queries.length; i++) {
+      ScoreDoc[] hits = searcher.search(queries[i], NUM_DOCS).scoreDocs;
+      assertTrue(hits.length > 0);
+      for (int j = 0; j < hits.length; j++) {
+        assertSame(DocIdSetIterator.NO_SORTS, hits[j].sorts);
+      }
+    }
+    assertEquals(NUM_DOCS, searcher.search(new MatchAllDocsQuery(), NUM_DOCS).totalHits);
+  }
+
+  public void testNoSlotsIsShared() {
+    try {
+      EmbeddedSortSchema.NONE.setBlockSize(8);
+      fail("the shared schema must not change");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      EmbeddedSortSchema.NONE.setEpochTime(0);
+      fail("the shared schema must not change");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    assertEquals(EmbeddedSortSchema.DEFAULT_BLOCK_SIZE, EmbeddedSortSchema.NONE.getBlockSize());
+  }
+
+  public void testDefaultIsShared() throws IOException {
+    IndexSearcher first = new IndexSearcher(reader);
+    IndexSearcher second = new IndexSearcher(reader);
+    assertSame(first.getEmbeddedSortSchema(), second.getEmbeddedSortSchema());
+    try {
+      first.getEmbeddedSortSchema().setBlockSize(8);
+      fail("the shared schema must not change");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    EmbeddedSortSchema copy = first.getEmbeddedSortSchema().copy();
+    copy.setBlockSize(8);
+    first.setEmbeddedSortSchema(copy);
+    assertEquals(8, first.getEmbeddedSortSchema().getBlockSize());
+    assertEquals(EmbeddedSortSchema.DEFAULT_BLOCK_SIZE, second.getEmbeddedSortSchema().getBlockSize());
+    assertEquals(second.getEmbeddedSortSchema().getNumSlots(), copy.getNumSlots());
+    assertEquals(second.getEmbeddedSortSchema().getEpochTime(), copy.getEpochTime());
+  }
+
+  public void testSortedSearch() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(3));
+    Sort sort = new Sort(new SortField("price", new FieldComparatorSource() {
+      public FieldComparator newComparator(String fieldname, int numHits, int sortPos, boolean reversed) {
+        return new EmbeddedFieldComparator.IntComparator(numHits, fieldname, null, 1);
+      }
+    }, true));
+    TopDocs hits = searcher.search(new TermQuery(new Term("body", "fox")), null, 5, sort);
+    assertEquals(NUM_DOCS / 2, hits.totalHits);
+    for (int i = 0; i < hits.scoreDocs.length; i++) {
+      assertEquals(NUM_DOCS - 2 - 2 * i, hits.scoreDocs[i].doc);
+      assertEquals(100 + hits.scoreDocs[i].doc, hits.scoreDocs[i].sorts[0]);
+    }
+  }
+
+  public void testRowsPassedThroughScorerTree() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(3));
+
+    BooleanQuery conj = new BooleanQuery();
+    conj.add(new TermQuery(new Term("body", "quick")), BooleanClause.Occur.MUST);
+    conj.add(new TermQuery(new Term("body", "fox")), BooleanClause.Occur.MUST);
+    BooleanQuery minShould = new BooleanQuery();
+    minShould.add(new TermQuery(new Term("body", "quick")), BooleanClause.Occur.SHOULD);
+    minShould.add(new TermQuery(new Term("body", "brown")), BooleanClause.Occur.SHOULD);
+    minShould.add(new TermQuery(new Term("body", "dog")), BooleanClause.Occur.SHOULD);
+    minShould.setMinimumNumberShouldMatch(3);
+    DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(0.1f);
+    dmq.add(new TermQuery(new Term("body", "fox")));
+    dmq.add(new TermQuery(new Term("body", "dog")));
+    Query filtered = new FilteredQuery(new TermQuery(new Term("body", "brown")),
+        new QueryWrapperFilter(new TermQuery(new Term("body", "dog"))));
+
+    Query[] queries = new Query[] { conj, minShould, dmq, filtered };
+    int[] expected = new int[] { NUM_DOCS / 2, NUM_DOCS / 2, NUM_DOCS, NUM_DOCS / 2 };
+    for (int i = 0; i < queries.length; i++) {
+      TopDocs hits = searcher.search(queries[i], NUM_DOCS);
+      assertEquals(expected[i], hits.totalHits);
+      for (int j = 0; j < hits.scoreDocs.length; j++) {
+        ScoreDoc hit = hits.scoreDocs[j];
+        assertEquals(100 + hit.doc, hit.sorts[0]);
+        assertEquals(hit.doc % 5, hit.sorts[2]);
+      }
+    }
+  }
+
+  public void testTimelinessSlotMustExist() {
+    EmbeddedSortSchema schema = new EmbeddedSortSchema(new int[] { EmbeddedSortSchema.INT, EmbeddedSortSchema.TIMESTAMP });
+    schema.setTimelinessBoosting(1, 2.0f, 60);
+    assertTrue(schema.isTimelinessBoosting());
+    try {
+      schema.setTimelinessBoosting(2, 2.0f, 60);
+      fail("slot 2 does not exist");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
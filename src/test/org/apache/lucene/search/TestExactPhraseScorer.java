@@ -0,0 +1,199 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestExactPhraseScorer extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 300;
+  private static final String WORDS = "abcdef";
+
+  private String[][] tokens;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  private Random random;
+
+  // scores are phrase frequencies times the weight's value
+  private static class FreqSimilarity extends DefaultSimilarity {
+    public float tf(float freq) { return freq; }
+    public float idf(int docFreq, int numDocs) { return 1.0f; }
+    public float queryNorm(float sumOfSquaredWeights) { return 1.0f; }
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(70);
+    tokens = new String[NUM_DOCS][];
+    for (int i = 0; i < NUM_DOCS; i++) {
+      tokens[i] = new String[1 + random.nextInt(30)];
+      StringBuffer body = new StringBuffer();
+      Document doc = new Document();
+      for (int j = 0; j < tokens[i].length; j++) {
+        // skewed, so that some words are rare
+        tokens[i][j] = String.valueOf(WORDS.charAt(Math.min(random.nextInt(WORDS.length()), random.nextInt(WORDS.length()))));
+        body.append(tokens[i][j]).append(' ');
+        if (j > 0) {
+          doc.add(new Field("shingles", tokens[i][j - 1] + " " + tokens[i][j], Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        }
+      }
+      Field field = new Field("body", body.toString(), Field.Store.NO, Field.Index.ANALYZED);
+      field.setOmitNorms(true);
+      doc.add(field);
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    searcher = new IndexSearcher(reader);
+    searcher.setSimilarity(new FreqSimilarity());
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  // how often the phrase is in doc: words[i] lists the words allowed at offsets[i]
+  private int freq(int doc, String[][] words, int[] offsets) {
+    int freq = 0;
+    String[] text = tokens[doc];
+    for (int start = 0; start < text.length; start++) {
+      boolean match = true;
+      for (int i = 0; i < words.length && match; i++) {
+        int p = start + offsets[i];
+        match = false;
+        for (int k = 0; p < text.length && k < words[i].length; k++) {
+          match |= words[i][k].equals(text[p]);
+        }
+      }
+      if (match) {
+        freq++;
+      }
+    }
+    return freq;
+  }
+
+  private void assertFreqs(Query query, String[][] words, int[] offsets) throws IOException {
+    float[] scores = new float[NUM_DOCS];
+    float value = query.weight(searcher).getValue();
+    ScoreDoc[] hits = searcher.search(query, NUM_DOCS).scoreDocs;
+    for (int i = 0; i < hits.length; i++) {
+      scores[hits[i].doc] = hits[i].score / value;
+    }
+    for (int doc = 0; doc < NUM_DOCS; doc++) {
+      assertEquals(query + " in " + doc, freq(doc, words, offsets), scores[doc], 0f);
+    }
+  }
+
+  private int[] randomOffsets(int length) {
+    int[] offsets = new int[length];
+    for (int i = 1; i < length; i++) {
+      // mostly adjacent, sometimes a gap
+      offsets[i] = offsets[i - 1] + (random.nextInt(5) == 0 ? 2 : 1);
+    }
+    return offsets;
+  }
+
+  public void testPhrases() throws IOException {
+    for (int iter = 0; iter < 100; iter++) {
+      int length = 2 + random.nextInt(3);
+      int[] offsets = randomOffsets(length);
+      String[][] words = new String[length][];
+      PhraseQuery query = new PhraseQuery();
+      PhraseQuery shingled = new PhraseQuery();
+      shingled.setShingleField("shingles");
+      for (int i = 0; i < length; i++) {
+        words[i] = new String[] { String.valueOf(WORDS.charAt(random.nextInt(3))) };
+        query.add(new Term("body", words[i][0]), offsets[i]);
+        shingled.add(new Term("body", words[i][0]), offsets[i]);
+      }
+      assertFreqs(query, words, offsets);
+      assertFreqs(shingled, words, offsets);
+    }
+  }
+
+  public void testMultiPhrases() throws IOException {
+    for (int iter = 0; iter < 50; iter++) {
+      int length = 2 + random.nextInt(2);
+      int[] offsets = randomOffsets(length);
+      String[][] words = new String[length][];
+      MultiPhraseQuery query = new MultiPhraseQuery();
+      for (int i = 0; i < length; i++) {
+        int first = random.nextInt(WORDS.length() - 1);
+        words[i] = random.nextBoolean()
+            ? new String[] { String.valueOf(WORDS.charAt(first)) }
+            : new String[] { String.valueOf(WORDS.charAt(first)), String.valueOf(WORDS.charAt(first + 1)) };
+        Term[] terms = new Term[words[i].length];
+        for (int k = 0; k < terms.length; k++) {
+          terms[k] = new Term("body", words[i][k]);
+        }
+        query.add(terms, offsets[i]);
+      }
+      assertFreqs(query, words, offsets);
+    }
+  }
+
+  public void testAdvance() throws IOException {
+    PhraseQuery query = new PhraseQuery();
+    query.add(new Term("body", "a"));
+    query.add(new Term("body", "b"));
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    int[] offsets = new int[] { 0, 1 };
+    String[][] words = new String[][] { { "a" }, { "b" } };
+    for (int step = 1; step < 10; step++) {
+      Weight weight = query.weight(searcher);
+      Scorer scorer = weight.scorer(segment, true, false);
+      int doc = scorer.advance(step);
+      for (int d = step; d < segment.maxDoc(); d++) {
+        if (freq(d, words, offsets) > 0) {
+          assertEquals(d, doc);
+          assertEquals(freq(d, words, offsets), scorer.score() / weight.getValue(), 0f);
+          doc = scorer.advance(d + step);
+          d += step - 1;
+        }
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, doc);
+    }
+  }
+
+  public void testCostIsRarestTerm() throws IOException {
+    PhraseQuery query = new PhraseQuery();
+    query.add(new Term("body", "a"));
+    query.add(new Term("body", "f"));
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    Scorer scorer = query.weight(searcher).scorer(segment, true, false);
+    assertEquals(segment.docFreq(new Term("body", "f")), scorer.cost());
+
+    query.setShingleField("shingles");
+    scorer = query.weight(searcher).scorer(segment, true, false);
+    assertTrue(scorer == null || segment.docFreq(new Term("shingles", "a f")) == scorer.cost());
+  }
+}
@@ -0,0 +1,154 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestFieldCacheStats extends LuceneTestCase {
+
+  private IndexReader reader;
+  private IndexReader[] segments;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(100);
+    writer.setMergeFactor(10);
+    for (int i = 0; i < 400; i++) {
+      Document doc = new Document();
+      doc.add(new Field("int", String.valueOf(i % 37), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("long", String.valueOf(i * 1000L), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("string", "s" + (i % 11), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    segments = reader.getSequentialSubReaders();
+    assertEquals(4, segments.length);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  public void testHitsAndMisses() throws IOException {
+    FieldCacheImpl cache = new FieldCacheImpl();
+    int[] ints = cache.getInts(segments[0], "int", FieldCache.DEFAULT_INT_PARSER);
+    assertSame(ints, cache.getInts(segments[0], "int", FieldCache.DEFAULT_INT_PARSER));
+    assertSame(ints, cache.getInts(segments[0], "int", FieldCache.DEFAULT_INT_PARSER));
+    cache.getInts(segments[1], "int", FieldCache.DEFAULT_INT_PARSER);
+
+    AccessorFieldCache.Stats stats = cache.getStats();
+    assertEquals(2, stats.getHitCount());
+    assertEquals(2, stats.getMissCount());
+    assertEquals(0.5, stats.getHitRate(), 0.0);
+    assertEquals(0, stats.getEvictionCount());
+    assertEquals(2, stats.getEntryCount());
+    assertTrue(stats.getLoadNanos() > 0);
+    // two arrays of ints
+    assertTrue(stats.getRamBytesUsed() >= 2 * 4 * 100);
+    assertEquals(Long.MAX_VALUE, cache.getMaxRamBytes());
+  }
+
+  public void testEvictsLeastRecentlyUsed() throws IOException {
+    FieldCacheImpl cache = new FieldCacheImpl();
+    long[] first = cache.getLongs(segments[0], "long", FieldCache.DEFAULT_LONG_PARSER);
+    long[] second = cache.getLongs(segments[1], "long", FieldCache.DEFAULT_LONG_PARSER);
+    long oneArray = cache.getStats().getRamBytesUsed() / 2;
+    // make the first the most recently used
+    assertSame(first, cache.getLongs(segments[0], "long", FieldCache.DEFAULT_LONG_PARSER));
+
+    cache.setMaxRamBytes(2 * oneArray + oneArray / 2);
+    assertEquals(0, cache.getStats().getEvictionCount());
+    cache.getLongs(segments[2], "long", FieldCache.DEFAULT_LONG_PARSER);
+    AccessorFieldCache.Stats stats = cache.getStats();
+    assertEquals(1, stats.getEvictionCount());
+    assertEquals(2, stats.getEntryCount());
+    assertTrue(stats.getRamBytesUsed() <= cache.getMaxRamBytes());
+    assertSame(first, cache.getLongs(segments[0], "long", FieldCache.DEFAULT_LONG_PARSER));
+    assertNotSame(second, cache.getLongs(segments[1], "long", FieldCache.DEFAULT_LONG_PARSER));
+
+    // a value larger than the bound is kept until the next one loads
+    cache.setMaxRamBytes(1);
+    assertEquals(0, cache.getStats().getEntryCount());
+    cache.getLongs(segments[3], "long", FieldCache.DEFAULT_LONG_PARSER);
+    assertEquals(1, cache.getStats().getEntryCount());
+  }
+
+  public void testConcurrentLoadsLoadOnce() throws Exception {
+    final FieldCacheImpl cache = new FieldCacheImpl();
+    final Object[] results = new Object[8];
+    Thread[] threads = new Thread[results.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int slot = i;
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            results[slot] = cache.getStringIndex(segments[slot % 2], "string");
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+    }
+    for (int i = 2; i < results.length; i++) {
+      assertSame(results[i % 2], results[i]);
+    }
+    assertEquals(2, cache.getStats().getMissCount());
+    assertEquals(results.length - 2, cache.getStats().getHitCount());
+  }
+
+  public void testWarmer() throws IOException {
+    AccessorFieldCache cache = new FieldCacheImpl();
+    SortField intField = new SortField("int", SortField.INT);
+    SortField stringField = new SortField("string", SortField.STRING);
+    intField.setFieldCache(cache);
+    stringField.setFieldCache(cache);
+    Sort sort = new Sort(new SortField[] { intField, stringField, SortField.FIELD_DOC });
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      new FieldCacheWarmer(executor).warm(reader, sort);
+    } finally {
+      executor.shutdown();
+    }
+    long misses = cache.getStats().getMissCount();
+    assertTrue(misses >= 2 * segments.length);
+
+    new IndexSearcher(reader).search(new MatchAllDocsQuery(), null, 10, sort);
+    assertEquals(misses, cache.getStats().getMissCount());
+  }
+}
@@ -18,6 +18,9 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.util.LuceneTestCase;
@@ -27,6 +30,7 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MockRAMDirectory;
@@ -323,6 +327,127 @@ public class TestFuzzyQuery extends LuceneTestCase {
     r.close();
   }
 
+  // the similarity FuzzyTermEnum has always computed, from a full matrix
+  private static float similarity(String text, String prefix, String target, float minSimilarity) {
+    final int n = text.length();
+    final int m = target.length();
+    if (n == 0) {
+      return prefix.length() == 0 ? 0.0f : 1.0f - ((float) m / prefix.length());
+    }
+    if (m == 0) {
+      return prefix.length() == 0 ? 0.0f : 1.0f - ((float) n / prefix.length());
+    }
+    final int maxDistance = (int) ((1 - minSimilarity) * (Math.min(n, m) + prefix.length()));
+    if (maxDistance < Math.abs(m - n)) {
+      return 0.0f;
+    }
+    int[][] d = new int[n + 1][m + 1];
+    for (int i = 0; i <= n; i++) d[i][0] = i;
+    for (int j = 0; j <= m; j++) d[0][j] = j;
+    for (int i = 1; i <= n; i++) {
+      for (int j = 1; j <= m; j++) {
+        int cost = text.charAt(i - 1) == target.charAt(j - 1) ? 0 : 1;
+        d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+      }
+    }
+    if (d[n][m] > maxDistance) {
+      return 0.0f;
+    }
+    return 1.0f - ((float) d[n][m] / (float) (prefix.length() + Math.min(n, m)));
+  }
+
+  private static String randomWord(Random random, int maxLength) {
+    // a small alphabet, so that words are close, and a char beyond ASCII
+    final String chars = "abcd\u00e9";
+    StringBuffer word = new StringBuffer();
+    int length = random.nextInt(maxLength + 1);
+    for (int i = 0; i < length; i++) {
+      word.append(chars.charAt(random.nextInt(chars.length())));
+    }
+    return word.toString();
+  }
+
+  public void testSameTermsAsEditDistance() throws Exception {
+    Random random = newRandom();
+    MockRAMDirectory directory = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(100);
+    for (int i = 0; i < 500; i++) {
+      Document doc = new Document();
+      doc.add(new Field("field", randomWord(random, 9) + " x", Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new Field("other", randomWord(random, 9), Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    IndexReader reader = IndexReader.open(directory, true);
+
+    for (int iter = 0; iter < 200; iter++) {
+      String text = randomWord(random, 8);
+      float minSimilarity = random.nextInt(9) / 10.0f;
+      int prefixLength = random.nextInt(3);
+      String prefix = text.substring(0, Math.min(prefixLength, text.length()));
+
+      List expected = new ArrayList();
+      List differences = new ArrayList();
+      TermEnum terms = reader.terms(new Term("field", ""));
+      do {
+        Term t = terms.term();
+        if (t == null || t.field() != "field") {
+          break;
+        }
+        if (t.text().startsWith(prefix)) {
+          float similarity = similarity(text.substring(prefix.length()), prefix,
+              t.text().substring(prefix.length()), minSimilarity);
+          if (similarity > minSimilarity) {
+            expected.add(t);
+            differences.add(new Float((similarity - minSimilarity) / (1 - minSimilarity)));
+          }
+        }
+      } while (terms.next());
+      terms.close();
+
+      List actual = new ArrayList();
+      FuzzyTermEnum fuzzy = new FuzzyTermEnum(reader, new Term("field", text), minSimilarity, prefixLength);
+      do {
+        if (fuzzy.term() != null) {
+          assertEquals(((Float) differences.get(actual.size())).floatValue(), fuzzy.difference(), 1e-5f);
+          actual.add(fuzzy.term());
+        }
+      } while (fuzzy.next());
+      fuzzy.close();
+      assertEquals(text + "~" + minSimilarity + " prefix " + prefixLength, expected, actual);
+    }
+    reader.close();
+  }
+
+  public void testMaxExpansions() throws Exception {
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    addDoc("abcdef", writer);
+    addDoc("abcdex", writer);
+    addDoc("abcdxx", writer);
+    addDoc("abcxxx", writer);
+    addDoc("xbcdef", writer);
+    writer.close();
+    IndexReader reader = IndexReader.open(directory, true);
+
+    FuzzyQuery query = new FuzzyQuery(new Term("field", "abcdef"), 0.4f, 0, 2);
+    BooleanQuery rewritten = (BooleanQuery) query.rewrite(reader);
+    BooleanClause[] clauses = rewritten.getClauses();
+    assertEquals(2, clauses.length);
+    List terms = new ArrayList();
+    for (int i = 0; i < clauses.length; i++) {
+      terms.add(((TermQuery) clauses[i].getQuery()).getTerm().text());
+    }
+    assertTrue(terms.contains("abcdef"));
+    // one edit each, and ties go to the earlier term
+    assertTrue(terms.contains("abcdex"));
+
+    assertEquals(5, ((BooleanQuery) new FuzzyQuery(new Term("field", "abcdef"), 0.4f, 0).rewrite(reader)).clauses().size());
+    assertFalse(query.equals(new FuzzyQuery(new Term("field", "abcdef"), 0.4f, 0, 3)));
+    reader.close();
+  }
+
   private void addDoc(String text, IndexWriter writer) throws IOException {
     Document doc = new Document();
     doc.add(new Field("field", text, Field.Store.YES, Field.Index.ANALYZED));
@@ -0,0 +1,251 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestIndexSearcherExecutor extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 1500;
+
+  private ExecutorService executor;
+  private IndexReader reader;
+  private IndexSearcher serial;
+  private IndexSearcher concurrent;
+  private Random random;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(60);
+    writer.setMergeFactor(100);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      StringBuffer body = new StringBuffer();
+      for (int k = 0; k < 6; k++) {
+        if (random.nextInt(k + 2) == 0) {
+          body.append(" w").append(k);
+        }
+      }
+      Document doc = new Document();
+      doc.add(new Field("body", body.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new Field("id", Integer.toString(i % 97), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new EmbeddedSortField("price", Integer.toString(random.nextInt(50)), Field.Store.NO, Field.Index.NOT_ANALYZED, 1));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    executor = Executors.newFixedThreadPool(3);
+    serial = new IndexSearcher(reader);
+    serial.setEmbeddedSortSchema(new EmbeddedSortSchema(1));
+    concurrent = new IndexSearcher(reader, executor);
+    concurrent.setEmbeddedSortSchema(new EmbeddedSortSchema(1));
+    // enough segments for several slices
+    assertTrue(reader.getSequentialSubReaders().length > 10);
+  }
+
+  protected void tearDown() throws Exception {
+    executor.shutdown();
+    reader.close();
+    super.tearDown();
+  }
+
+  private Query randomQuery() {
+    BooleanQuery query = new BooleanQuery();
+    for (int k = 0; k < 6; k++) {
+      if (random.nextInt(3) == 0) {
+        query.add(new TermQuery(new Term("body", "w" + k)),
+            random.nextInt(4) == 0 ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD);
+      }
+    }
+    if (query.clauses().size() == 0) {
+      query.add(new TermQuery(new Term("body", "w0")), BooleanClause.Occur.SHOULD);
+    }
+    return query;
+  }
+
+  private static void assertSameHits(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.totalHits, actual.totalHits);
+    assertEquals(expected.isTotalHitsExact(), actual.isTotalHitsExact());
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    if (!Float.isNaN(expected.getMaxScore())) {
+      assertEquals(expected.getMaxScore(), actual.getMaxScore(), 0f);
+    }
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      ScoreDoc e = expected.scoreDocs[i];
+      ScoreDoc a = actual.scoreDocs[i];
+      assertEquals("rank " + i, e.doc, a.doc);
+      assertEquals("rank " + i, e.score, a.score, 0f);
+      assertTrue("rank " + i, Arrays.equals(e.sorts, a.sorts));
+      if (e instanceof FieldDoc) {
+        assertTrue(Arrays.equals(((FieldDoc) e).fields, ((FieldDoc) a).fields));
+      }
+    }
+  }
+
+  public void testSlices() {
+    IndexReader[] segments = reader.getSequentialSubReaders();
+    int[][] slices = concurrent.slices(segments);
+    assertTrue(slices.length > 1);
+    boolean[] seen = new boolean[segments.length];
+    for (int i = 0; i < slices.length; i++) {
+      assertTrue(slices[i].length <= 5);
+      for (int j = 0; j < slices[i].length; j++) {
+        assertFalse(seen[slices[i][j]]);
+        seen[slices[i][j]] = true;
+      }
+    }
+    for (int i = 0; i < seen.length; i++) {
+      assertTrue(seen[i]);
+    }
+  }
+
+  public void testOverriddenSlicesSeeSubclassFields() throws IOException {
+    final List computed = new ArrayList();
+    IndexSearcher searcher = new IndexSearcher(reader, executor) {
+      private final int[][] fixed = oneSegmentPerSlice(reader);
+
+      protected int[][] slices(IndexReader[] subReaders) {
+        computed.add(fixed);
+        return fixed;
+      }
+    };
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(1));
+    assertEquals(0, computed.size());
+    Query query = new TermQuery(new Term("body", "w0"));
+    assertSameHits(serial.search(query, 10), searcher.search(query, 10));
+    assertSameHits(serial.search(query, 20), searcher.search(query, 20));
+    assertEquals(1, computed.size());
+    assertNotNull(computed.get(0));
+  }
+
+  private static int[][] oneSegmentPerSlice(IndexReader reader) {
+    int[][] slices = new int[reader.getSequentialSubReaders().length][];
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = new int[] { i };
+    }
+    return slices;
+  }
+
+  public void testTopScoringHits() throws IOException {
+    for (int i = 0; i < 20; i++) {
+      Query query = randomQuery();
+      int n = 1 + random.nextInt(50);
+      assertSameHits(serial.search(query, n), concurrent.search(query, n));
+      Filter filter = new QueryWrapperFilter(new TermQuery(new Term("body", "w1")));
+      assertSameHits(serial.search(query, filter, n), concurrent.search(query, filter, n));
+    }
+  }
+
+  public void testSortedHits() throws IOException {
+    Sort[] sorts = new Sort[] {
+        new Sort(new SortField[] { new SortField("id", SortField.INT), SortField.FIELD_DOC }),
+        new Sort(new SortField[] { new SortField("id", SortField.STRING_VAL, true), SortField.FIELD_SCORE }),
+        new Sort(new SortField("price", new FieldComparatorSource() {
+          public FieldComparator newComparator(String fieldname, int numHits, int sortPos, boolean reversed) {
+            return new EmbeddedFieldComparator.IntComparator(numHits, fieldname, null, 1);
+          }
+        })) };
+    serial.setDefaultFieldSortScoring(true, true);
+    concurrent.setDefaultFieldSortScoring(true, true);
+    for (int i = 0; i < 20; i++) {
+      Query query = randomQuery();
+      Sort sort = sorts[i % sorts.length];
+      int n = 1 + random.nextInt(50);
+      assertSameHits(serial.search(query, null, n, sort), concurrent.search(query, null, n, sort));
+    }
+  }
+
+  public void testEmbeddedFilter() throws IOException {
+    EmbeddedFieldFilter filter = new EmbeddedRangeFieldFilter(10, 20, 1);
+    for (int i = 0; i < 10; i++) {
+      Query query = randomQuery();
+      assertSameHits(serial.search(query, filter, 30), concurrent.search(query, filter, 30));
+    }
+  }
+
+  public void testFailureCancelsOtherSlices() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    ExecutorService blocked = Executors.newSingleThreadExecutor();
+    // keeps the slices queued until the caller's slice has failed
+    blocked.submit(new Runnable() {
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    final Thread caller = Thread.currentThread();
+    final int[] otherSegments = new int[1];
+    Filter failing = new Filter() {
+      public DocIdSet getDocIdSet(IndexReader reader) {
+        if (Thread.currentThread() == caller) {
+          throw new IllegalStateException("failing slice");
+        }
+        synchronized (otherSegments) {
+          otherSegments[0]++;
+        }
+        return DocIdSet.EMPTY_DOCIDSET;
+      }
+    };
+    IndexSearcher searcher = new IndexSearcher(reader, blocked);
+    try {
+      searcher.search(new TermQuery(new Term("body", "w0")), failing, 10);
+      fail("the caller's slice should have failed");
+    } catch (IllegalStateException expected) {
+    }
+    release.countDown();
+    blocked.shutdown();
+    assertTrue(blocked.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(0, otherSegments[0]);
+  }
+
+  public void testSkippedHitsAreNotExact() throws IOException {
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("body", "w0")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("body", "w5")), BooleanClause.Occur.SHOULD);
+    TopDocs expected = serial.search(query, 5);
+    TopDocs actual = concurrent.search(query, null, 5, false);
+    assertFalse(actual.isTotalHitsExact());
+    assertTrue(actual.totalHits <= expected.totalHits);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 1e-5f);
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+
+public class TestMaxScoreScorer extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 3000;
+  private static final int NUM_WORDS = 40;
+
+  private MockRAMDirectory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  private Random random;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(500);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      // skewed word frequencies and lengths, so that bounds differ
+      StringBuffer body = new StringBuffer();
+      int length = 1 + random.nextInt(30);
+      for (int j = 0; j < length; j++) {
+        int word = (int) (NUM_WORDS * Math.pow(random.nextDouble(), 3));
+        body.append(" w").append(word);
+      }
+      Document doc = new Document();
+      doc.add(new Field("body", body.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    searcher = new IndexSearcher(reader);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  public void testMaxFreqAndNorm() throws IOException {
+    IndexReader[] segments = reader.getSequentialSubReaders();
+    assertTrue(segments.length > 1);
+    for (int s = 0; s < segments.length; s++) {
+      IndexReader segment = segments[s];
+      byte[] norms = segment.norms("body");
+      int maxNorm = 0;
+      for (int i = 0; i < norms.length; i++) {
+        maxNorm = Math.max(maxNorm, norms[i] & 0xFF);
+      }
+      assertEquals(maxNorm, segment.maxNorm("body") & 0xFF);
+
+      TermEnum terms = segment.terms();
+      TermDocs termDocs = segment.termDocs();
+      while (terms.next()) {
+        termDocs.seek(terms);
+        int maxFreq = 0;
+        while (termDocs.next()) {
+          maxFreq = Math.max(maxFreq, termDocs.freq());
+        }
+        assertEquals(terms.term().toString(), maxFreq, segment.maxFreq(terms.term()));
+      }
+      assertEquals(0, segment.maxFreq(new Term("body", "absent")));
+    }
+    // not known across segments
+    assertEquals(-1, reader.maxFreq(new Term("body", "w0")));
+  }
+
+  private Query randomDisjunction() {
+    BooleanQuery query = new BooleanQuery();
+    int numClauses = 2 + random.nextInt(5);
+    for (int i = 0; i < numClauses; i++) {
+      TermQuery clause = new TermQuery(new Term("body", "w" + random.nextInt(NUM_WORDS)));
+      if (random.nextBoolean()) {
+        clause.setBoost(0.5f + 2 * random.nextFloat());
+      }
+      query.add(clause, BooleanClause.Occur.SHOULD);
+    }
+    return query;
+  }
+
+  private void assertSameTop(Query query, int n) throws IOException {
+    TopDocs expected = searcher.search(query, NUM_DOCS);
+    float[] scores = new float[NUM_DOCS];
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      scores[expected.scoreDocs[i].doc] = expected.scoreDocs[i].score;
+    }
+
+    TopDocs actual = searcher.search(query, null, n, false);
+    assertTrue(expected.totalHits == 0 || !actual.isTotalHitsExact());
+    assertTrue(query + " " + actual.totalHits + " > " + expected.totalHits, actual.totalHits <= expected.totalHits);
+    assertEquals(Math.min(n, expected.totalHits), actual.scoreDocs.length);
+    for (int i = 0; i < actual.scoreDocs.length; i++) {
+      ScoreDoc hit = actual.scoreDocs[i];
+      // ties may come in another order, scores may not
+      assertEquals(query + " rank " + i, expected.scoreDocs[i].score, hit.score, 1e-5f);
+      assertEquals(query + " doc " + hit.doc, scores[hit.doc], hit.score, 1e-5f);
+    }
+  }
+
+  public void testSameTopHits() throws IOException {
+    for (int i = 0; i < 50; i++) {
+      Query query = randomDisjunction();
+      assertSameTop(query, 1 + random.nextInt(20));
+    }
+  }
+
+  public void testSkipsHits() throws IOException {
+    // a rare word or'ed with a common one: once the top holds hits of both,
+    // docs with the common word only cannot compete
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("body", "w0")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("body", "w" + (NUM_WORDS - 1))), BooleanClause.Occur.SHOULD);
+    assertSameTop(query, 5);
+    TopDocs exact = searcher.search(query, 5);
+    TopDocs pruned = searcher.search(query, null, 5, false);
+    assertTrue(exact.isTotalHitsExact());
+    assertTrue(pruned.totalHits + " of " + exact.totalHits, pruned.totalHits < exact.totalHits);
+  }
+
+  public void testNoSkippingWithOtherSimilarity() throws IOException {
+    // a tf falling with the freq makes maxFreq's score no bound at all
+    searcher.setSimilarity(new DefaultSimilarity() {
+      public float tf(float freq) {
+        return freq == 0 ? 0 : 1 / freq;
+      }
+    });
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("body", "w0")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("body", "w" + (NUM_WORDS - 1))), BooleanClause.Occur.SHOULD);
+    TopDocs exact = searcher.search(query, NUM_DOCS);
+    TopDocs unpruned = searcher.search(query, null, 5, false);
+    assertEquals(exact.totalHits, unpruned.totalHits);
+    for (int i = 0; i < unpruned.scoreDocs.length; i++) {
+      assertEquals(exact.scoreDocs[i].score, unpruned.scoreDocs[i].score, 1e-5f);
+    }
+  }
+
+  public void testSkipsHitsWithFilter() throws IOException {
+    // the filter is folded into a conjunction, which must pass the
+    // threshold on to the disjunction
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("body", "w0")), BooleanClause.Occur.SHOULD);
+    query.add(new TermQuery(new Term("body", "w" + (NUM_WORDS - 1))), BooleanClause.Occur.SHOULD);
+    Filter even = new Filter() {
+      public DocIdSet getDocIdSet(IndexReader reader) {
+        OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+        for (int doc = 0; doc < reader.maxDoc(); doc += 2) {
+          bits.set(doc);
+        }
+        return bits;
+      }
+    };
+    TopDocs exact = searcher.search(query, even, NUM_DOCS);
+    TopDocs pruned = searcher.search(query, even, 1, false);
+    assertTrue(pruned.totalHits + " of " + exact.totalHits, pruned.totalHits < exact.totalHits);
+    assertFalse(pruned.isTotalHitsExact());
+    assertEquals(1, pruned.scoreDocs.length);
+    assertEquals(exact.scoreDocs[0].score, pruned.scoreDocs[0].score, 1e-5f);
+  }
+
+  public void testTimeliness() throws IOException {
+    TimelinessFunction function = new TimelinessFunction.Linear(3.0f, 1000);
+    for (int i = 0; i < 10; i++) {
+      // no slot values, so every factor is 1 but the bounds are scaled
+      assertSameTop(new TimelinessQuery(randomDisjunction(), 1, function), 10);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.SortedVIntList;
+
+public class TestMultiTermQueryWrapperFilter extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 2000;
+
+  private MockRAMDirectory dir;
+  private IndexReader reader;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      String id = Integer.toString(10000 + i).substring(1);
+      doc.add(new Field("id", id, Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.optimize();
+    writer.close();
+    reader = IndexReader.open(dir, false);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  public void testSparseAndDenseSets() throws IOException {
+    // 10 docs out of 2000: sparse
+    DocIdSet sparse = new PrefixFilter(new Term("id", "001")).getDocIdSet(reader);
+    assertTrue(sparse instanceof SortedVIntList);
+    assertEquals(10, ((SortedVIntList) sparse).size());
+
+    // 100 docs out of 2000: dense
+    DocIdSet dense = new PrefixFilter(new Term("id", "00")).getDocIdSet(reader);
+    assertTrue(dense instanceof OpenBitSet);
+    assertEquals(100, ((OpenBitSet) dense).cardinality());
+
+    DocIdSet none = new PrefixFilter(new Term("id", "5")).getDocIdSet(reader);
+    assertSame(DocIdSet.EMPTY_DOCIDSET, none);
+  }
+
+  private static MultiTermQuery.ConstantScoreAutoRewrite cachingRewrite(SegmentFilterCache cache) {
+    MultiTermQuery.ConstantScoreAutoRewrite rewrite = new MultiTermQuery.ConstantScoreAutoRewrite();
+    rewrite.setTermCountCutoff(1);
+    rewrite.setDocIdSetCache(cache);
+    return rewrite;
+  }
+
+  public void testCachedPerSegmentAndNormalizedQuery() throws IOException {
+    SegmentFilterCache cache = new SegmentFilterCache();
+    IndexSearcher searcher = new IndexSearcher(reader);
+
+    PrefixQuery query = new PrefixQuery(new Term("id", "01"));
+    query.setRewriteMethod(cachingRewrite(cache));
+    assertEquals(100, searcher.search(query, 10).totalHits);
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    // same terms, other boost and rewrite method instance: a hit
+    PrefixQuery boosted = new PrefixQuery(new Term("id", "01"));
+    boosted.setBoost(3.0f);
+    boosted.setRewriteMethod(cachingRewrite(cache));
+    TopDocs docs = searcher.search(boosted, 10);
+    assertEquals(100, docs.totalHits);
+    assertEquals(1, cache.getHitCount());
+
+    // other terms: a miss
+    PrefixQuery other = new PrefixQuery(new Term("id", "02"));
+    other.setRewriteMethod(cachingRewrite(cache));
+    assertEquals(100, searcher.search(other, 10).totalHits);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  public void testNewDeletionsAreLeftOut() throws IOException {
+    SegmentFilterCache cache = new SegmentFilterCache();
+    PrefixQuery query = new PrefixQuery(new Term("id", "01"));
+    query.setRewriteMethod(cachingRewrite(cache));
+    assertEquals(100, new IndexSearcher(reader).search(query, 10).totalHits);
+
+    reader.deleteDocuments(new Term("id", "0100"));
+    reader.flush();
+    IndexReader reopened = reader.reopen();
+    // the set built without deletions serves the segment with them
+    assertEquals(99, new IndexSearcher(reopened).search(query, 10).totalHits);
+    assertEquals(1, cache.getHitCount());
+    if (reopened != reader) {
+      reopened.close();
+    }
+  }
+
+  public void testCountsTermsOnMisses() throws IOException {
+    SegmentFilterCache cache = new SegmentFilterCache();
+    PrefixQuery query = new PrefixQuery(new Term("id", "01"));
+    query.setRewriteMethod(cachingRewrite(cache));
+    query.clearTotalNumberOfTerms();
+    new IndexSearcher(reader).search(query, 10);
+    assertEquals(100, query.getTotalNumberOfTerms());
+  }
+}
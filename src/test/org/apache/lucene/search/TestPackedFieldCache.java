@@ -0,0 +1,217 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestPackedFieldCache extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 500;
+
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  private PackedFieldCache packed;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    Random random = newRandom();
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(150);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", String.valueOf(i), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      // some docs have no values
+      if (random.nextInt(10) != 0) {
+        doc.add(new Field("int", String.valueOf(-50 + random.nextInt(100)), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("long", String.valueOf(1300000000000L + random.nextInt(1000000)), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("float", String.valueOf(random.nextFloat() - 0.5f), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("double", String.valueOf(random.nextDouble() * 1000), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("string", randomString(random), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      // every doc has one, all far from 0
+      doc.add(new NumericField("trie").setLongValue(1000000L + random.nextInt(5000)));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    IndexReader deleter = IndexReader.open(dir, false);
+    for (int i = 0; i < NUM_DOCS; i += 17) {
+      deleter.deleteDocuments(new Term("id", String.valueOf(i)));
+    }
+    deleter.close();
+    reader = IndexReader.open(dir, true);
+    searcher = new IndexSearcher(reader);
+    packed = new PackedFieldCache();
+  }
+
+  private static String randomString(Random random) {
+    StringBuffer buffer = new StringBuffer();
+    for (int i = random.nextInt(4); i >= 0; i--) {
+      buffer.append((char) ('a' + random.nextInt(6)));
+    }
+    return buffer.toString();
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  public void testValuesMatchDefaultCache() throws IOException {
+    IndexReader[] segments = reader.getSequentialSubReaders();
+    for (int s = 0; s < segments.length; s++) {
+      IndexReader segment = segments[s];
+      int[] ints = FieldCache.DEFAULT.getInts(segment, "int");
+      long[] longs = FieldCache.DEFAULT.getLongs(segment, "long");
+      float[] floats = FieldCache.DEFAULT.getFloats(segment, "float");
+      double[] doubles = FieldCache.DEFAULT.getDoubles(segment, "double");
+      long[] tries = FieldCache.DEFAULT.getLongs(segment, "trie", FieldCache.NUMERIC_UTILS_LONG_PARSER);
+      FieldCache.StringIndex index = FieldCache.DEFAULT.getStringIndex(segment, "string");
+
+      FieldCache.Ints packedInts = packed.getIntValues(segment, "int", null);
+      FieldCache.Longs packedLongs = packed.getLongValues(segment, "long", null);
+      FieldCache.Floats packedFloats = packed.getFloatValues(segment, "float", null);
+      FieldCache.Doubles packedDoubles = packed.getDoubleValues(segment, "double", null);
+      FieldCache.Longs packedTries = packed.getLongValues(segment, "trie", FieldCache.NUMERIC_UTILS_LONG_PARSER);
+      FieldCache.DocTermsIndex packedIndex = packed.getTermsIndex(segment, "string");
+      assertSame(packedInts, packed.getIntValues(segment, "int", FieldCache.DEFAULT_INT_PARSER));
+
+      assertEquals(index.lookup.length, packedIndex.numOrd());
+      for (int ord = 0; ord < index.lookup.length; ord++) {
+        assertEquals(index.lookup[ord], packedIndex.lookup(ord));
+      }
+      for (int doc = 0; doc < segment.maxDoc(); doc++) {
+        assertEquals(ints[doc], packedInts.get(doc));
+        assertEquals(longs[doc], packedLongs.get(doc));
+        assertEquals(Float.floatToIntBits(floats[doc]), Float.floatToIntBits(packedFloats.get(doc)));
+        assertEquals(Double.doubleToLongBits(doubles[doc]), Double.doubleToLongBits(packedDoubles.get(doc)));
+        assertEquals(tries[doc], packedTries.get(doc));
+        assertEquals(index.order[doc], packedIndex.getOrd(doc));
+      }
+      assertEquals(index.binarySearchLookup("c"), packedIndex.binarySearchLookup("c"));
+      assertEquals(index.binarySearchLookup("cab"), packedIndex.binarySearchLookup("cab"));
+    }
+  }
+
+  public void testDocsWithoutValueReadZero() throws IOException {
+    // as many values as docs, but doc 1 has none: 0 is not in the range of values
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    String[] values = { "7 9", "", "8" };
+    for (int i = 0; i < values.length; i++) {
+      Document doc = new Document();
+      doc.add(new Field("int", values[i], Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    IndexReader reader = IndexReader.open(dir, true);
+    FieldCache.Ints ints = packed.getIntValues(reader, "int", null);
+    int[] expected = FieldCache.DEFAULT.getInts(reader, "int");
+    assertEquals(0, expected[1]);
+    for (int doc = 0; doc < values.length; doc++) {
+      assertEquals(expected[doc], ints.get(doc));
+    }
+    reader.close();
+  }
+
+  // only the arrays of FieldCache, as caches from outside Lucene have
+  private static FieldCache arraysOnly(final FieldCache in) {
+    return (FieldCache) Proxy.newProxyInstance(FieldCache.class.getClassLoader(),
+        new Class[] { FieldCache.class }, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+              return method.invoke(in, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+  }
+
+  public void testSortWithPackedCache() throws IOException {
+    assertSortsWith(packed);
+    assertTrue(packed.getCacheEntries().length > 0);
+  }
+
+  public void testSortWithArraysOnlyCache() throws IOException {
+    assertSortsWith(arraysOnly(FieldCache.DEFAULT));
+  }
+
+  private void assertSortsWith(FieldCache cache) throws IOException {
+    String[] fields = { "int", "long", "float", "double", "string" };
+    int[] types = { SortField.INT, SortField.LONG, SortField.FLOAT, SortField.DOUBLE, SortField.STRING };
+    for (int i = 0; i < fields.length; i++) {
+      for (int r = 0; r < 2; r++) {
+        boolean reverse = r == 1;
+        SortField packedField = new SortField(fields[i], types[i], reverse);
+        packedField.setFieldCache(cache);
+        Sort heapSort = new Sort(new SortField[] { new SortField(fields[i], types[i], reverse), SortField.FIELD_DOC });
+        Sort packedSort = new Sort(new SortField[] { packedField, SortField.FIELD_DOC });
+        ScoreDoc[] expected = searcher.search(new MatchAllDocsQuery(), null, 50, heapSort).scoreDocs;
+        ScoreDoc[] actual = searcher.search(new MatchAllDocsQuery(), null, 50, packedSort).scoreDocs;
+        assertEquals(expected.length, actual.length);
+        for (int k = 0; k < expected.length; k++) {
+          assertEquals(fields[i] + " reverse=" + reverse, expected[k].doc, actual[k].doc);
+        }
+      }
+    }
+  }
+
+  public void testRangeFiltersWithPackedCache() throws IOException {
+    assertRangeFiltersWith(packed);
+  }
+
+  public void testRangeFiltersWithArraysOnlyCache() throws IOException {
+    assertRangeFiltersWith(arraysOnly(FieldCache.DEFAULT));
+  }
+
+  private void assertRangeFiltersWith(FieldCache cache) throws IOException {
+    FieldCacheRangeFilter[] filters = {
+        FieldCacheRangeFilter.newIntRange("int", new Integer(-10), new Integer(20), true, false),
+        FieldCacheRangeFilter.newIntRange("int", new Integer(-10), new Integer(20), false, true),
+        FieldCacheRangeFilter.newLongRange("long", new Long(1300000200000L), null, true, true),
+        FieldCacheRangeFilter.newFloatRange("float", new Float(-0.1f), new Float(0.3f), true, true),
+        FieldCacheRangeFilter.newDoubleRange("double", null, new Double(500), true, true),
+        FieldCacheRangeFilter.newStringRange("string", "b", "d", true, true),
+        FieldCacheRangeFilter.newLongRange("trie", FieldCache.NUMERIC_UTILS_LONG_PARSER, new Long(1002000), new Long(1004000), true, true),
+    };
+    Query all = new MatchAllDocsQuery();
+    for (int i = 0; i < filters.length; i++) {
+      int expected = searcher.search(all, filters[i], 1).totalHits;
+      assertTrue(filters[i] + " matches some", expected > 0);
+      filters[i].setFieldCache(cache);
+      assertSame(cache, filters[i].getFieldCache());
+      assertEquals(filters[i].toString(), expected, searcher.search(all, filters[i], 1).totalHits);
+    }
+  }
+}
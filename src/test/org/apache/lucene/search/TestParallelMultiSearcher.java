@@ -16,11 +16,23 @@ package org.apache.lucene.search;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
- 
+
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MockRAMDirectory;
 
 /**
- * Unit tests for the ParallelMultiSearcher 
+ * Unit tests for the ParallelMultiSearcher
  */
 public class TestParallelMultiSearcher extends TestMultiSearcher {
 
@@ -33,4 +45,149 @@ public class TestParallelMultiSearcher extends TestMultiSearcher {
 		return new ParallelMultiSearcher(searchers);
 	}
 
+	private static Directory index(int numDocs) throws IOException {
+		Directory dir = new MockRAMDirectory();
+		IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+		for (int i = 0; i < numDocs; i++) {
+			Document doc = new Document();
+			doc.add(new Field("body", "all" + (i % 3 == 0 ? " three" : ""), Field.Store.NO, Field.Index.ANALYZED));
+			writer.addDocument(doc);
+		}
+		writer.close();
+		return dir;
+	}
+
+	// a searcher whose searches wait until released
+	private static class BlockedSearcher extends IndexSearcher {
+		final CountDownLatch released = new CountDownLatch(1);
+
+		BlockedSearcher(IndexReader reader) {
+			super(reader);
+		}
+
+		public TopDocs search(Weight weight, Filter filter, int nDocs) throws IOException {
+			try {
+				released.await();
+			} catch (InterruptedException ie) {
+				throw new RuntimeException(ie);
+			}
+			return super.search(weight, filter, nDocs);
+		}
+	}
+
+	public void testTimedOutSearchableIsLeftOut() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		IndexSearcher fast = new IndexSearcher(index(30), true);
+		BlockedSearcher slow = new BlockedSearcher(IndexReader.open(index(20), true));
+		ParallelMultiSearcher searcher = new ParallelMultiSearcher(executor, new Searchable[] { fast, slow });
+		try {
+			Query query = new TermQuery(new Term("body", "all"));
+			searcher.setTimeout(200);
+			TopDocs docs = searcher.search(query, 100);
+			ShardStats stats = docs.getShardStats();
+			assertTrue(stats.isPartial());
+			assertFalse(stats.isTimedOut(0));
+			assertTrue(stats.isTimedOut(1));
+			assertTrue(stats.getLatency(0) >= 0);
+			assertEquals(-1, stats.getLatency(1));
+			assertFalse(docs.isTotalHitsExact());
+			assertEquals(30, docs.totalHits);
+			for (int i = 0; i < docs.scoreDocs.length; i++) {
+				assertEquals(0, searcher.subSearcher(docs.scoreDocs[i].doc));
+			}
+
+			// once released, all answer
+			slow.released.countDown();
+			searcher.setTimeout(0);
+			docs = searcher.search(query, 100);
+			assertFalse(docs.getShardStats().isPartial());
+			assertTrue(docs.isTotalHitsExact());
+			assertEquals(50, docs.totalHits);
+		} finally {
+			slow.released.countDown();
+			searcher.close();
+			executor.shutdown();
+		}
+	}
+
+	// a searcher whose searches take a while
+	private static class SlowSearcher extends IndexSearcher {
+		SlowSearcher(IndexReader reader) {
+			super(reader);
+		}
+
+		public TopDocs search(Weight weight, Filter filter, int nDocs) throws IOException {
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException ie) {
+				throw new RuntimeException(ie);
+			}
+			return super.search(weight, filter, nDocs);
+		}
+	}
+
+	public void testLatencyIsPerSearchable() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		SlowSearcher slow = new SlowSearcher(IndexReader.open(index(20), true));
+		IndexSearcher fast = new IndexSearcher(index(30), true);
+		// the slow one is waited on first, which must not count against the other
+		ParallelMultiSearcher searcher = new ParallelMultiSearcher(executor, new Searchable[] { slow, fast });
+		try {
+			ShardStats stats = searcher.search(new TermQuery(new Term("body", "all")), 100).getShardStats();
+			assertTrue(stats.getLatency(0) >= 300 * 1000000L);
+			assertTrue(stats.getLatency(1) + " >= " + stats.getLatency(0), stats.getLatency(1) < stats.getLatency(0));
+		} finally {
+			searcher.close();
+			executor.shutdown();
+		}
+	}
+
+	public void testNestedSearchersOnTheDefaultPool() throws Exception {
+		// more outer searchables than threads, each waiting on inner ones
+		int numInner = Runtime.getRuntime().availableProcessors() + 1;
+		Searchable[] inner = new Searchable[numInner];
+		for (int i = 0; i < numInner; i++) {
+			inner[i] = new ParallelMultiSearcher(new Searchable[] {
+					new IndexSearcher(index(3), true), new IndexSearcher(index(6), true) });
+		}
+		final ParallelMultiSearcher outer = new ParallelMultiSearcher(inner);
+		final TopDocs[] docs = new TopDocs[1];
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					docs[0] = outer.search(new TermQuery(new Term("body", "all")), 100);
+				} catch (IOException ioe) {
+					throw new RuntimeException(ioe);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		thread.join(30000);
+		assertFalse("nested searchers deadlocked", thread.isAlive());
+		assertEquals(9 * numInner, docs[0].totalHits);
+		outer.close();
+	}
+
+	public void testDocFreqsAndRewrite() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		ParallelMultiSearcher searcher = new ParallelMultiSearcher(executor, new Searchable[] {
+				new IndexSearcher(index(30), true), new IndexSearcher(index(20), true) });
+		try {
+			assertEquals(50, searcher.docFreq(new Term("body", "all")));
+			int[] dfs = searcher.docFreqs(new Term[] { new Term("body", "three"), new Term("body", "none") });
+			assertEquals(10 + 7, dfs[0]);
+			assertEquals(0, dfs[1]);
+
+			PrefixQuery prefix = new PrefixQuery(new Term("body", "th"));
+			prefix.setRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
+			Query query = searcher.rewrite(prefix);
+			TopDocs docs = searcher.search(query, 100);
+			assertEquals(17, docs.totalHits);
+			assertEquals(2, docs.getShardStats().getNumShards());
+		} finally {
+			searcher.close();
+			executor.shutdown();
+		}
+	}
 }
@@ -0,0 +1,195 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestPersistentFieldCache extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 300;
+
+  private void fillIndex(Directory dir, Random random) throws IOException {
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(100);
+    writer.setMergeFactor(10);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", String.valueOf(i), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (random.nextInt(10) != 0) {
+        doc.add(new Field("int", String.valueOf(-1000 + random.nextInt(2000)), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field("string", "t" + random.nextInt(50) + "é", Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      writer.addDocument(doc);
+    }
+    writer.close();
+  }
+
+  private static int countFieldCacheFiles(Directory dir) throws IOException {
+    String[] files = dir.listAll();
+    int count = 0;
+    for (int i = 0; i < files.length; i++) {
+      if (files[i].endsWith("." + PersistentFieldCache.EXTENSION)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Checks the live documents of each segment against the default cache. */
+  private static void assertSameValues(IndexReader reader, AccessorFieldCache cache) throws IOException {
+    IndexReader[] segments = reader.getSequentialSubReaders();
+    for (int s = 0; s < segments.length; s++) {
+      IndexReader segment = segments[s];
+      int[] ints = FieldCache.DEFAULT.getInts(segment, "int");
+      FieldCache.StringIndex index = FieldCache.DEFAULT.getStringIndex(segment, "string");
+      FieldCache.Ints values = cache.getIntValues(segment, "int", null);
+      FieldCache.DocTermsIndex termsIndex = cache.getTermsIndex(segment, "string");
+      for (int doc = 0; doc < segment.maxDoc(); doc++) {
+        if (!segment.isDeleted(doc)) {
+          assertEquals(ints[doc], values.get(doc));
+          assertEquals(index.lookup[index.order[doc]], termsIndex.lookup(termsIndex.getOrd(doc)));
+        }
+      }
+      assertEquals(index.binarySearchLookup("t3é"), termsIndex.binarySearchLookup("t3é"));
+    }
+  }
+
+  private void doTestReuse(Directory dir) throws IOException {
+    fillIndex(dir, newRandom());
+    IndexReader reader = IndexReader.open(dir, false);
+    // files written with deletions hold the values of deleted docs too
+    for (int i = 0; i < NUM_DOCS; i += 7) {
+      reader.deleteDocuments(new Term("id", String.valueOf(i)));
+    }
+    assertEquals(0, countFieldCacheFiles(dir));
+    assertSameValues(reader, new PersistentFieldCache());
+    int segments = reader.getSequentialSubReaders().length;
+    assertEquals(2 * segments, countFieldCacheFiles(dir));
+    reader.close();
+
+    // another cache, as in another process, reads the files
+    reader = IndexReader.open(dir, true);
+    PersistentFieldCache cache = new PersistentFieldCache();
+    assertSameValues(reader, cache);
+    assertEquals(2 * segments, countFieldCacheFiles(dir));
+    IndexReader[] subReaders = reader.getSequentialSubReaders();
+    for (int s = 0; s < subReaders.length; s++) {
+      assertTrue(cache.getTermsIndex(subReaders[s], "string") instanceof PersistentFieldCache.MappedTermsIndex);
+    }
+    reader.close();
+  }
+
+  public void testReuseInRAMDirectory() throws IOException {
+    doTestReuse(new MockRAMDirectory());
+  }
+
+  public void testReuseInFSDirectory() throws IOException {
+    File path = _TestUtil.getTempDir("TestPersistentFieldCache");
+    Directory dir = FSDirectory.open(path);
+    try {
+      doTestReuse(dir);
+    } finally {
+      dir.close();
+      _TestUtil.rmDir(path);
+    }
+  }
+
+  public void testCustomParserIsNotPersisted() throws IOException {
+    MockRAMDirectory dir = new MockRAMDirectory();
+    fillIndex(dir, newRandom());
+    IndexReader reader = IndexReader.open(dir, true);
+    FieldCache.IntParser parser = new FieldCache.IntParser() {
+      public int parseInt(String value) {
+        return Integer.parseInt(value) * 2;
+      }
+    };
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    FieldCache.Ints values = new PersistentFieldCache().getIntValues(segment, "int", parser);
+    int[] expected = FieldCache.DEFAULT.getInts(segment, "int", parser);
+    for (int doc = 0; doc < segment.maxDoc(); doc++) {
+      assertEquals(expected[doc], values.get(doc));
+    }
+    assertEquals(0, countFieldCacheFiles(dir));
+    reader.close();
+  }
+
+  public void testFilesAreDeletedWithTheirSegment() throws IOException {
+    MockRAMDirectory dir = new MockRAMDirectory();
+    fillIndex(dir, newRandom());
+    IndexReader reader = IndexReader.open(dir, true);
+    final PersistentFieldCache cache = new PersistentFieldCache();
+    assertSameValues(reader, cache);
+    assertEquals(2 * reader.getSequentialSubReaders().length, countFieldCacheFiles(dir));
+    reader.close();
+
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), false, IndexWriter.MaxFieldLength.UNLIMITED);
+    // the merged segment gets its file as the merge completes
+    writer.setMergedSegmentWarmer(new IndexWriter.IndexReaderWarmer() {
+      public void warm(IndexReader reader) throws IOException {
+        cache.getIntValues(reader, "int", null);
+      }
+      public boolean isPersistent() {
+        return true;
+      }
+    });
+    writer.optimize();
+    writer.close();
+    assertEquals(1, countFieldCacheFiles(dir));
+
+    reader = IndexReader.open(dir, true);
+    assertEquals(1, reader.getSequentialSubReaders().length);
+    assertSameValues(reader, new PersistentFieldCache());
+    assertEquals(2, countFieldCacheFiles(dir));
+    reader.close();
+
+    // a file left over by a reader of a segment that was deleted
+    dir.createOutput("_zz_1." + PersistentFieldCache.EXTENSION).close();
+    new IndexWriter(dir, new WhitespaceAnalyzer(), false, IndexWriter.MaxFieldLength.UNLIMITED).close();
+    assertFalse(dir.fileExists("_zz_1." + PersistentFieldCache.EXTENSION));
+    assertEquals(2, countFieldCacheFiles(dir));
+  }
+
+  public void testWarmerOutsideNearRealTimeMustBePersistent() throws IOException {
+    MockRAMDirectory dir = new MockRAMDirectory();
+    fillIndex(dir, newRandom());
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), false, IndexWriter.MaxFieldLength.UNLIMITED);
+    final PersistentFieldCache cache = new PersistentFieldCache();
+    writer.setMergedSegmentWarmer(new IndexWriter.IndexReaderWarmer() {
+      public void warm(IndexReader reader) throws IOException {
+        cache.getIntValues(reader, "int", null);
+      }
+    });
+    writer.optimize();
+    writer.close();
+    assertEquals(0, countFieldCacheFiles(dir));
+  }
+}
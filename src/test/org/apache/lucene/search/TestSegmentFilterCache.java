@@ -0,0 +1,212 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RunLengthDocIdSet;
+import org.apache.lucene.util.SortedVIntList;
+
+public class TestSegmentFilterCache extends LuceneTestCase {
+
+  private MockRAMDirectory dir;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(100);
+    writer.setMergeFactor(10);
+    for (int i = 0; i < 300; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", String.valueOf(i), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("mod", String.valueOf(i % 7), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+  }
+
+  private static Filter termFilter(String field, String text) {
+    return new QueryWrapperFilter(new TermQuery(new Term(field, text)));
+  }
+
+  private static OpenBitSet toBitSet(DocIdSet docIdSet, int maxDoc) throws IOException {
+    OpenBitSet bits = new OpenBitSet(maxDoc);
+    DocIdSetIterator it = docIdSet.iterator();
+    int doc;
+    while ((doc = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      bits.set(doc);
+    }
+    return bits;
+  }
+
+  private static void assertCompactsTo(Class expected, OpenBitSet bits, int maxDoc) throws IOException {
+    DocIdSet compact = SegmentFilterCache.compact((OpenBitSet) bits.clone(), maxDoc);
+    assertEquals(expected, compact.getClass());
+    assertEquals(bits, toBitSet(compact, maxDoc));
+    // advancing, too
+    DocIdSetIterator it = compact.iterator();
+    for (int target = 0; target < maxDoc; target += 97) {
+      int doc = it.advance(target);
+      int next = bits.nextSetBit(target);
+      assertEquals(next == -1 ? DocIdSetIterator.NO_MORE_DOCS : next, doc);
+      if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+        break;
+      }
+      target = doc;
+    }
+  }
+
+  public void testCompact() throws IOException {
+    Random random = newRandom();
+    int maxDoc = 10000;
+    OpenBitSet sparse = new OpenBitSet(maxDoc);
+    OpenBitSet dense = new OpenBitSet(maxDoc);
+    for (int i = 0; i < maxDoc; i++) {
+      if (random.nextInt(200) == 0) {
+        sparse.set(i);
+      }
+      if (random.nextBoolean()) {
+        dense.set(i);
+      }
+    }
+    OpenBitSet runs = new OpenBitSet(maxDoc);
+    runs.set(10, 2000);
+    runs.set(2070, 2130);
+    runs.set(9000, maxDoc);
+    assertEquals(3, RunLengthDocIdSet.countRuns(runs));
+
+    assertCompactsTo(SortedVIntList.class, sparse, maxDoc);
+    assertCompactsTo(OpenBitSet.class, dense, maxDoc);
+    assertCompactsTo(RunLengthDocIdSet.class, runs, maxDoc);
+    assertSame(DocIdSet.EMPTY_DOCIDSET, SegmentFilterCache.compact(new OpenBitSet(maxDoc), maxDoc));
+    assertSame(DocIdSet.EMPTY_DOCIDSET, SegmentFilterCache.compact(null, maxDoc));
+  }
+
+  public void testReuseAcrossReopen() throws IOException {
+    SegmentFilterCache cache = new SegmentFilterCache();
+    Filter filter = cache.getFilter(termFilter("mod", "3"));
+    IndexReader reader = IndexReader.open(dir, true);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    Query query = new ConstantScoreQuery(filter);
+    assertEquals(43, searcher.search(query, 10).totalHits);
+    int segments = reader.getSequentialSubReaders().length;
+    assertEquals(3, segments);
+    assertEquals(segments, cache.getMissCount());
+    assertEquals(0, cache.getHitCount());
+
+    // an equal filter shares the sets
+    Query equal = new ConstantScoreQuery(cache.getFilter(termFilter("mod", "3")));
+    assertEquals(43, searcher.search(equal, 10).totalHits);
+    assertEquals(segments, cache.getMissCount());
+    assertEquals(segments, cache.getHitCount());
+    assertEquals(0.5, cache.getHitRate(), 0.0);
+
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), false, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.deleteDocuments(new Term("id", "3"));
+    writer.close();
+    IndexReader reopened = reader.reopen();
+    assertNotSame(reader, reopened);
+    reader.close();
+
+    // all segments keep their sets, and the deleted doc is left out
+    searcher = new IndexSearcher(reopened);
+    assertEquals(42, searcher.search(query, 10).totalHits);
+    assertEquals(segments, cache.getMissCount());
+    assertEquals(2 * segments, cache.getHitCount());
+    reopened.close();
+  }
+
+  public void testOtherDeletionsOfEqualCount() throws IOException {
+    SegmentFilterCache cache = new SegmentFilterCache();
+    Filter filter = cache.getFilter(termFilter("mod", "3"));
+    IndexReader reader = IndexReader.open(dir, false);
+    reader.deleteDocuments(new Term("id", "3"));
+    IndexSearcher searcher = new IndexSearcher(reader);
+    Query query = new ConstantScoreQuery(filter);
+    OpenBitSet hits = toBitSet(searcher.search(query, 100).scoreDocs);
+    assertEquals(42, hits.cardinality());
+    assertFalse(hits.get(3));
+
+    // as many deletions, but of another doc: the sets do not serve it
+    reader.undeleteAll();
+    reader.deleteDocuments(new Term("id", "10"));
+    hits = toBitSet(searcher.search(query, 100).scoreDocs);
+    assertEquals(42, hits.cardinality());
+    assertTrue(hits.get(3));
+    assertFalse(hits.get(10));
+    reader.close();
+  }
+
+  private static OpenBitSet toBitSet(ScoreDoc[] hits) {
+    OpenBitSet bits = new OpenBitSet();
+    for (int i = 0; i < hits.length; i++) {
+      bits.set(hits[i].doc);
+    }
+    return bits;
+  }
+
+  public void testEvictsLeastRecentlyUsed() throws IOException {
+    IndexReader reader = IndexReader.open(dir, true);
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    SegmentFilterCache cache = new SegmentFilterCache();
+    DocIdSet first = cache.getDocIdSet(segment, termFilter("mod", "0"));
+    DocIdSet second = cache.getDocIdSet(segment, termFilter("mod", "1"));
+    assertEquals(2, cache.getEntryCount());
+    long oneSet = cache.getRamBytesUsed() / 2;
+    // make the first the most recently used
+    assertSame(first, cache.getDocIdSet(segment, termFilter("mod", "0")));
+
+    cache.setMaxRamBytes(2 * oneSet + oneSet / 2);
+    cache.getDocIdSet(segment, termFilter("mod", "2"));
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(2, cache.getEntryCount());
+    assertTrue(cache.getRamBytesUsed() <= cache.getMaxRamBytes());
+    assertSame(first, cache.getDocIdSet(segment, termFilter("mod", "0")));
+    assertNotSame(second, cache.getDocIdSet(segment, termFilter("mod", "1")));
+    reader.close();
+  }
+
+  public void testEvictsLeastFrequentlyUsed() throws IOException {
+    IndexReader reader = IndexReader.open(dir, true);
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    SegmentFilterCache cache = new SegmentFilterCache(Long.MAX_VALUE, SegmentFilterCache.EvictionPolicy.LFU);
+    DocIdSet first = cache.getDocIdSet(segment, termFilter("mod", "0"));
+    cache.getDocIdSet(segment, termFilter("mod", "0"));
+    DocIdSet second = cache.getDocIdSet(segment, termFilter("mod", "1"));
+    long oneSet = cache.getRamBytesUsed() / 2;
+
+    // the first is used more, though less recently
+    cache.setMaxRamBytes(2 * oneSet + oneSet / 2);
+    cache.getDocIdSet(segment, termFilter("mod", "2"));
+    assertEquals(1, cache.getEvictionCount());
+    assertSame(first, cache.getDocIdSet(segment, termFilter("mod", "0")));
+    assertNotSame(second, cache.getDocIdSet(segment, termFilter("mod", "1")));
+    reader.close();
+  }
+}
@@ -0,0 +1,195 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestSloppyPhraseScorer extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 200;
+
+  private String[][] tokens;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  private Random random;
+
+  // scores are sums of sloppy frequencies times the weight's value
+  private static class FreqSimilarity extends DefaultSimilarity {
+    public float tf(float freq) { return freq; }
+    public float idf(int docFreq, int numDocs) { return 1.0f; }
+    public float queryNorm(float sumOfSquaredWeights) { return 1.0f; }
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    MockRAMDirectory dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    writer.setMaxBufferedDocs(70);
+    tokens = new String[NUM_DOCS][];
+    for (int i = 0; i < NUM_DOCS; i++) {
+      tokens[i] = new String[1 + random.nextInt(50)];
+      StringBuffer body = new StringBuffer();
+      for (int j = 0; j < tokens[i].length; j++) {
+        tokens[i][j] = String.valueOf("abcd".charAt(random.nextInt(4)));
+        body.append(tokens[i][j]).append(' ');
+      }
+      writer.addDocument(makeDocument(body.toString()));
+    }
+    writer.addDocument(makeDocument("x a b a y"));
+    writer.addDocument(makeDocument("a"));
+    writer.addDocument(makeDocument("a x a"));
+    writer.close();
+    reader = IndexReader.open(dir, true);
+    searcher = new IndexSearcher(reader);
+    searcher.setSimilarity(new FreqSimilarity());
+  }
+
+  private static Document makeDocument(String body) {
+    Document doc = new Document();
+    Field field = new Field("body", body, Field.Store.NO, Field.Index.ANALYZED);
+    field.setOmitNorms(true);
+    doc.add(field);
+    return doc;
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  private static PhraseQuery makeQuery(String phrase, int slop) {
+    PhraseQuery query = new PhraseQuery();
+    String[] words = phrase.split(" ");
+    for (int i = 0; i < words.length; i++) {
+      query.add(new Term("body", words[i]));
+    }
+    query.setSlop(slop);
+    return query;
+  }
+
+  private float freq(Query query, int doc) throws IOException {
+    float value = query.weight(searcher).getValue();
+    ScoreDoc[] hits = searcher.search(query, reader.maxDoc()).scoreDocs;
+    for (int i = 0; i < hits.length; i++) {
+      if (hits[i].doc == doc) {
+        return hits[i].score / value;
+      }
+    }
+    return 0.0f;
+  }
+
+  public void testWindows() throws IOException {
+    Similarity sim = searcher.getSimilarity();
+    // "a b" at distance 0, then "b a" at distance 2
+    assertEquals(sim.sloppyFreq(0) + sim.sloppyFreq(2), freq(makeQuery("a b", 2), NUM_DOCS), 0f);
+    assertEquals(sim.sloppyFreq(0), freq(makeQuery("a b", 1), NUM_DOCS), 0f);
+  }
+
+  public void testRepeatsDoNotSharePositions() throws IOException {
+    assertEquals(0.0f, freq(makeQuery("a a", 5), NUM_DOCS + 1), 0f);
+    assertEquals(searcher.getSimilarity().sloppyFreq(1), freq(makeQuery("a a", 1), NUM_DOCS + 2), 0f);
+  }
+
+  // how often the terms are next to each other in doc
+  private int exactFreq(int doc, String[] words) {
+    int freq = 0;
+    String[] text = tokens[doc];
+    for (int start = 0; start + words.length <= text.length; start++) {
+      boolean match = true;
+      for (int i = 0; i < words.length && match; i++) {
+        match = words[i].equals(text[start + i]);
+      }
+      if (match) {
+        freq++;
+      }
+    }
+    return freq;
+  }
+
+  public void testZeroSlopIsExact() throws IOException {
+    for (int iter = 0; iter < 50; iter++) {
+      // distinct terms: repeats are never adjacent at slop 0
+      String[] words = random.nextBoolean() ? new String[] { "a", "b" } : new String[] { "c", "a", "d" };
+      PhraseQuery query = new PhraseQuery();
+      for (int i = 0; i < words.length; i++) {
+        query.add(new Term("body", words[i]));
+      }
+      Weight weight = query.weight(searcher);
+      IndexReader[] segments = reader.getSequentialSubReaders();
+      int base = 0;
+      for (int s = 0; s < segments.length; s++) {
+        Scorer scorer = newScorer(weight, segments[s], query, 0);
+        int doc = scorer.nextDoc();
+        for (int d = 0; d < segments[s].maxDoc() && base + d < NUM_DOCS; d++) {
+          int expected = exactFreq(base + d, words);
+          if (expected > 0) {
+            assertEquals(d, doc);
+            assertEquals(expected, scorer.score() / weight.getValue(), 0f);
+            doc = scorer.nextDoc();
+          }
+        }
+        base += segments[s].maxDoc();
+      }
+    }
+  }
+
+  private static Scorer newScorer(Weight weight, IndexReader segment, PhraseQuery query, int slop) throws IOException {
+    Term[] terms = query.getTerms();
+    TermPositions[] tps = new TermPositions[terms.length];
+    int[] docFreqs = new int[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      tps[i] = segment.termPositions(terms[i]);
+      docFreqs[i] = segment.docFreq(terms[i]);
+    }
+    return new SloppyPhraseScorer(weight, tps, query.getPositions(), docFreqs,
+        new FreqSimilarity(), slop, null, EmbeddedSortSchema.getDefault());
+  }
+
+  public void testAdvanceAgreesWithNextDoc() throws IOException {
+    PhraseQuery query = makeQuery("a b a", 3);
+    Weight weight = query.weight(searcher);
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    for (int step = 1; step < 10; step++) {
+      Scorer scorer = weight.scorer(segment, true, false);
+      Scorer all = weight.scorer(segment, true, false);
+      int doc = scorer.advance(step);
+      int expected = all.advance(step);
+      while (expected != DocIdSetIterator.NO_MORE_DOCS) {
+        assertEquals(expected, doc);
+        assertEquals(all.score(), scorer.score(), 0f);
+        doc = scorer.advance(doc + step);
+        while (expected < doc) {
+          expected = all.nextDoc();
+        }
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, doc);
+    }
+  }
+}
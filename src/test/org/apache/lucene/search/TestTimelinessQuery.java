@@ -0,0 +1,189 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.EmbeddedSortField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.MockRAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTimelinessQuery extends LuceneTestCase {
+
+  private static final int NUM_DOCS = 50;
+  private static final long EPOCH = 18408960L;
+
+  private MockRAMDirectory dir;
+  private IndexReader reader;
+  // minutes since EPOCH the index was built at
+  private long now;
+
+  // one week of ages, a few docs from the future, and unset docs
+  private static int age(int doc) {
+    return doc % 10 == 9 ? Integer.MIN_VALUE : (doc - 3) * 300;
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    now = System.currentTimeMillis() / 60000 - EPOCH;
+    dir = new MockRAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(15);
+    for (int i = 0; i < NUM_DOCS; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", "all " + (i % 2 == 0 ? "even" : "odd"), Field.Store.NO, Field.Index.ANALYZED));
+      if (age(i) != Integer.MIN_VALUE) {
+        doc.add(new EmbeddedSortField("time", Long.toString(now - age(i)), Field.Store.NO, Field.Index.NOT_ANALYZED, 2));
+      }
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(dir, true);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  private TimelinessFunction[] functions() {
+    return new TimelinessFunction[] {
+        new TimelinessFunction.Step(3.0f, 2000),
+        new TimelinessFunction.Linear(3.0f, 10000),
+        new TimelinessFunction.Exponential(3.0f, 1000),
+        new TimelinessFunction.Gaussian(3.0f, 3000),
+    };
+  }
+
+  public void testLookup() {
+    TimelinessFunction[] functions = functions();
+    for (int f = 0; f < functions.length; f++) {
+      TimelinessFunction function = functions[f];
+      TimelinessFunction.Lookup lookup = function.newLookup(EPOCH, EPOCH + 100000);
+      assertEquals(1.0f, lookup.factor(-1), 0.0f);
+      // from the future
+      assertEquals(function.factor(0), lookup.factor(100500), 0.0f);
+      assertEquals(3.0f, lookup.factor(100000), 0.0f);
+      for (int age = 0; age < 2 * function.getHorizonMinutes(); age += 7) {
+        float expected = function.factor(Math.min(age, function.getHorizonMinutes()));
+        // a bucket holds the factor of its youngest age
+        float tolerance = Math.abs(function.factor(age - age % function.getBucketMinutes()) - expected);
+        assertEquals("function " + f + " age " + age, expected, lookup.factor(100000 - age), tolerance + 1e-6f);
+        assertTrue(lookup.factor(100000 - age) >= 1.0f);
+      }
+      assertEquals(1.0f, lookup.factor(100000 - 2 * function.getHorizonMinutes()), 0.01f);
+    }
+
+    // the step is exact at its edge
+    TimelinessFunction.Lookup step = new TimelinessFunction.Step(5.0f, 60).newLookup(EPOCH, EPOCH + 1000);
+    assertEquals(5.0f, step.factor(940), 0.0f);
+    assertEquals(1.0f, step.factor(939), 0.0f);
+  }
+
+  private Query[] queries() {
+    BooleanQuery disjunction = new BooleanQuery();
+    disjunction.add(new TermQuery(new Term("body", "even")), BooleanClause.Occur.SHOULD);
+    disjunction.add(new TermQuery(new Term("body", "all")), BooleanClause.Occur.SHOULD);
+    BooleanQuery conjunction = new BooleanQuery();
+    conjunction.add(new TermQuery(new Term("body", "odd")), BooleanClause.Occur.MUST);
+    conjunction.add(new TermQuery(new Term("body", "all")), BooleanClause.Occur.MUST);
+    return new Query[] { new TermQuery(new Term("body", "all")), disjunction, conjunction };
+  }
+
+  private float[] scores(IndexSearcher searcher, Query query) throws IOException {
+    float[] scores = new float[NUM_DOCS];
+    ScoreDoc[] hits = searcher.search(query, NUM_DOCS).scoreDocs;
+    for (int i = 0; i < hits.length; i++) {
+      scores[hits[i].doc] = hits[i].score;
+    }
+    return scores;
+  }
+
+  public void testScoresScaledOnce() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    Query[] queries = queries();
+    TimelinessFunction[] functions = functions();
+    for (int q = 0; q < queries.length; q++) {
+      float[] plain = scores(searcher, queries[q]);
+      for (int f = 0; f < functions.length; f++) {
+        TimelinessQuery query = new TimelinessQuery(queries[q], 2, functions[f]);
+        query.setReferenceTime((EPOCH + now) * 60000);
+        TimelinessFunction.Lookup lookup = functions[f].newLookup(EPOCH, EPOCH + now);
+        float[] scaled = scores(searcher, query);
+        for (int doc = 0; doc < NUM_DOCS; doc++) {
+          int value = age(doc) == Integer.MIN_VALUE ? -1 : (int) (now - age(doc));
+          assertEquals("query " + q + " function " + f + " doc " + doc,
+              plain[doc] * lookup.factor(value), scaled[doc], 1e-5f);
+          if (plain[doc] > 0) {
+            Explanation explanation = searcher.explain(query, doc);
+            assertEquals(scaled[doc], explanation.getValue(), 1e-5f);
+          }
+        }
+      }
+    }
+  }
+
+  public void testQueryUtils() throws IOException {
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setEmbeddedSortSchema(new EmbeddedSortSchema(2));
+    Query[] queries = queries();
+    TimelinessFunction[] functions = functions();
+    for (int q = 0; q < queries.length; q++) {
+      TimelinessQuery query = new TimelinessQuery(queries[q], 2, functions[q % functions.length]);
+      query.setReferenceTime((EPOCH + now) * 60000);
+      // includes serializing the weight
+      QueryUtils.check(query, searcher);
+    }
+  }
+
+  public void testSchemaFunction() throws IOException {
+    EmbeddedSortSchema schema = new EmbeddedSortSchema(new int[] { EmbeddedSortSchema.INT, EmbeddedSortSchema.TIMESTAMP });
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setEmbeddedSortSchema(schema);
+    Query[] queries = queries();
+    float[][] plain = new float[queries.length][];
+    for (int q = 0; q < queries.length; q++) {
+      plain[q] = scores(searcher, queries[q]);
+    }
+
+    // ages are multiples of 300 minutes, far from the window's edge
+    schema.setTimelinessBoosting(1, 2.0f, 1650);
+    for (int q = 0; q < queries.length; q++) {
+      float[] boosted = scores(searcher, queries[q]);
+      for (int doc = 0; doc < NUM_DOCS; doc++) {
+        boolean recent = age(doc) != Integer.MIN_VALUE && age(doc) <= 1650;
+        assertEquals("query " + q + " doc " + doc, plain[q][doc] * (recent ? 2.0f : 1.0f), boosted[doc], 1e-5f);
+      }
+    }
+
+    // a query with its own function wins over the schema's
+    TimelinessQuery query = new TimelinessQuery(queries[0], 2, new TimelinessFunction.Step(4.0f, 1650));
+    float[] scores = scores(searcher, query);
+    for (int doc = 0; doc < NUM_DOCS; doc++) {
+      boolean recent = age(doc) != Integer.MIN_VALUE && age(doc) <= 1650;
+      assertEquals(plain[0][doc] * (recent ? 4.0f : 1.0f), scores[doc], 1e-5f);
+    }
+  }
+}
@@ -24,12 +24,17 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Field.Index;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.store.RAMDirectory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * TestWildcard tests the '*' and '?' wildcard characters.
@@ -254,4 +259,99 @@ public class TestWildcard
     searcher.close();
   }
   
+  public void testSameTermsAsWildcardEquals() throws IOException {
+    Random random = newRandom();
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    writer.setMaxBufferedDocs(50);
+    for (int i = 0; i < 400; i++) {
+      Document doc = new Document();
+      doc.add(new Field("field", randomString(random, "abcd", 6), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    IndexReader reader = IndexReader.open(dir, true);
+
+    List allTerms = new ArrayList();
+    TermEnum terms = reader.terms(new Term("field", ""));
+    do {
+      allTerms.add(terms.term().text());
+    } while (terms.next() && terms.term().field() == "field");
+    terms.close();
+
+    for (int i = 0; i < 300; i++) {
+      String pattern = randomString(random, "abcd*?", 5);
+      List expected = new ArrayList();
+      for (int j = 0; j < allTerms.size(); j++) {
+        if (WildcardTermEnum.wildcardEquals(pattern, 0, (String) allTerms.get(j), 0)) {
+          expected.add(allTerms.get(j));
+        }
+      }
+      List actual = new ArrayList();
+      WildcardTermEnum wildcardTerms = new WildcardTermEnum(reader, new Term("field", pattern));
+      assertNotNull(wildcardTerms.automaton);
+      if (wildcardTerms.term() != null) {
+        do {
+          actual.add(wildcardTerms.term().text());
+          assertEquals(reader.docFreq(wildcardTerms.term()), wildcardTerms.docFreq());
+        } while (wildcardTerms.next());
+      }
+      wildcardTerms.close();
+      assertEquals(pattern, expected, actual);
+    }
+    reader.close();
+  }
+
+  private static String randomString(Random random, String chars, int maxLength) {
+    StringBuffer buffer = new StringBuffer();
+    for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+      buffer.append(chars.charAt(random.nextInt(chars.length())));
+    }
+    return buffer.toString();
+  }
+
+  public void testReversedField() throws IOException {
+    String[] words = { "running", "sing", "ingot", "walked", "thing" };
+    RAMDirectory dir = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.LIMITED);
+    for (int i = 0; i < words.length; i++) {
+      Document doc = new Document();
+      doc.add(new Field("body", words[i], Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("body_rev", new StringBuffer(words[i]).reverse().toString(), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    IndexSearcher searcher = new IndexSearcher(dir);
+
+    WildcardQuery plain = new WildcardQuery(new Term("body", "*ing"));
+    plain.setRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
+    WildcardQuery reversed = new WildcardQuery(new Term("body", "*ing"));
+    reversed.setRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
+    reversed.setReversedField("body_rev");
+    assertFalse(plain.equals(reversed));
+
+    FilteredTermEnum terms = reversed.getEnum(searcher.getIndexReader());
+    assertEquals(new Term("body_rev", "gniht"), terms.term());
+    terms.close();
+    assertMatches(searcher, plain, 3);
+    assertMatches(searcher, reversed, 3);
+
+    // a pattern ending with a wildcard is not reversed
+    WildcardQuery infix = new WildcardQuery(new Term("body", "*in*"));
+    infix.setRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
+    infix.setReversedField("body_rev");
+    terms = infix.getEnum(searcher.getIndexReader());
+    assertEquals("body", terms.term().field());
+    terms.close();
+    assertMatches(searcher, infix, 4);
+
+    // nor is it without the reversed field
+    reversed.setReversedField("missing");
+    terms = reversed.getEnum(searcher.getIndexReader());
+    assertEquals("body", terms.term().field());
+    terms.close();
+    assertMatches(searcher, reversed, 3);
+    searcher.close();
+  }
+
 }
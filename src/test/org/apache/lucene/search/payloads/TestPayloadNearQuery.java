@@ -27,6 +27,7 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Payload;
 import org.apache.lucene.index.Term;
@@ -34,8 +35,10 @@ import org.apache.lucene.search.DefaultSimilarity;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.QueryUtils;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanNearQuery;
 import org.apache.lucene.store.RAMDirectory;
@@ -174,6 +177,33 @@ public class TestPayloadNearQuery extends LuceneTestCase {
     */
   }
 
+  public void testDeprecatedProcessPayloadsOverride() throws IOException {
+    final int[] seen = new int[1];
+    SpanQuery[] clauses = new SpanQuery[] {
+        new PayloadTermQuery(new Term("field", "nine"), new AveragePayloadFunction()),
+        new PayloadTermQuery(new Term("field", "hundred"), new AveragePayloadFunction()) };
+    PayloadNearQuery query = new PayloadNearQuery(clauses, 0, true) {
+      public Weight createWeight(Searcher searcher) throws IOException {
+        return new PayloadNearSpanWeight(this, searcher) {
+          public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder,
+              boolean topScorer) throws IOException {
+            return new PayloadNearSpanScorer(query.getSpans(reader), this,
+                similarity, reader.norms(query.getField())) {
+              protected void processPayloads(Collection payLoads, int start, int end) {
+                seen[0] += payLoads.size();
+                super.processPayloads(payLoads, start, end);
+              }
+            };
+          }
+        };
+      }
+    };
+    TopDocs hits = searcher.search(query, null, 100);
+    assertTrue(hits.totalHits > 0);
+    // an override of the deprecated method still sees the payloads
+    assertTrue(seen[0] >= 2 * hits.totalHits);
+  }
+
   private SpanNearQuery spanNearQuery(String fieldName, String words) {
     String[] wordList = words.split("[\\s]+");
     SpanQuery clauses[] = new SpanQuery[wordList.length];
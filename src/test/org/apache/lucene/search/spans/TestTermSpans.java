@@ -0,0 +1,176 @@
+package org.apache.lucene.search.spans;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Payload;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTermSpans extends LuceneTestCase {
+
+  private IndexReader reader;
+
+  // payloads of "x" tokens are their position, others have none
+  private static class PayloadAnalyzer extends Analyzer {
+    public TokenStream tokenStream(String fieldName, Reader reader) {
+      return new TokenFilter(new WhitespaceTokenizer(reader)) {
+        TermAttribute termAtt = (TermAttribute) addAttribute(TermAttribute.class);
+        PayloadAttribute payloadAtt = (PayloadAttribute) addAttribute(PayloadAttribute.class);
+        int pos;
+
+        public boolean incrementToken() throws IOException {
+          if (!input.incrementToken()) {
+            return false;
+          }
+          payloadAtt.setPayload(termAtt.term().equals("x") ? new Payload(new byte[] { (byte) pos }) : null);
+          pos++;
+          return true;
+        }
+      };
+    }
+  }
+
+  // counts the positions read
+  private static class CountingReader extends FilterIndexReader {
+    int positionsRead;
+
+    CountingReader(IndexReader in) {
+      super(in);
+    }
+
+    public TermPositions termPositions(Term term) throws IOException {
+      return new FilterTermPositions(in.termPositions(term)) {
+        public int nextPosition() throws IOException {
+          positionsRead++;
+          return super.nextPosition();
+        }
+      };
+    }
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new PayloadAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+    for (int i = 0; i < 100; i++) {
+      Document doc = new Document();
+      String text = i == 50 ? "a b x a x" : "a a a " + (i % 2 == 0 ? "c" : "x");
+      doc.add(new Field("field", text, Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    reader = IndexReader.open(directory, true);
+  }
+
+  protected void tearDown() throws Exception {
+    reader.close();
+    super.tearDown();
+  }
+
+  public void testNearReadsPositionsOfCommonDocsOnly() throws IOException {
+    CountingReader counting = new CountingReader(reader);
+    SpanNearQuery query = new SpanNearQuery(new SpanQuery[] {
+        new SpanTermQuery(new Term("field", "a")),
+        new SpanTermQuery(new Term("field", "b")) }, 0, true);
+    Spans spans = query.getSpans(counting);
+    assertTrue(spans.next());
+    assertEquals(50, spans.doc());
+    assertEquals(0, spans.start());
+    assertEquals(2, spans.end());
+    assertFalse(spans.next());
+    // "a" twice and "b" once, all in doc 50
+    assertEquals(3, counting.positionsRead);
+  }
+
+  public void testPositionsAndPayloads() throws IOException {
+    Spans spans = new SpanTermQuery(new Term("field", "x")).getSpans(reader);
+    assertTrue(spans.skipTo(50));
+    assertEquals(50, spans.doc());
+    assertEquals(2, spans.start());
+    PayloadBuffer payloads = spans.getPayloadBuffer();
+    assertEquals(1, payloads.size());
+    assertEquals(1, payloads.getLength(0));
+    assertEquals(2, payloads.getBytes()[payloads.getOffset(0)]);
+
+    assertTrue(spans.next());
+    assertEquals(4, spans.start());
+    assertTrue(spans.isPayloadAvailable());
+    Collection collection = spans.getPayload();
+    assertEquals(1, collection.size());
+    assertEquals(4, ((byte[]) collection.iterator().next())[0]);
+
+    assertTrue(spans.next());
+    assertEquals(51, spans.doc());
+    assertEquals(3, spans.start());
+
+    spans = new SpanTermQuery(new Term("field", "a")).getSpans(reader);
+    assertTrue(spans.next());
+    assertFalse(spans.isPayloadAvailable());
+    assertEquals(0, spans.getPayloadBuffer().size());
+  }
+
+  public void testPayloadBuffer() {
+    PayloadBuffer buffer = new PayloadBuffer();
+    byte[] bytes = new byte[100];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    for (int i = 0; i < 10; i++) {
+      buffer.add(bytes, i, 10);
+    }
+    buffer.add(bytes, 0, 0);
+    assertEquals(11, buffer.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(10, buffer.getLength(i));
+      assertEquals(i, buffer.getBytes()[buffer.getOffset(i)]);
+      assertEquals(i + 9, buffer.getBytes()[buffer.getOffset(i) + 9]);
+    }
+    assertEquals(0, buffer.getLength(10));
+
+    PayloadBuffer copy = new PayloadBuffer();
+    copy.add(bytes, 99, 1);
+    copy.addAll(buffer);
+    assertEquals(12, copy.size());
+    assertEquals(99, copy.getBytes()[copy.getOffset(0)]);
+    assertEquals(5, copy.getBytes()[copy.getOffset(6)]);
+    assertEquals(12, copy.toList().size());
+
+    byte[] before = buffer.getBytes();
+    buffer.clear();
+    assertEquals(0, buffer.size());
+    buffer.add(bytes, 0, 50);
+    assertSame(before, buffer.getBytes());
+  }
+}
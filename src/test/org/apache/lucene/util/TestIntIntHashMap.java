@@ -0,0 +1,95 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+public class TestIntIntHashMap extends LuceneTestCase {
+
+  public void testAgainstHashMap() {
+    Random random = newRandom();
+    IntIntHashMap map = new IntIntHashMap(4);
+    Map expected = new HashMap();
+    for (int i = 0; i < 10000; i++) {
+      // include 0, negatives and collisions
+      int key = random.nextInt(3000) - 1000;
+      int delta = random.nextInt(10);
+      int op = random.nextInt(5);
+      if (op == 0) {
+        map.put(key, delta);
+        expected.put(new Integer(key), new Integer(delta));
+      } else if (op == 1) {
+        Integer old = (Integer) expected.remove(new Integer(key));
+        assertEquals(old == null ? -1 : old.intValue(), map.remove(key, -1));
+      } else {
+        Integer old = (Integer) expected.get(new Integer(key));
+        int value = (old == null ? 0 : old.intValue()) + delta;
+        assertEquals(value, map.adjust(key, delta));
+        expected.put(new Integer(key), new Integer(value));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    Iterator it = expected.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry entry = (Map.Entry) it.next();
+      int key = ((Integer) entry.getKey()).intValue();
+      assertTrue(map.containsKey(key));
+      assertEquals(((Integer) entry.getValue()).intValue(), map.get(key, -1));
+    }
+    assertEquals(-1, map.get(5000, -1));
+    assertFalse(map.containsKey(5000));
+
+    int[] keys = map.keys();
+    int[] values = map.values();
+    assertEquals(expected.size(), keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(expected.get(new Integer(keys[i])), new Integer(values[i]));
+    }
+
+    IntIntHashMap doubled = new IntIntHashMap();
+    doubled.adjustAll(map);
+    doubled.adjustAll(map);
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(2 * values[i], doubled.get(keys[i], -1));
+    }
+
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(0, map.keys().length);
+    assertFalse(map.containsKey(0));
+  }
+
+  public void testRemovedZeroStartsOver() {
+    IntIntHashMap map = new IntIntHashMap();
+    map.put(0, 7);
+    assertEquals(7, map.remove(0, -1));
+    assertFalse(map.containsKey(0));
+    assertEquals(-1, map.get(0, -1));
+    // a removed key 0 adjusts from 0, like any other absent key
+    assertEquals(3, map.adjust(0, 3));
+    assertEquals(3, map.get(0, -1));
+    assertEquals(1, map.size());
+
+    map.put(5, 7);
+    map.remove(5, -1);
+    assertEquals(3, map.adjust(5, 3));
+  }
+}
@@ -0,0 +1,93 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class TestPackedInts extends LuceneTestCase {
+
+  public void testBitsRequired() {
+    assertEquals(0, PackedInts.bitsRequired(0));
+    assertEquals(1, PackedInts.bitsRequired(1));
+    assertEquals(2, PackedInts.bitsRequired(3));
+    assertEquals(3, PackedInts.bitsRequired(4));
+    assertEquals(31, PackedInts.bitsRequired(Integer.MAX_VALUE));
+    assertEquals(64, PackedInts.bitsRequired(-1L));
+  }
+
+  public void testBytesRequired() {
+    assertEquals(8, PackedInts.bytesRequired(0, 7));
+    assertEquals(8, PackedInts.bytesRequired(9, 7));
+    assertEquals(16, PackedInts.bytesRequired(10, 7));
+    assertEquals(1 << 28, PackedInts.bytesRequired(Integer.MAX_VALUE, 1));
+    // 2^31 bytes and more do not wrap around
+    try {
+      PackedInts.bytesRequired(Integer.MAX_VALUE, 8);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      PackedInts.bytesRequired(Integer.MAX_VALUE, 64);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testRandomValues() {
+    Random random = newRandom();
+    for (int bits = 0; bits <= 64; bits++) {
+      int count = 1 + random.nextInt(300);
+      long mask = bits == 64 ? -1L : (1L << bits) - 1;
+      long[] expected = new long[count];
+      PackedInts packed = PackedInts.allocateDirect(count, bits);
+      assertEquals(count, packed.size());
+      assertEquals(bits, packed.getBitsPerValue());
+      for (int i = 0; i < count; i++) {
+        assertEquals(0, packed.get(i));
+        expected[i] = random.nextLong() & mask;
+        packed.set(i, expected[i]);
+      }
+      // overwrite some, which must not disturb the neighbours
+      for (int i = 0; i < count; i += 3) {
+        expected[i] = random.nextLong() & mask;
+        packed.set(i, expected[i]);
+      }
+      for (int i = 0; i < count; i++) {
+        assertEquals("bits=" + bits + " index=" + i, expected[i], packed.get(i));
+      }
+    }
+  }
+
+  public void testWrap() {
+    PackedInts packed = PackedInts.allocateDirect(100, 7);
+    for (int i = 0; i < 100; i++) {
+      packed.set(i, i);
+    }
+    assertEquals(PackedInts.bytesRequired(100, 7), packed.sizeInBytes());
+    PackedInts wrapped = new PackedInts(packed.getBuffer(), 100, 7);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, wrapped.get(i));
+    }
+    try {
+      new PackedInts(ByteBuffer.allocate(8), 100, 7);
+      fail("buffer is too small");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
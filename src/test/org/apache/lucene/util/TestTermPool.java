@@ -0,0 +1,64 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestTermPool extends LuceneTestCase {
+
+  public void testAddAndGet() throws Exception {
+    Random random = newRandom();
+    TermPool pool = new TermPool();
+    List terms = new ArrayList();
+    int bytes = 0;
+    // enough terms to span several blocks, some across block boundaries
+    while (bytes < 100000) {
+      String term = randomTerm(random);
+      assertEquals(terms.size(), pool.add(term));
+      terms.add(term);
+      bytes += term.getBytes("UTF-8").length;
+    }
+    pool.add("");
+    terms.add("");
+    assertEquals(terms.size(), pool.size());
+    for (int i = 0; i < terms.size(); i++) {
+      assertEquals(terms.get(i), pool.get(i));
+    }
+    assertEquals(bytes, pool.offset(pool.size()));
+    assertTrue(pool.ramBytesUsed() >= bytes);
+  }
+
+  /** Returns a term of 1 to 4 byte UTF-8 characters. */
+  private static String randomTerm(Random random) {
+    StringBuffer term = new StringBuffer();
+    int length = random.nextInt(50);
+    for (int i = 0; i < length; i++) {
+      switch (random.nextInt(4)) {
+        case 0: term.append((char) ('a' + random.nextInt(26))); break;
+        case 1: term.append((char) (0x80 + random.nextInt(0x780))); break;
+        case 2: term.append((char) (0x800 + random.nextInt(0xd000))); break;
+        default:
+          term.append((char) (0xd800 + random.nextInt(0x400)));
+          term.append((char) (0xdc00 + random.nextInt(0x400)));
+      }
+    }
+    return term.toString();
+  }
+}